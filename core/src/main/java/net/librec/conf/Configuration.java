@@ -106,6 +106,30 @@ public class Configuration implements Iterable<Map.Entry<String, String>> {
         // addDefaultResource("driver.classes.props");
     }
 
+    /**
+     * Construct a configuration which loads the default resources.
+     */
+    public Configuration() {
+    }
+
+    /**
+     * Construct a copy of a configuration, with the same resources and
+     * properties. Later changes of either configuration are not seen by the
+     * other one.
+     *
+     * @param other the configuration to copy
+     */
+    public Configuration(Configuration other) {
+        Properties otherProperties = other.getProps();
+        synchronized (other) {
+            this.classLoader = other.classLoader;
+            this.loadDefaults = other.loadDefaults;
+            this.resources = new ArrayList<Resource>(other.resources);
+            this.properties = new Properties();
+            this.properties.putAll(otherProperties);
+        }
+    }
+
     public static class Resource {
         private final Object resource;
         private final String name;
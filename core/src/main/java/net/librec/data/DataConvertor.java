@@ -18,7 +18,9 @@
 package net.librec.data;
 
 import java.io.IOException;
+import java.util.ArrayList;
 
+import com.google.common.collect.BiMap;
 import net.librec.math.structure.SparseMatrix;
 import net.librec.math.structure.SparseTensor;
 
@@ -58,4 +60,25 @@ public interface DataConvertor {
      * @return a {@code SparseTensor} object which stores rate data.
      */
     public SparseTensor getSparseTensor();
+
+    /**
+     * Returns the user {raw id, inner id} mappings.
+     *
+     * @return the user {raw id, inner id} mappings.
+     */
+    public BiMap<String, Integer> getUserIds();
+
+    /**
+     * Returns the item {raw id, inner id} mappings.
+     *
+     * @return the item {raw id, inner id} mappings.
+     */
+    public BiMap<String, Integer> getItemIds();
+
+    /**
+     * Returns the {raw id, inner id} mappings of all the columns of the data.
+     *
+     * @return the {raw id, inner id} mappings of all the columns of the data.
+     */
+    public ArrayList<BiMap<String, Integer>> getAllFeatureIds();
 }
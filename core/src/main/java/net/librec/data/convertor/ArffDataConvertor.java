@@ -404,14 +404,10 @@ public class ArffDataConvertor extends AbstractDataConvertor {
         int numRows = instances.size();
         int numAttrs = attributes.size();
 
-        List<Double> ratings = new ArrayList<Double>();
+        double[] ratings = new double[numRows];
 
         // n-dimensional keys
-        List<Integer>[] nDKeys = (List<Integer>[]) new List<?>[numAttrs];
-
-        for (int d = 0; d < numAttrs; d++) {
-            nDKeys[d] = new ArrayList<Integer>();
-        }
+        int[][] nDKeys = new int[numAttrs - 1][numRows];
 
         // each set stores a series of values of an attribute
         ArrayList<HashSet<Integer>> setOfAttrs = new ArrayList<HashSet<Integer>>();
@@ -437,7 +433,7 @@ public class ArffDataConvertor extends AbstractDataConvertor {
                     String strUserId = String.valueOf((int) userId);
                     int userInnerId = featuresInnerMapping.get(j).containsKey(strUserId) ? featuresInnerMapping.get(j).get(strUserId) : featuresInnerMapping.get(j).size();
                     featuresInnerMapping.get(j).put(strUserId, userInnerId);
-                    nDKeys[j].add(userInnerId);
+                    nDKeys[j][row] = userInnerId;
                     setOfAttrs.get(j).add(userInnerId);
                 } else if (i == itemCol) {
                     int j = i > ratingCol? i - 1: i;
@@ -445,11 +441,11 @@ public class ArffDataConvertor extends AbstractDataConvertor {
                     String strItemId = String.valueOf((int) itemId);
                     int itemInnerId = featuresInnerMapping.get(j).containsKey(strItemId) ? featuresInnerMapping.get(j).get(strItemId) : featuresInnerMapping.get(j).size();
                     featuresInnerMapping.get(j).put(strItemId, itemInnerId);
-                    nDKeys[j].add(itemInnerId);
+                    nDKeys[j][row] = itemInnerId;
                     setOfAttrs.get(j).add(itemInnerId);
                 } else if (i == ratingCol) {
                     double rating = (double) instance.getValueByIndex(ratingCol);
-                    ratings.add(rating);
+                    ratings[row] = rating;
                 } else {
                     int j;
                     if (i > ratingCol) {
@@ -462,14 +458,14 @@ public class ArffDataConvertor extends AbstractDataConvertor {
                         String strAttr = (String) instance.getValueByIndex(i);
                         int featureInnerId = featuresInnerMapping.get(j).containsKey(strAttr) ? featuresInnerMapping.get(j).get(strAttr) : featuresInnerMapping.get(j).size();
                         featuresInnerMapping.get(j).put(strAttr, featureInnerId);
-                        nDKeys[j].add(featureInnerId);
+                        nDKeys[j][row] = featureInnerId;
                         setOfAttrs.get(j).add(featureInnerId);
                     } else {
                         double val = (double) instance.getValueByIndex(i);
                         String strFeatureId = String.valueOf((int) val);
                         int featureInnerId = featuresInnerMapping.get(j).containsKey(strFeatureId) ? featuresInnerMapping.get(j).get(strFeatureId) : featuresInnerMapping.get(j).size();
                         featuresInnerMapping.get(j).put(strFeatureId, featureInnerId);
-                        nDKeys[j].add(featureInnerId);
+                        nDKeys[j][row] = featureInnerId;
                         setOfAttrs.get(j).add(featureInnerId);
                     }
                 }
@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) 2016 LibRec
+ * <p>
+ * This file is part of LibRec.
+ * LibRec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * LibRec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.librec.data.convertor;
+
+import com.google.common.collect.BiMap;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A <tt>ByteIdDictionary</tt> maps raw ids, given as byte slices of an input
+ * buffer, to inner ids. Lookups of known ids neither decode nor allocate; a
+ * {@code String} is only created when a new raw id is put into the backing
+ * {raw id, inner id} map.
+ */
+public class ByteIdDictionary {
+
+    /**
+     * charset of the raw ids
+     */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * the backing {raw id, inner id} map
+     */
+    private final BiMap<String, Integer> ids;
+
+    /**
+     * open addressing table of entry index + 1, 0 for an empty slot
+     */
+    private int[] table;
+
+    /**
+     * hash, inner id, offset and length in the byte pool of each entry
+     */
+    private int[] hashes, innerIds, offsets, lengths;
+
+    /**
+     * bytes of all raw ids
+     */
+    private byte[] pool;
+
+    /**
+     * number of entries and used bytes of the pool
+     */
+    private int size, poolSize;
+
+    /**
+     * Initializes a newly created {@code ByteIdDictionary} object backed by
+     * the given map. Existing mappings are kept and new inner ids continue
+     * from the size of the map.
+     *
+     * @param ids the backing {raw id, inner id} map
+     */
+    public ByteIdDictionary(BiMap<String, Integer> ids) {
+        this.ids = ids;
+        int capacity = Integer.highestOneBit(Math.max(ids.size(), 16) * 2) * 2;
+        table = new int[capacity];
+        hashes = new int[capacity / 2];
+        innerIds = new int[capacity / 2];
+        offsets = new int[capacity / 2];
+        lengths = new int[capacity / 2];
+        pool = new byte[capacity * 4];
+        for (Map.Entry<String, Integer> entry : ids.entrySet()) {
+            byte[] raw = entry.getKey().getBytes(CHARSET);
+            insert(raw, 0, raw.length, hash(raw, 0, raw.length), entry.getValue());
+        }
+    }
+
+    /**
+     * Return the inner id of a raw id, assigning the next inner id if the raw
+     * id is new.
+     *
+     * @param bytes  the buffer holding the raw id
+     * @param offset offset of the raw id in the buffer
+     * @param length length of the raw id in bytes
+     * @return the inner id
+     */
+    public int getId(byte[] bytes, int offset, int length) {
+        int hash = hash(bytes, offset, length);
+        int mask = table.length - 1;
+        for (int slot = hash & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int entry = table[slot] - 1;
+            if (hashes[entry] == hash && equals(entry, bytes, offset, length)) {
+                return innerIds[entry];
+            }
+        }
+        int innerId = ids.size();
+        ids.put(new String(bytes, offset, length, CHARSET), innerId);
+        insert(bytes, offset, length, hash, innerId);
+        return innerId;
+    }
+
+    /**
+     * Return the number of raw ids.
+     *
+     * @return the number of raw ids
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return the backing {raw id, inner id} map.
+     *
+     * @return the backing map
+     */
+    public BiMap<String, Integer> getIds() {
+        return ids;
+    }
+
+    private void insert(byte[] bytes, int offset, int length, int hash, int innerId) {
+        if ((size + 1) * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        if (size == hashes.length) {
+            int capacity = hashes.length * 2;
+            hashes = Arrays.copyOf(hashes, capacity);
+            innerIds = Arrays.copyOf(innerIds, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        if (poolSize + length > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(poolSize + length, pool.length * 2));
+        }
+        System.arraycopy(bytes, offset, pool, poolSize, length);
+        hashes[size] = hash;
+        innerIds[size] = innerId;
+        offsets[size] = poolSize;
+        lengths[size] = length;
+        poolSize += length;
+
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = ++size;
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        int mask = capacity - 1;
+        for (int entry = 0; entry < size; entry++) {
+            int slot = hashes[entry] & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = entry + 1;
+        }
+    }
+
+    private boolean equals(int entry, byte[] bytes, int offset, int length) {
+        if (lengths[entry] != length) {
+            return false;
+        }
+        int start = offsets[entry];
+        for (int i = 0; i < length; i++) {
+            if (pool[start + i] != bytes[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = 1;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        // spread the low bits which are used to pick a slot
+        return hash ^ (hash >>> 16);
+    }
+}
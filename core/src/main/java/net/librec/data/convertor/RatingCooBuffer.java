@@ -0,0 +1,197 @@
+/**
+ * Copyright (C) 2016 LibRec
+ * <p>
+ * This file is part of LibRec.
+ * LibRec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * LibRec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.librec.data.convertor;
+
+import net.librec.math.structure.SparseMatrix;
+
+import java.util.Arrays;
+
+/**
+ * A <tt>RatingCooBuffer</tt> is a growable coordinate (COO) buffer which keeps
+ * the parsed ratings in primitive arrays {row, column, rate, timestamp} until
+ * the {@code SparseMatrix} structures are built.
+ */
+public class RatingCooBuffer {
+
+    /**
+     * the default initial capacity
+     */
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * row and column index of each rating
+     */
+    private int[] rows, cols;
+
+    /**
+     * rate of each rating
+     */
+    private double[] values;
+
+    /**
+     * timestamp of each rating, created on demand
+     */
+    private long[] times;
+
+    /**
+     * number of ratings in the buffer
+     */
+    private int size;
+
+    /**
+     * Initializes a newly created {@code RatingCooBuffer} object with the
+     * default capacity.
+     */
+    public RatingCooBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Initializes a newly created {@code RatingCooBuffer} object with the
+     * given initial capacity.
+     *
+     * @param capacity the initial capacity
+     */
+    public RatingCooBuffer(int capacity) {
+        capacity = Math.max(capacity, 16);
+        rows = new int[capacity];
+        cols = new int[capacity];
+        values = new double[capacity];
+    }
+
+    /**
+     * Append a rating without timestamp.
+     *
+     * @param row   row index
+     * @param col   column index
+     * @param value rate
+     */
+    public void add(int row, int col, double value) {
+        ensureCapacity(size + 1);
+        rows[size] = row;
+        cols[size] = col;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * Append a rating with its timestamp.
+     *
+     * @param row       row index
+     * @param col       column index
+     * @param value     rate
+     * @param timestamp timestamp in milliseconds
+     */
+    public void add(int row, int col, double value, long timestamp) {
+        ensureCapacity(size + 1);
+        if (times == null) {
+            times = new long[rows.length];
+        }
+        times[size] = timestamp;
+        add(row, col, value);
+    }
+
+    /**
+     * Append all ratings of another buffer, translating its local row and
+     * column indices through the given maps.
+     *
+     * @param other  the buffer to append
+     * @param rowMap local-to-global row index map, or {@code null} to keep the indices
+     * @param colMap local-to-global column index map, or {@code null} to keep the indices
+     */
+    public void addAll(RatingCooBuffer other, int[] rowMap, int[] colMap) {
+        ensureCapacity(size + other.size);
+        if (other.times != null && times == null) {
+            times = new long[rows.length];
+        }
+        for (int k = 0; k < other.size; k++) {
+            rows[size + k] = rowMap == null ? other.rows[k] : rowMap[other.rows[k]];
+            cols[size + k] = colMap == null ? other.cols[k] : colMap[other.cols[k]];
+        }
+        System.arraycopy(other.values, 0, values, size, other.size);
+        if (other.times != null) {
+            System.arraycopy(other.times, 0, times, size, other.size);
+        }
+        size += other.size;
+    }
+
+    /**
+     * Return the number of ratings in the buffer.
+     *
+     * @return the number of ratings
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return whether any rating carries a timestamp.
+     *
+     * @return true if the buffer holds timestamps
+     */
+    public boolean hasTimes() {
+        return times != null;
+    }
+
+    /**
+     * Build the rate matrix of the buffered ratings.
+     *
+     * @param numRows    number of rows
+     * @param numColumns number of columns
+     * @return the rate matrix
+     */
+    public SparseMatrix toPreferenceMatrix(int numRows, int numColumns) {
+        return new SparseMatrix(numRows, numColumns, rows, cols, values, size);
+    }
+
+    /**
+     * Build the time matrix of the buffered ratings.
+     *
+     * @param numRows    number of rows
+     * @param numColumns number of columns
+     * @return the time matrix, or {@code null} if no timestamp was buffered
+     */
+    public SparseMatrix toDatetimeMatrix(int numRows, int numColumns) {
+        if (times == null) {
+            return null;
+        }
+        double[] data = new double[size];
+        for (int k = 0; k < size; k++) {
+            data[k] = times[k];
+        }
+        return new SparseMatrix(numRows, numColumns, rows, cols, data, size);
+    }
+
+    /**
+     * Grow the buffer by half of its current capacity until it can hold
+     * {@code minCapacity} ratings.
+     *
+     * @param minCapacity the required capacity
+     */
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity > rows.length) {
+            int capacity = Math.max(minCapacity, rows.length + (rows.length >> 1));
+            rows = Arrays.copyOf(rows, capacity);
+            cols = Arrays.copyOf(cols, capacity);
+            values = Arrays.copyOf(values, capacity);
+            if (times != null) {
+                times = Arrays.copyOf(times, capacity);
+            }
+        }
+    }
+}
@@ -0,0 +1,552 @@
+/**
+ * Copyright (C) 2016 LibRec
+ * <p>
+ * This file is part of LibRec.
+ * LibRec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * LibRec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.librec.data.convertor;
+
+import com.google.common.collect.BiMap;
+import com.google.common.collect.HashBiMap;
+import net.librec.data.DataConvertor;
+import net.librec.math.structure.SparseMatrix;
+import net.librec.math.structure.SparseTensor;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A <tt>SnapshotDataConvertor</tt> reads and writes a binary columnar
+ * snapshot of the converted data, so that later jobs on the same data source
+ * can skip parsing. A snapshot stores the CRS/CCS arrays of the rate and time
+ * matrices, the {raw id, inner id} dictionaries and, for context-aware data,
+ * the rate tensor. It is read through memory-mapped windows.
+ * <p>
+ * Layout (big-endian): magic, version, source key, rate matrix, optional time
+ * matrix, dictionaries with the positions of the user and item dictionary,
+ * optional tensor, and a CRC32 checksum of all preceding bytes. The source
+ * key describes the data files and settings the snapshot was built from; a
+ * snapshot whose key differs is stale and ignored.
+ */
+public class SnapshotDataConvertor extends AbstractDataConvertor {
+
+    /**
+     * Log
+     */
+    private static final Log LOG = LogFactory.getLog(SnapshotDataConvertor.class);
+
+    /**
+     * magic number "LRSS" and version of the snapshot format
+     */
+    private static final int MAGIC = 0x4C525353, VERSION = 1;
+
+    /**
+     * size of the mapped windows and of the write buffer
+     */
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024, BSIZE = 1024 * 1024;
+
+    /**
+     * charset of the strings
+     */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * the path of the snapshot file
+     */
+    private String snapshotPath;
+
+    /**
+     * the key of the data source
+     */
+    private String sourceKey;
+
+    /**
+     * {raw id, inner id} dictionaries
+     */
+    private ArrayList<BiMap<String, Integer>> featureIds;
+
+    /**
+     * positions of the user and item dictionary
+     */
+    private int userIndex, itemIndex;
+
+    /**
+     * Initializes a newly created {@code SnapshotDataConvertor} object.
+     *
+     * @param snapshotPath the path of the snapshot file
+     * @param sourceKey    the key of the data source, see {@link #sourceKey(String, String...)}
+     */
+    public SnapshotDataConvertor(String snapshotPath, String sourceKey) {
+        this.snapshotPath = snapshotPath;
+        this.sourceKey = sourceKey;
+    }
+
+    /**
+     * Load the snapshot if the file exists, was built from the same data
+     * source, and is not corrupted. The checksum is computed while the
+     * snapshot is read, so the file is read only once; nothing is kept if it
+     * does not match.
+     *
+     * @return true if the snapshot was loaded
+     */
+    public boolean load() {
+        File file = new File(snapshotPath);
+        if (!file.isFile()) {
+            return false;
+        }
+        long startTime = System.currentTimeMillis();
+        try (SnapshotReader reader = new SnapshotReader(file)) {
+            if (!reader.readHeader(sourceKey)) {
+                LOG.info("Snapshot " + snapshotPath + " is stale");
+                return false;
+            }
+            SparseMatrix rateMatrix = reader.readMatrix();
+            SparseMatrix timeMatrix = reader.readBoolean() ? reader.readMatrix() : null;
+
+            int numDictionaries = reader.readLength(4);
+            int userDictionary = reader.readInt();
+            int itemDictionary = reader.readInt();
+            ArrayList<BiMap<String, Integer>> dictionaries = new ArrayList<>(numDictionaries);
+            for (int d = 0; d < numDictionaries; d++) {
+                int size = reader.readLength(8);
+                BiMap<String, Integer> ids = HashBiMap.create(size);
+                for (int k = 0; k < size; k++) {
+                    int innerId = reader.readInt();
+                    ids.put(reader.readString(), innerId);
+                }
+                dictionaries.add(ids);
+            }
+            SparseTensor rateTensor = reader.readBoolean() ? reader.readTensor() : null;
+
+            if (!reader.verifyChecksum()) {
+                LOG.warn("Snapshot " + snapshotPath + " is corrupted");
+                return false;
+            }
+            preferenceMatrix = rateMatrix;
+            datetimeMatrix = timeMatrix;
+            featureIds = dictionaries;
+            userIndex = userDictionary;
+            itemIndex = itemDictionary;
+            sparseTensor = rateTensor;
+        } catch (IOException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            LOG.warn("Snapshot " + snapshotPath + " cannot be read: " + e.getMessage());
+            return false;
+        }
+        LOG.info(String.format("Loaded snapshot %s in %d ms", snapshotPath, System.currentTimeMillis() - startTime));
+        return true;
+    }
+
+    /**
+     * Load the snapshot.
+     *
+     * @throws IOException if the snapshot is not valid
+     */
+    @Override
+    public void processData() throws IOException {
+        if (!load()) {
+            throw new IOException("Snapshot " + snapshotPath + " cannot be loaded");
+        }
+    }
+
+    /**
+     * Write a snapshot of the converted data. The snapshot is written to a
+     * temporary file first and then moved to {@code snapshotPath}.
+     *
+     * @param snapshotPath the path of the snapshot file
+     * @param sourceKey    the key of the data source
+     * @param convertor    the convertor which holds the converted data
+     * @param featureIds   the {raw id, inner id} dictionaries
+     * @param userIndex    the position of the user dictionary
+     * @param itemIndex    the position of the item dictionary
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static void writeSnapshot(String snapshotPath, String sourceKey, DataConvertor convertor,
+                                     List<BiMap<String, Integer>> featureIds, int userIndex, int itemIndex)
+            throws IOException {
+        Path target = Paths.get(snapshotPath).toAbsolutePath();
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (SnapshotWriter writer = new SnapshotWriter(temp.toFile())) {
+                writer.writeInt(MAGIC);
+                writer.writeInt(VERSION);
+                writer.writeString(sourceKey);
+
+                writer.writeMatrix(convertor.getPreferenceMatrix());
+                SparseMatrix datetimeMatrix = convertor.getDatetimeMatrix();
+                writer.writeBoolean(datetimeMatrix != null);
+                if (datetimeMatrix != null) {
+                    writer.writeMatrix(datetimeMatrix);
+                }
+
+                writer.writeInt(featureIds.size());
+                writer.writeInt(userIndex);
+                writer.writeInt(itemIndex);
+                for (BiMap<String, Integer> ids : featureIds) {
+                    writer.writeInt(ids.size());
+                    for (Map.Entry<String, Integer> entry : ids.entrySet()) {
+                        writer.writeInt(entry.getValue());
+                        writer.writeString(entry.getKey());
+                    }
+                }
+
+                SparseTensor sparseTensor = convertor.getSparseTensor();
+                writer.writeBoolean(sparseTensor != null);
+                if (sparseTensor != null) {
+                    writer.writeTensor(sparseTensor);
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        LOG.info("Saved snapshot " + snapshotPath);
+    }
+
+    /**
+     * Return a key which identifies the data source: the given settings and
+     * the path, size and modification time of every data file.
+     *
+     * @param inputDataPath the path of input data files, separated by space
+     * @param settings      the settings which change the converted data
+     * @return the key of the data source
+     * @throws IOException if the <code>inputDataPath</code> is not valid.
+     */
+    public static String sourceKey(String inputDataPath, String... settings) throws IOException {
+        final StringBuilder key = new StringBuilder();
+        for (String setting : settings) {
+            key.append(setting).append(';');
+        }
+        for (String path : inputDataPath.trim().split(" ")) {
+            Files.walkFileTree(Paths.get(path), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    key.append(file.toAbsolutePath().normalize()).append(',').append(attrs.size()).append(',')
+                            .append(attrs.lastModifiedTime().toMillis()).append(';');
+                    return super.visitFile(file, attrs);
+                }
+            });
+        }
+        return key.toString();
+    }
+
+    /**
+     * Return user {raw id, inner id} mappings.
+     *
+     * @return user {raw id, inner id} mappings
+     */
+    public BiMap<String, Integer> getUserIds() {
+        return featureIds.get(userIndex);
+    }
+
+    /**
+     * Return item {raw id, inner id} mappings.
+     *
+     * @return item {raw id, inner id} mappings
+     */
+    public BiMap<String, Integer> getItemIds() {
+        return featureIds.get(itemIndex);
+    }
+
+    /**
+     * Return all {raw id, inner id} dictionaries.
+     *
+     * @return all {raw id, inner id} dictionaries
+     */
+    public ArrayList<BiMap<String, Integer>> getAllFeatureIds() {
+        return featureIds;
+    }
+
+    @Override
+    public void progress() {
+    }
+
+    /**
+     * Sequential reader of a snapshot file through memory-mapped windows,
+     * which keeps the checksum of all read bytes.
+     */
+    private static class SnapshotReader implements AutoCloseable {
+
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private final CRC32 crc = new CRC32();
+        private final byte[] crcBuffer = new byte[BSIZE];
+        private MappedByteBuffer window;
+        private long windowStart, position, checkedPosition;
+
+        SnapshotReader(File snapshot) throws IOException {
+            file = new RandomAccessFile(snapshot, "r");
+            channel = file.getChannel();
+        }
+
+        /**
+         * Map a window holding the next {@code bytes} bytes and position it
+         * at them.
+         */
+        private ByteBuffer window(int bytes) throws IOException {
+            if (window == null || position + bytes > windowStart + window.limit()) {
+                updateChecksum();
+                long size = Math.min(Math.max(WINDOW_SIZE, bytes), channel.size() - position);
+                if (size < bytes) {
+                    throw new IOException("Unexpected end of snapshot");
+                }
+                window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+                windowStart = position;
+            }
+            window.position((int) (position - windowStart));
+            position += bytes;
+            return window;
+        }
+
+        boolean readHeader(String sourceKey) throws IOException {
+            if (channel.size() < 16 || readInt() != MAGIC || readInt() != VERSION) {
+                return false;
+            }
+            return sourceKey.equals(readString());
+        }
+
+        /**
+         * Add the bytes of the current window which were read since the last
+         * update to the checksum.
+         */
+        private void updateChecksum() {
+            if (window == null) {
+                return;
+            }
+            ByteBuffer bytes = window.duplicate();
+            bytes.limit((int) (position - windowStart));
+            bytes.position((int) (checkedPosition - windowStart));
+            while (bytes.hasRemaining()) {
+                int len = Math.min(crcBuffer.length, bytes.remaining());
+                bytes.get(crcBuffer, 0, len);
+                crc.update(crcBuffer, 0, len);
+            }
+            checkedPosition = position;
+        }
+
+        /**
+         * Return whether all bytes before the checksum were read and match
+         * the checksum at the end of the snapshot.
+         */
+        boolean verifyChecksum() throws IOException {
+            updateChecksum();
+            if (position != channel.size() - 8) {
+                return false;
+            }
+            long checksum = crc.getValue();
+            return readLong() == checksum;
+        }
+
+        /**
+         * Read a length, checking that the snapshot has enough bytes left
+         * for that many elements of the given size.
+         */
+        int readLength(int elementSize) throws IOException {
+            int length = readInt();
+            if (length < 0 || (long) length * elementSize > channel.size() - position) {
+                throw new IOException("Illegal length " + length);
+            }
+            return length;
+        }
+
+        int readInt() throws IOException {
+            return window(4).getInt();
+        }
+
+        long readLong() throws IOException {
+            return window(8).getLong();
+        }
+
+        boolean readBoolean() throws IOException {
+            return window(1).get() != 0;
+        }
+
+        String readString() throws IOException {
+            byte[] bytes = new byte[readLength(1)];
+            window(bytes.length).get(bytes);
+            return new String(bytes, CHARSET);
+        }
+
+        int[] readInts() throws IOException {
+            int[] values = new int[readLength(4)];
+            for (int offset = 0; offset < values.length; ) {
+                int len = Math.min(values.length - offset, WINDOW_SIZE / 4);
+                window(len * 4).asIntBuffer().get(values, offset, len);
+                offset += len;
+            }
+            return values;
+        }
+
+        double[] readDoubles() throws IOException {
+            double[] values = new double[readLength(8)];
+            for (int offset = 0; offset < values.length; ) {
+                int len = Math.min(values.length - offset, WINDOW_SIZE / 8);
+                window(len * 8).asDoubleBuffer().get(values, offset, len);
+                offset += len;
+            }
+            return values;
+        }
+
+        SparseMatrix readMatrix() throws IOException {
+            int numRows = readInt();
+            int numColumns = readInt();
+            return new SparseMatrix(numRows, numColumns, readInts(), readInts(), readDoubles(),
+                    readInts(), readInts(), readDoubles());
+        }
+
+        SparseTensor readTensor() throws IOException {
+            int[] dimensions = readInts();
+            int userDimension = readInt();
+            int itemDimension = readInt();
+            int[][] ndKeys = new int[dimensions.length][];
+            for (int d = 0; d < dimensions.length; d++) {
+                ndKeys[d] = readInts();
+            }
+            SparseTensor tensor = new SparseTensor(dimensions, ndKeys, readDoubles());
+            tensor.setUserDimension(userDimension);
+            tensor.setItemDimension(itemDimension);
+            return tensor;
+        }
+
+        @Override
+        public void close() throws IOException {
+            window = null;
+            channel.close();
+            file.close();
+        }
+    }
+
+    /**
+     * Sequential writer of a snapshot file which keeps the checksum of all
+     * written bytes and appends it on close.
+     */
+    private static class SnapshotWriter implements AutoCloseable {
+
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BSIZE);
+        private final CRC32 crc = new CRC32();
+
+        SnapshotWriter(File snapshot) throws IOException {
+            file = new RandomAccessFile(snapshot, "rw");
+            file.setLength(0);
+            channel = file.getChannel();
+        }
+
+        private ByteBuffer buffer(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+            return buffer;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.array(), 0, buffer.limit());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        void writeInt(int value) throws IOException {
+            buffer(4).putInt(value);
+        }
+
+        void writeBoolean(boolean value) throws IOException {
+            buffer(1).put((byte) (value ? 1 : 0));
+        }
+
+        void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(CHARSET);
+            writeInt(bytes.length);
+            for (int offset = 0; offset < bytes.length; ) {
+                int len = Math.min(bytes.length - offset, BSIZE);
+                buffer(len).put(bytes, offset, len);
+                offset += len;
+            }
+        }
+
+        void writeInts(int[] values) throws IOException {
+            writeInt(values.length);
+            for (int offset = 0; offset < values.length; ) {
+                int len = Math.min(values.length - offset, BSIZE / 4);
+                ByteBuffer bytes = buffer(len * 4);
+                bytes.asIntBuffer().put(values, offset, len);
+                bytes.position(bytes.position() + len * 4);
+                offset += len;
+            }
+        }
+
+        void writeDoubles(double[] values) throws IOException {
+            writeInt(values.length);
+            for (int offset = 0; offset < values.length; ) {
+                int len = Math.min(values.length - offset, BSIZE / 8);
+                ByteBuffer bytes = buffer(len * 8);
+                bytes.asDoubleBuffer().put(values, offset, len);
+                bytes.position(bytes.position() + len * 8);
+                offset += len;
+            }
+        }
+
+        void writeMatrix(SparseMatrix matrix) throws IOException {
+            writeInt(matrix.numRows);
+            writeInt(matrix.numColumns);
+            writeInts(matrix.rowPtr);
+            writeInts(matrix.colInd);
+            writeDoubles(matrix.rowData);
+            writeInts(matrix.colPtr);
+            writeInts(matrix.rowInd);
+            writeDoubles(matrix.colData);
+        }
+
+        void writeTensor(SparseTensor tensor) throws IOException {
+            writeInts(tensor.dimensions);
+            writeInt(tensor.getUserDimension());
+            writeInt(tensor.getItemDimension());
+            for (int d = 0; d < tensor.numDimensions; d++) {
+                writeInts(Arrays.copyOf(tensor.ndKeys[d], tensor.size()));
+            }
+            writeDoubles(Arrays.copyOf(tensor.values, tensor.size()));
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            ByteBuffer checksum = ByteBuffer.allocate(8);
+            checksum.putLong(crc.getValue()).flip();
+            while (checksum.hasRemaining()) {
+                channel.write(checksum);
+            }
+            channel.close();
+            file.close();
+        }
+    }
+}
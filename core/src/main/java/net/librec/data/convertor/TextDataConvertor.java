@@ -27,13 +27,18 @@ import org.apache.commons.logging.LogFactory;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A <tt>TextDataConvertor</tt> is a class to convert a data file from CSV
@@ -53,6 +58,11 @@ public class TextDataConvertor extends AbstractDataConvertor {
      */
     private static final int BSIZE = 1024 * 1024;
 
+    /**
+     * The default size of a file chunk read by one thread
+     */
+    private static final long DEFAULT_CHUNK_SIZE = 64L * 1024 * 1024;
+
     /**
      * The default format of input data file
      */
@@ -99,6 +109,37 @@ public class TextDataConvertor extends AbstractDataConvertor {
      */
     private float loadAllFileRate;
 
+    /**
+     * whether to parse the data files in the streaming mode, see {@link #readDataStreaming}
+     */
+    private boolean streaming;
+
+    /**
+     * number of threads of the streaming mode
+     */
+    private int numThreads = 1;
+
+    /**
+     * maximum size in bytes of a file chunk read by one thread
+     */
+    private long chunkSize = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * loaded data size and total data size of the parallel streaming mode
+     */
+    private final AtomicLong loadedBytes = new AtomicLong();
+    private long loadedFileSize;
+
+    /**
+     * time spent by the last load in milliseconds
+     */
+    private long loadTime;
+
+    /**
+     * peak heap usage observed during the last load in bytes
+     */
+    private long peakHeapUsage;
+
     /**
      * Initializes a newly created {@code TextDataConvertor} object with the
      * path of the input data file.
@@ -161,7 +202,11 @@ public class TextDataConvertor extends AbstractDataConvertor {
      * @throws IOException if the <code>inputDataPath</code> is not valid.
      */
     public void processData() throws IOException {
-        readData(dataColumnFormat, inputDataPath, binThold);
+        if (streaming) {
+            readDataStreaming(dataColumnFormat, inputDataPath, binThold);
+        } else {
+            readData(dataColumnFormat, inputDataPath, binThold);
+        }
     }
 
     /**
@@ -191,24 +236,10 @@ public class TextDataConvertor extends AbstractDataConvertor {
         if (this.itemIds == null) {
             this.itemIds = HashBiMap.create();
         }
-        final List<File> files = new ArrayList<>();
-        final ArrayList<Long> fileSizeList = new ArrayList<>();
-        SimpleFileVisitor<Path> finder = new SimpleFileVisitor<Path>() {
-            @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                fileSizeList.add(file.toFile().length());
-                files.add(file.toFile());
-                return super.visitFile(file, attrs);
-            }
-        };
-        for (String path : inputDataPath.trim().split(" ")) {
-            Files.walkFileTree(Paths.get(path), finder);
-        }
-
-        LOG.info("All dataset files " + files.toString());
+        final List<File> files = listDataFiles(inputDataPath);
         long allFileSize = 0;
-        for (Long everyFileSize : fileSizeList) {
-            allFileSize = allFileSize + everyFileSize;
+        for (File file : files) {
+            allFileSize = allFileSize + file.length();
         }
         LOG.info("All dataset files size " + Long.toString(allFileSize));
         int readingFileCount = 0;
@@ -296,6 +327,353 @@ public class TextDataConvertor extends AbstractDataConvertor {
         timeTable = null;
     }
 
+    /**
+     * Read data from the data file in the streaming mode. Lines are parsed
+     * directly from the bytes of each file chunk into primitive coordinate
+     * arrays, and the rate and time matrices are built from them by counting
+     * sort, so neither intermediate {@code String} lines nor data tables are
+     * created. Duplicated lines keep the rating which appears last.
+     *
+     * @param dataColumnFormat the format of input data file
+     * @param inputDataPath    the path of input data file
+     * @param binThold         the threshold to binarize a rating. If a rating is greater
+     *                         than the threshold, the value will be 1; otherwise 0. To
+     *                         disable this appender, i.e., keep the original rating value,
+     *                         set the threshold a negative value
+     * @throws IOException if the <code>inputDataPath</code> is not valid.
+     */
+    private void readDataStreaming(String dataColumnFormat, String inputDataPath, double binThold) throws IOException {
+        LOG.info(String.format("Dataset: %s", StringUtil.last(inputDataPath, 38)));
+        long startTime = System.currentTimeMillis();
+        resetPeakHeapUsage();
+
+        if (this.userIds == null) {
+            this.userIds = HashBiMap.create();
+        }
+        if (this.itemIds == null) {
+            this.itemIds = HashBiMap.create();
+        }
+        TextRatingParser parser = new TextRatingParser(dataColumnFormat, binThold, timeUnit,
+                new ByteIdDictionary(userIds), new ByteIdDictionary(itemIds));
+
+        final List<File> files = listDataFiles(inputDataPath);
+        long allFileSize = 0;
+        for (File file : files) {
+            allFileSize = allFileSize + file.length();
+        }
+        LOG.info("All dataset files size " + Long.toString(allFileSize));
+        RatingCooBuffer buffer;
+        if (numThreads > 1) {
+            buffer = readChunksParallel(files, allFileSize, parser);
+        } else {
+            buffer = readFilesSequential(files, allFileSize, parser);
+        }
+        int numRows = numUsers(), numCols = numItems();
+        // build rating matrix
+        preferenceMatrix = buffer.toPreferenceMatrix(numRows, numCols);
+        datetimeMatrix = buffer.toDatetimeMatrix(numRows, numCols);
+
+        loadTime = System.currentTimeMillis() - startTime;
+        peakHeapUsage = measurePeakHeapUsage();
+        LOG.info(String.format("Loaded %d ratings of %d users and %d items in %d ms, peak heap usage %d MB",
+                buffer.size(), numRows, numCols, loadTime, peakHeapUsage / (1024 * 1024)));
+    }
+
+    /**
+     * Read the data files one after another on the current thread.
+     *
+     * @param files       the data files
+     * @param allFileSize the total size of the data files
+     * @param parser      the parser which resolves the global ids
+     * @return the buffer of all ratings
+     * @throws IOException if a data file cannot be read
+     */
+    private RatingCooBuffer readFilesSequential(List<File> files, long allFileSize, TextRatingParser parser)
+            throws IOException {
+        // assume about 16 bytes per line to avoid most of the buffer growth
+        RatingCooBuffer buffer = new RatingCooBuffer((int) Math.min(allFileSize / 16, Integer.MAX_VALUE - 8));
+
+        int readingFileCount = 0;
+        long loadAllFileByte = 0;
+        byte[] bytes = new byte[BSIZE];
+        for (File dataFile : files) {
+            LOG.info("Now loading dataset file " + dataFile.getName());
+
+            readingFileCount += 1;
+            loadFilePathRate = readingFileCount / (float) files.size();
+            long readingOneFileByte = 0;
+            try (FileInputStream fis = new FileInputStream(dataFile); FileChannel fileRead = fis.getChannel()) {
+                // bytes[0, remaining) holds the incomplete line of the previous chunk
+                int remaining = 0;
+                int len;
+                while (true) {
+                    if (remaining == bytes.length) {
+                        // a single line longer than the buffer
+                        bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                    }
+                    len = fileRead.read(ByteBuffer.wrap(bytes, remaining, bytes.length - remaining));
+                    if (len == -1) {
+                        parser.parse(bytes, 0, remaining, buffer, true);
+                        break;
+                    }
+                    readingOneFileByte += len;
+                    loadDataFileRate = readingOneFileByte / (float) fileRead.size();
+                    loadAllFileByte += len;
+                    loadAllFileRate = loadAllFileByte / (float) allFileSize;
+
+                    int end = remaining + len;
+                    int consumed = parser.parse(bytes, 0, end, buffer, false);
+                    remaining = end - consumed;
+                    System.arraycopy(bytes, consumed, bytes, 0, remaining);
+                }
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Read the data files on a pool of {@link #numThreads} workers. Files
+     * larger than {@link #chunkSize} are split into chunks at line boundaries.
+     * Every worker parses its chunk with local id dictionaries into a local
+     * buffer, and the local buffers are merged in file order, so inner ids and
+     * duplicated lines are resolved exactly as in a sequential read.
+     *
+     * @param files       the data files
+     * @param allFileSize the total size of the data files
+     * @param parser      the parser of the global ids, whose settings are copied by the workers
+     * @return the buffer of all ratings
+     * @throws IOException if a data file cannot be read
+     */
+    private RatingCooBuffer readChunksParallel(List<File> files, long allFileSize, TextRatingParser parser)
+            throws IOException {
+        List<ReadChunkTask> tasks = new ArrayList<>();
+        for (File dataFile : files) {
+            long fileSize = dataFile.length();
+            long start = 0;
+            do {
+                long end = Math.min(fileSize, start + chunkSize);
+                tasks.add(new ReadChunkTask(dataFile, start, end, parser));
+                start = end;
+            } while (start < fileSize);
+        }
+        LOG.info("Loading " + tasks.size() + " chunks of " + files.size() + " files with " + numThreads + " threads");
+
+        loadedBytes.set(0);
+        loadedFileSize = allFileSize;
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.min(numThreads, tasks.size()));
+        try {
+            List<Future<RatingCooBuffer>> results = executorService.invokeAll(tasks);
+
+            int capacity = 0;
+            for (Future<RatingCooBuffer> future : results) {
+                capacity += future.get().size();
+            }
+            RatingCooBuffer buffer = new RatingCooBuffer(capacity);
+            for (int i = 0; i < tasks.size(); i++) {
+                ReadChunkTask task = tasks.get(i);
+                int[] rowMap = mergeIds(task.localUserIds, userIds);
+                int[] colMap = mergeIds(task.localItemIds, itemIds);
+                buffer.addAll(results.get(i).get(), rowMap, colMap);
+                // release the local buffer as soon as it is merged
+                tasks.set(i, null);
+                results.set(i, null);
+            }
+            loadFilePathRate = 1.0f;
+            return buffer;
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    /**
+     * Merge local {raw id, inner id} mappings into the global ones, assigning
+     * new global ids in the local order of appearance.
+     *
+     * @param localIds  the local mappings with inner ids 0 to size - 1
+     * @param globalIds the global mappings
+     * @return local-to-global inner id map
+     */
+    private static int[] mergeIds(BiMap<String, Integer> localIds, BiMap<String, Integer> globalIds) {
+        BiMap<Integer, String> rawIds = localIds.inverse();
+        int[] idMap = new int[rawIds.size()];
+        for (int localId = 0; localId < idMap.length; localId++) {
+            String rawId = rawIds.get(localId);
+            Integer globalId = globalIds.get(rawId);
+            if (globalId == null) {
+                globalId = globalIds.size();
+                globalIds.put(rawId, globalId);
+            }
+            idMap[localId] = globalId;
+        }
+        return idMap;
+    }
+
+    /**
+     * Read the lines of {@code dataFile} which start in {@code [start, end)}.
+     * A line which crosses {@code end} is read to its end, and a line which
+     * crosses {@code start} is left to the previous chunk.
+     *
+     * @param dataFile the data file
+     * @param start    the start of the chunk
+     * @param end      the end of the chunk
+     * @param parser   the parser of the chunk
+     * @param buffer   the buffer which receives the ratings
+     * @throws IOException if the data file cannot be read
+     */
+    private void readChunk(File dataFile, long start, long end, TextRatingParser parser, RatingCooBuffer buffer)
+            throws IOException {
+        try (FileInputStream fis = new FileInputStream(dataFile); FileChannel fileRead = fis.getChannel()) {
+            boolean bounded = end < fileRead.size();
+            // look at the byte before the chunk to know whether a line starts at start
+            boolean skipping = start > 0;
+            long bufferStart = skipping ? start - 1 : 0;
+            fileRead.position(bufferStart);
+
+            byte[] bytes = new byte[(int) Math.min(BSIZE, Math.max(end - start + 1, 1024))];
+            // bytes[0, remaining) holds the incomplete line of the previous read
+            int remaining = 0;
+            int len;
+            while (true) {
+                if (remaining == bytes.length) {
+                    // a single line longer than the buffer
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                }
+                len = fileRead.read(ByteBuffer.wrap(bytes, remaining, bytes.length - remaining));
+                if (len == -1) {
+                    if (!skipping) {
+                        parser.parse(bytes, 0, remaining, buffer, true);
+                    }
+                    return;
+                }
+                loadAllFileRate = loadedBytes.addAndGet(len) / (float) loadedFileSize;
+                int limit = remaining + len;
+
+                int lineStart = 0;
+                if (skipping) {
+                    while (lineStart < limit && !isLineSeparator(bytes[lineStart])) {
+                        lineStart++;
+                    }
+                    if (lineStart == limit) {
+                        bufferStart += limit;
+                        continue;
+                    }
+                    if (bufferStart + lineStart >= end - 1) {
+                        // no line starts inside this chunk
+                        return;
+                    }
+                    skipping = false;
+                    lineStart++;
+                }
+
+                if (bounded) {
+                    // the last line of the chunk ends at the first separator at or after end - 1
+                    int lastLineEnd = (int) Math.max(lineStart, Math.min(limit, end - 1 - bufferStart));
+                    while (lastLineEnd < limit && !isLineSeparator(bytes[lastLineEnd])) {
+                        lastLineEnd++;
+                    }
+                    if (lastLineEnd < limit) {
+                        parser.parse(bytes, lineStart, lastLineEnd + 1, buffer, false);
+                        return;
+                    }
+                }
+                int consumed = parser.parse(bytes, lineStart, limit, buffer, false);
+                remaining = limit - consumed;
+                System.arraycopy(bytes, consumed, bytes, 0, remaining);
+                bufferStart += consumed;
+            }
+        }
+    }
+
+    private static boolean isLineSeparator(byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+    /**
+     * Task for parallel execution: reads one chunk of a data file with local
+     * id dictionaries into a local buffer.
+     */
+    private class ReadChunkTask implements Callable<RatingCooBuffer> {
+
+        private final File dataFile;
+        private final long start, end;
+        private final TextRatingParser parser;
+        private final BiMap<String, Integer> localUserIds = HashBiMap.create();
+        private final BiMap<String, Integer> localItemIds = HashBiMap.create();
+
+        public ReadChunkTask(File dataFile, long start, long end, TextRatingParser parser) {
+            this.dataFile = dataFile;
+            this.start = start;
+            this.end = end;
+            this.parser = parser;
+        }
+
+        @Override
+        public RatingCooBuffer call() throws IOException {
+            TextRatingParser parser = this.parser.withDictionaries(new ByteIdDictionary(localUserIds),
+                    new ByteIdDictionary(localItemIds));
+            RatingCooBuffer buffer = new RatingCooBuffer((int) Math.min((end - start) / 16, Integer.MAX_VALUE - 8));
+            readChunk(dataFile, start, end, parser, buffer);
+            return buffer;
+        }
+    }
+
+    /**
+     * List all data files in the input data path, walking into directories
+     * and their sub-directories.
+     *
+     * @param inputDataPath the path of input data files, separated by space
+     * @return the list of data files
+     * @throws IOException if the <code>inputDataPath</code> is not valid.
+     */
+    private List<File> listDataFiles(String inputDataPath) throws IOException {
+        final List<File> files = new ArrayList<>();
+        SimpleFileVisitor<Path> finder = new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                files.add(file.toFile());
+                return super.visitFile(file, attrs);
+            }
+        };
+        for (String path : inputDataPath.trim().split(" ")) {
+            Files.walkFileTree(Paths.get(path), finder);
+        }
+        LOG.info("All dataset files " + files.toString());
+        return files;
+    }
+
+    /**
+     * Reset the peak usage of all heap memory pools.
+     */
+    private static void resetPeakHeapUsage() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Return the sum of the peak usage of all heap memory pools.
+     *
+     * @return the peak heap usage in bytes
+     */
+    private static long measurePeakHeapUsage() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
     /**
      * Set the progress for job status.
      */
@@ -387,6 +765,64 @@ public class TextDataConvertor extends AbstractDataConvertor {
         return itemIds;
     }
 
+    /**
+     * Return user and item {rawid, inner id} mappings
+     *
+     * @return {@link #userIds} and {@link #itemIds}
+     */
+    public ArrayList<BiMap<String, Integer>> getAllFeatureIds() {
+        ArrayList<BiMap<String, Integer>> featureIds = new ArrayList<>(2);
+        featureIds.add(userIds);
+        featureIds.add(itemIds);
+        return featureIds;
+    }
+
+    /**
+     * Set whether to parse the data files in the streaming mode.
+     *
+     * @param streaming true to use the streaming mode
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * Set the number of threads of the streaming mode. Files and chunks of
+     * large files are read in parallel if it is greater than one.
+     *
+     * @param numThreads the number of threads
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * Set the maximum size of a file chunk read by one thread.
+     *
+     * @param chunkSize the chunk size in bytes
+     */
+    public void setChunkSize(long chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Return the time spent by the last streaming load.
+     *
+     * @return {@link #loadTime} in milliseconds
+     */
+    public long getLoadTime() {
+        return loadTime;
+    }
+
+    /**
+     * Return the peak heap usage observed during the last streaming load.
+     *
+     * @return {@link #peakHeapUsage} in bytes
+     */
+    public long getPeakHeapUsage() {
+        return peakHeapUsage;
+    }
+
     /**
      * Set the time unit of the data file.
      *
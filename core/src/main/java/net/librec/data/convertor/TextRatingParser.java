@@ -0,0 +1,253 @@
+/**
+ * Copyright (C) 2016 LibRec
+ * <p>
+ * This file is part of LibRec.
+ * LibRec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * LibRec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.librec.data.convertor;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A <tt>TextRatingParser</tt> parses rating lines of a text data file
+ * directly from a byte buffer into a {@link RatingCooBuffer}. Columns are
+ * separated by spaces, tabs or commas and lines by {@code \n} or {@code \r}.
+ * Ids are resolved by {@link ByteIdDictionary} and numbers are parsed from the
+ * bytes, so a line is consumed without creating any {@code String}.
+ */
+public class TextRatingParser {
+
+    /**
+     * charset of the fallback number parsing
+     */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * exact powers of ten for the fast decimal parsing
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    /**
+     * the maximum number of columns which are used
+     */
+    private static final int MAX_COLUMNS = 4;
+
+    /**
+     * whether the rate column is used
+     */
+    private final boolean hasRate;
+
+    /**
+     * whether the timestamp column is used
+     */
+    private final boolean hasTime;
+
+    /**
+     * the threshold to binarize a rating, negative to keep the original rating value
+     */
+    private final double binThold;
+
+    /**
+     * time unit of the timestamp column
+     */
+    private final TimeUnit timeUnit;
+
+    /**
+     * user/item {raw id, inner id} dictionaries
+     */
+    private final ByteIdDictionary userDictionary, itemDictionary;
+
+    /**
+     * start and end offsets of the columns of the current line
+     */
+    private final int[] starts = new int[MAX_COLUMNS], ends = new int[MAX_COLUMNS];
+
+    /**
+     * Initializes a newly created {@code TextRatingParser} object.
+     *
+     * @param dataColumnFormat the format of input data file
+     * @param binThold         the threshold to binarize a rating
+     * @param timeUnit         time unit of the timestamp column
+     * @param userDictionary   user {raw id, inner id} dictionary
+     * @param itemDictionary   item {raw id, inner id} dictionary
+     */
+    public TextRatingParser(String dataColumnFormat, double binThold, TimeUnit timeUnit,
+                            ByteIdDictionary userDictionary, ByteIdDictionary itemDictionary) {
+        this("UIR".equals(dataColumnFormat) || "UIRT".equals(dataColumnFormat), "UIRT".equals(dataColumnFormat),
+                binThold, timeUnit, userDictionary, itemDictionary);
+    }
+
+    private TextRatingParser(boolean hasRate, boolean hasTime, double binThold, TimeUnit timeUnit,
+                             ByteIdDictionary userDictionary, ByteIdDictionary itemDictionary) {
+        this.hasRate = hasRate;
+        this.hasTime = hasTime;
+        this.binThold = binThold;
+        this.timeUnit = timeUnit;
+        this.userDictionary = userDictionary;
+        this.itemDictionary = itemDictionary;
+    }
+
+    /**
+     * Return a parser with the same settings which resolves ids through
+     * other dictionaries, e.g. the local dictionaries of a worker thread.
+     *
+     * @param userDictionary user {raw id, inner id} dictionary
+     * @param itemDictionary item {raw id, inner id} dictionary
+     * @return a new parser
+     */
+    public TextRatingParser withDictionaries(ByteIdDictionary userDictionary, ByteIdDictionary itemDictionary) {
+        return new TextRatingParser(hasRate, hasTime, binThold, timeUnit, userDictionary, itemDictionary);
+    }
+
+    /**
+     * Parse the lines of {@code bytes[from, to)} into the buffer.
+     *
+     * @param bytes      the input bytes
+     * @param from       the first byte to parse
+     * @param to         the end of the input bytes
+     * @param buffer     the buffer which receives the ratings
+     * @param endOfInput whether the bytes end the input, i.e. a trailing line
+     *                   without line separator is complete
+     * @return the offset of the first byte not consumed, i.e. the start of an
+     * incomplete trailing line
+     */
+    public int parse(byte[] bytes, int from, int to, RatingCooBuffer buffer, boolean endOfInput) {
+        int lineStart = from;
+        for (int i = from; i < to; i++) {
+            byte b = bytes[i];
+            if (b == '\n' || b == '\r') {
+                parseLine(bytes, lineStart, i, buffer);
+                lineStart = i + 1;
+            }
+        }
+        if (endOfInput && lineStart < to) {
+            parseLine(bytes, lineStart, to, buffer);
+            lineStart = to;
+        }
+        return lineStart;
+    }
+
+    /**
+     * Parse a single line of {@code bytes[from, to)}. Blank lines and lines
+     * with less than two columns are skipped.
+     */
+    private void parseLine(byte[] bytes, int from, int to, RatingCooBuffer buffer) {
+        int numColumns = 0;
+        int i = from;
+        while (i < to && numColumns < MAX_COLUMNS) {
+            while (i < to && isSeparator(bytes[i])) {
+                i++;
+            }
+            if (i == to) {
+                break;
+            }
+            starts[numColumns] = i;
+            while (i < to && !isSeparator(bytes[i])) {
+                i++;
+            }
+            ends[numColumns++] = i;
+        }
+        if (numColumns < 2) {
+            return;
+        }
+
+        int row = userDictionary.getId(bytes, starts[0], ends[0] - starts[0]);
+        int col = itemDictionary.getId(bytes, starts[1], ends[1] - starts[1]);
+        double rate = hasRate && numColumns >= 3 ? parseDouble(bytes, starts[2], ends[2]) : 1.0;
+        // binarize the rating for item recommendation task
+        if (binThold >= 0) {
+            rate = rate > binThold ? 1.0 : 0.0;
+        }
+        if (hasTime && numColumns >= 4) {
+            buffer.add(row, col, rate, timeUnit.toMillis(parseLong(bytes, starts[3], ends[3])));
+        } else {
+            buffer.add(row, col, rate);
+        }
+    }
+
+    private static boolean isSeparator(byte b) {
+        return b == ' ' || b == '\t' || b == ',';
+    }
+
+    /**
+     * Parse a decimal number. Plain decimals with at most 15 significant
+     * digits are computed exactly from the digits, anything else (e.g.
+     * exponents) falls back to {@link Double#parseDouble(String)}.
+     */
+    static double parseDouble(byte[] bytes, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0, scale = 0;
+        boolean fraction = false, hasDigit = false, valid = true;
+        for (; i < to; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                hasDigit = true;
+                if (mantissa != 0) {
+                    digits++;
+                }
+                if (fraction) {
+                    scale++;
+                }
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else {
+                valid = false;
+                break;
+            }
+        }
+        if (valid && hasDigit && digits <= 15 && scale < POWERS_OF_TEN.length) {
+            // both operands are exact, so the division is correctly rounded
+            double value = mantissa / POWERS_OF_TEN[scale];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(new String(bytes, from, to - from, CHARSET));
+    }
+
+    /**
+     * Parse an integral number, falling back to a truncated double for
+     * values such as {@code 9.7323480e+008}.
+     */
+    static long parseLong(byte[] bytes, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        long value = 0;
+        boolean valid = i < to && to - i <= 18;
+        for (; valid && i < to; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                value = value * 10 + (b - '0');
+            } else {
+                valid = false;
+            }
+        }
+        if (valid) {
+            return negative ? -value : value;
+        }
+        return (long) parseDouble(bytes, from, to);
+    }
+}
@@ -18,9 +18,11 @@
 package net.librec.data.model;
 
 import net.librec.common.LibrecException;
+import net.librec.conf.Configuration;
 import net.librec.conf.Configured;
 import net.librec.data.*;
 import net.librec.data.splitter.KCVDataSplitter;
+import net.librec.data.splitter.LOOCVDataSplitter;
 import net.librec.math.structure.DataSet;
 import net.librec.util.DriverClassUtil;
 import net.librec.util.ReflectionUtil;
@@ -153,6 +155,37 @@ public abstract class AbstractDataModel extends Configured implements DataModel
         }
     }
 
+    /**
+     * Return a data model of another fold of the cross validation, sharing
+     * the converted data, the appender and the assignment of the folds of
+     * this data model, which must have been built. The returned data model
+     * is to be built with {@link #buildDataModel()}, which splits the fold
+     * given by data.splitter.cv.index of its configuration without reading
+     * the data again; the data models of several folds may be built and used
+     * concurrently.
+     *
+     * @param foldConf
+     *            the configuration of the fold, a copy of that of this data
+     *            model.
+     * @return the data model of the fold
+     * @throws LibrecException
+     *             if the splitter of this data model is not a cross
+     *             validation one.
+     */
+    public AbstractDataModel foldDataModel(Configuration foldConf) throws LibrecException {
+        AbstractDataModel foldModel = ReflectionUtil.newInstance(getClass(), foldConf);
+        foldModel.dataConvertor = dataConvertor;
+        foldModel.dataAppender = dataAppender;
+        if (dataSplitter instanceof KCVDataSplitter) {
+            foldModel.dataSplitter = ((KCVDataSplitter) dataSplitter).foldSplitter(foldConf);
+        } else if (dataSplitter instanceof LOOCVDataSplitter) {
+            foldModel.dataSplitter = ((LOOCVDataSplitter) dataSplitter).foldSplitter(foldConf);
+        } else {
+            throw new LibrecException("Data splitter " + dataSplitter + " has no folds");
+        }
+        return foldModel;
+    }
+
     /**
      * Load data model.
      *
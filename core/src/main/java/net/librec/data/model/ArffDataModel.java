@@ -24,12 +24,14 @@ import net.librec.conf.Configured;
 import net.librec.data.DataModel;
 import net.librec.data.DataSplitter;
 import net.librec.data.convertor.ArffDataConvertor;
+import net.librec.data.convertor.SnapshotDataConvertor;
 import net.librec.math.structure.DataSet;
 import net.librec.math.structure.MatrixEntry;
 import net.librec.math.structure.SparseMatrix;
 import net.librec.math.structure.SparseTensor;
 import net.librec.util.DriverClassUtil;
 import net.librec.util.ReflectionUtil;
+import org.apache.commons.lang.StringUtils;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -73,9 +75,27 @@ public class ArffDataModel extends AbstractDataModel implements DataModel {
         String splitter = conf.get("data.model.splitter");
         String dfsDataDir = conf.get(Configured.CONF_DFS_DATA_DIR);
         String inputDataPath = dfsDataDir + "/" + conf.get(Configured.CONF_DATA_INPUT_PATH);
-        dataConvertor = new ArffDataConvertor(inputDataPath);
+        String snapshotPath = conf.get("data.snapshot.path");
         try {
-            dataConvertor.processData();
+            String sourceKey = null;
+            SnapshotDataConvertor snapshotConvertor = null;
+            if (StringUtils.isNotBlank(snapshotPath)) {
+                sourceKey = SnapshotDataConvertor.sourceKey(inputDataPath, "arff");
+                snapshotConvertor = new SnapshotDataConvertor(snapshotPath, sourceKey);
+            }
+            if (snapshotConvertor != null && snapshotConvertor.load()) {
+                dataConvertor = snapshotConvertor;
+            } else {
+                ArffDataConvertor arffDataConvertor = new ArffDataConvertor(inputDataPath);
+                dataConvertor = arffDataConvertor;
+                dataConvertor.processData();
+                if (sourceKey != null) {
+                    SparseTensor sparseTensor = arffDataConvertor.getSparseTensor();
+                    SnapshotDataConvertor.writeSnapshot(snapshotPath, sourceKey, dataConvertor,
+                            arffDataConvertor.getAllFeatureIds(), sparseTensor.getUserDimension(),
+                            sparseTensor.getItemDimension());
+                }
+            }
             dataSplitter = (DataSplitter) ReflectionUtil.newInstance(DriverClassUtil.getClass(splitter), conf);
         } catch (IOException e) {
             throw new LibrecException(e);
@@ -131,7 +151,7 @@ public class ArffDataModel extends AbstractDataModel implements DataModel {
      */
     @Override
     public BiMap<String, Integer> getUserMappingData() {
-        return ((ArffDataConvertor)dataConvertor).getUserIds();
+        return dataConvertor.getUserIds();
     }
 
     /**
@@ -141,7 +161,7 @@ public class ArffDataModel extends AbstractDataModel implements DataModel {
      */
     @Override
     public BiMap<String, Integer> getItemMappingData() {
-        return ((ArffDataConvertor)dataConvertor).getItemIds();
+        return dataConvertor.getItemIds();
     }
 
     @Override
@@ -155,6 +175,6 @@ public class ArffDataModel extends AbstractDataModel implements DataModel {
      * @return  the item {raw id, inner id} map of data model.
      */
     public ArrayList<BiMap<String, Integer>> getAllFeaturesMappingData() {
-        return ((ArffDataConvertor)dataConvertor).getAllFeatureIds();
+        return dataConvertor.getAllFeatureIds();
     }
 }
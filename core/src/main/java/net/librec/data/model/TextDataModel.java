@@ -25,6 +25,7 @@ import net.librec.common.LibrecException;
 import net.librec.conf.Configuration;
 import net.librec.conf.Configured;
 import net.librec.data.DataModel;
+import net.librec.data.convertor.SnapshotDataConvertor;
 import net.librec.data.convertor.TextDataConvertor;
 import net.librec.math.structure.DataSet;
 import org.apache.commons.lang.StringUtils;
@@ -68,9 +69,28 @@ public class TextDataModel extends AbstractDataModel implements DataModel {
             inputDataPath[i]=conf.get(Configured.CONF_DFS_DATA_DIR)+"/"+inputDataPath[i];
         }
         String dataColumnFormat = conf.get(Configured.CONF_DATA_COLUMN_FORMAT, "UIR");
-        dataConvertor = new TextDataConvertor(dataColumnFormat, StringUtils.join(inputDataPath," "), conf.getDouble("data.convert.binarize.threshold", -1.0));
+        double binThold = conf.getDouble("data.convert.binarize.threshold", -1.0);
+        String snapshotPath = conf.get("data.snapshot.path");
         try {
+            String sourceKey = null;
+            if (StringUtils.isNotBlank(snapshotPath)) {
+                sourceKey = SnapshotDataConvertor.sourceKey(StringUtils.join(inputDataPath, " "), "text",
+                        dataColumnFormat, String.valueOf(binThold));
+                SnapshotDataConvertor snapshotConvertor = new SnapshotDataConvertor(snapshotPath, sourceKey);
+                if (snapshotConvertor.load()) {
+                    dataConvertor = snapshotConvertor;
+                    return;
+                }
+            }
+            TextDataConvertor textDataConvertor = new TextDataConvertor(dataColumnFormat, StringUtils.join(inputDataPath, " "), binThold);
+            textDataConvertor.setStreaming(conf.getBoolean("data.convert.read.streaming", false));
+            textDataConvertor.setNumThreads(conf.getInt("data.convert.read.threads", 1));
+            dataConvertor = textDataConvertor;
             dataConvertor.processData();
+            if (sourceKey != null) {
+                SnapshotDataConvertor.writeSnapshot(snapshotPath, sourceKey, dataConvertor,
+                        dataConvertor.getAllFeatureIds(), 0, 1);
+            }
         } catch (IOException e) {
             throw new LibrecException(e);
         }
@@ -105,7 +125,7 @@ public class TextDataModel extends AbstractDataModel implements DataModel {
      */
     @Override
     public BiMap<String, Integer> getUserMappingData() {
-        return ((TextDataConvertor) dataConvertor).getUserIds();
+        return dataConvertor.getUserIds();
     }
 
     /**
@@ -115,7 +135,7 @@ public class TextDataModel extends AbstractDataModel implements DataModel {
      */
     @Override
     public BiMap<String, Integer> getItemMappingData() {
-        return ((TextDataConvertor) dataConvertor).getItemIds();
+        return dataConvertor.getItemIds();
     }
 
     /**
@@ -125,6 +145,6 @@ public class TextDataModel extends AbstractDataModel implements DataModel {
      */
     @Override
     public DataSet getDatetimeDataSet() {
-        return ((TextDataConvertor) dataConvertor).getDatetimeMatrix();
+        return dataConvertor.getDatetimeMatrix();
     }
 }
@@ -52,6 +52,35 @@ public abstract class AbstractDataSplitter extends Configured implements DataSpl
      */
     protected SparseMatrix validationMatrix;
 
+    /**
+     * fold of the train, test and validation rates in the fold assignments of
+     * the ratio and leave-one-out splitters
+     */
+    protected static final int TRAIN_FOLD = 0, TEST_FOLD = 1, VALIDATION_FOLD = 2;
+
+    /**
+     * Return a fold assignment of the rates of a matrix, all of them in the
+     * train fold.
+     *
+     * @param matrix the matrix of the rates
+     * @return the fold of each rate, in the order of the CRS arrays of the matrix
+     */
+    protected static byte[] newFolds(SparseMatrix matrix) {
+        return new byte[matrix.getRowPointers()[matrix.numRows()]];
+    }
+
+    /**
+     * Set the test matrix to the rates of the test fold and the train matrix
+     * to the others.
+     *
+     * @param matrix the matrix of the rates
+     * @param folds  the fold of each rate, in the order of the CRS arrays of the matrix
+     */
+    protected void splitByFolds(SparseMatrix matrix, byte[] folds) {
+        trainMatrix = matrix.foldMatrix(folds, TEST_FOLD, false);
+        testMatrix = matrix.foldMatrix(folds, TEST_FOLD, true);
+    }
+
     /**
      * @param dataConvertor the dataConvertor to set
      */
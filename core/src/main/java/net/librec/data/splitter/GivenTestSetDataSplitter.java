@@ -79,8 +79,8 @@ public class GivenTestSetDataSplitter extends AbstractDataSplitter {
                 testConvertor = new TextDataConvertor(conf.get(Configured.CONF_DATA_COLUMN_FORMAT, "UIR"),
                         conf.get(Configured.CONF_DFS_DATA_DIR) + "/" + conf.get("data.testset.path"),
                         conf.getDouble("data.convert.binarize.threshold", -1.0),
-                        ((TextDataConvertor) dataConvertor).getUserIds(),
-                        ((TextDataConvertor) dataConvertor).getItemIds());
+                        dataConvertor.getUserIds(),
+                        dataConvertor.getItemIds());
                 try {
                     testConvertor.processData();
                 } catch (IOException e) {
@@ -103,7 +103,7 @@ public class GivenTestSetDataSplitter extends AbstractDataSplitter {
             case "arff":
                 testConvertor = new ArffDataConvertor(
                         conf.get(Configured.CONF_DFS_DATA_DIR) + "/" + conf.get("data.testset.path"),
-                        ((ArffDataConvertor) dataConvertor).getAllFeatureIds());
+                        dataConvertor.getAllFeatureIds());
                 try {
                     testConvertor.processData();
                 } catch (IOException e) {
@@ -22,7 +22,6 @@ import net.librec.conf.Configuration;
 import net.librec.data.DataConvertor;
 import net.librec.math.algorithm.Randoms;
 import net.librec.math.structure.SparseMatrix;
-import net.librec.math.structure.SparseVector;
 import net.librec.util.Lists;
 
 import java.util.*;
@@ -37,8 +36,12 @@ public class KCVDataSplitter extends AbstractDataSplitter {
     /** The rate dataset for splitting */
     private SparseMatrix preferenceMatrix;
 
-    /** The assign matrix for k-fold splitting */
-    private SparseMatrix assignMatrix;
+    /**
+     * The fold of each rate, in the order of the CRS arrays of the rate
+     * dataset, stored in bytes unless there are more folds than a byte holds
+     */
+    private byte[] byteFolds;
+    private int[] intFolds;
 
     /** The number of folds */
     private int cvNumber;
@@ -66,6 +69,25 @@ public class KCVDataSplitter extends AbstractDataSplitter {
         this.conf = conf;
     }
 
+    /**
+     * Return a splitter of another fold, sharing the rate dataset and the
+     * assignment of the folds of this splitter, which must have been made
+     * by {@link #splitFolds()}. The folds may then be split concurrently by
+     * splitters of their own configuration.
+     *
+     * @param conf
+     *          the configuration of the fold.
+     * @return a splitter of the fold given by data.splitter.cv.index of conf
+     */
+    public KCVDataSplitter foldSplitter(Configuration conf) {
+        KCVDataSplitter splitter = new KCVDataSplitter(dataConvertor, conf);
+        splitter.preferenceMatrix = preferenceMatrix;
+        splitter.byteFolds = byteFolds;
+        splitter.intFolds = intFolds;
+        splitter.cvNumber = cvNumber;
+        return splitter;
+    }
+
     /**
      * preserve the k-th validation as the test set and the rest as train set
      *
@@ -76,20 +98,13 @@ public class KCVDataSplitter extends AbstractDataSplitter {
         if (k > 0 || k <= cvNumber) {
             preferenceMatrix = dataConvertor.getPreferenceMatrix();
 
-            trainMatrix = new SparseMatrix(preferenceMatrix);
-            testMatrix = new SparseMatrix(preferenceMatrix);
-
-            for (int u = 0, um = preferenceMatrix.numRows(); u < um; u++) {
-                SparseVector items = preferenceMatrix.row(u);
-                for (int j : items.getIndex()) {
-                    if (assignMatrix.get(u, j) == k)
-                        trainMatrix.set(u, j, 0.0);
-                    else
-                        testMatrix.set(u, j, 0.0);
-                }
+            if (byteFolds != null) {
+                trainMatrix = preferenceMatrix.foldMatrix(byteFolds, k, false);
+                testMatrix = preferenceMatrix.foldMatrix(byteFolds, k, true);
+            } else {
+                trainMatrix = preferenceMatrix.foldMatrix(intFolds, k, false);
+                testMatrix = preferenceMatrix.foldMatrix(intFolds, k, true);
             }
-            SparseMatrix.reshape(trainMatrix);
-            SparseMatrix.reshape(testMatrix);
         }
     }
 
@@ -98,7 +113,7 @@ public class KCVDataSplitter extends AbstractDataSplitter {
      */
     public void splitFolds() {
         this.cvNumber = conf.getInt("data.splitter.cv.number", 5);
-        if (null == assignMatrix){
+        if (null == byteFolds && null == intFolds){
         	splitFolds(this.cvNumber);
         }
     }
@@ -112,7 +127,6 @@ public class KCVDataSplitter extends AbstractDataSplitter {
     public void splitFolds(int kFold) {
         this.preferenceMatrix = dataConvertor.getPreferenceMatrix();
         if (kFold > 0) {
-            assignMatrix = new SparseMatrix(preferenceMatrix);
             int numRates = preferenceMatrix.getData().length;
             int numFold = kFold > numRates ? numRates : kFold;
 
@@ -123,20 +137,19 @@ public class KCVDataSplitter extends AbstractDataSplitter {
                 rdm.add(new AbstractMap.SimpleImmutableEntry<>((int) (i / indvCount) + 1, Randoms.uniform()));
             }
 
-            int[] fold = new int[numRates];
+            // the rates are assigned in the order of the CRS arrays
             Lists.sortList(rdm,true);
-            for(int index = 0; index < numRates; index ++){
-                fold[index] = rdm.get(index).getKey();
-            }
-
-            int[] row_ptr = preferenceMatrix.getRowPointers();
-            int[] col_idx = preferenceMatrix.getColumnIndices();
-
-            int i = 0;
-            for (int userIdx= 0, numUser = preferenceMatrix.numRows(); userIdx < numUser; userIdx++) {
-                for (int idx = row_ptr[userIdx], end = row_ptr[userIdx + 1]; idx < end; idx++) {
-                    int itemIdx = col_idx[idx];
-                    assignMatrix.set(userIdx, itemIdx, fold[i++]);
+            if (numFold <= Byte.MAX_VALUE) {
+                byteFolds = new byte[numRates];
+                intFolds = null;
+                for(int index = 0; index < numRates; index ++){
+                    byteFolds[index] = (byte) (int) rdm.get(index).getKey();
+                }
+            } else {
+                intFolds = new int[numRates];
+                byteFolds = null;
+                for(int index = 0; index < numRates; index ++){
+                    intFolds[index] = rdm.get(index).getKey();
                 }
             }
         }
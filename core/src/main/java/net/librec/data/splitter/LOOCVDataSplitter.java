@@ -17,10 +17,6 @@
  */
 package net.librec.data.splitter;
 
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Table;
 import net.librec.common.LibrecException;
 import net.librec.conf.Configuration;
 import net.librec.data.DataConvertor;
@@ -69,6 +65,23 @@ public class LOOCVDataSplitter extends AbstractDataSplitter {
         this.conf = conf;
     }
 
+    /**
+     * Return a splitter of another fold, sharing the assignment of the
+     * folds of this splitter when every rate is left out once, which must
+     * have been made by a first {@link #splitData()}.
+     *
+     * @param conf
+     *          the configuration of the fold.
+     * @return a splitter of the fold given by data.splitter.cv.index of conf
+     */
+    public LOOCVDataSplitter foldSplitter(Configuration conf) {
+        LOOCVDataSplitter splitter = new LOOCVDataSplitter(dataConvertor, conf);
+        if (kcv != null) {
+            splitter.kcv = kcv.foldSplitter(conf);
+        }
+        return splitter;
+    }
+
     /** Types of the LOOCVDataSplitter */
     enum LOOCVType {
         LOOByUser, LOOByItem
@@ -119,25 +132,18 @@ public class LOOCVDataSplitter extends AbstractDataSplitter {
      * the test set and the remaining data as the training set.
      */
     public void getLOOByUser() {
-        trainMatrix = new SparseMatrix(preferenceMatrix);
-        Table<Integer, Integer, Double> dataTable = HashBasedTable.create();
-        Multimap<Integer, Integer> colMap = HashMultimap.create();
+        byte[] folds = newFolds(preferenceMatrix);
 
         for (int u = 0, um = preferenceMatrix.numRows(); u < um; u++) {
             List<Integer> items = preferenceMatrix.getColumns(u);
 
             int randId = (int) (items.size() * Randoms.uniform());
             int i = items.get(randId);
-            this.preferenceMatrix = dataConvertor.getPreferenceMatrix();
-
-            trainMatrix.set(u, i, 0);
 
-            dataTable.put(u, i, preferenceMatrix.get(u, i));
-            colMap.put(i, u);
+            folds[preferenceMatrix.getCRSIndex(u, i)] = TEST_FOLD;
         }
 
-        SparseMatrix.reshape(trainMatrix);
-        testMatrix = new SparseMatrix(preferenceMatrix.numRows(), preferenceMatrix.numColumns(), dataTable, colMap);
+        splitByFolds(preferenceMatrix, folds);
     }
 
     /**
@@ -145,9 +151,7 @@ public class LOOCVDataSplitter extends AbstractDataSplitter {
      * preserved as the test set and the remaining data as the training set.
      */
     public void getLOOByUserDate() {
-        trainMatrix = new SparseMatrix(preferenceMatrix);
-        Table<Integer, Integer, Double> dataTable = HashBasedTable.create();
-        Multimap<Integer, Integer> colMap = HashMultimap.create();
+        byte[] folds = newFolds(preferenceMatrix);
 
         for (int u = 0, um = preferenceMatrix.numRows(); u < um; u++) {
             List<Integer> items = preferenceMatrix.getColumns(u);
@@ -159,12 +163,9 @@ public class LOOCVDataSplitter extends AbstractDataSplitter {
             }
             Collections.sort(rcs);
             i = rcs.get(rcs.size() - 1).getItem();
-            trainMatrix.set(u, i, 0);
-            dataTable.put(u, i, preferenceMatrix.get(u, i));
-            colMap.put(i, u);
+            folds[preferenceMatrix.getCRSIndex(u, i)] = TEST_FOLD;
         }
-        SparseMatrix.reshape(trainMatrix);
-        testMatrix = new SparseMatrix(preferenceMatrix.numRows(), preferenceMatrix.numColumns(), dataTable, colMap);
+        splitByFolds(preferenceMatrix, folds);
     }
 
     /**
@@ -172,10 +173,7 @@ public class LOOCVDataSplitter extends AbstractDataSplitter {
      * the test set and the remaining data as the training set.
      */
     public void getLOOByItems() {
-        trainMatrix = new SparseMatrix(preferenceMatrix);
-
-        Table<Integer, Integer, Double> dataTable = HashBasedTable.create();
-        Multimap<Integer, Integer> colMap = HashMultimap.create();
+        byte[] folds = newFolds(preferenceMatrix);
 
         for (int i = 0, im = preferenceMatrix.numColumns(); i < im; i++) {
             List<Integer> users = preferenceMatrix.getRows(i);
@@ -183,13 +181,10 @@ public class LOOCVDataSplitter extends AbstractDataSplitter {
             int randId = (int) (users.size() * Randoms.uniform());
             int u = users.get(randId);
 
-            trainMatrix.set(u, i, 0);
-            dataTable.put(u, i, preferenceMatrix.get(u, i));
-            colMap.put(i, u);
+            folds[preferenceMatrix.getCRSIndex(u, i)] = TEST_FOLD;
         }
 
-        SparseMatrix.reshape(trainMatrix);
-        testMatrix = new SparseMatrix(preferenceMatrix.numRows(), preferenceMatrix.numColumns(), dataTable, colMap);
+        splitByFolds(preferenceMatrix, folds);
     }
 
     /**
@@ -197,10 +192,7 @@ public class LOOCVDataSplitter extends AbstractDataSplitter {
      * preserved as the test set and the remaining data as the training set.
      */
     public void getLooByItemsDate() {
-        trainMatrix = new SparseMatrix(preferenceMatrix);
-
-        Table<Integer, Integer, Double> dataTable = HashBasedTable.create();
-        Multimap<Integer, Integer> colMap = HashMultimap.create();
+        byte[] folds = newFolds(preferenceMatrix);
 
         for (int i = 0, im = preferenceMatrix.numColumns(); i < im; i++) {
             List<Integer> users = preferenceMatrix.getRows(i);
@@ -213,13 +205,10 @@ public class LOOCVDataSplitter extends AbstractDataSplitter {
             Collections.sort(rcs);
             u = rcs.get(rcs.size() - 1).getUser();
 
-            trainMatrix.set(u, i, 0);
-            dataTable.put(u, i, preferenceMatrix.get(u, i));
-            colMap.put(i, u);
+            folds[preferenceMatrix.getCRSIndex(u, i)] = TEST_FOLD;
         }
 
-        SparseMatrix.reshape(trainMatrix);
-        testMatrix = new SparseMatrix(preferenceMatrix.numRows(), preferenceMatrix.numColumns(), dataTable, colMap);
+        splitByFolds(preferenceMatrix, folds);
     }
 
 }
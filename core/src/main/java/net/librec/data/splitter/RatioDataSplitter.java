@@ -128,24 +128,19 @@ public class RatioDataSplitter extends AbstractDataSplitter {
     public void getRatioByRating(double ratio) {
         if (ratio > 0 && ratio < 1) {
 
-            testMatrix = new SparseMatrix(preferenceMatrix);
-            trainMatrix = new SparseMatrix(preferenceMatrix);
-
-            for(MatrixEntry matrixEntry: preferenceMatrix){
-                int userIdx = matrixEntry.row();
-                int itemIdx = matrixEntry.column();
+            byte[] folds = newFolds(preferenceMatrix);
 
+            for (int pos = 0; pos < folds.length; pos++) {
                 double rdm = Randoms.uniform();
 
                 if (rdm < ratio) {
-                    testMatrix.set(userIdx, itemIdx, 0.0);
+                    folds[pos] = TRAIN_FOLD;
                 } else {
-                    trainMatrix.set(userIdx, itemIdx, 0.0);
+                    folds[pos] = TEST_FOLD;
                 }
             }
 
-            SparseMatrix.reshape(testMatrix);
-            SparseMatrix.reshape(trainMatrix);
+            splitByFolds(preferenceMatrix, folds);
         }
     }
 
@@ -158,8 +153,7 @@ public class RatioDataSplitter extends AbstractDataSplitter {
     public void getRatioByRatingDate(double ratio) {
         if (ratio > 0 && ratio < 1) {
 
-            testMatrix = new SparseMatrix(preferenceMatrix);
-            trainMatrix = new SparseMatrix(preferenceMatrix);
+            byte[] folds = newFolds(preferenceMatrix);
 
             List<RatingContext> rcs = new ArrayList<>(datetimeMatrix.size());
             for (MatrixEntry me : preferenceMatrix)
@@ -173,14 +167,13 @@ public class RatioDataSplitter extends AbstractDataSplitter {
                 int j = rc.getItem();
 
                 if (i < trainSize)
-                    testMatrix.set(u, j, 0.0);
+                    folds[preferenceMatrix.getCRSIndex(u, j)] = TRAIN_FOLD;
                 else
-                    trainMatrix.set(u, j, 0.0);
+                    folds[preferenceMatrix.getCRSIndex(u, j)] = TEST_FOLD;
             }
 
             rcs = null;
-            SparseMatrix.reshape(trainMatrix);
-            SparseMatrix.reshape(testMatrix);
+            splitByFolds(preferenceMatrix, folds);
         }
     }
 
@@ -195,8 +188,7 @@ public class RatioDataSplitter extends AbstractDataSplitter {
 
         if (ratio > 0 && ratio < 1) {
 
-            trainMatrix = new SparseMatrix(preferenceMatrix);
-            testMatrix = new SparseMatrix(preferenceMatrix);
+            byte[] folds = newFolds(preferenceMatrix);
 
             for (int u = 0, um = preferenceMatrix.numRows(); u < um; u++) {
 
@@ -204,15 +196,14 @@ public class RatioDataSplitter extends AbstractDataSplitter {
 
                 for (int j : items) {
                     if (Randoms.uniform() < ratio) {
-                        testMatrix.set(u, j, 0.0);
+                        folds[preferenceMatrix.getCRSIndex(u, j)] = TRAIN_FOLD;
                     } else {
-                        trainMatrix.set(u, j, 0.0);
+                        folds[preferenceMatrix.getCRSIndex(u, j)] = TEST_FOLD;
                     }
                 }
             }
 
-            SparseMatrix.reshape(testMatrix);
-            SparseMatrix.reshape(trainMatrix);
+            splitByFolds(preferenceMatrix, folds);
         }
     }
 
@@ -229,8 +220,7 @@ public class RatioDataSplitter extends AbstractDataSplitter {
 
         if (ratio > 0 && ratio < 1) {
 
-            trainMatrix = new SparseMatrix(preferenceMatrix);
-            testMatrix = new SparseMatrix(preferenceMatrix);
+            byte[] folds = newFolds(preferenceMatrix);
 
             for (int u = 0, um = preferenceMatrix.numRows(); u < um; u++) {
 
@@ -242,9 +232,9 @@ public class RatioDataSplitter extends AbstractDataSplitter {
 
                     for (int j : items) {
                         if (testIndexes.contains(j)) {
-                            trainMatrix.set(u, j, 0.0);
+                            folds[preferenceMatrix.getCRSIndex(u, j)] = TEST_FOLD;
                         } else {
-                            testMatrix.set(u, j, 0.0);
+                            folds[preferenceMatrix.getCRSIndex(u, j)] = TRAIN_FOLD;
                         }
                     }
                 } catch (java.lang.Exception e) {
@@ -252,8 +242,7 @@ public class RatioDataSplitter extends AbstractDataSplitter {
                 }
             }
 
-            SparseMatrix.reshape(testMatrix);
-            SparseMatrix.reshape(trainMatrix);
+            splitByFolds(preferenceMatrix, folds);
         }
     }
 
@@ -267,8 +256,7 @@ public class RatioDataSplitter extends AbstractDataSplitter {
 
         if (ratio > 0 && ratio < 1) {
 
-            trainMatrix = new SparseMatrix(preferenceMatrix);
-            testMatrix = new SparseMatrix(preferenceMatrix);
+            byte[] folds = newFolds(preferenceMatrix);
 
             for (int user = 0, um = preferenceMatrix.numRows(); user < um; user++) {
                 List<Integer> unsortedItems = preferenceMatrix.getColumns(user);
@@ -287,13 +275,12 @@ public class RatioDataSplitter extends AbstractDataSplitter {
                     int u = rc.getUser();
                     int j = rc.getItem();
                     if (i < trainSize)
-                        testMatrix.set(u, j, 0.0);
+                        folds[preferenceMatrix.getCRSIndex(u, j)] = TRAIN_FOLD;
                     else
-                        trainMatrix.set(u, j, 0.0);
+                        folds[preferenceMatrix.getCRSIndex(u, j)] = TEST_FOLD;
                 }
             }
-            SparseMatrix.reshape(trainMatrix);
-            SparseMatrix.reshape(testMatrix);
+            splitByFolds(preferenceMatrix, folds);
         }
 
     }
@@ -309,8 +296,7 @@ public class RatioDataSplitter extends AbstractDataSplitter {
 
         if (ratio > 0 && ratio < 1) {
 
-            trainMatrix = new SparseMatrix(preferenceMatrix);
-            testMatrix = new SparseMatrix(preferenceMatrix);
+            byte[] folds = newFolds(preferenceMatrix);
 
             for (int i = 0, im = preferenceMatrix.numColumns(); i < im; i++) {
 
@@ -318,14 +304,13 @@ public class RatioDataSplitter extends AbstractDataSplitter {
 
                 for (int u : users) {
                     if (Randoms.uniform() < ratio) {
-                        testMatrix.set(u, i, 0.0);
+                        folds[preferenceMatrix.getCRSIndex(u, i)] = TRAIN_FOLD;
                     } else {
-                        trainMatrix.set(u, i, 0.0);
+                        folds[preferenceMatrix.getCRSIndex(u, i)] = TEST_FOLD;
                     }
                 }
             }
-            SparseMatrix.reshape(trainMatrix);
-            SparseMatrix.reshape(testMatrix);
+            splitByFolds(preferenceMatrix, folds);
         }
     }
 
@@ -339,8 +324,7 @@ public class RatioDataSplitter extends AbstractDataSplitter {
 
         if (ratio > 0 && ratio < 1) {
 
-            trainMatrix = new SparseMatrix(preferenceMatrix);
-            testMatrix = new SparseMatrix(preferenceMatrix);
+            byte[] folds = newFolds(preferenceMatrix);
 
             for (int item = 0, im = preferenceMatrix.numColumns(); item < im; item++) {
                 List<Integer> unsortedUsers = preferenceMatrix.getRows(item);
@@ -359,13 +343,12 @@ public class RatioDataSplitter extends AbstractDataSplitter {
                     int j = rc.getItem();
 
                     if (i < trainSize)
-                        testMatrix.set(u, j, 0.0);
+                        folds[preferenceMatrix.getCRSIndex(u, j)] = TRAIN_FOLD;
                     else
-                        trainMatrix.set(u, j, 0.0);
+                        folds[preferenceMatrix.getCRSIndex(u, j)] = TEST_FOLD;
                 }
             }
-            SparseMatrix.reshape(testMatrix);
-            SparseMatrix.reshape(trainMatrix);
+            splitByFolds(preferenceMatrix, folds);
         }
     }
 
@@ -379,9 +362,7 @@ public class RatioDataSplitter extends AbstractDataSplitter {
     public void getRatio(double trainRatio, double validationRatio) {
         if ((trainRatio > 0 && validationRatio > 0) && (trainRatio + validationRatio) < 1) {
 
-            trainMatrix = new SparseMatrix(preferenceMatrix);
-            validationMatrix = new SparseMatrix(preferenceMatrix);
-            testMatrix = new SparseMatrix(preferenceMatrix);
+            byte[] folds = newFolds(preferenceMatrix);
 
             for (int u = 0, um = preferenceMatrix.numRows(); u < um; u++) {
 
@@ -390,23 +371,20 @@ public class RatioDataSplitter extends AbstractDataSplitter {
                     double rdm = Randoms.uniform();
                     if (rdm < trainRatio) {
                         // training
-                        validationMatrix.set(u, j.index(), 0.0);
-                        testMatrix.set(u, j.index(), 0.0);
+                        folds[preferenceMatrix.getCRSIndex(u, j.index())] = TRAIN_FOLD;
                     } else if (rdm < trainRatio + validationRatio) {
                         // validation
-                        trainMatrix.set(u, j.index(), 0.0);
-                        testMatrix.set(u, j.index(), 0.0);
+                        folds[preferenceMatrix.getCRSIndex(u, j.index())] = VALIDATION_FOLD;
                     } else {
                         // test
-                        trainMatrix.set(u, j.index(), 0.0);
-                        validationMatrix.set(u, j.index(), 0.0);
+                        folds[preferenceMatrix.getCRSIndex(u, j.index())] = TEST_FOLD;
                     }
                 }
             }
 
-            SparseMatrix.reshape(trainMatrix);
-            SparseMatrix.reshape(validationMatrix);
-            SparseMatrix.reshape(testMatrix);
+            trainMatrix = preferenceMatrix.foldMatrix(folds, TRAIN_FOLD, true);
+            validationMatrix = preferenceMatrix.foldMatrix(folds, VALIDATION_FOLD, true);
+            testMatrix = preferenceMatrix.foldMatrix(folds, TEST_FOLD, true);
         }
     }
 }
\ No newline at end of file
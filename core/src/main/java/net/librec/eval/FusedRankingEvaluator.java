@@ -0,0 +1,401 @@
+/**
+ * Copyright (C) 2016 LibRec
+ * <p>
+ * This file is part of LibRec.
+ * LibRec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * LibRec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.librec.eval;
+
+import net.librec.common.LibrecException;
+import net.librec.conf.Configuration;
+import net.librec.eval.Measure.MeasureValue;
+import net.librec.math.algorithm.Maths;
+import net.librec.math.structure.SparseMatrix;
+import net.librec.recommender.RecommenderContext;
+import net.librec.recommender.item.RecommendedList;
+import net.librec.util.ParallelUtil;
+import net.librec.util.ParallelUtil.BlockCounter;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * Single-pass evaluation of several ranking measures at several cutoffs.
+ * <p>
+ * Every user is visited once: the test items of the user are marked in a per-thread array indexed by item, and
+ * one walk down the recommended list up to the largest cutoff records the prefix sums (hits, precisions,
+ * discounted gains, ...) from which all measures at all cutoffs are read. The users are handed out to the threads
+ * in fixed blocks whose partial sums are added in the order of the blocks, so the values do not depend on the
+ * number of threads. The values are those of the evaluators of {@link Measure}, up to the rounding of the sums.
+ */
+public class FusedRankingEvaluator {
+    /**
+     * number of users handed out to a thread at a time
+     */
+    private static final int USER_BLOCK_SIZE = 256;
+
+    private final List<MeasureValue> measureValues;
+    private final int numThreads;
+
+    /**
+     * Construct an evaluator of the given measures.
+     *
+     * @param measureValues ranking measures and their cutoffs
+     * @param numThreads    number of threads
+     * @throws IllegalArgumentException if one of the measures is not supported
+     */
+    public FusedRankingEvaluator(List<MeasureValue> measureValues, int numThreads) {
+        if (!supports(measureValues)) {
+            throw new IllegalArgumentException("Unsupported measures for the fused ranking evaluation: "
+                    + measureValues);
+        }
+        this.measureValues = new ArrayList<>(measureValues);
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * Whether all measures can be evaluated in the fused pass, i.e. are ranking measures with a positive cutoff.
+     *
+     * @param measureValues measures and their cutoffs
+     * @return true if all measures are supported
+     */
+    public static boolean supports(List<MeasureValue> measureValues) {
+        for (MeasureValue measureValue : measureValues) {
+            switch (measureValue.getMeasure()) {
+                case IDCG:
+                    break;
+                case AUC:
+                case AP:
+                case NDCG:
+                case PRECISION:
+                case RECALL:
+                case RR:
+                case Novelty:
+                case Entropy:
+                    if (measureValue.getTopN() == null || measureValue.getTopN() <= 0) {
+                        return false;
+                    }
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Evaluate the measures on the recommender context with the recommended list.
+     *
+     * @param context         the recommender context
+     * @param recommendedList the list of recommended items
+     * @return value of every measure
+     * @throws LibrecException if error occurs during evaluating
+     */
+    public Map<MeasureValue, Double> evaluate(RecommenderContext context, RecommendedList recommendedList)
+            throws LibrecException {
+        SparseMatrix testMatrix = context.getDataModel().getDataSplitter().getTestData();
+        SparseMatrix trainMatrix = context.getDataModel().getDataSplitter().getTrainData();
+        return evaluate(context.getConf(), trainMatrix, testMatrix, recommendedList);
+    }
+
+    private Map<MeasureValue, Double> evaluate(Configuration conf, SparseMatrix trainMatrix,
+                                               final SparseMatrix testMatrix, final RecommendedList recommendedList)
+            throws LibrecException {
+        final int numUsers = testMatrix.numRows();
+        final int numItems = testMatrix.numColumns();
+        final int numMeasures = measureValues.size();
+
+        int maxCutoff = 0;
+        int numEntropies = 0;
+        boolean hasAUC = false, hasIDCG = false, hasNovelty = false;
+        final int[] entropyIndices = new int[numMeasures];
+        for (int index = 0; index < numMeasures; index++) {
+            MeasureValue measureValue = measureValues.get(index);
+            if (measureValue.getMeasure() == Measure.IDCG) {
+                hasIDCG = true;
+                continue;
+            }
+            maxCutoff = Math.max(maxCutoff, measureValue.getTopN());
+            switch (measureValue.getMeasure()) {
+                case AUC:
+                    hasAUC = true;
+                    break;
+                case Novelty:
+                    hasNovelty = true;
+                    break;
+                case Entropy:
+                    entropyIndices[index] = numEntropies++;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        final int[] numDroppedItems = hasAUC ? conf.getInts("rec.eval.auc.dropped.num") : null;
+
+        // discounts and ideal discounted gains, accumulated in the order of the ranking evaluators
+        final double[] discounts = new double[maxCutoff + 1];
+        final double[] idealDCGs = new double[maxCutoff + 1];
+        for (int rank = 1; rank <= maxCutoff; rank++) {
+            discounts[rank] = 1 / Maths.log(rank + 1, 2);
+            idealDCGs[rank] = 1.0d / Maths.log(rank + 1, 2) + idealDCGs[rank - 1];
+        }
+        double[] userIdealDCGs = null;
+        if (hasIDCG) {
+            int maxNumTestItems = 0;
+            for (int userIdx = 0; userIdx < numUsers; userIdx++) {
+                maxNumTestItems = Math.max(maxNumTestItems,
+                        testMatrix.rowPtr[userIdx + 1] - testMatrix.rowPtr[userIdx]);
+            }
+            userIdealDCGs = new double[maxNumTestItems + 1];
+            for (int i = 0; i < maxNumTestItems; i++) {
+                userIdealDCGs[i + 1] = userIdealDCGs[i] + 1 / Maths.log(i + 2.0, 2);
+            }
+        }
+        final double[] idcgsByNumTestItems = userIdealDCGs;
+
+        // self-information of the items, estimated from their purchase counts in the train and test data
+        final double[] selfInformations = new double[hasNovelty ? numItems : 0];
+        if (hasNovelty) {
+            int[] trainColumnSizes = columnSizes(trainMatrix, numItems);
+            int[] testColumnSizes = columnSizes(testMatrix, numItems);
+            for (int itemIdx = 0; itemIdx < numItems; itemIdx++) {
+                int count = trainColumnSizes[itemIdx] + testColumnSizes[itemIdx];
+                if (count > 0) {
+                    double estmProbability = ((double) count) / numUsers;
+                    selfInformations[itemIdx] = -Math.log(estmProbability);
+                }
+            }
+        }
+
+        final int numBlocks = (numUsers + USER_BLOCK_SIZE - 1) / USER_BLOCK_SIZE;
+        final double[][] blockSums = new double[numBlocks][numMeasures];
+        final int taskMaxCutoff = maxCutoff;
+        final int taskNumEntropies = numEntropies;
+        final BlockCounter users = new BlockCounter(numUsers, USER_BLOCK_SIZE);
+        int numTasks = Math.max(1, Math.min(numThreads, numBlocks));
+        List<Callable<UserScanner>> tasks = new ArrayList<>(numTasks);
+        for (int task = 0; task < numTasks; task++) {
+            tasks.add(new Callable<UserScanner>() {
+                @Override
+                public UserScanner call() {
+                    UserScanner scanner = new UserScanner(numItems, taskMaxCutoff, taskNumEntropies);
+                    for (int fromUser = users.next(); fromUser >= 0; fromUser = users.next()) {
+                        double[] blockSum = blockSums[fromUser / USER_BLOCK_SIZE];
+                        int toUser = users.end(fromUser);
+                        for (int userIdx = fromUser; userIdx < toUser; userIdx++) {
+                            scanner.scan(userIdx, testMatrix, recommendedList, selfInformations, discounts);
+                            scanner.accumulate(userIdx, blockSum, entropyIndices, numDroppedItems,
+                                    idealDCGs, idcgsByNumTestItems);
+                        }
+                    }
+                    return scanner;
+                }
+            });
+        }
+
+        List<UserScanner> scanners = ParallelUtil.invokeAll(tasks);
+
+        double[] sums = new double[numMeasures];
+        for (int block = 0; block < numBlocks; block++) {
+            for (int index = 0; index < numMeasures; index++) {
+                sums[index] += blockSums[block][index];
+            }
+        }
+        int nonZeroNumUsers = 0;
+        for (UserScanner scanner : scanners) {
+            nonZeroNumUsers += scanner.nonZeroNumUsers;
+        }
+
+        Map<MeasureValue, Double> evaluatedMap = new HashMap<>();
+        for (int index = 0; index < numMeasures; index++) {
+            MeasureValue measureValue = measureValues.get(index);
+            double value;
+            switch (measureValue.getMeasure()) {
+                case Novelty:
+                    value = sums[index] / (numUsers * Math.log(2));
+                    break;
+                case Entropy:
+                    value = entropy(scanners, entropyIndices[index], numItems, numUsers);
+                    break;
+                default:
+                    value = nonZeroNumUsers > 0 ? sums[index] / nonZeroNumUsers : 0.0d;
+                    break;
+            }
+            evaluatedMap.put(measureValue, value);
+        }
+        return evaluatedMap;
+    }
+
+    private static int[] columnSizes(SparseMatrix matrix, int numItems) {
+        int[] sizes = new int[numItems];
+        for (int pos = 0; pos < matrix.rowPtr[matrix.numRows()]; pos++) {
+            sizes[matrix.colInd[pos]]++;
+        }
+        return sizes;
+    }
+
+    private static double entropy(List<UserScanner> scanners, int entropyIndex, int numItems, int numUsers) {
+        double sumEntropy = 0;
+        for (int itemIdx = 0; itemIdx < numItems; itemIdx++) {
+            int count = 0;
+            for (UserScanner scanner : scanners) {
+                count += scanner.itemCounts[entropyIndex][itemIdx];
+            }
+            if (count > 0) {
+                double estmProbability = ((double) count) / numUsers;
+                sumEntropy += estmProbability * (-Math.log(estmProbability));
+            }
+        }
+        return sumEntropy / Math.log(2);
+    }
+
+    /**
+     * Per-thread state of the evaluation: the prefix sums of the recommended list of the current user, indexed by
+     * the number of items read, and the recommendation counts of the items of every entropy measure.
+     */
+    private final class UserScanner {
+        /** user whose test items are marked, plus one, indexed by item */
+        private final int[] testMarks;
+        private final int[] items;
+        private final int[] hits;
+        private final int[] correctPairs;
+        private final double[] precisions;
+        private final double[] dcgs;
+        private final double[] informations;
+        private final int[][] itemCounts;
+        private int numTestItems;
+        private int numRecommendedItems;
+        private int listSize;
+        private int firstHitRank;
+        private int nonZeroNumUsers;
+
+        private UserScanner(int numItems, int maxCutoff, int numEntropies) {
+            testMarks = new int[numItems];
+            items = new int[maxCutoff];
+            hits = new int[maxCutoff + 1];
+            correctPairs = new int[maxCutoff + 1];
+            precisions = new double[maxCutoff + 1];
+            dcgs = new double[maxCutoff + 1];
+            informations = new double[maxCutoff + 1];
+            itemCounts = new int[numEntropies][numItems];
+        }
+
+        /**
+         * Mark the test items of a user and walk down its recommended list up to the largest cutoff.
+         */
+        private void scan(int userIdx, SparseMatrix testMatrix, RecommendedList recommendedList,
+                          double[] selfInformations, double[] discounts) {
+            int fromPos = testMatrix.rowPtr[userIdx], toPos = testMatrix.rowPtr[userIdx + 1];
+            numTestItems = toPos - fromPos;
+            for (int pos = fromPos; pos < toPos; pos++) {
+                testMarks[testMatrix.colInd[pos]] = userIdx + 1;
+            }
+
+            numRecommendedItems = recommendedList.getItemSizeByUserIdx(userIdx);
+            listSize = Math.min(items.length, numRecommendedItems);
+            firstHitRank = listSize;
+            for (int indexOfItem = 0; indexOfItem < listSize; indexOfItem++) {
+                int itemIdx = recommendedList.getItemIdxByUserIdx(userIdx, indexOfItem);
+                items[indexOfItem] = itemIdx;
+                boolean hit = testMarks[itemIdx] == userIdx + 1;
+                int rank = indexOfItem + 1;
+                hits[rank] = hits[indexOfItem] + (hit ? 1 : 0);
+                correctPairs[rank] = correctPairs[indexOfItem] + (hit ? 0 : hits[indexOfItem]);
+                precisions[rank] = hit ? precisions[indexOfItem] + 1.0 * hits[rank] / rank : precisions[indexOfItem];
+                dcgs[rank] = hit ? dcgs[indexOfItem] + discounts[rank] : dcgs[indexOfItem];
+                if (selfInformations.length > 0) {
+                    informations[rank] = informations[indexOfItem] + selfInformations[itemIdx];
+                }
+                if (hit && firstHitRank == listSize) {
+                    firstHitRank = indexOfItem;
+                }
+            }
+        }
+
+        /**
+         * Add the values of the scanned user to the sums of a block.
+         */
+        private void accumulate(int userIdx, double[] sums, int[] entropyIndices, int[] numDroppedItemsArray,
+                                double[] idealDCGs, double[] idcgsByNumTestItems) {
+            if (numTestItems > 0) {
+                nonZeroNumUsers++;
+            }
+            for (int index = 0; index < sums.length; index++) {
+                MeasureValue measureValue = measureValues.get(index);
+                Measure measure = measureValue.getMeasure();
+                if (measure == Measure.IDCG) {
+                    if (numTestItems > 0) {
+                        sums[index] += idcgsByNumTestItems[numTestItems];
+                    }
+                    continue;
+                }
+                int topN = measureValue.getTopN();
+                int topK = Math.min(topN, listSize);
+                if (measure == Measure.Novelty) {
+                    sums[index] += informations[topK];
+                    continue;
+                } else if (measure == Measure.Entropy) {
+                    int[] counts = itemCounts[entropyIndices[index]];
+                    for (int indexOfItem = 0; indexOfItem < topK; indexOfItem++) {
+                        counts[items[indexOfItem]]++;
+                    }
+                    continue;
+                } else if (numTestItems == 0) {
+                    continue;
+                }
+
+                switch (measure) {
+                    case PRECISION:
+                        sums[index] += hits[topK] / (topN + 0.0);
+                        break;
+                    case RECALL:
+                        sums[index] += hits[topK] / (numTestItems + 0.0);
+                        break;
+                    case AP:
+                        sums[index] += precisions[topK] / (numTestItems < topK ? numTestItems : topK);
+                        break;
+                    case NDCG:
+                        sums[index] += dcgs[topK] / idealDCGs[numTestItems < topK ? numTestItems : topK];
+                        break;
+                    case RR:
+                        if (firstHitRank < topK) {
+                            sums[index] += 1.0d / (firstHitRank + 1.0d);
+                        }
+                        break;
+                    case AUC:
+                        sums[index] += auc(numDroppedItemsArray[userIdx] - numRecommendedItems, topK);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        private double auc(int numDroppedItems, int topK) {
+            int numRelevantItems = hits[topK];
+            int numMissItems = numTestItems - numRelevantItems;
+            int numEvaluatingItems = topK + numDroppedItems;
+            int numEvaluatingPairs = (numEvaluatingItems - numRelevantItems) * numRelevantItems;
+            if (numEvaluatingPairs < 0) {
+                throw new IndexOutOfBoundsException("numEvaluatingPairs cannot be less than 0.");
+            }
+            if (numEvaluatingPairs == 0) {
+                return 0.5;
+            }
+            int numCorrectPairs = correctPairs[topK] + numRelevantItems * (numDroppedItems - numMissItems);
+            return (numCorrectPairs + 0.0) / numEvaluatingPairs;
+        }
+    }
+}
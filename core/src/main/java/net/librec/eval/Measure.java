@@ -107,6 +107,21 @@ public enum Measure {
         return ratingEnumList;
     }
 
+    /**
+     * Return the measure evaluated by an evaluator class.
+     *
+     * @param evaluatorClass the Class object of the evaluator
+     * @return the measure, or null if no measure is evaluated by the class
+     */
+    public static Measure getMeasure(Class<? extends RecommenderEvaluator> evaluatorClass) {
+        for (Measure measure : values()) {
+            if (measure.evaluatorClass == evaluatorClass) {
+                return measure;
+            }
+        }
+        return null;
+    }
+
     /**
      * Return the Class object of the evaluator.
      *
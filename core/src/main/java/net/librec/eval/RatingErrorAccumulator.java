@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2016 LibRec
+ * <p>
+ * This file is part of LibRec.
+ * LibRec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * LibRec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.librec.eval;
+
+/**
+ * Running sums of the errors of rating predictions, from which the rating measures (RMSE, MSE, MAE and MPE) are
+ * read without keeping the predictions. An accumulator is not thread-safe: every thread fills its own and they are
+ * merged afterwards with {@link #add(RatingErrorAccumulator)}.
+ */
+public class RatingErrorAccumulator {
+    /** absolute error above which a prediction counts as a miss of the MPE */
+    private final double mpe;
+
+    private double squaredError;
+    private double absoluteError;
+    private int numMisses;
+    private int numPredictions;
+
+    /**
+     * Construct an empty accumulator.
+     *
+     * @param mpe absolute error above which a prediction counts as a miss of the MPE, i.e. rec.measure.mpe
+     */
+    public RatingErrorAccumulator(double mpe) {
+        this.mpe = mpe;
+    }
+
+    /**
+     * Add the error of a prediction.
+     *
+     * @param realRating    rating of the test data
+     * @param predictRating predicted rating
+     */
+    public void add(double realRating, double predictRating) {
+        double error = realRating - predictRating;
+        squaredError += error * error;
+        absoluteError += Math.abs(error);
+        if (Math.abs(error) > mpe) {
+            numMisses++;
+        }
+        numPredictions++;
+    }
+
+    /**
+     * Add the errors of another accumulator.
+     *
+     * @param other accumulator to add
+     */
+    public void add(RatingErrorAccumulator other) {
+        squaredError += other.squaredError;
+        absoluteError += other.absoluteError;
+        numMisses += other.numMisses;
+        numPredictions += other.numPredictions;
+    }
+
+    /**
+     * Return the value of a rating measure.
+     *
+     * @param measure the measure
+     * @return the value of the measure, or null if it is not a rating measure
+     */
+    public Double getValue(Measure measure) {
+        if (measure == null) {
+            return null;
+        }
+        switch (measure) {
+            case RMSE:
+                return numPredictions > 0 ? Math.sqrt(squaredError / numPredictions) : 0.0d;
+            case MSE:
+                return numPredictions > 0 ? squaredError / numPredictions : 0.0d;
+            case MAE:
+                return numPredictions > 0 ? absoluteError / numPredictions : 0.0d;
+            case MPE:
+                return numPredictions > 0 ? (numMisses + 0.0) / numPredictions : 0.0d;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return number of predictions added
+     */
+    public int getNumPredictions() {
+        return numPredictions;
+    }
+}
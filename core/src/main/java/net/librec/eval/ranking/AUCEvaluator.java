@@ -22,7 +22,7 @@ import net.librec.math.structure.SparseMatrix;
 import net.librec.recommender.item.ItemEntry;
 import net.librec.recommender.item.RecommendedList;
 
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -55,7 +55,7 @@ public class AUCEvaluator extends AbstractRecommenderEvaluator {
                 nonZeroNumUsers++;
                 List<ItemEntry<Integer, Double>> recommendListByUser = recommendedList.getItemIdxListByUserIdx(userIdx);
                 int numDroppedItems = numDroppedItemsArray[userIdx] - recommendListByUser.size();
-                Set<Integer> recommendSetByUser = new HashSet<>();
+                Set<Integer> recommendSetByUser = new LinkedHashSet<>(); // in the order of the ranking
                 int topK = this.topN <= recommendListByUser.size() ? this.topN : recommendListByUser.size();
                 for (int indexOfItem = 0; indexOfItem < topK; ++indexOfItem) {
                     recommendSetByUser.add(recommendListByUser.get(indexOfItem).getKey());
@@ -21,11 +21,15 @@ import net.librec.common.LibrecException;
 import net.librec.conf.Configuration;
 import net.librec.data.DataModel;
 import net.librec.data.DataSplitter;
+import net.librec.data.model.AbstractDataModel;
 import net.librec.data.splitter.KCVDataSplitter;
 import net.librec.data.splitter.LOOCVDataSplitter;
+import net.librec.eval.FusedRankingEvaluator;
+import net.librec.eval.Measure;
 import net.librec.eval.Measure.MeasureValue;
 import net.librec.eval.RecommenderEvaluator;
 import net.librec.filter.RecommendedFilter;
+import net.librec.math.algorithm.RandomStream;
 import net.librec.math.algorithm.Randoms;
 import net.librec.recommender.Recommender;
 import net.librec.recommender.RecommenderContext;
@@ -44,6 +48,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.*;
 
 /**
  * RecommenderJob
@@ -85,12 +90,16 @@ public class RecommenderJob {
         String modelSplit = conf.get("data.model.splitter");
         switch (modelSplit) {
             case "kcv": {
-                int cvNumber = conf.getInt("data.splitter.cv.number", 1);
                 cvEvalResults = new HashMap<>();
-                for (int i = 1; i <= cvNumber; i++) {
-                    LOG.info("Splitter info: the index of " + modelSplit + " splitter times is " + i);
-                    conf.set("data.splitter.cv.index", String.valueOf(i));
-                    executeRecommenderJob();
+                if (isParallelFolds()) {
+                    executeFoldsInParallel(modelSplit);
+                } else {
+                    int cvNumber = conf.getInt("data.splitter.cv.number", 1);
+                    for (int i = 1; i <= cvNumber; i++) {
+                        LOG.info("Splitter info: the index of " + modelSplit + " splitter times is " + i);
+                        conf.set("data.splitter.cv.index", String.valueOf(i));
+                        executeRecommenderJob();
+                    }
                 }
                 printCVAverageResult();
                 break;
@@ -101,10 +110,14 @@ public class RecommenderJob {
                     executeRecommenderJob();
                 } else {
                     cvEvalResults = new HashMap<>();
-                    for (int i = 1; i <= conf.getInt("data.splitter.cv.number", 1); i++) {
-                        LOG.info("Splitter info: the index of " + modelSplit + " splitter times is " + i);
-                        conf.set("data.splitter.cv.index", String.valueOf(i));
-                        executeRecommenderJob();
+                    if (isParallelFolds()) {
+                        executeFoldsInParallel(modelSplit);
+                    } else {
+                        for (int i = 1; i <= conf.getInt("data.splitter.cv.number", 1); i++) {
+                            LOG.info("Splitter info: the index of " + modelSplit + " splitter times is " + i);
+                            conf.set("data.splitter.cv.index", String.valueOf(i));
+                            executeRecommenderJob();
+                        }
                     }
                     printCVAverageResult();
                 }
@@ -135,17 +148,153 @@ public class RecommenderJob {
      * @throws IOException
      *             If an I/O error occurs.
      */
-    @SuppressWarnings("unchecked")
     private void executeRecommenderJob() throws ClassNotFoundException, LibrecException, IOException {
         generateDataModel();
+        executeRecommenderJob(conf, dataModel, cvEvalResults);
+    }
+
+    /**
+     * Execute the recommender on a built data model.
+     *
+     * @param conf         configuration of the run
+     * @param dataModel    data model of the run
+     * @param evalResults  map collecting the evaluate results of cross validation, null otherwise
+     * @throws LibrecException        if error occurs
+     * @throws IOException            if I/O error occurs
+     * @throws ClassNotFoundException if class not found error occurs
+     */
+    @SuppressWarnings("unchecked")
+    private void executeRecommenderJob(Configuration conf, DataModel dataModel, Map<String, List<Double>> evalResults)
+            throws ClassNotFoundException, LibrecException, IOException {
         RecommenderContext context = new RecommenderContext(conf, dataModel);
-        generateSimilarity(context);
+        generateSimilarity(conf, dataModel, context);
         Recommender recommender = (Recommender) ReflectionUtil.newInstance((Class<Recommender>) getRecommenderClass(), conf);
         recommender.recommend(context);
-        executeEvaluator(recommender);
+        executeEvaluator(conf, dataModel, evalResults, recommender);
         List<RecommendedItem> recommendedList = recommender.getRecommendedList();
         recommendedList = filterResult(recommendedList);
-        saveResult(recommendedList);
+        saveResult(conf, dataModel, recommendedList);
+    }
+
+    /**
+     * Return whether the folds of cross validation are executed in parallel,
+     * i.e. data.splitter.cv.threads is greater than 1 and the data model can
+     * share its data with those of the folds.
+     *
+     * @return true if the folds are executed in parallel
+     * @throws ClassNotFoundException if the class of the data model is not found
+     * @throws IOException            if I/O error occurs
+     */
+    private boolean isParallelFolds() throws ClassNotFoundException, IOException {
+        return conf.getInt("data.splitter.cv.threads", 1) > 1
+                && AbstractDataModel.class.isAssignableFrom(getDataModelClass());
+    }
+
+    /**
+     * Execute the folds of cross validation concurrently on a bounded pool
+     * of data.splitter.cv.threads threads, as many as the folds whose data
+     * fit in the free memory. The data is read and the folds are assigned
+     * once, then every fold runs on its own copy of the configuration and
+     * its own data model, which shares the preference matrix read-only.
+     * The evaluate results of every fold are collected apart and added to
+     * {@link #cvEvalResults} in the order of the folds.
+     * <p>
+     * Every fold draws from its own random generator, seeded from
+     * rec.random.seed and the index of the fold, so that a parallel run is
+     * reproducible for a fixed rec.random.seed whatever the order in which
+     * the folds are executed. Unless rec.thread.count is set, the threads of
+     * the recommender of every fold are limited to its share of the cores.
+     *
+     * @param modelSplit the name of the splitter
+     * @throws LibrecException        if error occurs
+     * @throws IOException            if I/O error occurs
+     * @throws ClassNotFoundException if class not found error occurs
+     */
+    private void executeFoldsInParallel(final String modelSplit) throws ClassNotFoundException, LibrecException, IOException {
+        // read the data and assign the folds once, splitting the first fold
+        conf.set("data.splitter.cv.index", "1");
+        generateDataModel();
+        final AbstractDataModel sharedModel = (AbstractDataModel) dataModel;
+        int cvNumber = conf.getInt("data.splitter.cv.number", 1);
+        int numThreads = Math.min(Math.min(conf.getInt("data.splitter.cv.threads", 1), cvNumber), maxFoldsInMemory());
+        LOG.info("Splitter info: executing " + cvNumber + " folds of " + modelSplit + " splitter on " + numThreads + " threads");
+        long seed = conf.getLong("rec.random.seed", System.currentTimeMillis());
+        int foldThreadCount = Math.max(1, Runtime.getRuntime().availableProcessors() / numThreads);
+
+        List<Callable<Map<String, List<Double>>>> tasks = new ArrayList<>(cvNumber);
+        for (int i = 1; i <= cvNumber; i++) {
+            final int cvIndex = i;
+            final long foldSeed = RandomStream.derive(seed, "cv.fold", i).nextLong();
+            final Configuration foldConf = new Configuration(conf);
+            foldConf.set("data.splitter.cv.index", String.valueOf(i));
+            if (conf.get("rec.thread.count") == null) {
+                foldConf.setInt("rec.thread.count", foldThreadCount);
+            }
+            tasks.add(new Callable<Map<String, List<Double>>>() {
+                @Override
+                public Map<String, List<Double>> call() throws Exception {
+                    LOG.info("Splitter info: the index of " + modelSplit + " splitter times is " + cvIndex);
+                    Randoms.seedThread(foldSeed);
+                    try {
+                        DataModel foldModel = sharedModel.foldDataModel(foldConf);
+                        foldModel.buildDataModel();
+                        Map<String, List<Double>> foldResults = new HashMap<>();
+                        executeRecommenderJob(foldConf, foldModel, foldResults);
+                        return foldResults;
+                    } finally {
+                        Randoms.clearThreadSeed();
+                    }
+                }
+            });
+        }
+
+        ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+        try {
+            for (Future<Map<String, List<Double>>> future : executorService.invokeAll(tasks)) {
+                for (Map.Entry<String, List<Double>> entry : future.get().entrySet()) {
+                    for (Double evalValue : entry.getValue()) {
+                        collectCVResults(cvEvalResults, entry.getKey(), evalValue);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LibrecException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof LibrecException) {
+                throw (LibrecException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof ClassNotFoundException) {
+                throw (ClassNotFoundException) cause;
+            }
+            throw new LibrecException(cause);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Return the number of folds whose data fit in the free memory of the
+     * JVM, estimating the memory of a fold, i.e. its train and test matrices
+     * and the working copies of the recommender, as four times that of the
+     * compressed row and column arrays of the preference matrix.
+     *
+     * @return the number of folds which fit in memory, at least 1
+     */
+    private int maxFoldsInMemory() {
+        long numRatings = 0;
+        if (dataModel.getTrainDataSet() != null) {
+            numRatings += dataModel.getTrainDataSet().size();
+        }
+        if (dataModel.getTestDataSet() != null) {
+            numRatings += dataModel.getTestDataSet().size();
+        }
+        long foldMemory = 4 * 2 * (Integer.SIZE + Double.SIZE) / Byte.SIZE * Math.max(numRatings, 1);
+        Runtime runtime = Runtime.getRuntime();
+        long freeMemory = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, freeMemory / foldMemory));
     }
 
     /**
@@ -167,9 +316,11 @@ public class RecommenderJob {
     /**
      * Generate similarity.
      *
-     * @param context recommender context
+     * @param conf      configuration of the run
+     * @param dataModel data model of the run
+     * @param context   recommender context
      */
-    private void generateSimilarity(RecommenderContext context) {
+    private void generateSimilarity(Configuration conf, DataModel dataModel, RecommenderContext context) {
         String[] similarityKeys = conf.getStrings("rec.recommender.similarities");
         if (similarityKeys != null && similarityKeys.length > 0) {
             for(int i = 0; i< similarityKeys.length; i++){
@@ -205,22 +356,51 @@ public class RecommenderJob {
     /**
      * Execute evaluator.
      *
+     * @param conf         configuration of the run
+     * @param dataModel    data model of the run
+     * @param evalResults  map collecting the evaluate results of cross validation, null otherwise
      * @param recommender  recommender algorithm
      * @throws LibrecException        if error occurs
      * @throws IOException            if I/O error occurs
      * @throws ClassNotFoundException if class not found error occurs
      */
-    private void executeEvaluator(Recommender recommender) throws ClassNotFoundException, IOException, LibrecException {
+    private void executeEvaluator(Configuration conf, DataModel dataModel, Map<String, List<Double>> evalResults,
+                                  Recommender recommender) throws ClassNotFoundException, IOException, LibrecException {
         if (conf.getBoolean("rec.eval.enable")) {
             String[] evalClassKeys = conf.getStrings("rec.eval.classes");
             if (evalClassKeys!= null && evalClassKeys.length > 0) {// Run the evaluator which is
                 // designated.
+                int topN = conf.getInt("rec.recommender.ranking.topn", 10);
+                Map<MeasureValue, Double> fusedValueMap = null;
+                if (conf.getBoolean("rec.recommender.isranking")) {
+                    // the ranking measures of the designated evaluators are evaluated together in one pass
+                    List<MeasureValue> measureValues = new ArrayList<>();
+                    for (String evalClassKey : evalClassKeys) {
+                        Measure measure = Measure.getMeasure(getEvaluatorClass(evalClassKey));
+                        if (measure != null) {
+                            measureValues.add(new MeasureValue(measure, topN));
+                        }
+                    }
+                    if (measureValues.size() > 0 && FusedRankingEvaluator.supports(measureValues)) {
+                        fusedValueMap = recommender.evaluateMap(measureValues);
+                    }
+                }
                 for(int classIdx = 0; classIdx < evalClassKeys.length; ++classIdx) {
-                    RecommenderEvaluator evaluator = (RecommenderEvaluator) ReflectionUtil.newInstance(getEvaluatorClass(evalClassKeys[classIdx]), null);
-                    evaluator.setTopN(conf.getInt("rec.recommender.ranking.topn", 10));
-                    double evalValue = recommender.evaluate(evaluator);
-                    LOG.info("Evaluator info:" + evaluator.getClass().getSimpleName() + " is " + evalValue);
-                    collectCVResults(evaluator.getClass().getSimpleName(), evalValue);
+                    Class<? extends RecommenderEvaluator> evaluatorClass = getEvaluatorClass(evalClassKeys[classIdx]);
+                    Measure measure = Measure.getMeasure(evaluatorClass);
+                    Double evalValue = null;
+                    if (fusedValueMap != null && measure != null) {
+                        evalValue = fusedValueMap.get(new MeasureValue(measure, topN));
+                    }
+                    if (evalValue == null) {
+                        RecommenderEvaluator evaluator = (RecommenderEvaluator) ReflectionUtil.newInstance(evaluatorClass, null);
+                        evaluator.setTopN(topN);
+                        evalValue = recommender.evaluate(evaluator);
+                    }
+                    LOG.info("Evaluator info:" + evaluatorClass.getSimpleName() + " is " + evalValue);
+                    if (null != evalResults && isCrossValidation(dataModel)) {
+                        collectCVResults(evalResults, evaluatorClass.getSimpleName(), evalValue);
+                    }
                 }
             } else {// Run all evaluators
                 Map<MeasureValue, Double> evalValueMap = recommender.evaluateMap();
@@ -235,8 +415,8 @@ public class RecommenderJob {
                                 LOG.info("Evaluator value:" + entry.getKey().getMeasure() + " is " + entry.getValue());
                                 evalName = entry.getKey().getMeasure() + "";
                             }
-                            if (null != cvEvalResults) {
-                                collectCVResults(evalName, entry.getValue());
+                            if (null != evalResults && isCrossValidation(dataModel)) {
+                                collectCVResults(evalResults, evalName, entry.getValue());
                             }
                         }
                     }
@@ -254,6 +434,21 @@ public class RecommenderJob {
      * @throws ClassNotFoundException if class not found error occurs
      */
     public void saveResult(List<RecommendedItem> recommendedList) throws LibrecException, IOException, ClassNotFoundException {
+        saveResult(conf, dataModel, recommendedList);
+    }
+
+    /**
+     * Save result of a run.
+     *
+     * @param conf                    configuration of the run
+     * @param dataModel               data model of the run
+     * @param recommendedList         list of recommended items
+     * @throws LibrecException        if error occurs
+     * @throws IOException            if I/O error occurs
+     * @throws ClassNotFoundException if class not found error occurs
+     */
+    private void saveResult(Configuration conf, DataModel dataModel, List<RecommendedItem> recommendedList)
+            throws LibrecException, IOException, ClassNotFoundException {
         if (recommendedList != null && recommendedList.size() > 0) {
             // make output path
             String algoSimpleName = DriverClassUtil.getDriverName(getRecommenderClass());
@@ -298,24 +493,42 @@ public class RecommenderJob {
     }
 
     /**
-     * Collect the evaluate results when using cross validation.
+     * Return whether the data model is split for cross validation.
      *
-     * @param evalName   name of the evaluator
-     * @param evalValue  value of the evaluate result
+     * @param dataModel  data model of the run
+     * @return true if the splitter of the data model is a cross validation one
      */
-    private void collectCVResults(String evalName, Double evalValue) {
+    private boolean isCrossValidation(DataModel dataModel) {
         DataSplitter splitter = dataModel.getDataSplitter();
-        if (splitter != null && (splitter instanceof KCVDataSplitter || splitter instanceof LOOCVDataSplitter)) {
-            if (cvEvalResults.containsKey(evalName)) {
-                cvEvalResults.get(evalName).add(evalValue);
-            } else {
-                List<Double> newList = new ArrayList<>();
-                newList.add(evalValue);
-                cvEvalResults.put(evalName, newList);
-            }
+        return splitter != null && (splitter instanceof KCVDataSplitter || splitter instanceof LOOCVDataSplitter);
+    }
+
+    /**
+     * Collect the evaluate results when using cross validation.
+     *
+     * @param evalResults  map collecting the evaluate results
+     * @param evalName     name of the evaluator
+     * @param evalValue    value of the evaluate result
+     */
+    private void collectCVResults(Map<String, List<Double>> evalResults, String evalName, Double evalValue) {
+        if (evalResults.containsKey(evalName)) {
+            evalResults.get(evalName).add(evalValue);
+        } else {
+            List<Double> newList = new ArrayList<>();
+            newList.add(evalValue);
+            evalResults.put(evalName, newList);
         }
     }
 
+    /**
+     * Get the evaluate results of every fold of the last cross validation.
+     *
+     * @return the map from the evaluator names to their values in the order of the folds, null without cross validation
+     */
+    public Map<String, List<Double>> getCVEvalResults() {
+        return cvEvalResults;
+    }
+
     private void setJobId(String jobId) {
         conf.set("rec.job.id", jobId);
     }
@@ -0,0 +1,539 @@
+/**
+ * Copyright (C) 2016 LibRec
+ * <p>
+ * This file is part of LibRec.
+ * LibRec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * LibRec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.librec.math.algorithm;
+
+import net.librec.common.LibrecException;
+import net.librec.math.structure.DenseMatrix;
+
+import java.util.Random;
+
+/**
+ * Splittable stream of pseudo random numbers, after the SplitMix64 generator of Steele et al., <strong>Fast
+ * Splittable Pseudorandom Number Generators</strong>, OOPSLA 2014.
+ * <p>
+ * A stream is not thread-safe and is meant to be owned by a single thread or task. Independent streams are obtained
+ * either by {@link #split()}, or by {@link #derive(long, String, long)} from a seed, the purpose of the streams and
+ * the key of a task, e.g. the index of a thread, of a fold or of a user, so that parallel code draws the same numbers
+ * whatever the number of threads and the order in which the tasks run. Every call site uses its own purpose, so that
+ * e.g. the stream of thread 0 of a sampler and the stream of user 0 of an evaluator are not the same stream. The
+ * samplers match the ones of {@link Randoms}.
+ */
+public class RandomStream extends Random {
+    private static final long serialVersionUID = 1L;
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private static final double DOUBLE_UNIT = 1.0 / (1L << 53);
+
+    private long seed;
+    private final long gamma;
+    private double nextNextGaussian;
+    private boolean haveNextNextGaussian;
+
+    /**
+     * Construct a stream from a seed.
+     *
+     * @param seed seed
+     */
+    public RandomStream(long seed) {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    private RandomStream(long seed, long gamma) {
+        super(0L);
+        this.seed = seed;
+        this.gamma = gamma;
+    }
+
+    /**
+     * Derive the stream of a task from a seed. Different purposes or keys give independent streams, and the stream
+     * of a task only depends on the seed, the purpose and the key.
+     *
+     * @param seed    seed, e.g. rec.random.seed
+     * @param purpose purpose of the streams, distinct for every call site, e.g. "bpmf.factors"
+     * @param key     key of the task
+     * @return the stream of the task
+     */
+    public static RandomStream derive(long seed, String purpose, long key) {
+        long base = mix64(mix64(seed) + GOLDEN_GAMMA * hash(purpose)) + GOLDEN_GAMMA * key;
+        return new RandomStream(mix64(base), mixGamma(base + GOLDEN_GAMMA));
+    }
+
+    /**
+     * 64-bit FNV-1a hash of a purpose
+     */
+    private static long hash(String purpose) {
+        long hash = 0xcbf29ce484222325L;
+        for (int pos = 0; pos < purpose.length(); pos++) {
+            hash = (hash ^ purpose.charAt(pos)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Split off a new stream, independent of the rest of this one.
+     *
+     * @return a new stream
+     */
+    public RandomStream split() {
+        return new RandomStream(nextLong(), mixGamma(nextSeed()));
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        // also called by the constructor of Random, before the fields are initialized
+        this.seed = seed;
+        this.haveNextNextGaussian = false;
+    }
+
+    private long nextSeed() {
+        return seed += gamma;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static int mix32(long z) {
+        z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+        return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+    }
+
+    private static long mixGamma(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        int n = Long.bitCount(z ^ (z >>> 1));
+        return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+    }
+
+    @Override
+    protected int next(int bits) {
+        return mix32(nextSeed()) >>> (32 - bits);
+    }
+
+    @Override
+    public int nextInt() {
+        return mix32(nextSeed());
+    }
+
+    @Override
+    public long nextLong() {
+        return mix64(nextSeed());
+    }
+
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * DOUBLE_UNIT;
+    }
+
+    @Override
+    public double nextGaussian() {
+        if (haveNextNextGaussian) {
+            haveNextNextGaussian = false;
+            return nextNextGaussian;
+        }
+        double v1, v2, s;
+        do {
+            v1 = 2 * nextDouble() - 1;
+            v2 = 2 * nextDouble() - 1;
+            s = v1 * v1 + v2 * v2;
+        } while (s >= 1 || s == 0);
+        double multiplier = Math.sqrt(-2 * Math.log(s) / s);
+        nextNextGaussian = v2 * multiplier;
+        haveNextNextGaussian = true;
+        return v1 * multiplier;
+    }
+
+    /**
+     * Random generate an integer in [0, range)
+     *
+     * @param range range of the interval
+     * @return an integer random generated in [0, range)
+     */
+    public int uniform(int range) {
+        return nextInt(range);
+    }
+
+    /**
+     * Random generate an integer in [min, max)
+     *
+     * @param min minimum of the range
+     * @param max maximum of the range
+     * @return an integer random generated in [min, max)
+     */
+    public int uniform(int min, int max) {
+        return min + nextInt(max - min);
+    }
+
+    /**
+     * Random (uniformly distributed) double in [0, 1)
+     *
+     * @return Random (uniformly distributed) double in [0, 1)
+     */
+    public double uniform() {
+        return nextDouble();
+    }
+
+    /**
+     * Random (uniformly distributed) double in [min, max)
+     *
+     * @param min min of the range
+     * @param max max of the range
+     * @return Random (uniformly distributed) double in [min, max)
+     */
+    public double uniform(double min, double max) {
+        return min + (max - min) * nextDouble();
+    }
+
+    /**
+     * Return a boolean, which is true with probability p, and false otherwise.
+     *
+     * @param p probability p
+     * @return a boolean, which is true with probability p, and false otherwise.
+     */
+    public boolean bernoulli(double p) {
+        return nextDouble() < p;
+    }
+
+    /**
+     * Return a real number from a Gaussian distribution with given mean and stddev.
+     *
+     * @param mu    mean
+     * @param sigma stddev
+     * @return a real number from a Gaussian distribution with given mean and stddev
+     */
+    public double gaussian(double mu, double sigma) {
+        return mu + sigma * nextGaussian();
+    }
+
+    /**
+     * Return a real number from an exponential distribution with rate lambda.
+     *
+     * @param lambda rate lambda
+     * @return a real number from an exponential distribution with rate lambda.
+     */
+    public double exp(double lambda) {
+        return -Math.log(1 - nextDouble()) / lambda;
+    }
+
+    /**
+     * Return an integer with a Poisson distribution with mean lambda.
+     *
+     * @param lambda mean lambda
+     * @return an integer with a Poisson distribution with mean lambda
+     */
+    public int poisson(double lambda) {
+        // using algorithm given by Knuth
+        int k = 0;
+        double p = 1.0;
+        double L = Math.exp(-lambda);
+        do {
+            k++;
+            p *= nextDouble();
+        } while (p >= L);
+        return k - 1;
+    }
+
+    /**
+     * Return a number from a discrete distribution: i with probability a[i]. Precondition: array entries are
+     * nonnegative and their sum (very nearly) equals 1.0.
+     *
+     * @param a probability a[i]
+     * @return a number from the discrete distribution
+     */
+    public int discrete(double[] a) {
+        double EPSILON = 1E-6;
+        double sum = 0.0;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] < 0.0)
+                throw new IllegalArgumentException("array entry " + i + " is negative: " + a[i]);
+            sum = sum + a[i];
+        }
+        if (sum > 1.0 + EPSILON || sum < 1.0 - EPSILON)
+            throw new IllegalArgumentException("sum of array entries not equal to one: " + sum);
+
+        // the loop may not return a value when r is (nearly) 1.0 and the cumulative sum is less than 1.0
+        while (true) {
+            double r = nextDouble();
+            sum = 0.0;
+            for (int i = 0; i < a.length; i++) {
+                sum = sum + a[i];
+                if (sum > r)
+                    return i;
+            }
+        }
+    }
+
+    /**
+     * Randomly sample 1 point from Gamma Distribution with the given parameters. The code is from Mahout
+     * (http://mahout.apache.org/), available under Apache 2 license.
+     *
+     * @param alpha alpha parameter for Gamma Distribution.
+     * @param scale scale parameter for Gamma Distribution.
+     * @return a sample point randomly drawn from the given distribution.
+     */
+    public double gamma(double alpha, double scale) {
+        double rate = 1 / scale;
+
+        if (alpha <= 0.0 || rate <= 0.0) {
+            throw new IllegalArgumentException();
+        }
+
+        double gds;
+        double b = 0.0;
+
+        // CASE A: Acceptance rejection algorithm gs
+        if (alpha < 1.0) {
+            b = 1.0 + 0.36788794412 * alpha; // Step 1
+            while (true) {
+                double p = b * nextDouble();
+                // Step 2. Case gds <= 1
+                if (p <= 1.0) {
+                    gds = Math.exp(Math.log(p) / alpha);
+                    if (Math.log(nextDouble()) <= -gds) {
+                        return gds / rate;
+                    }
+                }
+                // Step 3. Case gds > 1
+                else {
+                    gds = -Math.log((b - p) / alpha);
+                    if (Math.log(nextDouble()) <= ((alpha - 1.0) * Math.log(gds))) {
+                        return gds / rate;
+                    }
+                }
+            }
+        }
+        // CASE B: Acceptance complement algorithm gd (gaussian distribution,
+        // box muller transformation)
+        else {
+            double ss = 0.0;
+            double s = 0.0;
+            double d = 0.0;
+
+            // Step 1. Preparations
+            if (alpha != -1.0) {
+                ss = alpha - 0.5;
+                s = Math.sqrt(ss);
+                d = 5.656854249 - 12.0 * s;
+            }
+
+            // Step 2. Normal deviate
+            double v12;
+            double v1;
+
+            do {
+                v1 = 2.0 * nextDouble() - 1.0;
+                double v2 = 2.0 * nextDouble() - 1.0;
+                v12 = v1 * v1 + v2 * v2;
+            } while (v12 > 1.0);
+
+            double t = v1 * Math.sqrt(-2.0 * Math.log(v12) / v12);
+            double x = s + 0.5 * t;
+            gds = x * x;
+
+            if (t >= 0.0) { // Immediate acceptance
+                return gds / rate;
+            }
+
+            double u = nextDouble();
+            if (d * u <= t * t * t) { // Squeeze acceptance
+                return gds / rate;
+            }
+
+            double q0 = 0.0;
+            double si = 0.0;
+            double c = 0.0;
+
+            // Step 4. Set-up for hat case
+            if (alpha != -1.0) {
+                double rr = 1.0 / alpha;
+                double q9 = 0.0001710320;
+                double q8 = -0.0004701849;
+                double q7 = 0.0006053049;
+                double q6 = 0.0003340332;
+                double q5 = -0.0003349403;
+                double q4 = 0.0015746717;
+                double q3 = 0.0079849875;
+                double q2 = 0.0208333723;
+                double q1 = 0.0416666664;
+
+                q0 = ((((((((q9 * rr + q8) * rr + q7) * rr + q6) * rr + q5) * rr + q4) * rr + q3) * rr + q2) * rr + q1)
+                        * rr;
+
+                if (alpha > 3.686) {
+                    if (alpha > 13.022) {
+                        b = 1.77;
+                        si = 0.75;
+                        c = 0.1515 / s;
+                    } else {
+                        b = 1.654 + 0.0076 * ss;
+                        si = 1.68 / s + 0.275;
+                        c = 0.062 / s + 0.024;
+                    }
+                } else {
+                    b = 0.463 + s - 0.178 * ss;
+                    si = 1.235;
+                    c = 0.195 / s - 0.079 + 0.016 * s;
+                }
+            }
+
+            double v, q;
+            double a9 = 0.104089866;
+            double a8 = -0.112750886;
+            double a7 = 0.110368310;
+            double a6 = -0.124385581;
+            double a5 = 0.142873973;
+            double a4 = -0.166677482;
+            double a3 = 0.199999867;
+            double a2 = -0.249999949;
+            double a1 = 0.333333333;
+
+            // Step 5. Calculation of q
+            if (x > 0.0) {
+                // Step 6.
+                v = t / (s + s);
+                if (Math.abs(v) > 0.25) {
+                    q = q0 - s * t + 0.25 * t * t + (ss + ss) * Math.log(1.0 + v);
+                }
+                // Step 7. Quotient acceptance
+                else {
+                    q = q0
+                            + 0.5
+                            * t
+                            * t
+                            * ((((((((a9 * v + a8) * v + a7) * v + a6) * v + a5) * v + a4) * v + a3) * v + a2) * v + a1)
+                            * v;
+                }
+                if (Math.log(1.0 - u) <= q) {
+                    return gds / rate;
+                }
+            }
+
+            double e7 = 0.000247453;
+            double e6 = 0.001353826;
+            double e5 = 0.008345522;
+            double e4 = 0.041664508;
+            double e3 = 0.166666848;
+            double e2 = 0.499999994;
+            double e1 = 1.000000000;
+
+            // Step 8. Double exponential deviate t
+            while (true) {
+                double sign_u;
+                double e;
+                do { // Step 9. Rejection of t
+                    e = -Math.log(nextDouble());
+                    u = nextDouble();
+                    u = u + u - 1.0;
+                    sign_u = (u > 0) ? 1.0 : -1.0;
+                    t = b + (e * si) * sign_u;
+                } while (t <= -0.71874483771719);
+
+                // Step 10. New q(t)
+                v = t / (s + s);
+
+                if (Math.abs(v) > 0.25) {
+                    q = q0 - s * t + 0.25 * t * t + (ss + ss) * Math.log(1.0 + v);
+                } else {
+                    q = q0
+                            + 0.5
+                            * t
+                            * t
+                            * ((((((((a9 * v + a8) * v + a7) * v + a6) * v + a5) * v + a4) * v + a3) * v + a2) * v + a1)
+                            * v;
+                }
+
+                // Step 11.
+                if (q <= 0.0) {
+                    continue;
+                }
+
+                // Step 12. Hat acceptance
+                double w;
+                if (q > 0.5) {
+                    w = Math.exp(q) - 1.0;
+                } else {
+                    w = ((((((e7 * q + e6) * q + e5) * q + e4) * q + e3) * q + e2) * q + e1) * q;
+                }
+
+                if (c * u * sign_u <= w * Math.exp(e - 0.5 * t * t)) {
+                    x = s + 0.5 * t;
+                    return x * x / rate;
+                }
+            }
+        }
+    }
+
+    /**
+     * Randomly sample a matrix from Wishart Distribution with the given parameters, by the Bartlett decomposition.
+     *
+     * @param scale scale parameter for Wishart Distribution.
+     * @param df    degree of freedom for Wishart Distribution.
+     * @return the sample randomly drawn from the given distribution, or null if the scale is not positive definite
+     * @throws LibrecException if error occurs
+     */
+    public DenseMatrix wishart(DenseMatrix scale, double df) throws LibrecException {
+        DenseMatrix A = scale.cholesky();
+        if (A == null)
+            return null;
+
+        int p = scale.numRows();
+        double[][] z = new double[p][p];
+        for (int i = 0; i < p; i++) {
+            for (int j = 0; j < p; j++) {
+                z[i][j] = nextGaussian();
+            }
+        }
+
+        double[] y = new double[p];
+        for (int i = 0; i < p; i++)
+            y[i] = gamma((df - (i + 1)) / 2, 2);
+
+        DenseMatrix B = new DenseMatrix(p, p);
+        B.set(0, 0, y[0]);
+
+        // rest of diagonal
+        for (int j = 1; j < p; j++) {
+            double inner = 0.0;
+            for (int k = 0; k < j; k++)
+                inner += z[k][j] * z[k][j];
+            B.set(j, j, y[j] + inner);
+        }
+
+        // first row and column
+        for (int j = 1; j < p; j++) {
+            B.set(0, j, z[0][j] * Math.sqrt(y[0]));
+            B.set(j, 0, B.get(0, j)); // mirror
+        }
+
+        for (int j = 2; j < p; j++) {
+            for (int i = 1; i <= j - 1; i++) {
+                double inner = 0.0;
+                for (int k = 0; k <= i - 1; k++)
+                    inner += z[k][i] * z[k][j];
+                B.set(i, j, z[i][j] * Math.sqrt(y[i]) + inner);
+                B.set(j, i, B.get(i, j)); // mirror
+            }
+        }
+
+        return A.transpose().mult(B).mult(A);
+    }
+}
@@ -25,12 +25,44 @@ import net.librec.math.structure.SparseVector;
 import java.util.*;
 
 /**
+ * Static random numbers drawn from one shared generator, seeded with {@link #seed(long)}, or from the generator
+ * installed by {@link #seedThread(long)} for a thread running a task concurrently with others, e.g. a fold of cross
+ * validation. Parallel code draws from the streams of its threads or tasks instead, see
+ * {@link #stream(String, long)}.
+ *
  * @author Guo Guibing
  */
 public class Randoms {
-    private static Random r = new Random(System.currentTimeMillis());
+    private static volatile long seed = System.currentTimeMillis();
 
-    private static List<Object> _tempList = new ArrayList<>();
+    private static Random r = new Random(seed);
+
+    /**
+     * generator of the current thread and of the threads it starts, null to draw from the shared one
+     */
+    private static final InheritableThreadLocal<ThreadGenerator> threadGenerator = new InheritableThreadLocal<>();
+
+    private static final ThreadLocal<List<Object>> _tempList = new ThreadLocal<List<Object>>() {
+        @Override
+        protected List<Object> initialValue() {
+            return new ArrayList<>();
+        }
+    };
+
+    private static final class ThreadGenerator {
+        private final long seed;
+        private final Random random;
+
+        ThreadGenerator(long seed) {
+            this.seed = seed;
+            this.random = new Random(seed);
+        }
+    }
+
+    private static Random generator() {
+        ThreadGenerator generator = threadGenerator.get();
+        return generator == null ? r : generator.random;
+    }
 
     /**
      * Random generate an integer in [0, range)
@@ -43,9 +75,52 @@ public class Randoms {
     }
 
     public static void seed(long seed) {
+        Randoms.seed = seed;
         r = new Random(seed);
     }
 
+    /**
+     * Install a generator seeded with the given seed for the current thread and the threads it starts from now on,
+     * which then draw from it instead of the shared generator, so that tasks running concurrently each draw the
+     * same numbers as when run alone. The seed also replaces that of {@link #stream(String, long)} in these threads.
+     *
+     * @param seed seed of the generator of the thread
+     */
+    public static void seedThread(long seed) {
+        threadGenerator.set(new ThreadGenerator(seed));
+    }
+
+    /**
+     * Remove the generator installed for the current thread, which draws from the shared generator again.
+     */
+    public static void clearThreadSeed() {
+        threadGenerator.remove();
+    }
+
+    /**
+     * Return the stream of a thread or a task, e.g. the index of a thread, of a fold or of a user. It only depends on
+     * the seed of the current thread, i.e. the last seed given to {@link #seed(long)} or {@link #seedThread(long)},
+     * on the purpose and on the key, not on the numbers drawn so far.
+     *
+     * @param purpose purpose of the streams, distinct for every call site
+     * @param key     key of the thread or task
+     * @return a new stream, to be used by a single thread
+     */
+    public static RandomStream stream(String purpose, long key) {
+        ThreadGenerator generator = threadGenerator.get();
+        return RandomStream.derive(generator == null ? seed : generator.seed, purpose, key);
+    }
+
+    /**
+     * Split off a stream from the generator of the current thread, for sequential code handing a stream to code
+     * that draws from streams.
+     *
+     * @return a new stream, to be used by a single thread
+     */
+    public static RandomStream split() {
+        return new RandomStream(generator().nextLong());
+    }
+
     /**
      * Random generate an integer in [min, max)
      *
@@ -54,7 +129,7 @@ public class Randoms {
      * @return     an integer random generated in [min, max)
      */
     public static int uniform(int min, int max) {
-        return min + r.nextInt(max - min);
+        return min + generator().nextInt(max - min);
     }
 
     /**
@@ -126,7 +201,7 @@ public class Randoms {
      * @return Random (uniformly distributed) double in [min, max)
      */
     public static double uniform(double min, double max) {
-        return min + (max - min) * r.nextDouble();
+        return min + (max - min) * generator().nextDouble();
     }
 
     /**
@@ -156,7 +231,7 @@ public class Randoms {
      * @return  a real number from a Gaussian distribution with given mean and stddev
      */
     public static double gaussian(double mu, double sigma) {
-        return mu + sigma * r.nextGaussian();
+        return mu + sigma * generator().nextGaussian();
     }
 
     /**
@@ -181,18 +256,18 @@ public class Randoms {
         if (alpha < 1.0) {
             b = 1.0 + 0.36788794412 * alpha; // Step 1
             while (true) {
-                double p = b * r.nextDouble();
+                double p = b * generator().nextDouble();
                 // Step 2. Case gds <= 1
                 if (p <= 1.0) {
                     gds = Math.exp(Math.log(p) / alpha);
-                    if (Math.log(r.nextDouble()) <= -gds) {
+                    if (Math.log(generator().nextDouble()) <= -gds) {
                         return gds / rate;
                     }
                 }
                 // Step 3. Case gds > 1
                 else {
                     gds = -Math.log((b - p) / alpha);
-                    if (Math.log(r.nextDouble()) <= ((alpha - 1.0) * Math.log(gds))) {
+                    if (Math.log(generator().nextDouble()) <= ((alpha - 1.0) * Math.log(gds))) {
                         return gds / rate;
                     }
                 }
@@ -217,8 +292,8 @@ public class Randoms {
             double v1;
 
             do {
-                v1 = 2.0 * r.nextDouble() - 1.0;
-                double v2 = 2.0 * r.nextDouble() - 1.0;
+                v1 = 2.0 * generator().nextDouble() - 1.0;
+                double v2 = 2.0 * generator().nextDouble() - 1.0;
                 v12 = v1 * v1 + v2 * v2;
             } while (v12 > 1.0);
 
@@ -230,7 +305,7 @@ public class Randoms {
                 return gds / rate;
             }
 
-            double u = r.nextDouble();
+            double u = generator().nextDouble();
             if (d * u <= t * t * t) { // Squeeze acceptance
                 return gds / rate;
             }
@@ -317,8 +392,8 @@ public class Randoms {
                 double sign_u;
                 double e;
                 do { // Step 9. Rejection of t
-                    e = -Math.log(r.nextDouble());
-                    u = r.nextDouble();
+                    e = -Math.log(generator().nextDouble());
+                    u = generator().nextDouble();
                     u = u + u - 1.0;
                     sign_u = (u > 0) ? 1.0 : -1.0;
                     t = b + (e * si) * sign_u;
@@ -524,14 +599,14 @@ public class Randoms {
     public static int nextInt(int min, int max, int... exceptions) {
         int next;
         while (true) {
-            next = min + r.nextInt(max - min);
+            next = min + generator().nextInt(max - min);
             if (exceptions != null && exceptions.length > 0 && Arrays.binarySearch(exceptions, next) >= 0) {
                 continue;
             }
-            if (_tempList.contains(next))
+            if (_tempList.get().contains(next))
                 continue;
             else {
-                _tempList.add(next);
+                _tempList.get().add(next);
                 break;
             }
         }
@@ -566,7 +641,7 @@ public class Randoms {
     }
 
     public static void clearCache() {
-        _tempList.clear();
+        _tempList.get().clear();
     }
 
     /**
@@ -624,7 +699,7 @@ public class Randoms {
         Set<Integer> ints = new HashSet();
 
         while (true) {
-            int rand = min + r.nextInt(max - min);
+            int rand = min + generator().nextInt(max - min);
             ints.add(rand);
 
             if (ints.size() >= length)
@@ -652,7 +727,7 @@ public class Randoms {
         int sum = 0;
         for (int i = 0; i < pros.length; i++) {
             //avoid zero
-            pros[i] = r.nextInt(size) + 1;
+            pros[i] = generator().nextInt(size) + 1;
             sum += pros[i];
         }
 
@@ -0,0 +1,563 @@
+/**
+ * Copyright (C) 2016 LibRec
+ * <p>
+ * This file is part of LibRec.
+ * LibRec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * LibRec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.librec.math.structure;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A symmetric matrix kept in packed primitive arrays instead of a boxed {@code Table}.
+ * <p>
+ * Both triangles are stored in a row-compressed layout, so that a complete row is one
+ * contiguous slice. Column indices are sorted within each row, which makes {@link #get(int, int)}
+ * a binary search, and an additional permutation lists the entries of each row by descending
+ * value, so that neighborhood models can walk the most similar items through
+ * {@link #getNeighbor(int, int)} and {@link #getNeighborValue(int, int)} without building and
+ * sorting boxed lists.
+ * <p>
+ * New entries are buffered and compacted into the packed layout on the next read; setting an
+ * entry which is already stored updates it in place. The packed arrays are held either on the
+ * heap, in a direct (off-heap) buffer, or in a memory-mapped file, see {@link Storage}.
+ * Concurrent reads are safe, writes are not.
+ */
+public class PackedSymmMatrix extends SymmMatrix {
+
+    /**
+     * Where the packed arrays are held.
+     */
+    public enum Storage {
+        HEAP, DIRECT, MAPPED
+    }
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private final Storage storage;
+    private final String mappedPath;
+
+    // buffered entries in the lower triangle (row >= col)
+    private int[] pendingRows;
+    private int[] pendingCols;
+    private double[] pendingValues;
+    private int numPending;
+
+    // row pointers into the packed arrays, kept on heap
+    private int[] rowPtr;
+    // packed column indices, values and per-row value order
+    private IntBuffer columns;
+    private DoubleBuffer values;
+    private IntBuffer order;
+
+    private volatile boolean compacted = true;
+    private volatile boolean ordered = true;
+
+    /**
+     * Construct a packed symmetric matrix on the heap.
+     *
+     * @param dim matrix dimension
+     */
+    public PackedSymmMatrix(int dim) {
+        this(dim, Storage.HEAP, null);
+    }
+
+    /**
+     * Construct a packed symmetric matrix.
+     *
+     * @param dim        matrix dimension
+     * @param storage    where the packed arrays are held
+     * @param mappedPath file backing {@link Storage#MAPPED} storage, a temporary file if null
+     */
+    public PackedSymmMatrix(int dim, Storage storage, String mappedPath) {
+        super(dim);
+        this.storage = storage;
+        this.mappedPath = mappedPath;
+        pendingRows = new int[0];
+        pendingCols = new int[0];
+        pendingValues = new double[0];
+        rowPtr = new int[dim + 1];
+        columns = IntBuffer.allocate(0);
+        values = DoubleBuffer.allocate(0);
+        order = IntBuffer.allocate(0);
+    }
+
+    /**
+     * Construct a packed symmetric matrix by deeply copying data from a given matrix
+     *
+     * @param mat        a given matrix
+     * @param storage    where the packed arrays are held
+     * @param mappedPath file backing {@link Storage#MAPPED} storage, a temporary file if null
+     */
+    public PackedSymmMatrix(SymmMatrix mat, Storage storage, String mappedPath) {
+        this(mat.dim, storage, mappedPath);
+        if (mat instanceof PackedSymmMatrix) {
+            PackedSymmMatrix packed = (PackedSymmMatrix) mat;
+            packed.ensureOrdered();
+            int size = packed.rowPtr[dim];
+            int[] cols = new int[size];
+            double[] vals = new double[size];
+            int[] ord = new int[size];
+            packed.columns.duplicate().get(cols);
+            packed.values.duplicate().get(vals);
+            packed.order.duplicate().get(ord);
+            rowPtr = Arrays.copyOf(packed.rowPtr, dim + 1);
+            store(cols, vals, ord);
+        } else {
+            for (Table.Cell<Integer, Integer, Double> cell : mat.data.cellSet()) {
+                set(cell.getRowKey(), cell.getColumnKey(), cell.getValue());
+            }
+        }
+    }
+
+    /**
+     * Make a deep copy of current matrix with the same kind of storage. A copy of a
+     * memory-mapped matrix is backed by a temporary file.
+     */
+    @Override
+    public PackedSymmMatrix clone() {
+        return new PackedSymmMatrix(this, storage, null);
+    }
+
+    /**
+     * Get a value at entry (row, col)
+     *
+     * @param row row index
+     * @param col column index
+     * @return value at entry (row, col)
+     */
+    @Override
+    public double get(int row, int col) {
+        ensureCompacted();
+        int pos = position(row, col);
+        return pos >= 0 ? values.get(pos) : 0.0d;
+    }
+
+    /**
+     * Whether entry (row, col) is stored
+     *
+     * @param row row index
+     * @param col column index
+     * @return true if entry (row, col) is stored
+     */
+    @Override
+    public boolean contains(int row, int col) {
+        ensureCompacted();
+        return position(row, col) >= 0;
+    }
+
+    /**
+     * set a value to entry (row, col)
+     *
+     * @param row row index
+     * @param col column index
+     * @param val value to set
+     */
+    @Override
+    public void set(int row, int col, double val) {
+        if (row < 0 || row >= dim || col < 0 || col >= dim) {
+            throw new IndexOutOfBoundsException("entry (" + row + ", " + col + ") out of dimension " + dim);
+        }
+        if (compacted) {
+            int pos = position(row, col);
+            if (pos >= 0) {
+                values.put(pos, val);
+                if (row != col) {
+                    values.put(position(col, row), val);
+                }
+                ordered = false;
+                return;
+            }
+        }
+        if (numPending == pendingRows.length) {
+            int capacity = Math.max(16, pendingRows.length + (pendingRows.length >> 1));
+            pendingRows = Arrays.copyOf(pendingRows, capacity);
+            pendingCols = Arrays.copyOf(pendingCols, capacity);
+            pendingValues = Arrays.copyOf(pendingValues, capacity);
+        }
+        pendingRows[numPending] = Math.max(row, col);
+        pendingCols[numPending] = Math.min(row, col);
+        pendingValues[numPending] = val;
+        numPending++;
+        compacted = false;
+    }
+
+    /**
+     * add a value to entry (row, col)
+     *
+     * @param row row index
+     * @param col column index
+     * @param val value to add
+     */
+    @Override
+    public void add(int row, int col, double val) {
+        set(row, col, val + get(row, col));
+    }
+
+    /**
+     * Retrieve a complete row of similar items
+     *
+     * @param row row index
+     * @return a complete row of similar items
+     */
+    @Override
+    public SparseVector row(int row) {
+        ensureCompacted();
+        int start = rowPtr[row], size = rowPtr[row + 1] - start;
+        int[] index = new int[size];
+        double[] data = new double[size];
+        for (int k = 0; k < size; k++) {
+            index[k] = columns.get(start + k);
+            data[k] = values.get(start + k);
+        }
+        return new SparseVector(dim, index, data, 0, size - 1);
+    }
+
+    /**
+     * Return the number of stored entries in a row.
+     *
+     * @param row row index
+     * @return the number of stored entries in the row
+     */
+    public int rowSize(int row) {
+        ensureCompacted();
+        return rowPtr[row + 1] - rowPtr[row];
+    }
+
+    /**
+     * Return the column of the entry ranked {@code rank} in a row by descending value, ties
+     * broken by ascending column.
+     *
+     * @param row  row index
+     * @param rank rank of the entry, from 0 to {@code rowSize(row) - 1}
+     * @return column index of the entry
+     */
+    public int getNeighbor(int row, int rank) {
+        ensureOrdered();
+        return columns.get(order.get(rowPtr[row] + rank));
+    }
+
+    /**
+     * Return the value of the entry ranked {@code rank} in a row by descending value.
+     *
+     * @param row  row index
+     * @param rank rank of the entry, from 0 to {@code rowSize(row) - 1}
+     * @return value of the entry
+     */
+    public double getNeighborValue(int row, int rank) {
+        ensureOrdered();
+        return values.get(order.get(rowPtr[row] + rank));
+    }
+
+    /**
+     * Return the number of stored entries, counting both triangles.
+     *
+     * @return the number of stored entries
+     */
+    public int size() {
+        ensureCompacted();
+        return rowPtr[dim];
+    }
+
+    /**
+     * @return where the packed arrays are held
+     */
+    public Storage getStorage() {
+        return storage;
+    }
+
+    /**
+     * @return a copy of the lower triangle as a table
+     */
+    @Override
+    public Table<Integer, Integer, Double> getData() {
+        ensureCompacted();
+        Table<Integer, Integer, Double> table = HashBasedTable.create();
+        for (int row = 0; row < dim; row++) {
+            for (int pos = rowPtr[row]; pos < rowPtr[row + 1]; pos++) {
+                int col = columns.get(pos);
+                if (col > row) {
+                    break;
+                }
+                table.put(row, col, values.get(pos));
+            }
+        }
+        return table;
+    }
+
+    @Override
+    public String toString() {
+        return "Dimension: " + dim + " x " + dim + "\n" + getData().toString();
+    }
+
+    private int position(int row, int col) {
+        int low = rowPtr[row], high = rowPtr[row + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midCol = columns.get(mid);
+            if (midCol < col) {
+                low = mid + 1;
+            } else if (midCol > col) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private void ensureCompacted() {
+        if (!compacted) {
+            compact();
+        }
+    }
+
+    private void ensureOrdered() {
+        ensureCompacted();
+        if (!ordered) {
+            sortOrder();
+        }
+    }
+
+    /**
+     * Merge the buffered entries into the packed arrays. Later entries win over earlier ones.
+     */
+    private synchronized void compact() {
+        if (compacted) {
+            return;
+        }
+        // collect the stored lower triangle followed by the buffered entries
+        int numLower = 0;
+        for (int row = 0; row < dim; row++) {
+            for (int pos = rowPtr[row]; pos < rowPtr[row + 1] && columns.get(pos) <= row; pos++) {
+                numLower++;
+            }
+        }
+        int total = numLower + numPending;
+        int[] rows = new int[total];
+        int[] cols = new int[total];
+        double[] vals = new double[total];
+        int idx = 0;
+        for (int row = 0; row < dim; row++) {
+            for (int pos = rowPtr[row]; pos < rowPtr[row + 1] && columns.get(pos) <= row; pos++) {
+                rows[idx] = row;
+                cols[idx] = columns.get(pos);
+                vals[idx] = values.get(pos);
+                idx++;
+            }
+        }
+        System.arraycopy(pendingRows, 0, rows, idx, numPending);
+        System.arraycopy(pendingCols, 0, cols, idx, numPending);
+        System.arraycopy(pendingValues, 0, vals, idx, numPending);
+
+        // stable counting sort by column, then by row
+        int[] byCol = countingSort(cols, total, null);
+        int[] byRow = countingSort(rows, total, byCol);
+
+        // keep the last of duplicated entries and count both triangles per row
+        int[] unique = new int[total];
+        int numUnique = 0;
+        int[] counts = new int[dim + 1];
+        for (int k = 0; k < total; k++) {
+            int cur = byRow[k];
+            if (k + 1 < total) {
+                int next = byRow[k + 1];
+                if (rows[next] == rows[cur] && cols[next] == cols[cur]) {
+                    continue;
+                }
+            }
+            unique[numUnique++] = cur;
+            counts[rows[cur] + 1]++;
+            if (rows[cur] != cols[cur]) {
+                counts[cols[cur] + 1]++;
+            }
+        }
+        for (int row = 0; row < dim; row++) {
+            counts[row + 1] += counts[row];
+        }
+        long size = counts[dim];
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("too many entries for a packed symmetric matrix: " + size);
+        }
+
+        // entries of a row sorted by (row, col) come first, mirrored ones follow in column order
+        int[] newRowPtr = Arrays.copyOf(counts, dim + 1);
+        int[] newColumns = new int[(int) size];
+        double[] newValues = new double[(int) size];
+        int[] next = Arrays.copyOf(counts, dim);
+        for (int k = 0; k < numUnique; k++) {
+            int cur = unique[k];
+            int row = rows[cur], col = cols[cur];
+            int pos = next[row]++;
+            newColumns[pos] = col;
+            newValues[pos] = vals[cur];
+            if (row != col) {
+                pos = next[col]++;
+                newColumns[pos] = row;
+                newValues[pos] = vals[cur];
+            }
+        }
+
+        rowPtr = newRowPtr;
+        store(newColumns, newValues, buildOrder(newRowPtr, newValues));
+        pendingRows = new int[0];
+        pendingCols = new int[0];
+        pendingValues = new double[0];
+        numPending = 0;
+        ordered = true;
+        compacted = true;
+    }
+
+    /**
+     * Rebuild the per-row value order after in-place updates.
+     */
+    private synchronized void sortOrder() {
+        if (ordered) {
+            return;
+        }
+        double[] vals = new double[rowPtr[dim]];
+        values.duplicate().get(vals);
+        int[] ord = buildOrder(rowPtr, vals);
+        order.duplicate().put(ord);
+        ordered = true;
+    }
+
+    private int[] countingSort(int[] keys, int total, int[] input) {
+        int[] counts = new int[dim + 1];
+        for (int k = 0; k < total; k++) {
+            counts[keys[k] + 1]++;
+        }
+        for (int k = 0; k < dim; k++) {
+            counts[k + 1] += counts[k];
+        }
+        int[] output = new int[total];
+        for (int k = 0; k < total; k++) {
+            int cur = input == null ? k : input[k];
+            output[counts[keys[cur]]++] = cur;
+        }
+        return output;
+    }
+
+    private static int[] buildOrder(int[] rowPtr, double[] vals) {
+        int size = rowPtr[rowPtr.length - 1];
+        int[] ord = new int[size];
+        int[] buffer = new int[size];
+        for (int pos = 0; pos < size; pos++) {
+            ord[pos] = pos;
+        }
+        for (int row = 0; row + 1 < rowPtr.length; row++) {
+            if (rowPtr[row + 1] - rowPtr[row] > 1) {
+                mergeSort(ord, buffer, rowPtr[row], rowPtr[row + 1], vals);
+            }
+        }
+        return ord;
+    }
+
+    /**
+     * Stable sort of positions by descending value, so that equal values keep ascending columns.
+     */
+    private static void mergeSort(int[] ord, int[] buffer, int from, int to, double[] vals) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            for (int i = from + 1; i < to; i++) {
+                int cur = ord[i];
+                int j = i - 1;
+                while (j >= from && Double.compare(vals[ord[j]], vals[cur]) < 0) {
+                    ord[j + 1] = ord[j];
+                    j--;
+                }
+                ord[j + 1] = cur;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(ord, buffer, from, mid, vals);
+        mergeSort(ord, buffer, mid, to, vals);
+        if (Double.compare(vals[ord[mid - 1]], vals[ord[mid]]) >= 0) {
+            return;
+        }
+        System.arraycopy(ord, from, buffer, from, to - from);
+        int left = from, right = mid;
+        for (int k = from; k < to; k++) {
+            if (right >= to || (left < mid && Double.compare(vals[buffer[left]], vals[buffer[right]]) >= 0)) {
+                ord[k] = buffer[left++];
+            } else {
+                ord[k] = buffer[right++];
+            }
+        }
+    }
+
+    /**
+     * Move the packed arrays into the configured storage.
+     */
+    private void store(int[] cols, double[] vals, int[] ord) {
+        int size = cols.length;
+        if (storage == Storage.HEAP) {
+            columns = IntBuffer.wrap(cols);
+            values = DoubleBuffer.wrap(vals);
+            order = IntBuffer.wrap(ord);
+            return;
+        }
+        long bytes = 16L * size;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalStateException("packed symmetric matrix of " + size + " entries exceeds a single "
+                    + storage.name().toLowerCase() + " buffer");
+        }
+        ByteBuffer buffer = storage == Storage.DIRECT ? ByteBuffer.allocateDirect((int) bytes) : map((int) bytes);
+        values = slice(buffer, 0, 8 * size).asDoubleBuffer();
+        columns = slice(buffer, 8 * size, 12 * size).asIntBuffer();
+        order = slice(buffer, 12 * size, 16 * size).asIntBuffer();
+        values.duplicate().put(vals);
+        columns.duplicate().put(cols);
+        order.duplicate().put(ord);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int from, int to) {
+        ByteBuffer view = buffer.duplicate();
+        view.limit(to);
+        view.position(from);
+        return view.slice().order(ByteOrder.nativeOrder());
+    }
+
+    private ByteBuffer map(int bytes) {
+        try {
+            File file;
+            if (mappedPath != null) {
+                file = new File(mappedPath);
+                if (file.getParentFile() != null) {
+                    file.getParentFile().mkdirs();
+                }
+            } else {
+                file = File.createTempFile("librec-symm", ".bin");
+                file.deleteOnExit();
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(bytes);
+                return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot map packed symmetric matrix to " + mappedPath, e);
+        }
+    }
+}
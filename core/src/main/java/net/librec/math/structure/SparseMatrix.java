@@ -100,6 +100,58 @@ public class SparseMatrix implements Iterable<MatrixEntry>, DataMatrix, Serializ
         construct(dataTable, colMap);
     }
 
+    /**
+     * Construct a sparse matrix with both CRS and CCS structures from coordinate (COO) arrays.
+     * Both structures are built by counting sort, so no intermediate table is needed. Duplicated
+     * (row, column) entries keep the value which appears last, as a data table would do.
+     *
+     * @param rows       number of rows
+     * @param cols       number of columns
+     * @param rowIndices row index of each entry
+     * @param colIndices column index of each entry
+     * @param values     value of each entry
+     * @param size       number of valid entries in the coordinate arrays
+     */
+    public SparseMatrix(int rows, int cols, int[] rowIndices, int[] colIndices, double[] values, int size) {
+        numRows = rows;
+        numColumns = cols;
+        valueSet = new TreeSet<>();
+        construct(rowIndices, colIndices, values, size);
+    }
+
+    /**
+     * Construct a sparse matrix which adopts the given CRS and CCS arrays without copying them,
+     * e.g. arrays restored from a snapshot.
+     *
+     * @param rows    number of rows
+     * @param cols    number of columns
+     * @param rowPtr  row pointers of CRS structure
+     * @param colInd  column indices of CRS structure
+     * @param rowData data of CRS structure
+     * @param colPtr  column pointers of CCS structure
+     * @param rowInd  row indices of CCS structure
+     * @param colData data of CCS structure
+     */
+    public SparseMatrix(int rows, int cols, int[] rowPtr, int[] colInd, double[] rowData,
+                        int[] colPtr, int[] rowInd, double[] colData) {
+        numRows = rows;
+        numColumns = cols;
+        valueSet = new TreeSet<>();
+        this.rowPtr = rowPtr;
+        this.colInd = colInd;
+        this.rowData = rowData;
+        this.colPtr = colPtr;
+        this.rowInd = rowInd;
+        this.colData = colData;
+        double lastValue = Double.NaN;
+        for (double val : rowData) {
+            if (val != lastValue) {
+                valueSetAdd(val);
+                lastValue = val;
+            }
+        }
+    }
+
     /**
      * Construct a sparse matrix from another sparse matrix
      *
@@ -174,6 +226,87 @@ public class SparseMatrix implements Iterable<MatrixEntry>, DataMatrix, Serializ
         return new SparseMatrix(this);
     }
 
+    /**
+     * Return the matrix of the entries of this matrix which are assigned to a
+     * fold, or of those which are not, built from the CRS arrays of this
+     * matrix in a single pass instead of a copy of the whole matrix whose
+     * other entries are set to zero. As with such a copy, entries of value 0
+     * are left out, see {@link #reshape(SparseMatrix)}, and the value set is
+     * that of this matrix, i.e. the rating scale of all the data.
+     *
+     * @param folds  fold of each entry, in the order of the CRS arrays
+     * @param fold   fold of the entries to keep or leave out
+     * @param inFold true to keep the entries of the fold, false to keep the
+     *               entries of the other folds
+     * @return the matrix of the entries of the fold or of the other folds
+     */
+    public SparseMatrix foldMatrix(byte[] folds, int fold, boolean inFold) {
+        return foldMatrix(folds, null, fold, inFold);
+    }
+
+    /**
+     * Return the matrix of the entries of this matrix which are assigned to a
+     * fold, or of those which are not, see
+     * {@link #foldMatrix(byte[], int, boolean)}, for more folds than a byte
+     * can tell apart.
+     *
+     * @param folds  fold of each entry, in the order of the CRS arrays
+     * @param fold   fold of the entries to keep or leave out
+     * @param inFold true to keep the entries of the fold, false to keep the
+     *               entries of the other folds
+     * @return the matrix of the entries of the fold or of the other folds
+     */
+    public SparseMatrix foldMatrix(int[] folds, int fold, boolean inFold) {
+        return foldMatrix(null, folds, fold, inFold);
+    }
+
+    private SparseMatrix foldMatrix(byte[] byteFolds, int[] intFolds, int fold, boolean inFold) {
+        SparseMatrix res = new SparseMatrix(numRows, numColumns);
+        int size = rowPtr[numRows];
+        int nnz = 0;
+        for (int pos = 0; pos < size; pos++) {
+            if (((byteFolds != null ? byteFolds[pos] : intFolds[pos]) == fold) == inFold && rowData[pos] != 0) {
+                nnz++;
+            }
+        }
+
+        // Compressed Row Storage (CRS), counting the entries of each column
+        res.rowPtr = new int[numRows + 1];
+        res.colInd = new int[nnz];
+        res.rowData = new double[nnz];
+        res.colPtr = new int[numColumns + 1];
+        int index = 0;
+        for (int row = 0; row < numRows; row++) {
+            for (int pos = rowPtr[row]; pos < rowPtr[row + 1]; pos++) {
+                if (((byteFolds != null ? byteFolds[pos] : intFolds[pos]) == fold) == inFold && rowData[pos] != 0) {
+                    res.colInd[index] = colInd[pos];
+                    res.rowData[index] = rowData[pos];
+                    res.colPtr[colInd[pos] + 1]++;
+                    index++;
+                }
+            }
+            res.rowPtr[row + 1] = index;
+        }
+
+        // Compressed Col Storage (CCS), rows visited in increasing order
+        for (int col = 0; col < numColumns; col++) {
+            res.colPtr[col + 1] += res.colPtr[col];
+        }
+        res.rowInd = new int[nnz];
+        res.colData = new double[nnz];
+        int[] next = Arrays.copyOf(res.colPtr, numColumns);
+        for (int row = 0; row < numRows; row++) {
+            for (int pos = res.rowPtr[row]; pos < res.rowPtr[row + 1]; pos++) {
+                int ccsIndex = next[res.colInd[pos]]++;
+                res.rowInd[ccsIndex] = row;
+                res.colData[ccsIndex] = res.rowData[pos];
+            }
+        }
+
+        res.valueSet.addAll(valueSet);
+        return res;
+    }
+
     /**
      * @return the transpose of current matrix
      */
@@ -288,6 +421,95 @@ public class SparseMatrix implements Iterable<MatrixEntry>, DataMatrix, Serializ
         }
     }
 
+    /**
+     * Construct a sparse matrix from coordinate arrays
+     *
+     * @param rowIndices row index of each entry
+     * @param colIndices column index of each entry
+     * @param values     value of each entry
+     * @param size       number of valid entries
+     */
+    private void construct(int[] rowIndices, int[] colIndices, double[] values, int size) {
+        // stable counting sort by column, then by row: entries end up in row-major order with
+        // ascending columns, and duplicates keep their input order
+        int[] count = new int[numColumns + 1];
+        for (int k = 0; k < size; k++) {
+            int col = colIndices[k];
+            if (col < 0 || col >= numColumns)
+                throw new IllegalArgumentException("colInd[" + k + "]=" + col + ", which is not a valid column index");
+            count[col + 1]++;
+        }
+        for (int i = 0; i < numColumns; i++)
+            count[i + 1] += count[i];
+        int[] byColumn = new int[size];
+        for (int k = 0; k < size; k++)
+            byColumn[count[colIndices[k]]++] = k;
+
+        count = new int[numRows + 1];
+        for (int k = 0; k < size; k++) {
+            int row = rowIndices[k];
+            if (row < 0 || row >= numRows)
+                throw new IllegalArgumentException("rowInd[" + k + "]=" + row + ", which is not a valid row index");
+            count[row + 1]++;
+        }
+        for (int i = 0; i < numRows; i++)
+            count[i + 1] += count[i];
+        int[] byRow = new int[size];
+        for (int k = 0; k < size; k++) {
+            int entry = byColumn[k];
+            byRow[count[rowIndices[entry]]++] = entry;
+        }
+        byColumn = null;
+
+        // CRS, merging duplicated entries
+        rowPtr = new int[numRows + 1];
+        int nnz = 0, lastRow = -1, lastCol = -1;
+        for (int k = 0; k < size; k++) {
+            int entry = byRow[k];
+            int row = rowIndices[entry], col = colIndices[entry];
+            if (row == lastRow && col == lastCol) {
+                byRow[nnz - 1] = entry;
+            } else {
+                byRow[nnz++] = entry;
+                rowPtr[row + 1]++;
+                lastRow = row;
+                lastCol = col;
+            }
+        }
+        for (int i = 0; i < numRows; i++)
+            rowPtr[i + 1] += rowPtr[i];
+
+        colInd = new int[nnz];
+        rowData = new double[nnz];
+        colPtr = new int[numColumns + 1];
+        double lastValue = Double.NaN;
+        for (int j = 0; j < nnz; j++) {
+            int entry = byRow[j];
+            double val = values[entry];
+            colInd[j] = colIndices[entry];
+            rowData[j] = val;
+            colPtr[colInd[j] + 1]++;
+            if (val != lastValue) {
+                valueSetAdd(val);
+                lastValue = val;
+            }
+        }
+        for (int i = 0; i < numColumns; i++)
+            colPtr[i + 1] += colPtr[i];
+
+        // CCS, rows are visited in ascending order so each column stays sorted
+        rowInd = new int[nnz];
+        colData = new double[nnz];
+        int[] cursor = Arrays.copyOf(colPtr, numColumns);
+        for (int row = 0; row < numRows; row++) {
+            for (int j = rowPtr[row]; j < rowPtr[row + 1]; j++) {
+                int index = cursor[colInd[j]]++;
+                rowInd[index] = row;
+                colData[index] = rowData[j];
+            }
+        }
+    }
+
     /**
      * @return number of rows
      */
@@ -906,8 +1128,9 @@ public class SparseMatrix implements Iterable<MatrixEntry>, DataMatrix, Serializ
      *
      * @param row  the index of row
      * @param col  the index of column
+     * @return the position of entry [row, column] in the CRS arrays
      */
-    private int getCRSIndex(int row, int col) {
+    public int getCRSIndex(int row, int col) {
         int i = Arrays.binarySearch(colInd, rowPtr[row], rowPtr[row + 1], col);
 
         if (i >= 0 && colInd[i] == col)
@@ -17,10 +17,7 @@
 //
 package net.librec.math.structure;
 
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Table;
+import com.google.common.primitives.Ints;
 import net.librec.math.algorithm.Randoms;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -32,7 +29,21 @@ import java.util.*;
  * Data Structure: Sparse Tensor <br>
  * <p>
  * For easy documentation, here we use {@code (keys, value)} to indicate each entry of a tensor, and {@code index} is
- * used to indicate the position in which the entry is stored in the lists.
+ * used to indicate the position in which the entry is stored in the arrays.
+ * </p>
+ * <p>
+ * Entries are stored in coordinate (COO) format, i.e. the keys of dimension {@code d} in {@code ndKeys[d]} and the
+ * values in {@code values}, of which only the first {@link #size()} positions are valid. An entry is located by its
+ * keys through an open addressing hash table of positions, and the entries of a key of dimension {@code d} through the
+ * index of the dimension, which sorts the positions by key in compressed (CRS-like) arrays. Both are built lazily and
+ * rebuilt after entries are inserted, removed or reordered. Keys must be non-negative.
+ * </p>
+ * <p>
+ * A tensor may be read by several threads as long as none of them modifies it. The hash table is built in a local
+ * array and published through a volatile field, so {@link #get(int...)} and {@link #contains(int...)} may build it
+ * concurrently. The indices of dimensions are not published safely: call {@link #buildIndices()} before sharing a
+ * tensor if the threads read it by key of a dimension, e.g. through {@link #fiber(int, int...)} or
+ * {@link #slice(int, int, int...)}.
  * </p>
  * <Strong>Reference:</strong> Kolda and Bader, <strong>Tensor Decompositions and Applications</strong>, SIAM REVIEW,
  * Vol. 51, No. 3, pp. 455–500
@@ -43,7 +54,7 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
 
     private static final Log LOG = LogFactory.getLog(SparseTensor.class);
 
-    private static final long serialVersionUID = 2487513413901432943L;
+    private static final long serialVersionUID = -4151207583618946823L;
 
     private class TensorIterator implements Iterator<TensorEntry> {
 
@@ -51,7 +62,7 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
         private SparseTensorEntry entry = new SparseTensorEntry();
 
         public boolean hasNext() {
-            return index < values.size();
+            return index < size;
         }
 
         public TensorEntry next() {
@@ -74,30 +85,22 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
         }
 
         public int key(int d) {
-            return ndKeys[d].get(index);
+            return ndKeys[d][index];
         }
 
         public double get() {
-            return values.get(index);
+            return values[index];
         }
 
         public void set(double value) {
-            values.set(index, value);
+            values[index] = value;
         }
 
         /**
          * remove the current entry
          */
         public void remove() {
-            for (int d = 0; d < numDimensions; d++) {
-
-                // update indices if necessary
-                if (isIndexed(d))
-                    keyIndices[d].remove(key(d), index);
-
-                ndKeys[d].remove(index);
-            }
-            values.remove(index);
+            removeAt(index);
         }
 
         public String toString() {
@@ -126,13 +129,30 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
      */
     public int numDimensions;
     public int[] dimensions;
-    public List<Integer>[] ndKeys; // n-dimensional array
-    public List<Double> values; // values
+    /**
+     * n-dimensional keys, {@code ndKeys[d][index]} being the key in dimension d of the entry at index
+     */
+    public int[][] ndKeys;
+    /**
+     * entry values
+     */
+    public double[] values;
+    /**
+     * number of entries, i.e. of valid positions in {@link #ndKeys} and {@link #values}
+     */
+    private int size;
 
-    private Multimap<Integer, Integer>[] keyIndices; // each multimap = {key, {pos1, pos2, ...}}
-    private List<Integer> indexedDimensions; // indexed dimensions
-    private Set<Integer> indexedDimensionsSet;// indexed dimensionsSet
+    /**
+     * index of dimension d: the positions of the entries of key k are {@code keyPositions[d][keyPtr[d][k]]} to
+     * {@code keyPositions[d][keyPtr[d][k + 1] - 1]} in increasing order; null if dimension d is not indexed
+     */
+    private int[][] keyPtr;
+    private int[][] keyPositions;
 
+    /**
+     * open addressing table of the entries by keys, storing index + 1 and 0 for an empty slot; null if not built
+     */
+    private volatile int[] entryTable;
 
     // dimensions of users and items
     private int userDimension, itemDimension;
@@ -143,7 +163,20 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
      * @param dims dimensions of a tensor
      */
     public SparseTensor(int... dims) {
-        this(dims, null, null);
+        this(dims, 0);
+    }
+
+    private SparseTensor(int[] dims, int capacity) {
+        if (dims.length < 3)
+            throw new Error("The dimension of a tensor cannot be smaller than 3!");
+
+        numDimensions = dims.length;
+        dimensions = Arrays.copyOf(dims, numDimensions);
+
+        ndKeys = new int[numDimensions][capacity];
+        values = new double[capacity];
+        keyPtr = new int[numDimensions][];
+        keyPositions = new int[numDimensions][];
     }
 
     /**
@@ -153,47 +186,62 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
      * @param nds  n-dimensional keys
      * @param vals entry values
      */
-    @SuppressWarnings("unchecked")
     public SparseTensor(int[] dims, List<Integer>[] nds, List<Double> vals) {
-        if (dims.length < 3)
-            throw new Error("The dimension of a tensor cannot be smaller than 3!");
+        this(dims, vals == null ? 0 : vals.size());
 
-        numDimensions = dims.length;
-        dimensions = new int[numDimensions];
+        if (vals != null) {
+            size = vals.size();
+            for (int d = 0; d < numDimensions; d++) {
+                for (int index = 0; index < size; index++) {
+                    ndKeys[d][index] = nds[d].get(index);
+                }
+            }
+            for (int index = 0; index < size; index++) {
+                values[index] = vals.get(index);
+            }
+        }
+    }
 
-        ndKeys = (List<Integer>[]) new List<?>[numDimensions];
-        keyIndices = (Multimap<Integer, Integer>[]) new Multimap<?, ?>[numDimensions];
+    /**
+     * Construct a sparse tensor which adopts the given key and value arrays without copying them, e.g. arrays
+     * restored from a snapshot.
+     *
+     * @param dims dimensions of a tensor
+     * @param nds  n-dimensional keys, {@code nds[d][index]} being the key in dimension d of the entry at index
+     * @param vals entry values
+     */
+    public SparseTensor(int[] dims, int[][] nds, double[] vals) {
+        this(dims, 0);
 
         for (int d = 0; d < numDimensions; d++) {
-            dimensions[d] = dims[d];
-            ndKeys[d] = nds == null ? new ArrayList<Integer>() : new ArrayList<Integer>(nds[d]);
-            keyIndices[d] = HashMultimap.create();
-            //System.out.println(keyIndices[d]);
+            if (nds[d].length < vals.length)
+                throw new IllegalArgumentException("The keys of dimension " + d + " do not match the values!");
+            ndKeys[d] = nds[d];
         }
-
-        values = vals == null ? new ArrayList<Double>() : new ArrayList<Double>(vals);
-        indexedDimensions = new ArrayList<Integer>(numDimensions);
-        indexedDimensionsSet = new HashSet<Integer>((int) (numDimensions/0.7));
-
-
+        values = vals;
+        size = vals.length;
     }
 
     /**
      * make a deep clone
      */
     public SparseTensor clone() {
-        SparseTensor res = new SparseTensor(dimensions);
+        SparseTensor res = new SparseTensor(dimensions, 0);
 
-        // copy indices and values
+        // copy keys and values
         for (int d = 0; d < numDimensions; d++) {
-            res.ndKeys[d].addAll(this.ndKeys[d]);
-            res.keyIndices[d].putAll(this.keyIndices[d]);
+            res.ndKeys[d] = Arrays.copyOf(ndKeys[d], size);
         }
+        res.values = Arrays.copyOf(values, size);
+        res.size = size;
 
-        res.values.addAll(this.values);
-
-        // copy indexed array
-        res.indexedDimensions.addAll(this.indexedDimensions);
+        // indices of dimensions are replaced rather than updated, so they can be shared
+        for (int d = 0; d < numDimensions; d++) {
+            res.keyPtr[d] = keyPtr[d];
+            res.keyPositions[d] = keyPositions[d];
+        }
+        int[] table = entryTable;
+        res.entryTable = table == null ? null : table.clone();
 
         // others
         res.userDimension = userDimension;
@@ -215,10 +263,10 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
 
         if (index >= 0) {
             // if keys exist: update value
-            values.set(index, values.get(index) + val);
+            values[index] += val;
         } else {
             // if keys do not exist: add a new entry
-            set(val, keys);
+            append(val, keys);
         }
     }
 
@@ -234,23 +282,43 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
 
         // if i-entry exists, set it a new value
         if (index >= 0) {
-            values.set(index, val);
+            values[index] = val;
             return;
         }
 
         // otherwise insert a new entry
-        for (int d = 0; d < numDimensions; d++) {
-            ndKeys[d].add(keys[d]);
-
-            // update indices if necessary
-            if (isIndexed(d)) {
-                keyIndices[d].put(keys[d], ndKeys[d].size() - 1);
+        append(val, keys);
+    }
 
-                // other keys' indices do not change
+    /**
+     * insert a new entry at the end of the arrays
+     */
+    private void append(double val, int[] keys) {
+        if (size == values.length) {
+            int capacity = Math.max(16, size + (size >> 1));
+            for (int d = 0; d < numDimensions; d++) {
+                ndKeys[d] = Arrays.copyOf(ndKeys[d], capacity);
             }
+            values = Arrays.copyOf(values, capacity);
         }
-        values.add(val);
 
+        for (int d = 0; d < numDimensions; d++) {
+            ndKeys[d][size] = keys[d];
+
+            // indices of dimensions are rebuilt when needed
+            keyPtr[d] = null;
+            keyPositions[d] = null;
+        }
+        values[size++] = val;
+
+        // the entry table is updated in place until it gets too full
+        int[] table = entryTable;
+        if (table != null) {
+            if (2 * size > table.length)
+                entryTable = null;
+            else
+                putEntry(table, size - 1);
+        }
     }
 
     /**
@@ -267,17 +335,32 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
         if (index < 0)
             return false;
 
-        for (int d = 0; d < numDimensions; d++) {
-            ndKeys[d].remove(index);
+        removeAt(index);
 
-            // update indices if necessary
-            if (isIndexed(d)) {
-                buildIndex(d); // re-build indices
-            }
+        return true;
+    }
+
+    /**
+     * remove the entry at a given index, keeping the order of the other entries
+     */
+    private void removeAt(int index) {
+        int numMoved = size - index - 1;
+        for (int d = 0; d < numDimensions; d++) {
+            System.arraycopy(ndKeys[d], index + 1, ndKeys[d], index, numMoved);
         }
-        values.remove(index);
+        System.arraycopy(values, index + 1, values, index, numMoved);
+        size--;
 
-        return true;
+        // positions have changed: re-build indices when needed
+        clearIndices();
+    }
+
+    private void clearIndices() {
+        for (int d = 0; d < numDimensions; d++) {
+            keyPtr[d] = null;
+            keyPositions[d] = null;
+        }
+        entryTable = null;
     }
 
     /**
@@ -290,10 +373,18 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
     public List<Integer> getIndices(int user, int item) {
         List<Integer> res = new ArrayList<Integer>();
 
-        Collection<Integer> indices = getIndex(userDimension, user);
-        for (int index : indices) {
-            if (key(itemDimension, index) == item) {
-                res.add(index);
+        if (!isIndexed(userDimension))
+            buildIndex(userDimension);
+
+        int[] ptr = keyPtr[userDimension];
+        int[] positions = keyPositions[userDimension];
+        if (user < 0 || user >= ptr.length - 1)
+            return res;
+
+        int[] items = ndKeys[itemDimension];
+        for (int i = ptr[user]; i < ptr[user + 1]; i++) {
+            if (items[positions[i]] == item) {
+                res.add(positions[i]);
             }
         }
 
@@ -312,32 +403,28 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
         if (subKey.length != numDimensions - 1)
             throw new Exception("The given input does not match with the subKey dimension!");
         // if no data exists
-        if (values.size() == 0)
+        if (size == 0)
             return null;
 
-        // if no indexed dimension exists
-        if (indexedDimensions.size() == 0)
-            buildIndex(0);
-
-        // retrieve from the first indexed dimension
-        int d = indexedDimensions.get(0);
+        int targetDim = numDimensions - 1;
+        int[] fixedKeys = new int[numDimensions];
+        for (int dd = 0; dd < targetDim; dd++) {
+            fixedKeys[dd] = subKey[dd];
+        }
 
-        // all relevant positions
-        Collection<Integer> indices = keyIndices[d].get(subKey[d]);
-        if (indices == null || indices.size() == 0)
+        // retrieve from an indexed dimension
+        int d = searchDimension(targetDim, -1);
+        int key = fixedKeys[d];
+        int[] ptr = keyPtr[d];
+        if (key < 0 || key >= ptr.length - 1 || ptr[key] == ptr[key + 1])
             return null;
 
         // for each possible position
-        for (int index : indices) {
-            boolean found = true;
-            for (int dd = 0; dd < numDimensions - 1; dd++) {
-                if (subKey[dd] != key(dd, index)) {
-                    found = false;
-                    break;
-                }
-            }
-            if (found)
-                res.add(ndKeys[numDimensions - 1].get(index));
+        int[] positions = keyPositions[d];
+        for (int i = ptr[key]; i < ptr[key + 1]; i++) {
+            int index = positions[i];
+            if (matches(index, fixedKeys, targetDim, -1))
+                res.add(ndKeys[targetDim][index]);
         }
 
         return res;
@@ -356,31 +443,18 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
             throw new Exception("The given input does not match with the tensor dimension!");
 
         // if no data exists
-        if (values.size() == 0)
+        if (size == 0)
             return -1;
 
-        // if no indexed dimension exists
-        if (indexedDimensions.size() == 0)
-            buildIndex(0);
-
-        // retrieve from the first indexed dimension
-        int d = indexedDimensions.get(0);
-
-        // all relevant positions
-        Collection<Integer> indices = keyIndices[d].get(keys[d]);
-        if (indices == null || indices.size() == 0)
-            return -1;
+        int[] table = entryTable;
+        if (table == null)
+            table = buildEntryTable();
 
-        // for each possible position
-        for (int index : indices) {
-            boolean found = true;
-            for (int dd = 0; dd < numDimensions; dd++) {
-                if (keys[dd] != key(dd, index)) {
-                    found = false;
-                    break;
-                }
-            }
-            if (found)
+        // probe the slots from the hash of the keys until an empty one
+        int mask = table.length - 1;
+        for (int slot = hashKeys(keys) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int index = table[slot] - 1;
+            if (matches(index, keys, -1, -1))
                 return index;
         }
 
@@ -389,6 +463,83 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
 
     }
 
+    /**
+     * build the entry table at a load factor of at most 1/4, and publish it once it is complete; concurrent readers
+     * may each build an identical table
+     */
+    private int[] buildEntryTable() {
+        int capacity = 16;
+        while (capacity < 4 * size)
+            capacity <<= 1;
+
+        int[] table = new int[capacity];
+        for (int index = 0; index < size; index++) {
+            putEntry(table, index);
+        }
+        entryTable = table;
+        return table;
+    }
+
+    private void putEntry(int[] table, int index) {
+        int mask = table.length - 1;
+        int slot = hashEntry(index) & mask;
+        while (table[slot] != 0)
+            slot = (slot + 1) & mask;
+        table[slot] = index + 1;
+    }
+
+    private int hashKeys(int[] keys) {
+        int h = 0;
+        for (int d = 0; d < numDimensions; d++) {
+            h = 31 * h + keys[d];
+        }
+        return spread(h);
+    }
+
+    private int hashEntry(int index) {
+        int h = 0;
+        for (int d = 0; d < numDimensions; d++) {
+            h = 31 * h + ndKeys[d][index];
+        }
+        return spread(h);
+    }
+
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        return h ^ (h >>> 13);
+    }
+
+    /**
+     * Return whether the entry at a given index has the given keys in all dimensions but the free ones
+     */
+    private boolean matches(int index, int[] keys, int freeDim1, int freeDim2) {
+        for (int d = 0; d < numDimensions; d++) {
+            if (d != freeDim1 && d != freeDim2 && ndKeys[d][index] != keys[d])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Return a dimension other than the free ones to search entries by key: an indexed one if any, otherwise the
+     * first one, which gets indexed.
+     */
+    private int searchDimension(int freeDim1, int freeDim2) {
+        int first = -1;
+        for (int d = 0; d < numDimensions; d++) {
+            if (d == freeDim1 || d == freeDim2)
+                continue;
+            if (isIndexed(d))
+                return d;
+            if (first < 0)
+                first = d;
+        }
+
+        buildIndex(first);
+        return first;
+    }
+
     /**
      * A fiber is defined by fixing every index but one. For example, a matrix column is a mode-1 fiber and a matrix row
      * is a mode-2 fiber.
@@ -401,42 +552,29 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
         if ((keys.length != numDimensions - 1) || size() < 1)
             throw new Error("The input indices do not match the fiber specification!");
 
-        // find an indexed dimension for searching indices
-        int d = -1;
-        if ((indexedDimensions.size() == 0) || (indexedDimensions.contains(dim) && indexedDimensions.size() == 1)) {
-            d = (dim != 0 ? 0 : 1);
-            buildIndex(d);
-        } else {
-            for (int dd : indexedDimensions) {
-                if (dd != dim) {
-                    d = dd;
-                    break;
-                }
-            }
+        int[] fixedKeys = new int[numDimensions];
+        for (int dd = 0, ndi = 0; dd < numDimensions; dd++) {
+            if (dd != dim)
+                fixedKeys[dd] = keys[ndi++];
         }
 
+        // find an indexed dimension for searching indices
+        int d = searchDimension(dim, -1);
+
         SparseVector res = new SparseVector(dimensions[dim]);
 
         // all relevant positions
-        Collection<Integer> indices = keyIndices[d].get(keys[d < dim ? d : d - 1]);
-        if (indices == null || indices.size() == 0)
+        int key = fixedKeys[d];
+        int[] ptr = keyPtr[d];
+        if (key < 0 || key >= ptr.length - 1)
             return res;
 
         // for each possible position
-        for (int index : indices) {
-            boolean found = true;
-            for (int dd = 0, ndi = 0; dd < numDimensions; dd++) {
-
-                if (dd == dim)
-                    continue;
-
-                if (keys[ndi++] != key(dd, index)) {
-                    found = false;
-                    break;
-                }
-            }
-            if (found) {
-                res.set(key(dim, index), value(index));
+        int[] positions = keyPositions[d];
+        for (int i = ptr[key]; i < ptr[key + 1]; i++) {
+            int index = positions[i];
+            if (matches(index, fixedKeys, dim, -1)) {
+                res.set(ndKeys[dim][index], values[index]);
             }
         }
 
@@ -461,7 +599,7 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
      * @return whether a dimension d is indexed
      */
     public boolean isIndexed(int d) {
-        return indexedDimensions.contains(d);
+        return keyPtr[d] != null;
     }
 
     /**
@@ -481,13 +619,11 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
      * @return whether a tensor is diagonal
      */
     public boolean isDiagonal() {
-        for (TensorEntry te : this) {
-            double val = te.get();
-            if (val != 0) {
-                int i = te.key(0);
-                for (int d = 0; d < numDimensions; d++) {
-                    int j = te.key(d);
-                    if (i != j)
+        for (int index = 0; index < size; index++) {
+            if (values[index] != 0) {
+                int i = ndKeys[0][index];
+                for (int d = 1; d < numDimensions; d++) {
+                    if (i != ndKeys[d][index])
                         return false;
                 }
             }
@@ -507,7 +643,7 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
         assert keys.length == this.numDimensions;
 
         int index = findIndex(keys);
-        return index < 0 ? 0 : values.get(index);
+        return index < 0 ? 0 : values[index];
     }
 
     /**
@@ -520,45 +656,52 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
             int j = i + Randoms.uniform(len - i);
 
             // swap values
-            double temp = values.get(i);
-            values.set(i, values.get(j));
-            values.set(j, temp);
+            double temp = values[i];
+            values[i] = values[j];
+            values[j] = temp;
 
             // swap keys
             for (int d = 0; d < numDimensions; d++) {
-                int ikey = key(d, i);
-                int jkey = key(d, j);
-                ndKeys[d].set(i, jkey);
-                ndKeys[d].set(j, ikey);
-
-                // update indices
-                if (isIndexed(d)) {
-                    keyIndices[d].remove(jkey, j);
-                    keyIndices[d].put(jkey, i);
-
-                    keyIndices[d].remove(ikey, i);
-                    keyIndices[d].put(ikey, j);
-                }
-
+                int ikey = ndKeys[d][i];
+                ndKeys[d][i] = ndKeys[d][j];
+                ndKeys[d][j] = ikey;
             }
-
         }
+
+        // positions have changed: re-build indices when needed
+        clearIndices();
     }
 
     /**
-     * build index at dimensions nd
+     * build index at dimensions nd by a counting sort of the positions by key
      *
      * @param dims dimensions to be indexed
      */
     public void buildIndex(int... dims) {
         for (int d : dims) {
-            keyIndices[d].clear();
-            for (int index = 0; index < ndKeys[d].size(); index++) {
-                keyIndices[d].put(key(d, index), index);
+            int[] keys = ndKeys[d];
+
+            int numKeys = dimensions[d];
+            for (int index = 0; index < size; index++) {
+                numKeys = Math.max(numKeys, keys[index] + 1);
+            }
+
+            int[] ptr = new int[numKeys + 1];
+            for (int index = 0; index < size; index++) {
+                ptr[keys[index] + 1]++;
+            }
+            for (int key = 0; key < numKeys; key++) {
+                ptr[key + 1] += ptr[key];
             }
 
-            if (!indexedDimensions.contains(d))
-                indexedDimensions.add(d);
+            int[] next = Arrays.copyOf(ptr, numKeys);
+            int[] positions = new int[size];
+            for (int index = 0; index < size; index++) {
+                positions[next[keys[index]]++] = index;
+            }
+
+            keyPtr[d] = ptr;
+            keyPositions[d] = positions;
         }
     }
 
@@ -582,7 +725,39 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
         if (!isIndexed(d))
             buildIndex(d);
 
-        return keyIndices[d].get(key);
+        int[] ptr = keyPtr[d];
+        if (key < 0 || key >= ptr.length - 1)
+            return Collections.emptyList();
+
+        return Ints.asList(keyPositions[d]).subList(ptr[key], ptr[key + 1]);
+    }
+
+    /**
+     * Return the pointers of the index of dimension d, building it if necessary: the positions of the entries of key
+     * {@code k} are {@code getIndexPositions(d)[ptr[k]]} to {@code getIndexPositions(d)[ptr[k + 1] - 1]}.
+     *
+     * @param d dimension
+     * @return pointers of the index of dimension d, of length at least {@code dimensions[d] + 1}
+     */
+    public int[] getIndexPointers(int d) {
+        if (!isIndexed(d))
+            buildIndex(d);
+
+        return keyPtr[d];
+    }
+
+    /**
+     * Return the positions of the entries sorted by key in dimension d, building the index if necessary.
+     *
+     * @param d dimension
+     * @return positions of the entries sorted by key in dimension d
+     * @see #getIndexPointers(int)
+     */
+    public int[] getIndexPositions(int d) {
+        if (!isIndexed(d))
+            buildIndex(d);
+
+        return keyPositions[d];
     }
 
     /**
@@ -608,7 +783,8 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
      * @return key in the position {@code index} of dimension {@code d}
      */
     public int key(int d, int index) {
-        return ndKeys[d].get(index);
+        rangeCheck(index);
+        return ndKeys[d][index];
     }
 
     /**
@@ -618,7 +794,13 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
      * @return value in a given index
      */
     public double value(int index) {
-        return values.get(index);
+        rangeCheck(index);
+        return values[index];
+    }
+
+    private void rangeCheck(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
     }
 
     /**
@@ -630,13 +812,15 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
      * @return keys in a target dimension {@code td} related with a key in dimension {@code sd}
      */
     public List<Integer> getRelevantKeys(int sd, int key, int td) {
-        Collection<Integer> indices = getIndex(sd, key);
-        List<Integer> res = null;
-        if (indices != null) {
-            res = new ArrayList<Integer>();
-            for (int index : indices) {
-                res.add(key(td, index));
-            }
+        List<Integer> res = new ArrayList<Integer>();
+
+        int[] ptr = getIndexPointers(sd);
+        if (key < 0 || key >= ptr.length - 1)
+            return res;
+
+        int[] positions = keyPositions[sd];
+        for (int i = ptr[key]; i < ptr[key + 1]; i++) {
+            res.add(ndKeys[td][positions[i]]);
         }
 
         return res;
@@ -646,7 +830,7 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
      * @return number of entries of the tensor
      */
     public int size() {
-        return values.size();
+        return size;
     }
 
     /**
@@ -662,73 +846,40 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
         if (otherKeys.length != numDimensions - 2)
             throw new Error("The input dimensions do not match the tensor specification!");
 
-        // find an indexed array to search
-        int d = -1;
-        boolean cond1 = indexedDimensions.size() == 0;
-        boolean cond2 = (indexedDimensions.contains(rowDim) || indexedDimensions.contains(colDim))
-                && indexedDimensions.size() == 1;
-        boolean cond3 = indexedDimensions.contains(rowDim) && indexedDimensions.contains(colDim)
-                && indexedDimensions.size() == 2;
-        if (cond1 || cond2 || cond3) {
-            for (d = 0; d < numDimensions; d++) {
-                if (d != rowDim && d != colDim)
-                    break;
-            }
-            buildIndex(d);
-        } else {
-            for (int dd : indexedDimensions) {
-                if (dd != rowDim && dd != colDim) {
-                    d = dd;
-                    break;
-                }
-            }
+        int[] fixedKeys = new int[numDimensions];
+        for (int dd = 0, j = 0; dd < numDimensions; dd++) {
+            if (dd != rowDim && dd != colDim)
+                fixedKeys[dd] = otherKeys[j++];
         }
 
-        // get search key
-        int key = -1;
-        for (int dim = 0, i = 0; dim < numDimensions; dim++) {
-            if (dim == rowDim || dim == colDim)
-                continue;
-
-            if (dim == d) {
-                key = otherKeys[i];
-                break;
-            }
-            i++;
-        }
+        // find an indexed array to search
+        int d = searchDimension(rowDim, colDim);
 
         // all relevant positions
-        Collection<Integer> indices = keyIndices[d].get(key);
-        if (indices == null || indices.size() == 0)
+        int key = fixedKeys[d];
+        int[] ptr = keyPtr[d];
+        if (key < 0 || key >= ptr.length - 1 || ptr[key] == ptr[key + 1])
             return null;
 
-        Table<Integer, Integer, Double> dataTable = HashBasedTable.create();
-        Multimap<Integer, Integer> colMap = HashMultimap.create();
+        int numCandidates = ptr[key + 1] - ptr[key];
+        int[] rows = new int[numCandidates];
+        int[] cols = new int[numCandidates];
+        double[] vals = new double[numCandidates];
+        int count = 0;
 
         // for each possible position
-        for (int index : indices) {
-            boolean found = true;
-            for (int dd = 0, j = 0; dd < numDimensions; dd++) {
-
-                if (dd == rowDim || dd == colDim)
-                    continue;
-
-                if (otherKeys[j++] != key(dd, index)) {
-                    found = false;
-                    break;
-                }
-            }
-            if (found) {
-                int row = ndKeys[rowDim].get(index);
-                int col = ndKeys[colDim].get(index);
-                double val = values.get(index);
-
-                dataTable.put(row, col, val);
-                colMap.put(col, row);
+        int[] positions = keyPositions[d];
+        for (int i = ptr[key]; i < ptr[key + 1]; i++) {
+            int index = positions[i];
+            if (matches(index, fixedKeys, rowDim, colDim)) {
+                rows[count] = ndKeys[rowDim][index];
+                cols[count] = ndKeys[colDim][index];
+                vals[count] = values[index];
+                count++;
             }
         }
 
-        return new SparseMatrix(dimensions[rowDim], dimensions[colDim], dataTable, colMap);
+        return new SparseMatrix(dimensions[rowDim], dimensions[colDim], rows, cols, vals, count);
     }
 
     /**
@@ -739,39 +890,29 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
      */
     public SparseMatrix matricization(int n) {
         int numRows = dimensions[n];
+
+        // the column of an entry is the sum of its keys of the other dimensions multiplied by their strides
+        int[] strides = new int[numDimensions];
         int numCols = 1;
         for (int d = 0; d < numDimensions; d++) {
-            if (d != n)
+            if (d != n) {
+                strides[d] = numCols;
                 numCols *= dimensions[d];
+            }
         }
 
-        Table<Integer, Integer, Double> dataTable = HashBasedTable.create();
-        Multimap<Integer, Integer> colMap = HashMultimap.create();
-        for (TensorEntry te : this) {
-            int[] keys = te.keys();
-
-            int i = keys[n];
-            int j = 0;
-            for (int k = 0; k < numDimensions; k++) {
-                if (k == n)
-                    continue;
-
-                int ik = keys[k];
-                int jk = 1;
-                for (int m = 0; m < k; m++) {
-                    if (m == n)
-                        continue;
-                    jk *= dimensions[m];
-                }
+        int[] cols = new int[size];
+        for (int d = 0; d < numDimensions; d++) {
+            if (d == n)
+                continue;
 
-                j += ik * jk;
+            int[] keys = ndKeys[d];
+            for (int index = 0; index < size; index++) {
+                cols[index] += keys[index] * strides[d];
             }
-
-            dataTable.put(i, j, te.get());
-            colMap.put(j, i);
         }
 
-        return new SparseMatrix(numRows, numCols, dataTable, colMap);
+        return new SparseMatrix(numRows, numCols, ndKeys[n], cols, values, size);
     }
 
     /**
@@ -855,19 +996,8 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
      * @return a sparse rating matrix
      */
     public SparseMatrix rateMatrix() {
-
-        Table<Integer, Integer, Double> dataTable = HashBasedTable.create();
-        Multimap<Integer, Integer> colMap = HashMultimap.create();
-
-        for (TensorEntry te : this) {
-            int u = te.key(userDimension);
-            int i = te.key(itemDimension);
-
-            dataTable.put(u, i, te.get());
-            colMap.put(i, u);
-        }
-
-        return new SparseMatrix(dimensions[userDimension], dimensions[itemDimension], dataTable, colMap);
+        return new SparseMatrix(dimensions[userDimension], dimensions[itemDimension], ndKeys[userDimension],
+                ndKeys[itemDimension], values, size);
     }
 
     public Iterator<TensorEntry> iterator() {
@@ -880,8 +1010,8 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
     public double norm() {
         double res = 0;
 
-        for (double val : values) {
-            res += val * val;
+        for (int index = 0; index < size; index++) {
+            res += values[index] * values[index];
         }
 
         return Math.sqrt(res);
@@ -893,8 +1023,8 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
     public double mean() {
         double res = 0;
 
-        for (double val : values) {
-            res += val;
+        for (int index = 0; index < size; index++) {
+            res += values[index];
         }
 
         return res / size();
@@ -910,11 +1040,13 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
             throw new Exception("The dimensions of two sparse tensors do not match!");
 
         double res = 0;
-        for (TensorEntry te : this) {
-            double v1 = te.get();
-            double v2 = st.get(te.keys());
+        int[] keys = new int[numDimensions];
+        for (int index = 0; index < size; index++) {
+            for (int d = 0; d < numDimensions; d++) {
+                keys[d] = ndKeys[d][index];
+            }
 
-            res += v1 * v2;
+            res += values[index] * st.get(keys);
         }
 
         return res;
@@ -978,7 +1110,7 @@ public class SparseTensor implements DataSet, Iterable<TensorEntry>, Serializabl
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("N-Dimension: ").append(numDimensions).append(", Size: ").append(size()).append("\n");
-        for (int index = 0; index < values.size(); index++) {
+        for (int index = 0; index < size; index++) {
             for (int d = 0; d < numDimensions; d++) {
                 sb.append(key(d, index)).append("\t");
             }
@@ -18,21 +18,29 @@
 package net.librec.recommender;
 
 import com.google.common.collect.BiMap;
+import net.librec.annotation.ThreadSafePredict;
 import net.librec.common.LibrecException;
 import net.librec.conf.Configuration;
 import net.librec.data.DataModel;
+import net.librec.eval.FusedRankingEvaluator;
 import net.librec.eval.Measure;
 import net.librec.eval.Measure.MeasureValue;
+import net.librec.eval.RatingErrorAccumulator;
 import net.librec.eval.RecommenderEvaluator;
+import net.librec.math.algorithm.Randoms;
 import net.librec.math.structure.MatrixEntry;
 import net.librec.math.structure.SparseMatrix;
 import net.librec.recommender.item.*;
+import net.librec.util.ParallelUtil;
+import net.librec.util.ParallelUtil.BlockCounter;
 import net.librec.util.ReflectionUtil;
+import net.librec.util.TopKHeaps;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.util.*;
+import java.util.concurrent.Callable;
 
 /**
  * Abstract Recommender Methods
@@ -45,6 +53,11 @@ public abstract class AbstractRecommender implements Recommender {
      */
     protected final Log LOG = LogFactory.getLog(this.getClass());
 
+    /**
+     * number of users handed out to a ranking thread at a time
+     */
+    private static final int RANKING_BLOCK_SIZE = 64;
+
     /**
      * is ranking or rating
      */
@@ -85,6 +98,11 @@ public abstract class AbstractRecommender implements Recommender {
      */
     protected RecommendedList recommendedList;
 
+    /**
+     * errors of the rating predictions accumulated in the streaming evaluation, null if it is disabled
+     */
+    protected RatingErrorAccumulator ratingErrors;
+
     /**
      * the number of users
      */
@@ -249,7 +267,21 @@ public abstract class AbstractRecommender implements Recommender {
      * @throws LibrecException if error occurs during recommending
      */
     protected RecommendedList recommendRank() throws LibrecException {
-        recommendedList = new RecommendedItemList(numUsers - 1, numUsers);
+        int numNegatives = conf.getInt("rec.eval.negatives.number", 0);
+        if (numNegatives > 0) {
+            recommendedList = recommendRankSampled(numNegatives);
+            return recommendedList;
+        }
+        recommendedList = new CompactRecommendedList(numUsers, topN);
+
+        if (isPredictThreadSafe()) {
+            int numThreads = conf.getInt("rec.recommender.ranking.threads", Runtime.getRuntime().availableProcessors());
+            recommendRank(recommendedList, Math.max(1, numThreads));
+            if (recommendedList.size() == 0) {
+                throw new IndexOutOfBoundsException("No item is recommended, there is something error in the recommendation algorithm! Please check it!");
+            }
+            return recommendedList;
+        }
 
         for (int userIdx = 0; userIdx < numUsers; ++userIdx) {
             Set<Integer> itemSet = trainMatrix.getColumnsSet(userIdx);
@@ -273,6 +305,176 @@ public abstract class AbstractRecommender implements Recommender {
         return recommendedList;
     }
 
+    /**
+     * Rank the unrated items of all users on a pool of threads. Users are handed out to the threads in blocks,
+     * and each thread keeps the top-N items of each user of its current block in a bounded heap, so no per-user
+     * list of all candidate items is built.
+     *
+     * @param recommendedList list receiving the ranked items
+     * @param numThreads      number of threads
+     * @throws LibrecException if error occurs during predicting
+     */
+    private void recommendRank(final RecommendedList recommendedList, int numThreads) throws LibrecException {
+        final BlockCounter users = new BlockCounter(numUsers, RANKING_BLOCK_SIZE);
+        List<Callable<Void>> tasks = new ArrayList<>(numThreads);
+        for (int thread = 0; thread < numThreads; thread++) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws LibrecException {
+                    TopKHeaps heaps = new TopKHeaps(RANKING_BLOCK_SIZE, topN);
+                    for (int fromUser = users.next(); fromUser >= 0; fromUser = users.next()) {
+                        int toUser = users.end(fromUser);
+                        for (int heap = 0; heap < toUser - fromUser; heap++) {
+                            heaps.clear(heap);
+                        }
+                        rankUsers(fromUser, toUser, heaps);
+                        for (int userIdx = fromUser; userIdx < toUser; userIdx++) {
+                            addHeap(recommendedList, userIdx, heaps, userIdx - fromUser);
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+
+        ParallelUtil.invokeAll(tasks);
+    }
+
+    /**
+     * Rank the test items of every test user against sampled negative items instead of all unrated items, which
+     * takes {@code O(numNegatives)} predictions per user. The negatives are drawn from the stream of the user,
+     * uniformly or by popularity as set by rec.eval.negatives.sampler. The number of ranked candidates of every
+     * user replaces its number of unrated items in rec.eval.auc.dropped.num, so the AUC is computed over the
+     * sampled candidates.
+     *
+     * @param numNegatives number of negative items per user
+     * @return list of the top-N candidates of every test user
+     * @throws LibrecException if error occurs during predicting
+     */
+    private RecommendedList recommendRankSampled(final int numNegatives) throws LibrecException {
+        final RecommendedList itemList = new CompactRecommendedList(numUsers, topN);
+        final NegativeItemSampler sampler = new NegativeItemSampler(trainMatrix, testMatrix,
+                "popularity".equals(conf.get("rec.eval.negatives.sampler", "uniform")));
+        final int[] numCandidates = new int[numUsers];
+        final BlockCounter users = new BlockCounter(numUsers, 1);
+
+        int numThreads = 1;
+        if (isPredictThreadSafe()) {
+            numThreads = conf.getInt("rec.recommender.ranking.threads", Runtime.getRuntime().availableProcessors());
+        }
+        numThreads = Math.max(1, Math.min(numThreads, numUsers));
+        List<Callable<Void>> tasks = new ArrayList<>(numThreads);
+        for (int thread = 0; thread < numThreads; thread++) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws LibrecException {
+                    int[] marks = new int[numItems];
+                    int[] negatives = new int[numNegatives];
+                    TopKHeaps heaps = new TopKHeaps(1, topN);
+                    for (int userIdx = users.next(); userIdx >= 0; userIdx = users.next()) {
+                        if (testMatrix.rowPtr[userIdx] == testMatrix.rowPtr[userIdx + 1]) {
+                            continue;
+                        }
+                        int count = sampler.sample(userIdx, Randoms.stream("eval.negatives", userIdx), marks, negatives);
+                        heaps.clear(0);
+                        for (int pos = testMatrix.rowPtr[userIdx]; pos < testMatrix.rowPtr[userIdx + 1]; pos++) {
+                            numCandidates[userIdx] += offerPrediction(userIdx, testMatrix.colInd[pos], heaps);
+                        }
+                        for (int negative = 0; negative < count; negative++) {
+                            numCandidates[userIdx] += offerPrediction(userIdx, negatives[negative], heaps);
+                        }
+                        addHeap(itemList, userIdx, heaps, 0);
+                    }
+                    return null;
+                }
+            });
+        }
+        ParallelUtil.invokeAll(tasks);
+
+        conf.setInts("rec.eval.auc.dropped.num", numCandidates);
+        if (itemList.size() == 0) {
+            throw new IndexOutOfBoundsException("No item is recommended, there is something error in the recommendation algorithm! Please check it!");
+        }
+        return itemList;
+    }
+
+    private int offerPrediction(int userIdx, int itemIdx, TopKHeaps heaps) throws LibrecException {
+        double predictRating = predict(userIdx, itemIdx);
+        if (Double.isNaN(predictRating)) {
+            return 0;
+        }
+        heaps.offer(0, itemIdx, predictRating);
+        return 1;
+    }
+
+    /**
+     * Offer the predictions of all items not rated in the training data by the users of a block to their heaps.
+     * Subclasses may override it with a faster scoring of the whole block, which has to offer the same values as
+     * {@code predict(int, int)} and is called concurrently for distinct blocks.
+     *
+     * @param fromUser first user of the block
+     * @param toUser   user after the last one of the block
+     * @param heaps    empty heaps, heap {@code userIdx - fromUser} receiving the predictions of user userIdx
+     * @throws LibrecException if error occurs during predicting
+     */
+    protected void rankUsers(int fromUser, int toUser, TopKHeaps heaps) throws LibrecException {
+        for (int userIdx = fromUser; userIdx < toUser; userIdx++) {
+            rankItems(userIdx, heaps, userIdx - fromUser);
+        }
+    }
+
+    /**
+     * Offer the predictions of all items not rated by the user in the training data to a heap. The rated items
+     * are skipped by walking the sorted column indices of the user's row.
+     *
+     * @param userIdx user index
+     * @param heaps   heaps
+     * @param heap    heap receiving the predictions
+     * @throws LibrecException if error occurs during predicting
+     */
+    private void rankItems(int userIdx, TopKHeaps heaps, int heap) throws LibrecException {
+        int ratedPos = trainMatrix.rowPtr[userIdx];
+        int ratedEnd = trainMatrix.rowPtr[userIdx + 1];
+        for (int itemIdx = 0; itemIdx < numItems; ++itemIdx) {
+            while (ratedPos < ratedEnd && trainMatrix.colInd[ratedPos] < itemIdx) {
+                ratedPos++;
+            }
+            if (ratedPos < ratedEnd && trainMatrix.colInd[ratedPos] == itemIdx) {
+                continue;
+            }
+            double predictRating = predict(userIdx, itemIdx);
+            if (Double.isNaN(predictRating)) {
+                continue;
+            }
+            heaps.offer(heap, itemIdx, predictRating);
+        }
+    }
+
+    private static void addHeap(RecommendedList recommendedList, int userIdx, TopKHeaps heaps, int heap) {
+        heaps.sort(heap);
+        for (int pos = 0; pos < heaps.size(heap); pos++) {
+            recommendedList.addUserItemIdx(userIdx, heaps.getIndex(heap, pos), heaps.getValue(heap, pos));
+        }
+    }
+
+    /**
+     * Whether predictions may be computed concurrently, i.e. the class declaring the predict method in use is
+     * annotated with {@link ThreadSafePredict}.
+     *
+     * @return true if {@code predict(int, int)} is thread-safe
+     */
+    protected boolean isPredictThreadSafe() {
+        for (Class<?> clazz = getClass(); clazz != null; clazz = clazz.getSuperclass()) {
+            try {
+                clazz.getDeclaredMethod("predict", int.class, int.class);
+                return clazz.isAnnotationPresent(ThreadSafePredict.class);
+            } catch (NoSuchMethodException e) {
+                // not declared here, look in the superclass
+            }
+        }
+        return false;
+    }
+
     /**
      * recommend
      * * predict the ratings in the test data
@@ -281,7 +483,11 @@ public abstract class AbstractRecommender implements Recommender {
      * @throws LibrecException if error occurs during recommending
      */
     protected RecommendedList recommendRating() throws LibrecException {
-        recommendedList = new RecommendedItemList(numUsers - 1, numUsers);
+        ratingErrors = null;
+        if (conf.getBoolean("rec.eval.streaming", false)) {
+            return recommendRatingStreaming();
+        }
+        recommendedList = new CompactRecommendedList(testMatrix.rowPtr);
 
         for (MatrixEntry matrixEntry : testMatrix) {
             int userIdx = matrixEntry.row();
@@ -296,6 +502,81 @@ public abstract class AbstractRecommender implements Recommender {
         return recommendedList;
     }
 
+    /**
+     * Predict the ratings in the test data and accumulate their errors in {@link #ratingErrors}. The predictions
+     * are only kept in the returned list if rec.eval.streaming.output is set. Users are handed out in blocks to
+     * rec.eval.threads threads if predict is thread-safe, and the errors of the blocks are added in the order of
+     * the blocks, so the measures do not depend on the number of threads.
+     *
+     * @return list of the predicted ratings, empty unless they are kept
+     * @throws LibrecException if error occurs during predicting
+     */
+    private RecommendedList recommendRatingStreaming() throws LibrecException {
+        final boolean keepPredictions = conf.getBoolean("rec.eval.streaming.output", false);
+        final RecommendedList itemList = keepPredictions ? new CompactRecommendedList(testMatrix.rowPtr)
+                : new CompactRecommendedList(numUsers, 0);
+        final double mpe = conf.getDouble("rec.measure.mpe", 0.01d);
+        final int numBlocks = (numUsers + RANKING_BLOCK_SIZE - 1) / RANKING_BLOCK_SIZE;
+        final RatingErrorAccumulator[] blockErrors = new RatingErrorAccumulator[numBlocks];
+        final BlockCounter users = new BlockCounter(numUsers, RANKING_BLOCK_SIZE);
+
+        int numThreads = 1;
+        if (isPredictThreadSafe()) {
+            numThreads = conf.getInt("rec.eval.threads", Runtime.getRuntime().availableProcessors());
+        }
+        numThreads = Math.max(1, Math.min(numThreads, numBlocks));
+        List<Callable<Void>> tasks = new ArrayList<>(numThreads);
+        for (int thread = 0; thread < numThreads; thread++) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws LibrecException {
+                    for (int fromUser = users.next(); fromUser >= 0; fromUser = users.next()) {
+                        RatingErrorAccumulator errors = new RatingErrorAccumulator(mpe);
+                        int toUser = users.end(fromUser);
+                        for (int userIdx = fromUser; userIdx < toUser; userIdx++) {
+                            predictRatings(userIdx, errors, keepPredictions ? itemList : null);
+                        }
+                        blockErrors[fromUser / RANKING_BLOCK_SIZE] = errors;
+                    }
+                    return null;
+                }
+            });
+        }
+        ParallelUtil.invokeAll(tasks);
+
+        ratingErrors = new RatingErrorAccumulator(mpe);
+        for (RatingErrorAccumulator errors : blockErrors) {
+            ratingErrors.add(errors);
+        }
+        recommendedList = itemList;
+        return recommendedList;
+    }
+
+    /**
+     * Predict the test ratings of a user and add their errors to an accumulator.
+     *
+     * @param userIdx  user index
+     * @param errors   accumulator of the errors
+     * @param itemList list receiving the predictions, or null if they are not kept
+     * @throws LibrecException if error occurs during predicting
+     */
+    private void predictRatings(int userIdx, RatingErrorAccumulator errors, RecommendedList itemList)
+            throws LibrecException {
+        int fromPos = testMatrix.rowPtr[userIdx];
+        int toPos = testMatrix.rowPtr[userIdx + 1];
+        for (int pos = fromPos; pos < toPos; pos++) {
+            int itemIdx = testMatrix.colInd[pos];
+            double predictRating = predict(userIdx, itemIdx, true);
+            if (Double.isNaN(predictRating)) {
+                predictRating = globalMean;
+            }
+            errors.add(testMatrix.rowData[pos], predictRating);
+            if (itemList != null) {
+                itemList.addUserItemIdx(userIdx, itemIdx, predictRating);
+            }
+        }
+    }
+
     /**
      * predict a specific rating for user userIdx on item itemIdx, note that the
      * prediction is not bounded. It is useful for building models with no need
@@ -340,6 +621,12 @@ public abstract class AbstractRecommender implements Recommender {
      * @throws LibrecException if error occurs during evaluating
      */
     public double evaluate(RecommenderEvaluator evaluator) throws LibrecException {
+        if (ratingErrors != null) {
+            Double evaluatedValue = ratingErrors.getValue(Measure.getMeasure(evaluator.getClass()));
+            if (evaluatedValue != null) {
+                return evaluatedValue;
+            }
+        }
         return evaluator.evaluate(context, recommendedList);
     }
 
@@ -350,8 +637,23 @@ public abstract class AbstractRecommender implements Recommender {
      * @throws LibrecException if error occurs during constructing evaluate map
      */
     public Map<MeasureValue, Double> evaluateMap() throws LibrecException {
+        return evaluateMap(Measure.getMeasureEnumList(isRanking, topN));
+    }
+
+    /**
+     * evaluate Map of the given measures. The ranking measures are evaluated in a single pass over the users,
+     * on rec.eval.threads threads.
+     *
+     * @param measureValueList measures and their cutoffs
+     * @return evaluate map
+     * @throws LibrecException if error occurs during constructing evaluate map
+     */
+    public Map<MeasureValue, Double> evaluateMap(List<MeasureValue> measureValueList) throws LibrecException {
+        if (isRanking && measureValueList != null && FusedRankingEvaluator.supports(measureValueList)) {
+            int numThreads = conf.getInt("rec.eval.threads", Runtime.getRuntime().availableProcessors());
+            return new FusedRankingEvaluator(measureValueList, numThreads).evaluate(context, recommendedList);
+        }
         Map<MeasureValue, Double> evaluatedMap = new HashMap<>();
-        List<MeasureValue> measureValueList = Measure.getMeasureEnumList(isRanking, topN);
         if (measureValueList != null) {
             for (MeasureValue measureValue : measureValueList) {
                 RecommenderEvaluator evaluator = ReflectionUtil
@@ -359,7 +661,7 @@ public abstract class AbstractRecommender implements Recommender {
                 if (isRanking && measureValue.getTopN() != null && measureValue.getTopN() > 0) {
                     evaluator.setTopN(measureValue.getTopN());
                 }
-                double evaluatedValue = evaluator.evaluate(context, recommendedList);
+                double evaluatedValue = evaluate(evaluator);
                 evaluatedMap.put(measureValue, evaluatedValue);
             }
         }
@@ -0,0 +1,220 @@
+/**
+ * Copyright (C) 2016 LibRec
+ * <p>
+ * This file is part of LibRec.
+ * LibRec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * LibRec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.librec.recommender;
+
+import net.librec.common.LibrecException;
+import net.librec.math.algorithm.RandomStream;
+import net.librec.util.ParallelUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Stratified parallel stochastic gradient descent in the style of DSGD (Gemulla et al., KDD 2011).
+ * <p>
+ * The rows and the columns of the training matrix are randomly split into {@code P} blocks each, which tiles the
+ * matrix into a {@code P x P} grid. An epoch consists of {@code P} sub-epochs; sub-epoch {@code s} visits the
+ * stratum made of the blocks ({@code b}, {@code (b + s) mod P}), whose blocks share neither a row nor a column.
+ * The blocks of a stratum are therefore trained concurrently without any write conflict, as long as every sample
+ * only updates the parameters of its row and its column, e.g. the factors and the bias of one user and one item.
+ * <p>
+ * The order of the sub-epochs and the order of the samples within every block are drawn from a seeded random
+ * generator on the calling thread, so the trained model only depends on the seed and the number of blocks, not
+ * on the number of threads or their scheduling.
+ */
+public class DSGDTrainer {
+    private final int numSamples;
+    private final int numBlocks;
+    private final int numThreads;
+    /**
+     * samples of block (rowBlock, colBlock) are blockSamples[blockPtr[rowBlock * numBlocks + colBlock]] to
+     * blockSamples[blockPtr[rowBlock * numBlocks + colBlock + 1] - 1]
+     */
+    private final int[] blockPtr;
+    private final int[] blockSamples;
+    private final int[] subEpochs;
+    private final RandomStream random;
+    private ExecutorService executorService;
+    private double throughput;
+
+    /**
+     * Construct a trainer.
+     *
+     * @param rows       row index of every sample
+     * @param columns    column index of every sample
+     * @param numRows    number of rows
+     * @param numColumns number of columns
+     * @param numBlocks  number of row blocks and of column blocks
+     * @param numThreads number of worker threads
+     * @param seed       seed of the blocking and of the shuffling
+     */
+    public DSGDTrainer(int[] rows, int[] columns, int numRows, int numColumns, int numBlocks, int numThreads,
+                       long seed) {
+        this.numSamples = rows.length;
+        this.numBlocks = Math.max(1, Math.min(numBlocks, Math.max(1, Math.min(numRows, numColumns))));
+        this.numThreads = Math.max(1, Math.min(numThreads, this.numBlocks));
+        this.random = RandomStream.derive(seed, "dsgd.blocks", 0);
+
+        int[] rowBlocks = randomBlocks(numRows);
+        int[] columnBlocks = randomBlocks(numColumns);
+
+        // counting sort of the samples by block
+        blockPtr = new int[this.numBlocks * this.numBlocks + 1];
+        for (int sample = 0; sample < numSamples; sample++) {
+            blockPtr[blockOf(rowBlocks[rows[sample]], columnBlocks[columns[sample]]) + 1]++;
+        }
+        for (int block = 0; block < this.numBlocks * this.numBlocks; block++) {
+            blockPtr[block + 1] += blockPtr[block];
+        }
+        int[] blockEnd = new int[this.numBlocks * this.numBlocks];
+        System.arraycopy(blockPtr, 0, blockEnd, 0, blockEnd.length);
+        blockSamples = new int[numSamples];
+        for (int sample = 0; sample < numSamples; sample++) {
+            blockSamples[blockEnd[blockOf(rowBlocks[rows[sample]], columnBlocks[columns[sample]])]++] = sample;
+        }
+
+        subEpochs = new int[this.numBlocks];
+        for (int subEpoch = 0; subEpoch < this.numBlocks; subEpoch++) {
+            subEpochs[subEpoch] = subEpoch;
+        }
+    }
+
+    /**
+     * Assign each index to one of the blocks, so that the blocks are of equal size up to one and the assignment
+     * is random.
+     *
+     * @param numIndices number of indices
+     * @return block of every index
+     */
+    private int[] randomBlocks(int numIndices) {
+        int[] order = new int[numIndices];
+        for (int index = 0; index < numIndices; index++) {
+            order[index] = index;
+        }
+        shuffle(order, 0, numIndices);
+        int[] blocks = new int[numIndices];
+        for (int pos = 0; pos < numIndices; pos++) {
+            blocks[order[pos]] = (int) ((long) pos * numBlocks / numIndices);
+        }
+        return blocks;
+    }
+
+    private int blockOf(int rowBlock, int columnBlock) {
+        return rowBlock * numBlocks + columnBlock;
+    }
+
+    private void shuffle(int[] values, int from, int to) {
+        for (int last = to - 1; last > from; last--) {
+            int swap = from + random.nextInt(last - from + 1);
+            int value = values[last];
+            values[last] = values[swap];
+            values[swap] = value;
+        }
+    }
+
+    /**
+     * Run an epoch over all samples, as one sub-epoch per stratum in a random order.
+     *
+     * @param kernel gradient step of a sample, called with the row block of the sample as thread index
+     * @return sum of the losses of the samples
+     * @throws LibrecException if error occurs during the epoch
+     */
+    public double runEpoch(final HogwildTrainer.SampleKernel kernel) throws LibrecException {
+        long startTime = System.nanoTime();
+        shuffle(subEpochs, 0, numBlocks);
+        for (int block = 0; block < numBlocks * numBlocks; block++) {
+            shuffle(blockSamples, blockPtr[block], blockPtr[block + 1]);
+        }
+
+        double loss = 0.0;
+        for (int subEpoch : subEpochs) {
+            if (numThreads == 1) {
+                for (int rowBlock = 0; rowBlock < numBlocks; rowBlock++) {
+                    loss += runBlock(kernel, rowBlock, (rowBlock + subEpoch) % numBlocks);
+                }
+                continue;
+            }
+            if (executorService == null) {
+                executorService = Executors.newFixedThreadPool(numThreads);
+            }
+            List<Callable<Double>> tasks = new ArrayList<>(numBlocks);
+            for (int rowBlock = 0; rowBlock < numBlocks; rowBlock++) {
+                final int taskRowBlock = rowBlock;
+                final int taskColumnBlock = (rowBlock + subEpoch) % numBlocks;
+                tasks.add(new Callable<Double>() {
+                    @Override
+                    public Double call() throws LibrecException {
+                        return runBlock(kernel, taskRowBlock, taskColumnBlock);
+                    }
+                });
+            }
+            // sum in the order of the blocks for a reproducible loss
+            for (double blockLoss : ParallelUtil.invokeAll(executorService, tasks)) {
+                loss += blockLoss;
+            }
+        }
+
+        long elapsedTime = Math.max(1L, System.nanoTime() - startTime);
+        throughput = numSamples * 1e9 / elapsedTime;
+        return loss;
+    }
+
+    private double runBlock(HogwildTrainer.SampleKernel kernel, int rowBlock, int columnBlock)
+            throws LibrecException {
+        int block = blockOf(rowBlock, columnBlock);
+        double loss = 0.0;
+        for (int pos = blockPtr[block]; pos < blockPtr[block + 1]; pos++) {
+            loss += kernel.update(rowBlock, blockSamples[pos]);
+        }
+        return loss;
+    }
+
+    /**
+     * @return number of samples processed per second in the last epoch
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * @return number of row blocks and of column blocks
+     */
+    public int getNumBlocks() {
+        return numBlocks;
+    }
+
+    /**
+     * @return number of worker threads
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Stop the worker threads.
+     */
+    public void shutdown() {
+        if (executorService != null) {
+            executorService.shutdown();
+            executorService = null;
+        }
+    }
+}
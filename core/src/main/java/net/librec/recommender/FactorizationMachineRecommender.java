@@ -26,6 +26,8 @@ import net.librec.recommender.item.RecommendedList;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.util.Arrays;
+
 /**
  * Factorization Machine Recommender
  *
@@ -93,6 +95,21 @@ public abstract class FactorizationMachineRecommender extends AbstractRecommende
      */
     protected int numIterations;
 
+    /**
+     * first appender feature index of each dimension of the tensors
+     */
+    protected int[] featureOffsets;
+    /**
+     * appender feature indices of the training entries, those of entry i being
+     * {@code trainFeatures[i * numDimensions]} to {@code trainFeatures[(i + 1) * numDimensions - 1]}, all of value 1;
+     * null unless {@link #isTrainedOnTensor()}
+     */
+    protected int[] trainFeatures;
+    /**
+     * ratings of the training entries; null unless {@link #isTrainedOnTensor()}
+     */
+    protected double[] trainRatings;
+
     /**
      * setup
      *
@@ -125,6 +142,16 @@ public abstract class FactorizationMachineRecommender extends AbstractRecommende
             p += trainTensor.dimensions[dim]; // set the size of appender vectors
         }
         n = trainTensor.size(); // set the number of ratings
+
+        // one-hot appender features of the training entries, computed once for all iterations
+        featureOffsets = new int[trainTensor.numDimensions];
+        for (int dim = 1; dim < trainTensor.numDimensions; dim++) {
+            featureOffsets[dim] = featureOffsets[dim - 1] + trainTensor.dimensions[dim - 1];
+        }
+        if (isTrainedOnTensor()) {
+            trainFeatures = featureIndices(trainTensor);
+            trainRatings = Arrays.copyOf(trainTensor.values, n);
+        }
         numFactors = k = conf.getInt("rec.factor.number");
 
         // init all weight with zero
@@ -180,6 +207,62 @@ public abstract class FactorizationMachineRecommender extends AbstractRecommende
         return res;
     }
 
+    /**
+     * Predict the rating of an entry given by its appender feature indices, in a single pass over the features
+     * which accumulates the sum of the factors of the features in {@code sums[0]} to {@code sums[k - 1]} and the sum
+     * of their squares in {@code sums[k]} to {@code sums[2 * k - 1]}. The terms are summed in the same order as
+     * {@link #predict(int, int, SparseVector)}, so both return the same rating.
+     *
+     * @param features appender feature indices, all of value 1
+     * @param from     position of the first feature of the entry in {@code features}
+     * @param sums     scratch buffer of length at least {@code 2 * k}, overwritten
+     * @return predicted rating
+     * @throws LibrecException if error occurs
+     */
+    protected double predict(int[] features, int from, double[] sums) throws LibrecException {
+        double[] weights = W.getData();
+        Arrays.fill(sums, 0, 2 * k, 0.0);
+
+        double res = w0;
+        for (int pos = from; pos < from + trainTensor.numDimensions; pos++) {
+            int ind = features[pos];
+            res += weights[ind];
+
+            double[] factors = V.data[ind];
+            for (int f = 0; f < k; f++) {
+                double vif = factors[f];
+                sums[f] += vif;
+                sums[k + f] += vif * vif;
+            }
+        }
+
+        // 2-way interaction
+        for (int f = 1; f < k; f++) {
+            res += (sums[f] * sums[f] - sums[k + f]) / 2;
+        }
+
+        return res;
+    }
+
+    /**
+     * Return the appender feature indices of the entries of a tensor, those of entry i being at positions
+     * {@code i * numDimensions} to {@code (i + 1) * numDimensions - 1}.
+     *
+     * @param tensor tensor of the same dimensions as the training tensor
+     * @return appender feature indices of the entries
+     */
+    protected int[] featureIndices(SparseTensor tensor) {
+        int numDimensions = tensor.numDimensions;
+        int[] features = new int[tensor.size() * numDimensions];
+        for (int dim = 0; dim < numDimensions; dim++) {
+            int[] keys = tensor.ndKeys[dim];
+            for (int index = 0, pos = dim; index < tensor.size(); index++, pos += numDimensions) {
+                features[pos] = featureOffsets[dim] + keys[index];
+            }
+        }
+        return features;
+    }
+
     /**
      * Predict the rating given a sparse appender vector.
      * if {@code bound} is true,The predicted rating value will be
@@ -220,18 +303,21 @@ public abstract class FactorizationMachineRecommender extends AbstractRecommende
         // each user-item pair appears in the final recommend list only once
         Table<Integer, Integer, Double> ratingMapping = HashBasedTable.create();
 
-        int userDimension = testTensor.getUserDimension();
-        int itemDimension = testTensor.getItemDimension();
-        for (TensorEntry tensorEntry : testTensor) {
-            int[] entryKeys = tensorEntry.keys();
-            SparseVector featureVector = tenserKeysToFeatureVector(entryKeys);
-            double predictRating = predict(entryKeys[userDimension], entryKeys[itemDimension], featureVector, true);
+        int numDimensions = testTensor.numDimensions;
+        int[] testFeatures = featureIndices(testTensor);
+        double[] sums = new double[2 * k];
+        for (int from = 0; from < testFeatures.length; from += numDimensions) {
+            double predictRating = predict(testFeatures, from, sums);
+            if (predictRating > maxRate)
+                predictRating = maxRate;
+            if (predictRating < minRate)
+                predictRating = minRate;
             if (Double.isNaN(predictRating)) {
                 predictRating = globalMean;
             }
-            int[] userItemInd = getUserItemIndex(featureVector);
-            int userIdx = userItemInd[0];
-            int itemIdx = userItemInd[1];
+            // the user and the item are the first two features
+            int userIdx = testFeatures[from];
+            int itemIdx = testFeatures[from + 1] - numUsers;
             if (!ratingMapping.contains(userIdx, itemIdx)) {
                 ratingMapping.put(userIdx, itemIdx, predictRating);
                 recommendedList.addUserItemIdx(userIdx, itemIdx, predictRating);
@@ -241,21 +327,6 @@ public abstract class FactorizationMachineRecommender extends AbstractRecommende
         return recommendedList;
     }
 
-    /**
-     * getUserItemIndex
-     * * get the user index and item index from a sparse appender vector
-     *
-     * @return user index and item index
-     */
-    private int[] getUserItemIndex(SparseVector x) {
-        int[] inds = x.getIndex();
-
-        int userInd = inds[0];
-        int itemInd = inds[1] - numUsers;
-
-        return new int[]{userInd, itemInd};
-    }
-
     /**
      * Transform the keys of a tensor entry into a sparse vector.
      * @param tenserKeys the given keys of a tensor entry
@@ -275,4 +346,58 @@ public abstract class FactorizationMachineRecommender extends AbstractRecommende
 
         return new SparseVector(capacity, index, data);
     }
+
+    /**
+     * Whether the model is trained on the entries of the training tensor, whose appender features and ratings are
+     * then computed in {@link #setup()}.
+     *
+     * @return true, unless a subclass trains on other data
+     */
+    protected boolean isTrainedOnTensor() {
+        return true;
+    }
+
+    /**
+     * Whether to train by lock-free parallel SGD, see {@link HogwildTrainer}.
+     *
+     * @return value of rec.sgd.hogwild
+     */
+    protected boolean isHogwild() {
+        return conf.getBoolean("rec.sgd.hogwild", false);
+    }
+
+    /**
+     * Create a trainer over the training entries. With rec.sgd.hogwild it runs lock-free on rec.thread.count
+     * threads and visits the entries in an order shuffled with rec.random.seed, otherwise it visits them in the
+     * order of the training tensor on the calling thread.
+     *
+     * @return a new trainer, to be shut down after training
+     */
+    protected HogwildTrainer createTrainer() {
+        if (!isHogwild()) {
+            return new HogwildTrainer(n, 1);
+        }
+        int numThreads = conf.getInt("rec.thread.count", Runtime.getRuntime().availableProcessors());
+        long seed = conf.getLong("rec.random.seed", System.currentTimeMillis());
+        return new HogwildTrainer(n, numThreads, seed);
+    }
+
+    /**
+     * Run an epoch over the training entries and report its throughput.
+     *
+     * @param trainer trainer
+     * @param kernel  gradient step of a training entry
+     * @param iter    the current iteration
+     * @return sum of the losses of the entries
+     * @throws LibrecException if error occurs during the epoch
+     */
+    protected double runEpoch(HogwildTrainer trainer, HogwildTrainer.SampleKernel kernel, int iter)
+            throws LibrecException {
+        double epochLoss = trainer.runEpoch(kernel);
+        if (verbose) {
+            LOG.info(getClass().getSimpleName() + " iter " + iter + ": " + Math.round(trainer.getThroughput())
+                    + " samples/s on " + trainer.getNumThreads() + " threads");
+        }
+        return epochLoss;
+    }
 }
@@ -0,0 +1,192 @@
+/**
+ * Copyright (C) 2016 LibRec
+ * <p>
+ * This file is part of LibRec.
+ * LibRec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * LibRec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.librec.recommender;
+
+import net.librec.common.LibrecException;
+import net.librec.math.algorithm.RandomStream;
+import net.librec.math.structure.SparseMatrix;
+import net.librec.util.ParallelUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Lock-free parallel stochastic gradient descent in the style of Hogwild! (Niu et al., NIPS 2011).
+ * <p>
+ * Every epoch shuffles the sample indices and splits them into one contiguous partition per worker thread. The
+ * workers apply the gradient steps of their samples to the shared model parameters without any locking, which
+ * is sound as long as most samples touch few parameters, e.g. the factors of one user and one item. The model
+ * plugs in its per-sample gradient step as a {@link SampleKernel}.
+ * <p>
+ * With a single thread the samples are processed on the calling thread, in the shuffled order. Models drawing
+ * their own random samples, such as BPR, create the trainer without a seed and the sample indices are then left
+ * in order.
+ */
+public class HogwildTrainer {
+    /**
+     * Gradient step of a single sample.
+     */
+    public interface SampleKernel {
+        /**
+         * Apply the gradient step of a sample to the model parameters, without synchronization.
+         *
+         * @param thread index of the worker thread, from 0 to the number of threads - 1, or the row block of the
+         *               sample under {@link DSGDTrainer}
+         * @param sample index of the sample
+         * @return loss of the sample
+         * @throws LibrecException if error occurs during the update
+         */
+        double update(int thread, int sample) throws LibrecException;
+    }
+
+    private final int numSamples;
+    private final int numThreads;
+    private final int[] order;
+    private final RandomStream random;
+    private ExecutorService executorService;
+    private double throughput;
+
+    /**
+     * Construct a trainer.
+     *
+     * @param numSamples number of samples of an epoch
+     * @param numThreads number of worker threads
+     * @param seed       seed of the shuffling
+     */
+    public HogwildTrainer(int numSamples, int numThreads, long seed) {
+        this.numSamples = numSamples;
+        this.numThreads = Math.max(1, Math.min(numThreads, Math.max(1, numSamples)));
+        this.order = new int[numSamples];
+        for (int sample = 0; sample < numSamples; sample++) {
+            order[sample] = sample;
+        }
+        this.random = RandomStream.derive(seed, "hogwild.order", 0);
+    }
+
+    /**
+     * Construct a trainer which does not shuffle the sample indices, for kernels drawing their own random samples.
+     *
+     * @param numSamples number of samples of an epoch
+     * @param numThreads number of worker threads
+     */
+    public HogwildTrainer(int numSamples, int numThreads) {
+        this.numSamples = numSamples;
+        this.numThreads = Math.max(1, Math.min(numThreads, Math.max(1, numSamples)));
+        this.order = null;
+        this.random = null;
+    }
+
+    /**
+     * Run an epoch over all samples in a new random order.
+     *
+     * @param kernel gradient step of a sample
+     * @return sum of the losses of the samples
+     * @throws LibrecException if error occurs during the epoch
+     */
+    public double runEpoch(final SampleKernel kernel) throws LibrecException {
+        long startTime = System.nanoTime();
+        if (order != null) {
+            for (int last = numSamples - 1; last > 0; last--) {
+                int swap = random.nextInt(last + 1);
+                int sample = order[last];
+                order[last] = order[swap];
+                order[swap] = sample;
+            }
+        }
+
+        double loss = 0.0;
+        if (numThreads == 1) {
+            loss = runPartition(kernel, 0, 0, numSamples);
+        } else {
+            if (executorService == null) {
+                executorService = Executors.newFixedThreadPool(numThreads);
+            }
+            List<Callable<Double>> tasks = new ArrayList<>(numThreads);
+            for (int thread = 0; thread < numThreads; thread++) {
+                final int partition = thread;
+                final int from = (int) ((long) numSamples * thread / numThreads);
+                final int to = (int) ((long) numSamples * (thread + 1) / numThreads);
+                tasks.add(new Callable<Double>() {
+                    @Override
+                    public Double call() throws LibrecException {
+                        return runPartition(kernel, partition, from, to);
+                    }
+                });
+            }
+            for (double partitionLoss : ParallelUtil.invokeAll(executorService, tasks)) {
+                loss += partitionLoss;
+            }
+        }
+
+        long elapsedTime = Math.max(1L, System.nanoTime() - startTime);
+        throughput = numSamples * 1e9 / elapsedTime;
+        return loss;
+    }
+
+    private double runPartition(SampleKernel kernel, int thread, int from, int to) throws LibrecException {
+        double loss = 0.0;
+        for (int pos = from; pos < to; pos++) {
+            loss += kernel.update(thread, order == null ? pos : order[pos]);
+        }
+        return loss;
+    }
+
+    /**
+     * @return number of samples processed per second in the last epoch
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * @return number of worker threads
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Stop the worker threads.
+     */
+    public void shutdown() {
+        if (executorService != null) {
+            executorService.shutdown();
+            executorService = null;
+        }
+    }
+
+    /**
+     * Row index of every entry of a matrix, in the order of its compressed rows, so that entry {@code pos} is
+     * ({@code rows[pos]}, {@code colInd[pos]}) with value {@code rowData[pos]}.
+     *
+     * @param matrix sparse matrix
+     * @return row index of every entry
+     */
+    public static int[] rowIndices(SparseMatrix matrix) {
+        int[] rows = new int[matrix.rowData.length];
+        for (int row = 0; row < matrix.numRows(); row++) {
+            for (int pos = matrix.rowPtr[row]; pos < matrix.rowPtr[row + 1]; pos++) {
+                rows[pos] = row;
+            }
+        }
+        return rows;
+    }
+}
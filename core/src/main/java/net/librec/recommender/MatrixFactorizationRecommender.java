@@ -1,7 +1,10 @@
 package net.librec.recommender;
 
+import net.librec.annotation.ThreadSafePredict;
 import net.librec.common.LibrecException;
+import net.librec.math.algorithm.RandomStream;
 import net.librec.math.structure.DenseMatrix;
+import net.librec.util.TopKHeaps;
 
 /**
  * Matrix Factorization Recommender
@@ -9,7 +12,13 @@ import net.librec.math.structure.DenseMatrix;
  * <p>
  * Created by Keqiang Wang
  */
+@ThreadSafePredict
 public abstract class MatrixFactorizationRecommender extends AbstractRecommender {
+    /**
+     * number of item factor values multiplied with a block of users at a time when ranking
+     */
+    private static final int ITEM_TILE_SIZE = 1 << 15;
+
     /**
      * learn rate, maximum learning rate
      */
@@ -97,6 +106,230 @@ public abstract class MatrixFactorizationRecommender extends AbstractRecommender
         return DenseMatrix.rowMult(userFactors, userIdx, itemFactors, itemIdx);
     }
 
+    /**
+     * Score a block of users against all items in tiles of {@link #ITEM_TILE_SIZE} item factors, which stay in
+     * the cache while every user of the block is multiplied with them. Pairs of users are multiplied with pairs
+     * of items at a time, and each product is summed in the same order as {@link DenseMatrix#rowMult}, so the
+     * scores equal the ones of {@link #predict(int, int)}. Subclasses overriding predict are ranked by it.
+     *
+     * @param fromUser first user of the block
+     * @param toUser   user after the last one of the block
+     * @param heaps    empty heaps, heap {@code userIdx - fromUser} receiving the scores of user userIdx
+     * @throws LibrecException if error occurs during predicting
+     */
+    @Override
+    protected void rankUsers(int fromUser, int toUser, TopKHeaps heaps) throws LibrecException {
+        if (!isDotProductPredict()) {
+            super.rankUsers(fromUser, toUser, heaps);
+            return;
+        }
+
+        double[][] userData = userFactors.data;
+        double[][] itemData = itemFactors.data;
+        int dim = userFactors.numColumns;
+        int numBlockUsers = toUser - fromUser;
+        int itemBlockSize = Math.max(16, ITEM_TILE_SIZE / Math.max(1, dim));
+
+        // position of the next rated item of each user, the items of a user being visited in ascending order
+        int[] ratedPos = new int[numBlockUsers];
+        for (int heap = 0; heap < numBlockUsers; heap++) {
+            ratedPos[heap] = trainMatrix.rowPtr[fromUser + heap];
+        }
+
+        for (int fromItem = 0; fromItem < numItems; fromItem += itemBlockSize) {
+            int toItem = Math.min(numItems, fromItem + itemBlockSize);
+            int heap = 0;
+            for (; heap + 1 < numBlockUsers; heap += 2) {
+                double[] user0 = userData[fromUser + heap];
+                double[] user1 = userData[fromUser + heap + 1];
+                int itemIdx = fromItem;
+                for (; itemIdx + 1 < toItem; itemIdx += 2) {
+                    double[] item0 = itemData[itemIdx];
+                    double[] item1 = itemData[itemIdx + 1];
+                    double score00 = 0, score01 = 0, score10 = 0, score11 = 0;
+                    for (int factorIdx = 0; factorIdx < dim; factorIdx++) {
+                        double userValue0 = user0[factorIdx], userValue1 = user1[factorIdx];
+                        double itemValue0 = item0[factorIdx], itemValue1 = item1[factorIdx];
+                        score00 += userValue0 * itemValue0;
+                        score01 += userValue0 * itemValue1;
+                        score10 += userValue1 * itemValue0;
+                        score11 += userValue1 * itemValue1;
+                    }
+                    offerUnrated(heaps, heap, fromUser, itemIdx, score00, ratedPos);
+                    offerUnrated(heaps, heap, fromUser, itemIdx + 1, score01, ratedPos);
+                    offerUnrated(heaps, heap + 1, fromUser, itemIdx, score10, ratedPos);
+                    offerUnrated(heaps, heap + 1, fromUser, itemIdx + 1, score11, ratedPos);
+                }
+                if (itemIdx < toItem) {
+                    offerUnrated(heaps, heap, fromUser, itemIdx, dot(user0, itemData[itemIdx], dim), ratedPos);
+                    offerUnrated(heaps, heap + 1, fromUser, itemIdx, dot(user1, itemData[itemIdx], dim), ratedPos);
+                }
+            }
+            if (heap < numBlockUsers) {
+                double[] user = userData[fromUser + heap];
+                for (int itemIdx = fromItem; itemIdx < toItem; itemIdx++) {
+                    offerUnrated(heaps, heap, fromUser, itemIdx, dot(user, itemData[itemIdx], dim), ratedPos);
+                }
+            }
+        }
+    }
+
+    /**
+     * Offer a score to the heap of a user unless the user rated the item in the training data.
+     */
+    private void offerUnrated(TopKHeaps heaps, int heap, int fromUser, int itemIdx, double score, int[] ratedPos) {
+        int pos = ratedPos[heap];
+        int end = trainMatrix.rowPtr[fromUser + heap + 1];
+        while (pos < end && trainMatrix.colInd[pos] < itemIdx) {
+            pos++;
+        }
+        ratedPos[heap] = pos;
+        if ((pos < end && trainMatrix.colInd[pos] == itemIdx) || Double.isNaN(score)) {
+            return;
+        }
+        heaps.offer(heap, itemIdx, score);
+    }
+
+    private static double dot(double[] userValues, double[] itemValues, int dim) {
+        double score = 0;
+        for (int factorIdx = 0; factorIdx < dim; factorIdx++) {
+            score += userValues[factorIdx] * itemValues[factorIdx];
+        }
+        return score;
+    }
+
+    /**
+     * Whether the predict method in use is the plain inner product of this class.
+     *
+     * @return true if predict is not overridden
+     */
+    private boolean isDotProductPredict() {
+        for (Class<?> clazz = getClass(); clazz != MatrixFactorizationRecommender.class; clazz = clazz.getSuperclass()) {
+            try {
+                clazz.getDeclaredMethod("predict", int.class, int.class);
+                return false;
+            } catch (NoSuchMethodException e) {
+                // not overridden here, look in the superclass
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Whether to train by lock-free parallel SGD, see {@link HogwildTrainer}.
+     *
+     * @return value of rec.sgd.hogwild
+     */
+    protected boolean isHogwild() {
+        return conf.getBoolean("rec.sgd.hogwild", false);
+    }
+
+    /**
+     * Create a lock-free parallel SGD trainer running on rec.thread.count threads and shuffling the samples with
+     * rec.random.seed.
+     *
+     * @param numSamples number of samples of an epoch
+     * @return a new trainer, to be shut down after training
+     */
+    protected HogwildTrainer createHogwildTrainer(int numSamples) {
+        int numThreads = conf.getInt("rec.thread.count", Runtime.getRuntime().availableProcessors());
+        long seed = conf.getLong("rec.random.seed", System.currentTimeMillis());
+        return new HogwildTrainer(numSamples, numThreads, seed);
+    }
+
+    /**
+     * Create a trainer for models drawing their own random samples, such as BPR. It runs lock-free on
+     * rec.thread.count threads if rec.sgd.hogwild is set, and on the calling thread otherwise.
+     *
+     * @param numSamples number of samples of an epoch
+     * @return a new trainer, to be shut down after training
+     */
+    protected HogwildTrainer createSamplingTrainer(int numSamples) {
+        int numThreads = isHogwild()
+                ? conf.getInt("rec.thread.count", Runtime.getRuntime().availableProcessors()) : 1;
+        return new HogwildTrainer(numSamples, numThreads);
+    }
+
+    /**
+     * Create one random stream per worker thread of a trainer, derived from rec.random.seed and the index of the
+     * thread, so that the threads draw their samples without contending on a shared generator.
+     *
+     * @param trainer trainer
+     * @return random stream of every worker thread
+     */
+    protected RandomStream[] createThreadRandoms(HogwildTrainer trainer) {
+        long seed = conf.getLong("rec.random.seed", System.currentTimeMillis());
+        RandomStream[] randoms = new RandomStream[trainer.getNumThreads()];
+        for (int thread = 0; thread < randoms.length; thread++) {
+            randoms[thread] = RandomStream.derive(seed, "sgd.sampler", thread);
+        }
+        return randoms;
+    }
+
+    /**
+     * Run an epoch of lock-free parallel SGD and report its throughput.
+     *
+     * @param trainer trainer
+     * @param kernel  gradient step of a sample
+     * @param iter    the current iteration
+     * @return sum of the losses of the samples
+     * @throws LibrecException if error occurs during the epoch
+     */
+    protected double runHogwildEpoch(HogwildTrainer trainer, HogwildTrainer.SampleKernel kernel, int iter)
+            throws LibrecException {
+        double epochLoss = trainer.runEpoch(kernel);
+        if (verbose) {
+            LOG.info(getClass().getSimpleName() + " iter " + iter + ": " + Math.round(trainer.getThroughput())
+                    + " samples/s on " + trainer.getNumThreads() + " threads");
+        }
+        return epochLoss;
+    }
+
+    /**
+     * Whether to train by stratified parallel SGD, see {@link DSGDTrainer}.
+     *
+     * @return value of rec.sgd.dsgd
+     */
+    protected boolean isDSGD() {
+        return conf.getBoolean("rec.sgd.dsgd", false);
+    }
+
+    /**
+     * Create a stratified parallel SGD trainer over the users and items of the samples, with rec.sgd.dsgd.blocks
+     * blocks per side (16 by default, independent of the number of threads so that the model only depends on
+     * rec.random.seed), running on rec.thread.count threads and seeded with rec.random.seed.
+     *
+     * @param userIndices user of every sample
+     * @param itemIndices item of every sample
+     * @return a new trainer, to be shut down after training
+     */
+    protected DSGDTrainer createDSGDTrainer(int[] userIndices, int[] itemIndices) {
+        int numThreads = conf.getInt("rec.thread.count", Runtime.getRuntime().availableProcessors());
+        int numBlocks = conf.getInt("rec.sgd.dsgd.blocks", 16);
+        long seed = conf.getLong("rec.random.seed", System.currentTimeMillis());
+        return new DSGDTrainer(userIndices, itemIndices, numUsers, numItems, numBlocks, numThreads, seed);
+    }
+
+    /**
+     * Run an epoch of stratified parallel SGD and report its throughput.
+     *
+     * @param trainer trainer
+     * @param kernel  gradient step of a sample
+     * @param iter    the current iteration
+     * @return sum of the losses of the samples
+     * @throws LibrecException if error occurs during the epoch
+     */
+    protected double runDSGDEpoch(DSGDTrainer trainer, HogwildTrainer.SampleKernel kernel, int iter)
+            throws LibrecException {
+        double epochLoss = trainer.runEpoch(kernel);
+        if (verbose) {
+            LOG.info(getClass().getSimpleName() + " iter " + iter + ": " + Math.round(trainer.getThroughput())
+                    + " samples/s on " + trainer.getNumBlocks() + "x" + trainer.getNumBlocks() + " blocks and "
+                    + trainer.getNumThreads() + " threads");
+        }
+        return epochLoss;
+    }
 
     /**
      * Update current learning rate after each epoch <br>
@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2016 LibRec
+ * <p>
+ * This file is part of LibRec.
+ * LibRec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * LibRec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.librec.recommender;
+
+import net.librec.math.structure.SparseMatrix;
+
+import java.util.Random;
+
+/**
+ * Sampler of the negative items against which the test items of a user are ranked in the sampled evaluation
+ * protocol. The negatives of a user are distinct items which the user rated neither in the training data nor in
+ * the test data, drawn uniformly or with probabilities proportional to their popularity in the training data.
+ * <p>
+ * The sampler is immutable and may be shared by threads, each drawing from its own {@link Random} and marking the
+ * excluded items of its current user in its own array.
+ */
+public class NegativeItemSampler {
+    /**
+     * number of rejected draws per requested negative after which the remaining negatives are drawn uniformly
+     * among the items left
+     */
+    private static final int MAX_REJECTIONS = 10;
+
+    private final int numItems;
+    private final SparseMatrix trainMatrix;
+    private final SparseMatrix testMatrix;
+    /**
+     * cumulative popularity of the items, i.e. their number of ratings in the training data plus one, or null
+     * for uniform sampling
+     */
+    private final double[] cumulativePopularities;
+
+    /**
+     * Construct a sampler.
+     *
+     * @param trainMatrix  training matrix, with users as rows and items as columns
+     * @param testMatrix   test matrix, with users as rows and items as columns
+     * @param byPopularity whether the negatives are drawn by popularity instead of uniformly
+     */
+    public NegativeItemSampler(SparseMatrix trainMatrix, SparseMatrix testMatrix, boolean byPopularity) {
+        this.numItems = trainMatrix.numColumns();
+        this.trainMatrix = trainMatrix;
+        this.testMatrix = testMatrix;
+        if (byPopularity) {
+            cumulativePopularities = new double[numItems];
+            for (int pos = 0; pos < trainMatrix.rowPtr[trainMatrix.numRows()]; pos++) {
+                cumulativePopularities[trainMatrix.colInd[pos]]++;
+            }
+            double sum = 0.0;
+            for (int itemIdx = 0; itemIdx < numItems; itemIdx++) {
+                sum += cumulativePopularities[itemIdx] + 1.0;
+                cumulativePopularities[itemIdx] = sum;
+            }
+        } else {
+            cumulativePopularities = null;
+        }
+    }
+
+    /**
+     * Draw the negative items of a user.
+     *
+     * @param userIdx   user index
+     * @param random    random generator of the calling thread
+     * @param marks     array of the calling thread of one int per item, no element of which may equal
+     *                  {@code userIdx + 1} before the first call for the user
+     * @param negatives array receiving the negative items, whose length is the number of negatives to draw
+     * @return number of negatives drawn, less than requested if the user has fewer unrated items
+     */
+    public int sample(int userIdx, Random random, int[] marks, int[] negatives) {
+        int mark = userIdx + 1;
+        int numExcluded = markItems(trainMatrix, userIdx, marks, mark) + markItems(testMatrix, userIdx, marks, mark);
+        int numAvailable = numItems - numExcluded;
+        int numNegatives = Math.min(negatives.length, numAvailable);
+
+        int count = 0;
+        if (numNegatives < numAvailable) {
+            for (int draw = 0; count < numNegatives && draw < MAX_REJECTIONS * negatives.length; draw++) {
+                int itemIdx = drawItem(random);
+                if (marks[itemIdx] != mark) {
+                    marks[itemIdx] = mark;
+                    negatives[count++] = itemIdx;
+                }
+            }
+        }
+        if (count < numNegatives) {
+            // few items left: draw the remaining negatives by a partial shuffle of all of them
+            int numLeft = 0;
+            int[] itemsLeft = new int[numAvailable - count];
+            for (int itemIdx = 0; itemIdx < numItems; itemIdx++) {
+                if (marks[itemIdx] != mark) {
+                    itemsLeft[numLeft++] = itemIdx;
+                }
+            }
+            for (; count < numNegatives; count++, numLeft--) {
+                int swap = random.nextInt(numLeft);
+                int itemIdx = itemsLeft[swap];
+                itemsLeft[swap] = itemsLeft[numLeft - 1];
+                marks[itemIdx] = mark;
+                negatives[count] = itemIdx;
+            }
+        }
+        return count;
+    }
+
+    private int drawItem(Random random) {
+        if (cumulativePopularities == null) {
+            return random.nextInt(numItems);
+        }
+        double target = random.nextDouble() * cumulativePopularities[numItems - 1];
+        int low = 0, high = numItems - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulativePopularities[mid] <= target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Mark the items of a user's row and count those not marked yet.
+     */
+    private static int markItems(SparseMatrix matrix, int userIdx, int[] marks, int mark) {
+        int numMarked = 0;
+        for (int pos = matrix.rowPtr[userIdx]; pos < matrix.rowPtr[userIdx + 1]; pos++) {
+            if (marks[matrix.colInd[pos]] != mark) {
+                marks[matrix.colInd[pos]] = mark;
+                numMarked++;
+            }
+        }
+        return numMarked;
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (C) 2016 LibRec
+ * <p>
+ * This file is part of LibRec.
+ * LibRec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * LibRec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.librec.recommender;
+
+import net.librec.common.LibrecException;
+import net.librec.math.structure.SparseMatrix;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Sampler of (user, positive item, negative item) triples for pairwise ranking models such as BPR.
+ * <p>
+ * The positive items of a user are read from the sorted column indices of the user's compressed row in the
+ * training matrix, so membership tests are binary searches over primitive ints and no set or list is built per
+ * user or per sample. The sampler is immutable and may be shared by threads, each drawing from its own {@link Random}.
+ */
+public class PairwiseSampler {
+    private final int numItems;
+    private final int[] rowPtr;
+    private final int[] colInd;
+    /**
+     * users with at least one positive and one negative item
+     */
+    private final int[] sampleUsers;
+
+    /**
+     * Construct a sampler over the non-zero entries of the training matrix. The compressed rows of the matrix are
+     * shared, unless it stores zero entries: these are no positive items, so the rows are then copied without them.
+     *
+     * @param trainMatrix training matrix, with users as rows and items as columns
+     * @throws LibrecException if no user has both a positive and a negative item
+     */
+    public PairwiseSampler(SparseMatrix trainMatrix) throws LibrecException {
+        int numUsers = trainMatrix.numRows();
+        this.numItems = trainMatrix.numColumns();
+
+        int numEntries = trainMatrix.rowPtr[numUsers];
+        int numNonZeros = 0;
+        for (int entryIdx = 0; entryIdx < numEntries; entryIdx++) {
+            if (trainMatrix.rowData[entryIdx] != 0.0) {
+                numNonZeros++;
+            }
+        }
+        if (numNonZeros == numEntries) {
+            this.rowPtr = trainMatrix.rowPtr;
+            this.colInd = trainMatrix.colInd;
+        } else {
+            this.rowPtr = new int[numUsers + 1];
+            this.colInd = new int[numNonZeros];
+            int nonZeroIdx = 0;
+            for (int userIdx = 0; userIdx < numUsers; userIdx++) {
+                for (int entryIdx = trainMatrix.rowPtr[userIdx]; entryIdx < trainMatrix.rowPtr[userIdx + 1];
+                     entryIdx++) {
+                    if (trainMatrix.rowData[entryIdx] != 0.0) {
+                        colInd[nonZeroIdx++] = trainMatrix.colInd[entryIdx];
+                    }
+                }
+                rowPtr[userIdx + 1] = nonZeroIdx;
+            }
+        }
+
+        int[] users = new int[numUsers];
+        int numSampleUsers = 0;
+        for (int userIdx = 0; userIdx < numUsers; userIdx++) {
+            int numPositives = numPositives(userIdx);
+            if (numPositives > 0 && numPositives < numItems) {
+                users[numSampleUsers++] = userIdx;
+            }
+        }
+        if (numSampleUsers == 0) {
+            throw new LibrecException("no user has both rated and unrated items to sample from");
+        }
+        this.sampleUsers = Arrays.copyOf(users, numSampleUsers);
+    }
+
+    /**
+     * @param userIdx user index
+     * @return number of positive items of the user
+     */
+    public int numPositives(int userIdx) {
+        return rowPtr[userIdx + 1] - rowPtr[userIdx];
+    }
+
+    /**
+     * @param userIdx user index
+     * @param rank    rank of the positive item, from 0 to {@link #numPositives(int)} - 1
+     * @return the positive item of the user at the given rank, in increasing item order
+     */
+    public int positive(int userIdx, int rank) {
+        return colInd[rowPtr[userIdx] + rank];
+    }
+
+    /**
+     * @param userIdx user index
+     * @param itemIdx item index
+     * @return whether the item is a positive item of the user
+     */
+    public boolean isPositive(int userIdx, int itemIdx) {
+        return Arrays.binarySearch(colInd, rowPtr[userIdx], rowPtr[userIdx + 1], itemIdx) >= 0;
+    }
+
+    /**
+     * Draw a user uniformly among the users having both positive and negative items.
+     *
+     * @param random random generator of the calling thread
+     * @return user index
+     */
+    public int sampleUser(Random random) {
+        return sampleUsers[random.nextInt(sampleUsers.length)];
+    }
+
+    /**
+     * Draw a positive item of a user uniformly.
+     *
+     * @param random  random generator of the calling thread
+     * @param userIdx user index, with at least one positive item
+     * @return item index
+     */
+    public int samplePositive(Random random, int userIdx) {
+        return colInd[rowPtr[userIdx] + random.nextInt(numPositives(userIdx))];
+    }
+
+    /**
+     * Draw a negative item of a user uniformly, by rejection of the positive items.
+     *
+     * @param random  random generator of the calling thread
+     * @param userIdx user index, with at least one negative item
+     * @return item index
+     */
+    public int sampleNegative(Random random, int userIdx) {
+        int itemIdx;
+        do {
+            itemIdx = random.nextInt(numItems);
+        } while (isPositive(userIdx, itemIdx));
+        return itemIdx;
+    }
+}
@@ -57,6 +57,15 @@ public interface Recommender {
      */
     Map<MeasureValue, Double> evaluateMap() throws LibrecException;
 
+    /**
+     * evaluate Map of the given measures
+     *
+     * @param measureValues measures and their cutoffs
+     * @return evaluate map
+     * @throws LibrecException if error occurs during constructing evaluate map
+     */
+    Map<MeasureValue, Double> evaluateMap(List<MeasureValue> measureValues) throws LibrecException;
+
     /**
      * get DataModel
      *
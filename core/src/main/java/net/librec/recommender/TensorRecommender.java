@@ -429,6 +429,11 @@ public abstract class TensorRecommender implements Recommender {
         return null;
     }
 
+    @Override
+    public Map<MeasureValue, Double> evaluateMap(List<MeasureValue> measureValues) throws LibrecException {
+        return null;
+    }
+
     @Override
     public DataModel getDataModel() {
         return context.getDataModel();
@@ -20,6 +20,7 @@ package net.librec.recommender.cf;
 import net.librec.annotation.ModelData;
 import net.librec.common.LibrecException;
 import net.librec.math.structure.DenseVector;
+import net.librec.math.structure.PackedSymmMatrix;
 import net.librec.math.structure.SparseVector;
 import net.librec.math.structure.SymmMatrix;
 import net.librec.math.structure.VectorEntry;
@@ -138,6 +139,21 @@ public class ItemKNNRecommender extends AbstractRecommender {
      */
     public void createItemSimilarityList() {
         itemSimilarityList = new ArrayList[numItems];
+        if (similarityMatrix instanceof PackedSymmMatrix) {
+            // rows are already ordered by similarity
+            PackedSymmMatrix packedMatrix = (PackedSymmMatrix) similarityMatrix;
+            for (int itemIdx = 0; itemIdx < numItems; ++itemIdx) {
+                int rowSize = packedMatrix.rowSize(itemIdx);
+                itemSimilarityList[itemIdx] = new ArrayList<>(rowSize);
+                for (int rank = 0; rank < rowSize; rank++) {
+                    double sim = packedMatrix.getNeighborValue(itemIdx, rank);
+                    if (sim != 0) {
+                        itemSimilarityList[itemIdx].add(new AbstractMap.SimpleImmutableEntry<>(packedMatrix.getNeighbor(itemIdx, rank), sim));
+                    }
+                }
+            }
+            return;
+        }
         for (int itemIdx = 0; itemIdx < numItems; ++itemIdx) {
             SparseVector similarityVector = similarityMatrix.row(itemIdx);
             itemSimilarityList[itemIdx] = new ArrayList<>(similarityVector.size());
@@ -20,6 +20,7 @@ package net.librec.recommender.cf;
 import net.librec.annotation.ModelData;
 import net.librec.common.LibrecException;
 import net.librec.math.structure.DenseVector;
+import net.librec.math.structure.PackedSymmMatrix;
 import net.librec.math.structure.SparseVector;
 import net.librec.math.structure.SymmMatrix;
 import net.librec.math.structure.VectorEntry;
@@ -129,6 +130,21 @@ public class UserKNNRecommender extends AbstractRecommender {
      */
     public void createUserSimilarityList() {
         userSimilarityList = new ArrayList[numUsers];
+        if (similarityMatrix instanceof PackedSymmMatrix) {
+            // rows are already ordered by similarity
+            PackedSymmMatrix packedMatrix = (PackedSymmMatrix) similarityMatrix;
+            for (int userIndex = 0; userIndex < numUsers; ++userIndex) {
+                int rowSize = packedMatrix.rowSize(userIndex);
+                userSimilarityList[userIndex] = new ArrayList<>(rowSize);
+                for (int rank = 0; rank < rowSize; rank++) {
+                    double sim = packedMatrix.getNeighborValue(userIndex, rank);
+                    if (sim != 0) {
+                        userSimilarityList[userIndex].add(new AbstractMap.SimpleImmutableEntry<>(packedMatrix.getNeighbor(userIndex, rank), sim));
+                    }
+                }
+            }
+            return;
+        }
         for (int userIndex = 0; userIndex < numUsers; ++userIndex) {
             SparseVector similarityVector = similarityMatrix.row(userIndex);
             userSimilarityList[userIndex] = new ArrayList<>(similarityVector.size());
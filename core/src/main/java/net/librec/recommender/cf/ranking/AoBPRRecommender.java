@@ -26,6 +26,7 @@ import net.librec.math.structure.DenseVector;
 import net.librec.math.structure.MatrixEntry;
 import net.librec.math.structure.SparseMatrix;
 import net.librec.recommender.MatrixFactorizationRecommender;
+import net.librec.recommender.PairwiseSampler;
 import net.librec.recommender.item.RecommendedItemList;
 import net.librec.util.Lists;
 
@@ -54,7 +55,7 @@ public class AoBPRRecommender extends MatrixFactorizationRecommender {
     private int[][] factorRanking;
     private double[] RankingPro;
 
-    private List<Set<Integer>> userItemsSet;
+    private PairwiseSampler sampler;
 
     @Override
     protected void setup() throws LibrecException {
@@ -81,7 +82,7 @@ public class AoBPRRecommender extends MatrixFactorizationRecommender {
 
     @Override
     protected void trainModel() throws LibrecException {
-        userItemsSet = getUserItemsSet(trainMatrix);
+        sampler = new PairwiseSampler(trainMatrix);
         List<Integer>[] dataLists = getTrainList(trainMatrix);
         List<Integer> userTrainList = dataLists[0];
         List<Integer> itemTrainList = dataLists[1];
@@ -103,8 +104,8 @@ public class AoBPRRecommender extends MatrixFactorizationRecommender {
                 while (true) {
                     int dataIdx = Randoms.uniform(numRates);
                     userIdx = userTrainList.get(dataIdx);
-                    Set<Integer> itemSet = userItemsSet.get(userIdx);
-                    if (itemSet.size() == 0 || itemSet.size() == numItems)
+                    int numPositives = sampler.numPositives(userIdx);
+                    if (numPositives == 0 || numPositives == numItems)
                         continue;
 
                     posItemIdx = itemTrainList.get(dataIdx);
@@ -136,7 +137,7 @@ public class AoBPRRecommender extends MatrixFactorizationRecommender {
                         } else {
                             negItemIdx = factorRanking[factorIdx][numItems - randomNegItemIndex - 1];
                         }
-                    } while (itemSet.contains(negItemIdx));
+                    } while (sampler.isPositive(userIdx, negItemIdx));
 
                     break;
                 }
@@ -196,14 +197,6 @@ public class AoBPRRecommender extends MatrixFactorizationRecommender {
         }
     }
 
-    private List<Set<Integer>> getUserItemsSet(SparseMatrix sparseMatrix) {
-        List<Set<Integer>> userItemsSet = new ArrayList<>();
-        for (int userIdx = 0; userIdx < numUsers; ++userIdx) {
-            userItemsSet.add(new HashSet(sparseMatrix.getColumns(userIdx)));
-        }
-        return userItemsSet;
-    }
-
     private List<Integer>[] getTrainList(SparseMatrix sparseMatrix) {
         List<Integer> userTrainList = new ArrayList<>(), itemTrainList = new ArrayList<>();
         for (MatrixEntry matrixEntry : sparseMatrix) {
@@ -20,15 +20,10 @@ package net.librec.recommender.cf.ranking;
 import net.librec.annotation.ModelData;
 import net.librec.common.LibrecException;
 import net.librec.math.algorithm.Maths;
-import net.librec.math.algorithm.Randoms;
-import net.librec.math.structure.MatrixEntry;
-import net.librec.math.structure.SparseMatrix;
+import net.librec.math.algorithm.RandomStream;
+import net.librec.recommender.HogwildTrainer;
 import net.librec.recommender.MatrixFactorizationRecommender;
-
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import net.librec.recommender.PairwiseSampler;
 
 /**
  * Rendle et al., <strong>BPR: Bayesian Personalized Ranking from Implicit Feedback</strong>, UAI 2009.
@@ -37,8 +32,6 @@ import java.util.Set;
  */
 @ModelData({"isRanking", "bpr", "userFactors", "itemFactors"})
 public class BPRRecommender extends MatrixFactorizationRecommender {
-    private List<Set<Integer>> userItemsSet;
-
     @Override
     protected void setup() throws LibrecException {
         super.setup();
@@ -46,65 +39,56 @@ public class BPRRecommender extends MatrixFactorizationRecommender {
 
     @Override
     protected void trainModel() throws LibrecException {
-
-        userItemsSet = getUserItemsSet(trainMatrix);
-
-        for (int iter = 1; iter <= numIterations; iter++) {
-
-            loss = 0.0d;
-            for (int sampleCount = 0, smax = numUsers * 100; sampleCount < smax; sampleCount++) {
-
+        final PairwiseSampler sampler = new PairwiseSampler(trainMatrix);
+        final double[][] userData = userFactors.data, itemData = itemFactors.data;
+
+        HogwildTrainer trainer = createSamplingTrainer(numUsers * 100);
+        final RandomStream[] randoms = createThreadRandoms(trainer);
+        HogwildTrainer.SampleKernel kernel = new HogwildTrainer.SampleKernel() {
+            @Override
+            public double update(int thread, int sample) {
                 // randomly draw (userIdx, posItemIdx, negItemIdx)
-                int userIdx, posItemIdx, negItemIdx;
-                while (true) {
-                    userIdx = Randoms.uniform(numUsers);
-                    Set<Integer> itemSet = userItemsSet.get(userIdx);
-                    if (itemSet.size() == 0 || itemSet.size() == numItems)
-                        continue;
-
-                    List<Integer> itemList = trainMatrix.getColumns(userIdx);
-                    posItemIdx = itemList.get(Randoms.uniform(itemList.size()));
-                    do {
-                        negItemIdx = Randoms.uniform(numItems);
-                    } while (itemSet.contains(negItemIdx));
-
-                    break;
-                }
+                RandomStream random = randoms[thread];
+                int userIdx = sampler.sampleUser(random);
+                int posItemIdx = sampler.samplePositive(random, userIdx);
+                int negItemIdx = sampler.sampleNegative(random, userIdx);
+                double[] userValues = userData[userIdx];
+                double[] posItemValues = itemData[posItemIdx], negItemValues = itemData[negItemIdx];
 
                 // update parameters
-                double posPredictRating = predict(userIdx, posItemIdx);
-                double negPredictRating = predict(userIdx, negItemIdx);
-                double diffValue = posPredictRating - negPredictRating;
-
-                double lossValue = -Math.log(Maths.logistic(diffValue));
-                loss += lossValue;
+                double diffValue = 0.0;
+                for (int factorIdx = 0; factorIdx < numFactors; factorIdx++) {
+                    diffValue += userValues[factorIdx] * (posItemValues[factorIdx] - negItemValues[factorIdx]);
+                }
 
+                double sampleLoss = -Math.log(Maths.logistic(diffValue));
                 double deriValue = Maths.logistic(-diffValue);
 
                 for (int factorIdx = 0; factorIdx < numFactors; factorIdx++) {
-                    double userFactorValue = userFactors.get(userIdx, factorIdx);
-                    double posItemFactorValue = itemFactors.get(posItemIdx, factorIdx);
-                    double negItemFactorValue = itemFactors.get(negItemIdx, factorIdx);
+                    double userFactorValue = userValues[factorIdx];
+                    double posItemFactorValue = posItemValues[factorIdx];
+                    double negItemFactorValue = negItemValues[factorIdx];
 
-                    userFactors.add(userIdx, factorIdx, learnRate * (deriValue * (posItemFactorValue - negItemFactorValue) - regUser * userFactorValue));
-                    itemFactors.add(posItemIdx, factorIdx, learnRate * (deriValue * userFactorValue - regItem * posItemFactorValue));
-                    itemFactors.add(negItemIdx, factorIdx, learnRate * (deriValue * (-userFactorValue) - regItem * negItemFactorValue));
+                    userValues[factorIdx] += learnRate * (deriValue * (posItemFactorValue - negItemFactorValue) - regUser * userFactorValue);
+                    posItemValues[factorIdx] += learnRate * (deriValue * userFactorValue - regItem * posItemFactorValue);
+                    negItemValues[factorIdx] += learnRate * (deriValue * (-userFactorValue) - regItem * negItemFactorValue);
 
-                    loss += regUser * userFactorValue * userFactorValue + regItem * posItemFactorValue * posItemFactorValue + regItem * negItemFactorValue * negItemFactorValue;
+                    sampleLoss += regUser * userFactorValue * userFactorValue + regItem * posItemFactorValue * posItemFactorValue + regItem * negItemFactorValue * negItemFactorValue;
                 }
+                return sampleLoss;
             }
-            if (isConverged(iter) && earlyStop) {
-                break;
-            }
-            updateLRate(iter);
-        }
-    }
+        };
 
-    private List<Set<Integer>> getUserItemsSet(SparseMatrix sparseMatrix) {
-        List<Set<Integer>> userItemsSet = new ArrayList<>();
-        for (int userIdx = 0; userIdx < numUsers; ++userIdx) {
-            userItemsSet.add(new HashSet(sparseMatrix.getColumns(userIdx)));
+        try {
+            for (int iter = 1; iter <= numIterations; iter++) {
+                loss = runHogwildEpoch(trainer, kernel, iter);
+                if (isConverged(iter) && earlyStop) {
+                    break;
+                }
+                updateLRate(iter);
+            }
+        } finally {
+            trainer.shutdown();
         }
-        return userItemsSet;
     }
 }
@@ -3,12 +3,15 @@ package net.librec.recommender.cf.ranking;
 import net.librec.annotation.ModelData;
 import net.librec.common.LibrecException;
 import net.librec.math.structure.DenseMatrix;
-import net.librec.math.structure.MatrixEntry;
-import net.librec.math.structure.SparseMatrix;
 import net.librec.recommender.MatrixFactorizationRecommender;
+import net.librec.util.ParallelUtil;
+import net.librec.util.ParallelUtil.BlockCounter;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * <h3>EALS: efficient Alternating Least Square for Weighted Regularized Matrix Factorization.</h3>
@@ -23,6 +26,11 @@ import java.util.List;
  */
 @ModelData({"isRanking", "eals", "userFactors", "itemFactors", "trainMatrix"})
 public class EALSRecommender extends MatrixFactorizationRecommender {
+    /**
+     * number of users or items handed out to a thread at a time
+     */
+    private static final int ROW_BLOCK_SIZE = 64;
+
     /**
      * confidence weight coefficient for WRMF
      */
@@ -49,9 +57,25 @@ public class EALSRecommender extends MatrixFactorizationRecommender {
     private double[] confidences;
 
     /**
-     * weights of all user-item pair (u,i)
+     * weights of the user-item pairs (u,i) of the training matrix, aligned with its compressed rows
+     */
+    private double[] rowWeights;
+
+    /**
+     * weights of the user-item pairs (u,i) of the training matrix, aligned with its compressed columns
      */
-    private SparseMatrix weights;
+    private double[] columnWeights;
+
+    /**
+     * predictions of the user-item pairs of the training matrix, aligned with the compressed rows while updating
+     * users and with the compressed columns while updating items
+     */
+    private double[] predictions;
+
+    /**
+     * item factors cache Sq and user factors cache Sp, numFactors x numFactors in row-major order
+     */
+    private double[] itemFactorsCache, userFactorsCache;
 
     @Override
     protected void setup() throws LibrecException {
@@ -62,7 +86,8 @@ public class EALSRecommender extends MatrixFactorizationRecommender {
         WRMFJudge = conf.getInt("rec.eals.wrmf.judge", 1);
 
         confidences = new double[numItems];
-        weights = new SparseMatrix(trainMatrix);
+        rowWeights = new double[trainMatrix.rowData.length];
+        columnWeights = new double[trainMatrix.colData.length];
 
         initConfidencesAndWeights();
     }
@@ -87,127 +112,243 @@ public class EALSRecommender extends MatrixFactorizationRecommender {
         }
 
         // By default, the weight for positive instance is uniformly 1.
-        for (MatrixEntry matrixEntry : trainMatrix) {
-            int userIdx = matrixEntry.row(); // user
-            int itemIdx = matrixEntry.column(); // item
-            if (WRMFJudge == 1 || WRMFJudge == 2) {
-                weights.set(userIdx, itemIdx, 1.0 + weightCoefficient * matrixEntry.get());
-//                w.set(u, i, 1.0 + Math.log(1.0 + Math.pow(10, alpha) * me.get())); maybe better for poi recommender
-            } else {
-                weights.set(userIdx, itemIdx, 1.0);
-            }
+        for (int pos = 0; pos < rowWeights.length; pos++) {
+            rowWeights[pos] = weight(trainMatrix.rowData[pos]);
+        }
+        for (int pos = 0; pos < columnWeights.length; pos++) {
+            columnWeights[pos] = weight(trainMatrix.colData[pos]);
         }
     }
 
+    private double weight(double rating) {
+        if (WRMFJudge == 1 || WRMFJudge == 2) {
+            return 1.0 + weightCoefficient * rating;
+//            return 1.0 + Math.log(1.0 + Math.pow(10, alpha) * rating); maybe better for poi recommender
+        } else {
+            return 1.0;
+        }
+    }
+
+    /**
+     * Each user (item) update only reads the item (user) factors, the cache and its own factors, so the users
+     * and then the items are updated in blocks on rec.thread.count threads. The k rows of a cache each sum over
+     * all users or items, so they are handed out to the threads one at a time. The arithmetic of every update is
+     * the same as the sequential one, whatever the number of threads.
+     *
+     * @throws LibrecException if error occurs during training
+     */
     @Override
     protected void trainModel() throws LibrecException {
-        List<List<Integer>> userItemsList = getUserItemsList(trainMatrix);
-        List<List<Integer>> itemUsersList = getItemUsersList(trainMatrix);
-
-        double[] usersPredictions = new double[numUsers];
-        double[] itemsPredictions = new double[numItems];
-        double[] usersWeights = new double[numUsers];
-        double[] itemsWeights = new double[numItems];
-
-        // Init item factors cache Sq
-        DenseMatrix itemFactorsCache = new DenseMatrix(numFactors, numFactors);
-        //Init user factors cache Sp
-        DenseMatrix userFactorsCache;
-
-        for (int iter = 1; iter <= numIterations; iter++) {
-            // Update the Sq cache
-            for (int factorIdx1 = 0; factorIdx1 < numFactors; factorIdx1++) {
-                for (int factorIdx2 = 0; factorIdx2 <= factorIdx1; factorIdx2++) {
-                    double value = 0;
-                    for (int itemIdx = 0; itemIdx < numItems; itemIdx++) {
-                        value += confidences[itemIdx] * itemFactors.get(itemIdx, factorIdx1) * itemFactors.get(itemIdx, factorIdx2);
+        int numThreads = Math.max(1, conf.getInt("rec.thread.count", Runtime.getRuntime().availableProcessors()));
+        predictions = new double[trainMatrix.rowData.length];
+        itemFactorsCache = new double[numFactors * numFactors];
+        userFactorsCache = new double[numFactors * numFactors];
+
+        ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+        try {
+            for (int iter = 1; iter <= numIterations; iter++) {
+                // Update the Sq cache
+                updateRows(executorService, numThreads, numFactors, 1, new RowUpdater() {
+                    @Override
+                    public void update(int factorIdx) {
+                        updateCacheRow(itemFactorsCache, itemFactors.data, confidences, factorIdx);
                     }
-                    itemFactorsCache.set(factorIdx1, factorIdx2, value);
-                    itemFactorsCache.set(factorIdx2, factorIdx1, value);
-                }
+                });
+                mirrorCache(itemFactorsCache);
+                // Step 1: update user factors;
+                updateRows(executorService, numThreads, numUsers, ROW_BLOCK_SIZE, new RowUpdater() {
+                    @Override
+                    public void update(int userIdx) {
+                        updateUser(userIdx);
+                    }
+                });
+                // Update the Sp cache
+                updateRows(executorService, numThreads, numFactors, 1, new RowUpdater() {
+                    @Override
+                    public void update(int factorIdx) {
+                        updateCacheRow(userFactorsCache, userFactors.data, null, factorIdx);
+                    }
+                });
+                mirrorCache(userFactorsCache);
+                // Step 2: update item factors;
+                updateRows(executorService, numThreads, numItems, ROW_BLOCK_SIZE, new RowUpdater() {
+                    @Override
+                    public void update(int itemIdx) {
+                        updateItem(itemIdx);
+                    }
+                });
             }
-            // Step 1: update user factors;
-            for (int userIdx = 0; userIdx < numUsers; userIdx++) {
-                for (int itemIdx : userItemsList.get(userIdx)) {
-                    itemsPredictions[itemIdx] = DenseMatrix.rowMult(userFactors, userIdx, itemFactors, itemIdx);
-                    itemsWeights[itemIdx] = weights.get(userIdx, itemIdx);
-                }
+        } finally {
+            executorService.shutdown();
+        }
+    }
 
-                for (int factorCacheIdx = 0; factorCacheIdx < numFactors; factorCacheIdx++) {
-                    double numer = 0, denom = regUser + itemFactorsCache.get(factorCacheIdx, factorCacheIdx);
+    /**
+     * Update the factors of a user, with the predictions of its items kept in the row-aligned predictions.
+     *
+     * @param userIdx user index
+     */
+    private void updateUser(int userIdx) {
+        double[] userValues = userFactors.data[userIdx];
+        double[][] itemData = itemFactors.data;
+        int start = trainMatrix.rowPtr[userIdx], end = trainMatrix.rowPtr[userIdx + 1];
+        int[] colInd = trainMatrix.colInd;
+        double[] ratings = trainMatrix.rowData;
 
-                    for (int factorIdx = 0; factorIdx < numFactors; factorIdx++) {
-                        if (factorCacheIdx != factorIdx) {
-                            numer -= userFactors.get(userIdx, factorIdx) * itemFactorsCache.get(factorCacheIdx, factorIdx);
-                        }
-                    }
+        for (int pos = start; pos < end; pos++) {
+            if (ratings[pos] != 0.0) {
+                predictions[pos] = DenseMatrix.rowMult(userFactors, userIdx, itemFactors, colInd[pos]);
+            }
+        }
 
-                    for (int itemIdx : userItemsList.get(userIdx)) {
-                        itemsPredictions[itemIdx] -= userFactors.get(userIdx, factorCacheIdx) * itemFactors.get(itemIdx, factorCacheIdx);
-                        numer += (itemsWeights[itemIdx] - (itemsWeights[itemIdx] - confidences[itemIdx]) * itemsPredictions[itemIdx])
-                                * itemFactors.get(itemIdx, factorCacheIdx);
-                        denom += (itemsWeights[itemIdx] - confidences[itemIdx]) * itemFactors.get(itemIdx, factorCacheIdx)
-                                * itemFactors.get(itemIdx, factorCacheIdx);
-                    }
+        for (int factorCacheIdx = 0; factorCacheIdx < numFactors; factorCacheIdx++) {
+            int cacheOffset = factorCacheIdx * numFactors;
+            double numer = 0, denom = regUser + itemFactorsCache[cacheOffset + factorCacheIdx];
 
-                    //update puf
-                    userFactors.set(userIdx, factorCacheIdx, numer / denom);
-                    for (int itemIdx : userItemsList.get(userIdx)) {
-                        itemsPredictions[itemIdx] += userFactors.get(userIdx, factorCacheIdx) * itemFactors.get(itemIdx, factorCacheIdx);
-                    }
+            for (int factorIdx = 0; factorIdx < numFactors; factorIdx++) {
+                if (factorCacheIdx != factorIdx) {
+                    numer -= userValues[factorIdx] * itemFactorsCache[cacheOffset + factorIdx];
                 }
             }
-            // Update the Sp cache
-            userFactorsCache = userFactors.transpose().mult(userFactors);
-            // Step 2: update item factors;
-            for (int itemIdx = 0; itemIdx < numItems; itemIdx++) {
-                for (int userIdx : itemUsersList.get(itemIdx)) {
-                    usersPredictions[userIdx] = DenseMatrix.rowMult(userFactors, userIdx, itemFactors, itemIdx);
-                    usersWeights[userIdx] = weights.get(userIdx, itemIdx);
+
+            for (int pos = start; pos < end; pos++) {
+                if (ratings[pos] == 0.0) {
+                    continue;
                 }
+                int itemIdx = colInd[pos];
+                double itemValue = itemData[itemIdx][factorCacheIdx];
+                double weight = rowWeights[pos];
+                predictions[pos] -= userValues[factorCacheIdx] * itemValue;
+                numer += (weight - (weight - confidences[itemIdx]) * predictions[pos]) * itemValue;
+                denom += (weight - confidences[itemIdx]) * itemValue * itemValue;
+            }
 
-                for (int factorCacheIdx = 0; factorCacheIdx < numFactors; factorCacheIdx++) {
-                    double numer = 0, denom = confidences[itemIdx] * userFactorsCache.get(factorCacheIdx, factorCacheIdx) + regItem;
+            //update puf
+            userValues[factorCacheIdx] = numer / denom;
+            for (int pos = start; pos < end; pos++) {
+                if (ratings[pos] != 0.0) {
+                    predictions[pos] += userValues[factorCacheIdx] * itemData[colInd[pos]][factorCacheIdx];
+                }
+            }
+        }
+    }
 
-                    for (int factorIdx = 0; factorIdx < numFactors; factorIdx++) {
-                        if (factorCacheIdx != factorIdx) {
-                            numer -= itemFactors.get(itemIdx, factorIdx) * userFactorsCache.get(factorIdx, factorCacheIdx);
-                        }
-                    }
-                    numer *= confidences[itemIdx];
-
-                    for (int userIdx : itemUsersList.get(itemIdx)) {
-                        usersPredictions[userIdx] -= userFactors.get(userIdx, factorCacheIdx) * itemFactors.get(itemIdx, factorCacheIdx);
-                        numer += (usersWeights[userIdx] - (usersWeights[userIdx] - confidences[itemIdx]) * usersPredictions[userIdx])
-                                * userFactors.get(userIdx, factorCacheIdx);
-                        denom += (usersWeights[userIdx] - confidences[itemIdx]) * userFactors.get(userIdx, factorCacheIdx)
-                                * userFactors.get(userIdx, factorCacheIdx);
-                    }
+    /**
+     * Update the factors of an item, with the predictions of its users kept in the column-aligned predictions.
+     *
+     * @param itemIdx item index
+     */
+    private void updateItem(int itemIdx) {
+        double[] itemValues = itemFactors.data[itemIdx];
+        double[][] userData = userFactors.data;
+        int start = trainMatrix.colPtr[itemIdx], end = trainMatrix.colPtr[itemIdx + 1];
+        int[] rowInd = trainMatrix.rowInd;
+        double[] ratings = trainMatrix.colData;
+        double confidence = confidences[itemIdx];
 
-                    //update qif
-                    itemFactors.set(itemIdx, factorCacheIdx, numer / denom);
-                    for (int userIdx : itemUsersList.get(itemIdx)) {
-                        usersPredictions[userIdx] += userFactors.get(userIdx, factorCacheIdx) * itemFactors.get(itemIdx, factorCacheIdx);
-                    }
+        for (int pos = start; pos < end; pos++) {
+            if (ratings[pos] != 0.0) {
+                predictions[pos] = DenseMatrix.rowMult(userFactors, rowInd[pos], itemFactors, itemIdx);
+            }
+        }
+
+        for (int factorCacheIdx = 0; factorCacheIdx < numFactors; factorCacheIdx++) {
+            double numer = 0, denom = confidence * userFactorsCache[factorCacheIdx * numFactors + factorCacheIdx] + regItem;
+
+            for (int factorIdx = 0; factorIdx < numFactors; factorIdx++) {
+                if (factorCacheIdx != factorIdx) {
+                    numer -= itemValues[factorIdx] * userFactorsCache[factorIdx * numFactors + factorCacheIdx];
+                }
+            }
+            numer *= confidence;
+
+            for (int pos = start; pos < end; pos++) {
+                if (ratings[pos] == 0.0) {
+                    continue;
+                }
+                double userValue = userData[rowInd[pos]][factorCacheIdx];
+                double weight = columnWeights[pos];
+                predictions[pos] -= userValue * itemValues[factorCacheIdx];
+                numer += (weight - (weight - confidence) * predictions[pos]) * userValue;
+                denom += (weight - confidence) * userValue * userValue;
+            }
+
+            //update qif
+            itemValues[factorCacheIdx] = numer / denom;
+            for (int pos = start; pos < end; pos++) {
+                if (ratings[pos] != 0.0) {
+                    predictions[pos] += userData[rowInd[pos]][factorCacheIdx] * itemValues[factorCacheIdx];
                 }
             }
         }
     }
 
+    /**
+     * Compute the lower triangle part of a row of a cache, the sum over all rows r of the factors of
+     * weight_r * factors_r[row] * factors_r[column].
+     *
+     * @param cache   cache to update
+     * @param factors factors
+     * @param weights weights of the factors rows, null for uniform weights of 1
+     * @param row     row of the cache
+     */
+    private void updateCacheRow(double[] cache, double[][] factors, double[] weights, int row) {
+        int offset = row * numFactors;
+        for (int column = 0; column <= row; column++) {
+            cache[offset + column] = 0.0;
+        }
+        for (int factorsRow = 0; factorsRow < factors.length; factorsRow++) {
+            double[] values = factors[factorsRow];
+            double value = weights == null ? values[row] : weights[factorsRow] * values[row];
+            for (int column = 0; column <= row; column++) {
+                cache[offset + column] += value * values[column];
+            }
+        }
+    }
 
-    private List<List<Integer>> getUserItemsList(SparseMatrix sparseMatrix) {
-        List<List<Integer>> userItemsList = new ArrayList<>();
-        for (int userIdx = 0; userIdx < numUsers; ++userIdx) {
-            userItemsList.add(sparseMatrix.getColumns(userIdx));
+    private void mirrorCache(double[] cache) {
+        for (int row = 0; row < numFactors; row++) {
+            for (int column = 0; column < row; column++) {
+                cache[column * numFactors + row] = cache[row * numFactors + column];
+            }
         }
-        return userItemsList;
     }
 
-    private List<List<Integer>> getItemUsersList(SparseMatrix sparseMatrix) {
-        List<List<Integer>> itemUsersList = new ArrayList<>();
-        for (int itemIdx = 0; itemIdx < numItems; ++itemIdx) {
-            itemUsersList.add(sparseMatrix.getRows(itemIdx));
+    /**
+     * Update of a row, e.g. of the factors of a user
+     */
+    private interface RowUpdater {
+        void update(int row);
+    }
+
+    /**
+     * Update all rows in blocks handed out to a pool of threads.
+     *
+     * @param executorService thread pool
+     * @param numThreads      number of threads
+     * @param numRows         number of rows
+     * @param blockSize       number of rows handed out at a time
+     * @param updater         update of a row
+     * @throws LibrecException if error occurs during updating
+     */
+    private void updateRows(ExecutorService executorService, int numThreads, int numRows, int blockSize,
+                            final RowUpdater updater) throws LibrecException {
+        final BlockCounter rows = new BlockCounter(numRows, blockSize);
+        List<Callable<Void>> tasks = new ArrayList<>(numThreads);
+        for (int thread = 0; thread < numThreads; thread++) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int fromRow = rows.next(); fromRow >= 0; fromRow = rows.next()) {
+                        int toRow = rows.end(fromRow);
+                        for (int row = fromRow; row < toRow; row++) {
+                            updater.update(row);
+                        }
+                    }
+                    return null;
+                }
+            });
         }
-        return itemUsersList;
+        ParallelUtil.invokeAll(executorService, tasks);
     }
 }
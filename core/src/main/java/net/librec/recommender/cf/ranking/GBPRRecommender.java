@@ -19,12 +19,14 @@ package net.librec.recommender.cf.ranking;
 
 import com.google.common.cache.LoadingCache;
 import net.librec.annotation.ModelData;
+import net.librec.annotation.ThreadSafePredict;
 import net.librec.common.LibrecException;
 import net.librec.math.algorithm.Maths;
 import net.librec.math.algorithm.Randoms;
 import net.librec.math.structure.DenseMatrix;
 import net.librec.math.structure.DenseVector;
 import net.librec.recommender.MatrixFactorizationRecommender;
+import net.librec.recommender.PairwiseSampler;
 
 import java.util.HashSet;
 import java.util.List;
@@ -38,6 +40,7 @@ import java.util.concurrent.ExecutionException;
  * @author guoguibing and Keqiang Wang
  */
 @ModelData({"isRanking", "gbpr", "userFactors", "itemFactors", "trainMatrix"})
+@ThreadSafePredict
 public class GBPRRecommender extends MatrixFactorizationRecommender {
     private float rho;
     private int gLen;
@@ -53,9 +56,14 @@ public class GBPRRecommender extends MatrixFactorizationRecommender {
     private DenseVector itemBiases;
 
     /**
-     * user-items cache, item-users cache
+     * sampler of the users and their rated items
      */
-    protected LoadingCache<Integer, List<Integer>> userItemsCache, itemUsersCache;
+    private PairwiseSampler sampler;
+
+    /**
+     * item-users cache
+     */
+    protected LoadingCache<Integer, List<Integer>> itemUsersCache;
 
     /**
      * Guava cache configuration
@@ -73,7 +81,7 @@ public class GBPRRecommender extends MatrixFactorizationRecommender {
         gLen = conf.getInt("rec.gpbr.gsize",2);
 
         cacheSpec = conf.get("guava.cache.spec", "maximumSize=200,expireAfterAccess=2m");
-        userItemsCache = trainMatrix.rowColumnsCache(cacheSpec);
+        sampler = new PairwiseSampler(trainMatrix);
         itemUsersCache = trainMatrix.columnRowsCache(cacheSpec);
     }
 
@@ -90,18 +98,12 @@ public class GBPRRecommender extends MatrixFactorizationRecommender {
                 // uniformly draw (userIdx, posItemIdx, userGroupSet, negItemIdx)
                 int userIdx, posItemIdx, negItemIdx;
                 // userIdx
-                List<Integer> ratedItems = null; // row userIdx itemList
                 do {
                     userIdx = Randoms.uniform(trainMatrix.numRows());
-                    try {
-                        ratedItems = userItemsCache.get(userIdx);
-                    } catch (ExecutionException e) {
-                        e.printStackTrace();
-                    }
-                } while (ratedItems.size() == 0);
+                } while (sampler.numPositives(userIdx) == 0);
 
                 // positive item
-                posItemIdx = Randoms.random(ratedItems);
+                posItemIdx = sampler.positive(userIdx, Randoms.uniform(sampler.numPositives(userIdx)));
 
                 // users group Set
                 List<Integer> posRatedUserList = null; // column i
@@ -127,7 +129,7 @@ public class GBPRRecommender extends MatrixFactorizationRecommender {
                 // negative item index
                 do {
                     negItemIdx = Randoms.uniform(numItems);
-                } while (ratedItems.contains(negItemIdx));
+                } while (sampler.isPositive(userIdx, negItemIdx));
 
                 double negPredictRating = predict(userIdx, negItemIdx);
 
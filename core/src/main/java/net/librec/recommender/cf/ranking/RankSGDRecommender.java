@@ -19,9 +19,11 @@ package net.librec.recommender.cf.ranking;
 
 import net.librec.annotation.ModelData;
 import net.librec.common.LibrecException;
+import net.librec.math.algorithm.RandomStream;
 import net.librec.math.algorithm.Randoms;
 import net.librec.math.structure.MatrixEntry;
 import net.librec.math.structure.SparseMatrix;
+import net.librec.recommender.HogwildTrainer;
 import net.librec.recommender.MatrixFactorizationRecommender;
 import net.librec.util.Lists;
 
@@ -56,6 +58,10 @@ public class RankSGDRecommender extends MatrixFactorizationRecommender {
 
     @Override
     protected void trainModel() throws LibrecException {
+        if (isHogwild()) {
+            trainModelHogwild();
+            return;
+        }
         List<Set<Integer>> userItemsSet = getUserItemsSet(trainMatrix);
         for (int iter = 1; iter <= numIterations; iter++) {
 
@@ -116,6 +122,107 @@ public class RankSGDRecommender extends MatrixFactorizationRecommender {
         }
     }
 
+    /**
+     * Train with the same updates as {@link #trainModel()}, applied by lock-free threads on the arrays of the
+     * factors, visiting the ratings in a random order. Every thread draws its negative items from its own stream
+     * seeded from rec.random.seed, by a binary search over the cumulative item probabilities.
+     *
+     * @throws LibrecException if error occurs during training
+     */
+    private void trainModelHogwild() throws LibrecException {
+        final int[] userIndices = HogwildTrainer.rowIndices(trainMatrix);
+        final int[] itemIndices = trainMatrix.colInd;
+        final double[] ratings = trainMatrix.rowData;
+        final double[][] userData = userFactors.data, itemData = itemFactors.data;
+        final int[][] userItems = new int[numUsers][];
+        for (int userIdx = 0; userIdx < numUsers; userIdx++) {
+            List<Integer> items = trainMatrix.getColumns(userIdx);
+            userItems[userIdx] = new int[items.size()];
+            for (int pos = 0; pos < items.size(); pos++) {
+                userItems[userIdx][pos] = items.get(pos);
+            }
+        }
+        // items and their cumulative sampling probabilities, in the order of itemProbs
+        final int[] probItems = new int[itemProbs.size()];
+        final double[] cumulativeProbs = new double[itemProbs.size()];
+        double sum = 0;
+        for (int pos = 0; pos < probItems.length; pos++) {
+            Map.Entry<Integer, Double> itemProb = itemProbs.get(pos);
+            sum += itemProb.getValue();
+            probItems[pos] = itemProb.getKey();
+            cumulativeProbs[pos] = sum;
+        }
+
+        HogwildTrainer trainer = createHogwildTrainer(ratings.length);
+        final RandomStream[] randoms = createThreadRandoms(trainer);
+        HogwildTrainer.SampleKernel kernel = new HogwildTrainer.SampleKernel() {
+            @Override
+            public double update(int thread, int sample) {
+                RandomStream random = randoms[thread];
+                int userIdx = userIndices[sample];
+                int posItemIdx = itemIndices[sample];
+                double posRating = ratings[sample];
+                int[] items = userItems[userIdx];
+                int negItemIdx;
+
+                while (true) {
+                    // draw an item j with probability proportional to popularity
+                    int pos = Arrays.binarySearch(cumulativeProbs, random.uniform());
+                    if (pos < 0) {
+                        pos = -pos - 1;
+                    } else {
+                        // the first of equal cumulative probabilities
+                        while (pos > 0 && cumulativeProbs[pos - 1] == cumulativeProbs[pos]) {
+                            pos--;
+                        }
+                    }
+                    if (pos == probItems.length) {
+                        continue;
+                    }
+                    negItemIdx = probItems[pos];
+                    // ensure that it is unrated by user u
+                    if (Arrays.binarySearch(items, negItemIdx) < 0)
+                        break;
+                }
+
+                double negRating = 0;
+                double[] userValues = userData[userIdx];
+                double[] posItemValues = itemData[posItemIdx], negItemValues = itemData[negItemIdx];
+                // compute predictions
+                double posPredictRating = 0, negPredictRating = 0;
+                for (int factorIdx = 0; factorIdx < numFactors; factorIdx++) {
+                    posPredictRating += userValues[factorIdx] * posItemValues[factorIdx];
+                    negPredictRating += userValues[factorIdx] * negItemValues[factorIdx];
+                }
+                double error = (posPredictRating - negPredictRating) - (posRating - negRating);
+
+                // update vectors
+                double sgd = learnRate * error;
+                for (int factorIdx = 0; factorIdx < numFactors; factorIdx++) {
+                    double userFactorValue = userValues[factorIdx];
+                    double posItemFactorValue = posItemValues[factorIdx];
+                    double negItemFactorValue = negItemValues[factorIdx];
+
+                    userValues[factorIdx] += -sgd * (posItemFactorValue - negItemFactorValue);
+                    posItemValues[factorIdx] += -sgd * userFactorValue;
+                    negItemValues[factorIdx] += sgd * userFactorValue;
+                }
+                return error * error;
+            }
+        };
+
+        try {
+            for (int iter = 1; iter <= numIterations; iter++) {
+                loss = 0.5d * runHogwildEpoch(trainer, kernel, iter);
+                if (isConverged(iter) && earlyStop) {
+                    break;
+                }
+                updateLRate(iter);
+            }
+        } finally {
+            trainer.shutdown();
+        }
+    }
 
     private List<Set<Integer>> getUserItemsSet(SparseMatrix sparseMatrix) {
         List<Set<Integer>> userItemsSet = new ArrayList<>();
@@ -20,6 +20,7 @@ package net.librec.recommender.cf.ranking;
 import net.librec.annotation.ModelData;
 import net.librec.common.LibrecException;
 import net.librec.math.structure.DenseMatrix;
+import net.librec.math.structure.PackedSymmMatrix;
 import net.librec.math.structure.SparseVector;
 import net.librec.math.structure.SymmMatrix;
 import net.librec.math.structure.VectorEntry;
@@ -252,6 +253,20 @@ public class SLIMRecommender extends AbstractRecommender {
         // find the nearest neighbors for each item based on item similarity
         List<Map.Entry<Integer, Double>> tempItemSimList;
         if (knn > 0) {
+            if (similarityMatrix instanceof PackedSymmMatrix) {
+                // rows are already ordered by similarity, take the leading non-zero entries
+                PackedSymmMatrix packedMatrix = (PackedSymmMatrix) similarityMatrix;
+                for (int itemIdx = 0; itemIdx < numItems; ++itemIdx) {
+                    int rowSize = packedMatrix.rowSize(itemIdx);
+                    itemNNs[itemIdx] = new HashSet<>((int) (Math.min(knn, rowSize) / 0.5));
+                    for (int rank = 0; rank < rowSize && itemNNs[itemIdx].size() < knn; rank++) {
+                        if (packedMatrix.getNeighborValue(itemIdx, rank) != 0) {
+                            itemNNs[itemIdx].add(packedMatrix.getNeighbor(itemIdx, rank));
+                        }
+                    }
+                }
+                return;
+            }
             for (int itemIdx = 0; itemIdx < numItems; ++itemIdx) {
                 SparseVector similarityVector = similarityMatrix.row(itemIdx);
                 if (knn < similarityVector.size()) {
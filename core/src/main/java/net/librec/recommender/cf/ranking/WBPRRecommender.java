@@ -17,20 +17,18 @@
  */
 package net.librec.recommender.cf.ranking;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import net.librec.annotation.ModelData;
+import net.librec.annotation.ThreadSafePredict;
 import net.librec.common.LibrecException;
 import net.librec.math.algorithm.Maths;
-import net.librec.math.algorithm.Randoms;
+import net.librec.math.algorithm.RandomStream;
 import net.librec.math.structure.DenseMatrix;
 import net.librec.math.structure.DenseVector;
+import net.librec.recommender.HogwildTrainer;
 import net.librec.recommender.MatrixFactorizationRecommender;
-import net.librec.util.Lists;
+import net.librec.recommender.PairwiseSampler;
 
-import java.util.*;
-import java.util.concurrent.ExecutionException;
+import java.util.Random;
 
 /**
  * Gantner et al., <strong>Bayesian Personalized Ranking for Non-Uniformly Sampled Items</strong>, JMLR, 2012.
@@ -38,26 +36,23 @@ import java.util.concurrent.ExecutionException;
  * @author guoguibing and Keqiang Wang
  */
 @ModelData({"isRanking", "wbpr", "userFactors", "itemFactors", "itemBiases", "trainMatrix"})
+@ThreadSafePredict
 public class WBPRRecommender extends MatrixFactorizationRecommender {
     /**
-     * user items Set
+     * sampler of the users and their rated items
      */
-    private LoadingCache<Integer, Set<Integer>> userItemsSet;
+    private PairwiseSampler sampler;
 
     /**
-     * pre-compute and sort by item's popularity
+     * cumulative popularity of the items, itemPopularities[itemIdx] being the number of ratings of the items up to
+     * itemIdx included
      */
-    private List<Map.Entry<Integer, Double>> sortedItemPops;
+    private double[] itemPopularities;
 
     /**
-     * cache each user's candidate items with probabilities
+     * popularity of the items not rated by each user
      */
-    private LoadingCache<Integer, List<Map.Entry<Integer, Double>>> cacheItemProbs;
-
-    /**
-     * user-items cache, item-users cache
-     */
-    protected LoadingCache<Integer, List<Integer>> userItemsCache;
+    private double[] unratedPopularities;
 
     /**
      * items biases
@@ -69,11 +64,6 @@ public class WBPRRecommender extends MatrixFactorizationRecommender {
      */
     protected float regBias;
 
-    /**
-     * Guava cache configuration
-     */
-    protected static String cacheSpec;
-
     @Override
     protected void setup() throws LibrecException {
         super.setup();
@@ -83,97 +73,92 @@ public class WBPRRecommender extends MatrixFactorizationRecommender {
         itemBiases = new DenseVector(numItems);
         itemBiases.init(0.01);
 
-        cacheSpec = conf.get("guava.cache.spec", "maximumSize=200,expireAfterAccess=2m");
-        userItemsCache = trainMatrix.rowColumnsCache(cacheSpec);
-        userItemsSet = trainMatrix.rowColumnsSetCache(cacheSpec);
+        sampler = new PairwiseSampler(trainMatrix);
 
-        // pre-compute and sort by item's popularity
-        sortedItemPops = new ArrayList<>();
+        // pre-compute the cumulative popularity of the items, and the popularity left unrated by each user
+        itemPopularities = new double[numItems];
+        double cumulativePopularity = 0;
         for (int itemIdx = 0; itemIdx < numItems; itemIdx++) {
-            sortedItemPops.add(new AbstractMap.SimpleEntry<>(itemIdx, Double.valueOf(trainMatrix.columnSize(itemIdx))));
+            cumulativePopularity += trainMatrix.columnSize(itemIdx);
+            itemPopularities[itemIdx] = cumulativePopularity;
+        }
+        unratedPopularities = new double[numUsers];
+        for (int userIdx = 0; userIdx < numUsers; userIdx++) {
+            double ratedPopularity = 0;
+            for (int rank = 0, numPositives = sampler.numPositives(userIdx); rank < numPositives; rank++) {
+                ratedPopularity += trainMatrix.columnSize(sampler.positive(userIdx, rank));
+            }
+            unratedPopularities[userIdx] = cumulativePopularity - ratedPopularity;
         }
-        Lists.sortList(sortedItemPops, true);
-
-        // cache each user's candidate items with probabilities
-        cacheItemProbs = getCacheItemProbs();
     }
 
     @Override
     protected void trainModel() throws LibrecException {
-        for (int iter = 1; iter <= numIterations; iter++) {
+        final double[][] userData = userFactors.data, itemData = itemFactors.data;
+        final double[] itemBiasData = itemBiases.getData();
 
-            loss = 0.0d;
-            for (int sampleCount = 0, smax = numUsers * 100; sampleCount < smax; sampleCount++) {
+        HogwildTrainer trainer = createSamplingTrainer(numUsers * 100);
+        final RandomStream[] randoms = createThreadRandoms(trainer);
+        HogwildTrainer.SampleKernel kernel = new HogwildTrainer.SampleKernel() {
+            @Override
+            public double update(int thread, int sample) {
                 // randomly draw (userIdx, posItemIdx, negItemIdx)
-                int userIdx = 0, posItemIdx = 0, negItemIdx = 0;
-                List<Integer> ratedItems = null;
-                List<Map.Entry<Integer, Double>> itemProbs = null;
-
-                while (true) {
-                    userIdx = Randoms.uniform(numUsers);
-                    try {
-                        ratedItems = userItemsCache.get(userIdx);
-                    } catch (ExecutionException e) {
-                        e.printStackTrace();
-                    }
-
-                    if (ratedItems.size() == 0)
-                        continue;
-
-                    posItemIdx = Randoms.random(ratedItems);
-
-                    // sample j by popularity (probability)
-                    try {
-                        itemProbs = cacheItemProbs.get(userIdx);
-                    } catch (ExecutionException e) {
-                        e.printStackTrace();
-                    }
-
-                    double rand = Randoms.random();
-                    double sum = 0;
-                    for (Map.Entry<Integer, Double> itemProb : itemProbs) {
-                        sum += itemProb.getValue();
-                        if (sum >= rand) {
-                            negItemIdx = itemProb.getKey();
-                            break;
-                        }
-                    }
-
-                    break;
-                }
+                RandomStream random = randoms[thread];
+                int userIdx;
+                do {
+                    userIdx = sampler.sampleUser(random);
+                } while (unratedPopularities[userIdx] <= 0);
+                int posItemIdx = sampler.samplePositive(random, userIdx);
+
+                // sample j by popularity (probability), rejecting the rated items
+                int negItemIdx;
+                do {
+                    negItemIdx = sampleByPopularity(random);
+                } while (sampler.isPositive(userIdx, negItemIdx));
 
                 // update parameters
-                double posPredictRating = predict(userIdx, posItemIdx);
-                double negPredictRating = predict(userIdx, negItemIdx);
-                double diffValue = posPredictRating - negPredictRating;
+                double[] userValues = userData[userIdx];
+                double[] posItemValues = itemData[posItemIdx], negItemValues = itemData[negItemIdx];
+                double diffValue = itemBiasData[posItemIdx] - itemBiasData[negItemIdx];
+                for (int factorIdx = 0; factorIdx < numFactors; factorIdx++) {
+                    diffValue += userValues[factorIdx] * (posItemValues[factorIdx] - negItemValues[factorIdx]);
+                }
 
-                double lossValue = -Math.log(Maths.logistic(diffValue));
-                loss += lossValue;
+                double sampleLoss = -Math.log(Maths.logistic(diffValue));
                 double deriValue = Maths.logistic(-diffValue);
 
                 // update bias
-                double posItemBiasValue = itemBiases.get(posItemIdx), negItemBiasValue = itemBiases.get(negItemIdx);
-                itemBiases.add(posItemIdx, learnRate * (deriValue - regBias * posItemBiasValue));
-                itemBiases.add(negItemIdx, learnRate * (-deriValue - regBias * negItemBiasValue));
-                loss += regBias * (posItemBiasValue * posItemBiasValue + negItemBiasValue * negItemBiasValue);
+                double posItemBiasValue = itemBiasData[posItemIdx], negItemBiasValue = itemBiasData[negItemIdx];
+                itemBiasData[posItemIdx] += learnRate * (deriValue - regBias * posItemBiasValue);
+                itemBiasData[negItemIdx] += learnRate * (-deriValue - regBias * negItemBiasValue);
+                sampleLoss += regBias * (posItemBiasValue * posItemBiasValue + negItemBiasValue * negItemBiasValue);
 
                 // update user/item vectors
                 for (int factorIdx = 0; factorIdx < numFactors; factorIdx++) {
-                    double userFactorValue = userFactors.get(userIdx, factorIdx);
-                    double posItemFactorValue = itemFactors.get(posItemIdx, factorIdx);
-                    double negItemFactorValue = itemFactors.get(negItemIdx, factorIdx);
+                    double userFactorValue = userValues[factorIdx];
+                    double posItemFactorValue = posItemValues[factorIdx];
+                    double negItemFactorValue = negItemValues[factorIdx];
 
-                    userFactors.add(userIdx, factorIdx, learnRate * (deriValue * (posItemFactorValue - negItemFactorValue) - regUser * userFactorValue));
-                    itemFactors.add(posItemIdx, factorIdx, learnRate * (deriValue * userFactorValue - regItem * posItemFactorValue));
-                    itemFactors.add(negItemIdx, factorIdx, learnRate * (deriValue * (-userFactorValue) - regItem * negItemFactorValue));
+                    userValues[factorIdx] += learnRate * (deriValue * (posItemFactorValue - negItemFactorValue) - regUser * userFactorValue);
+                    posItemValues[factorIdx] += learnRate * (deriValue * userFactorValue - regItem * posItemFactorValue);
+                    negItemValues[factorIdx] += learnRate * (deriValue * (-userFactorValue) - regItem * negItemFactorValue);
 
-                    loss += regUser * userFactorValue * userFactorValue + regItem * posItemFactorValue * posItemFactorValue + regItem * negItemFactorValue * negItemFactorValue;
+                    sampleLoss += regUser * userFactorValue * userFactorValue + regItem * posItemFactorValue * posItemFactorValue + regItem * negItemFactorValue * negItemFactorValue;
                 }
+                return sampleLoss;
             }
-            if (isConverged(iter) && earlyStop) {
-                break;
+        };
+
+        try {
+            for (int iter = 1; iter <= numIterations; iter++) {
+                loss = runHogwildEpoch(trainer, kernel, iter);
+                if (isConverged(iter) && earlyStop) {
+                    break;
+                }
+                updateLRate(iter);
             }
-            updateLRate(iter);
+        } finally {
+            trainer.shutdown();
         }
     }
 
@@ -190,40 +175,22 @@ public class WBPRRecommender extends MatrixFactorizationRecommender {
     }
 
     /**
-     * cache each user's candidate items with probabilities
+     * Draw an item with a probability proportional to its popularity.
      *
-     * @return cache each user's candidate items with probabilities
+     * @param random random generator of the calling thread
+     * @return item index
      */
-    private LoadingCache<Integer, List<Map.Entry<Integer, Double>>> getCacheItemProbs() {
-        LoadingCache<Integer, List<Map.Entry<Integer, Double>>> cache = CacheBuilder.from(cacheSpec).build(new CacheLoader<Integer, List<Map.Entry<Integer, Double>>>() {
-
-            @Override
-            public List<Map.Entry<Integer, Double>> load(Integer u) throws Exception {
-                List<Map.Entry<Integer, Double>> itemProbs = new ArrayList<>();
-
-                Set<Integer> ratedItemsSet = userItemsSet.get(u);
-
-                // filter candidate items
-                double sum = 0;
-                for (Map.Entry<Integer, Double> itemPop : sortedItemPops) {
-                    Integer itemIdx = itemPop.getKey();
-                    double popularity = itemPop.getValue();
-
-                    if (!ratedItemsSet.contains(itemIdx) && popularity > 0) {
-                        // make a clone to prevent bugs from normalization
-                        itemProbs.add(itemPop);
-                        sum += popularity;
-                    }
-                }
-
-                // normalization
-                for (Map.Entry<Integer, Double> itemProb : itemProbs) {
-                    itemProb.setValue(itemProb.getValue() / sum);
-                }
-
-                return itemProbs;
+    private int sampleByPopularity(Random random) {
+        double rand = random.nextDouble() * itemPopularities[numItems - 1];
+        int low = 0, high = numItems - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (itemPopularities[mid] > rand) {
+                high = mid;
+            } else {
+                low = mid + 1;
             }
-        });
-        return cache;
+        }
+        return low;
     }
 }
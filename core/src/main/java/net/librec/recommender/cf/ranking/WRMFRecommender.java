@@ -21,9 +21,16 @@ import net.librec.annotation.ModelData;
 import net.librec.common.LibrecException;
 import net.librec.math.structure.*;
 import net.librec.recommender.MatrixFactorizationRecommender;
+import net.librec.util.ParallelUtil;
+import net.librec.util.ParallelUtil.BlockCounter;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * <h3>WRMF: Weighted Regularized Matrix Factorization.</h3>
@@ -38,6 +45,11 @@ import java.util.List;
  */
 @ModelData({"isRanking", "wrmf", "userFactors", "itemFactors", "trainMatrix"})
 public class WRMFRecommender extends MatrixFactorizationRecommender {
+    /**
+     * number of users or items handed out to a solver thread at a time
+     */
+    private static final int ROW_BLOCK_SIZE = 64;
+
     /**
      * confidence weight coefficient
      */
@@ -71,7 +83,279 @@ public class WRMFRecommender extends MatrixFactorizationRecommender {
 
     @Override
     protected void trainModel() throws LibrecException {
+        String solver = conf.get("rec.wrmf.solver", "cholesky");
+        if ("inverse".equalsIgnoreCase(solver)) {
+            trainModelByInverse();
+            return;
+        }
+        boolean conjugateGradient = "cg".equalsIgnoreCase(solver);
+        int numSteps = conf.getInt("rec.wrmf.cg.steps", 3);
+        int numThreads = Math.max(1, conf.getInt("rec.thread.count", Runtime.getRuntime().availableProcessors()));
+
+        ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+        try {
+            for (int iter = 1; iter <= numIterations; iter++) {
+                // Step 1: update user factors from the rows of the training matrix
+                updateFactors(executorService, numThreads, conjugateGradient, numSteps, userFactors, itemFactors,
+                        trainMatrix.rowPtr, trainMatrix.colInd, trainMatrix.rowData,
+                        confindenceMinusIdentityMatrix.rowData, preferenceMatrix.rowData, regUser);
+                // Step 2: update item factors from the columns of the training matrix
+                updateFactors(executorService, numThreads, conjugateGradient, numSteps, itemFactors, userFactors,
+                        trainMatrix.colPtr, trainMatrix.rowInd, trainMatrix.colData,
+                        confindenceMinusIdentityMatrix.colData, preferenceMatrix.colData, regItem);
+
+                if (verbose) {
+                    LOG.info(getClass() + " runs at iteration = " + iter + " " + new Date());
+                }
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    /**
+     * Solve the least squares problems of all users (or items) given the fixed item (or user) factors on a pool
+     * of threads. The problem of a row only depends on the fixed factors, so the rows are solved independently.
+     *
+     * @param executorService   thread pool
+     * @param numThreads        number of threads
+     * @param conjugateGradient whether to run conjugate gradient steps instead of a Cholesky solve
+     * @param numSteps          number of conjugate gradient steps
+     * @param factors           factors to update
+     * @param fixedFactors      fixed factors
+     * @param ptr               pointers of the compressed rows (or columns) of the training matrix
+     * @param index             indices of the entries of the compressed rows (or columns)
+     * @param ratings           training ratings of the entries
+     * @param confidences       confidences minus one of the entries
+     * @param preferences       preferences of the entries
+     * @param regularization    regularization of the updated factors
+     * @throws LibrecException if error occurs during updating
+     */
+    private void updateFactors(ExecutorService executorService, int numThreads, boolean conjugateGradient,
+                               int numSteps, DenseMatrix factors, DenseMatrix fixedFactors, int[] ptr, int[] index,
+                               double[] ratings, double[] confidences, double[] preferences, double regularization)
+            throws LibrecException {
+        double[] gram = new double[numFactors * numFactors];
+        for (double[] fixedValues : fixedFactors.data) {
+            for (int factorIdx = 0; factorIdx < numFactors; factorIdx++) {
+                double value = fixedValues[factorIdx];
+                for (int factorIdxIn = 0; factorIdxIn <= factorIdx; factorIdxIn++) {
+                    gram[factorIdx * numFactors + factorIdxIn] += value * fixedValues[factorIdxIn];
+                }
+            }
+        }
+        for (int factorIdx = 0; factorIdx < numFactors; factorIdx++) {
+            for (int factorIdxIn = 0; factorIdxIn < factorIdx; factorIdxIn++) {
+                gram[factorIdxIn * numFactors + factorIdx] = gram[factorIdx * numFactors + factorIdxIn];
+            }
+        }
+
+        BlockCounter rows = new BlockCounter(factors.numRows(), ROW_BLOCK_SIZE);
+        List<Callable<Void>> tasks = new ArrayList<>(numThreads);
+        for (int thread = 0; thread < numThreads; thread++) {
+            tasks.add(new FactorUpdater(rows, conjugateGradient, numSteps, factors.data, fixedFactors.data, ptr,
+                    index, ratings, confidences, preferences, gram, regularization));
+        }
+        ParallelUtil.invokeAll(executorService, tasks);
+    }
+
+    /**
+     * Solver of the least squares problems of the rows handed out by a shared counter, with its own scratch
+     * buffers. The problem of row u is (Y^T Y + Y^T (C_u - I) Y + lambda I) x_u = Y^T C_u p_u, where only the
+     * entries of the row contribute to the correction of the Gram matrix Y^T Y and to the right hand side.
+     */
+    private final class FactorUpdater implements Callable<Void> {
+        private final BlockCounter rows;
+        private final boolean conjugateGradient;
+        private final int numSteps;
+        private final double[][] factors, fixedFactors;
+        private final int[] ptr, index;
+        private final double[] ratings, confidences, preferences, gram;
+        private final double regularization;
+        private final double[] matrix, vector, residual, direction, product;
+
+        FactorUpdater(BlockCounter rows, boolean conjugateGradient, int numSteps, double[][] factors,
+                      double[][] fixedFactors, int[] ptr, int[] index, double[] ratings, double[] confidences,
+                      double[] preferences, double[] gram, double regularization) {
+            this.rows = rows;
+            this.conjugateGradient = conjugateGradient;
+            this.numSteps = numSteps;
+            this.factors = factors;
+            this.fixedFactors = fixedFactors;
+            this.ptr = ptr;
+            this.index = index;
+            this.ratings = ratings;
+            this.confidences = confidences;
+            this.preferences = preferences;
+            this.gram = gram;
+            this.regularization = regularization;
+            this.matrix = conjugateGradient ? null : new double[numFactors * numFactors];
+            this.vector = new double[numFactors];
+            this.residual = conjugateGradient ? new double[numFactors] : null;
+            this.direction = conjugateGradient ? new double[numFactors] : null;
+            this.product = conjugateGradient ? new double[numFactors] : null;
+        }
+
+        @Override
+        public Void call() {
+            for (int fromRow = rows.next(); fromRow >= 0; fromRow = rows.next()) {
+                int toRow = rows.end(fromRow);
+                for (int row = fromRow; row < toRow; row++) {
+                    rightHandSide(row);
+                    if (conjugateGradient) {
+                        solveByConjugateGradient(row);
+                    } else {
+                        solveByCholesky(row);
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * vector = Y^T C_u p_u, summed over the entries of the row
+         */
+        private void rightHandSide(int row) {
+            Arrays.fill(vector, 0.0);
+            for (int pos = ptr[row]; pos < ptr[row + 1]; pos++) {
+                if (ratings[pos] == 0.0) {
+                    continue;
+                }
+                double[] fixedValues = fixedFactors[index[pos]];
+                double weight = preferences[pos] * (confidences[pos] + 1.0);
+                for (int factorIdx = 0; factorIdx < numFactors; factorIdx++) {
+                    vector[factorIdx] += weight * fixedValues[factorIdx];
+                }
+            }
+        }
+
+        private void solveByCholesky(int row) {
+            // lower triangle of Y^T Y + lambda I + Y^T (C_u - I) Y
+            System.arraycopy(gram, 0, matrix, 0, matrix.length);
+            for (int factorIdx = 0; factorIdx < numFactors; factorIdx++) {
+                matrix[factorIdx * numFactors + factorIdx] += regularization;
+            }
+            for (int pos = ptr[row]; pos < ptr[row + 1]; pos++) {
+                if (ratings[pos] == 0.0) {
+                    continue;
+                }
+                double[] fixedValues = fixedFactors[index[pos]];
+                double confidence = confidences[pos];
+                for (int factorIdx = 0; factorIdx < numFactors; factorIdx++) {
+                    double value = confidence * fixedValues[factorIdx];
+                    int offset = factorIdx * numFactors;
+                    for (int factorIdxIn = 0; factorIdxIn <= factorIdx; factorIdxIn++) {
+                        matrix[offset + factorIdxIn] += value * fixedValues[factorIdxIn];
+                    }
+                }
+            }
+
+            // in-place decomposition into L L^T
+            for (int col = 0; col < numFactors; col++) {
+                int colOffset = col * numFactors;
+                double diagonal = matrix[colOffset + col];
+                for (int k = 0; k < col; k++) {
+                    diagonal -= matrix[colOffset + k] * matrix[colOffset + k];
+                }
+                diagonal = Math.sqrt(diagonal);
+                matrix[colOffset + col] = diagonal;
+                for (int r = col + 1; r < numFactors; r++) {
+                    int rowOffset = r * numFactors;
+                    double value = matrix[rowOffset + col];
+                    for (int k = 0; k < col; k++) {
+                        value -= matrix[rowOffset + k] * matrix[colOffset + k];
+                    }
+                    matrix[rowOffset + col] = value / diagonal;
+                }
+            }
 
+            // solve L z = vector, then L^T x = z
+            for (int r = 0; r < numFactors; r++) {
+                int rowOffset = r * numFactors;
+                double value = vector[r];
+                for (int k = 0; k < r; k++) {
+                    value -= matrix[rowOffset + k] * vector[k];
+                }
+                vector[r] = value / matrix[rowOffset + r];
+            }
+            double[] values = factors[row];
+            for (int r = numFactors - 1; r >= 0; r--) {
+                double value = vector[r];
+                for (int k = r + 1; k < numFactors; k++) {
+                    value -= matrix[k * numFactors + r] * values[k];
+                }
+                values[r] = value / matrix[r * numFactors + r];
+            }
+        }
+
+        /**
+         * A few conjugate gradient steps started from the current factors, never forming the matrix of the row.
+         */
+        private void solveByConjugateGradient(int row) {
+            double[] values = factors[row];
+            multiply(row, values, product);
+            double residualNorm = 0.0;
+            for (int factorIdx = 0; factorIdx < numFactors; factorIdx++) {
+                residual[factorIdx] = vector[factorIdx] - product[factorIdx];
+                direction[factorIdx] = residual[factorIdx];
+                residualNorm += residual[factorIdx] * residual[factorIdx];
+            }
+            for (int step = 0; step < numSteps && residualNorm > 0.0; step++) {
+                multiply(row, direction, product);
+                double curvature = 0.0;
+                for (int factorIdx = 0; factorIdx < numFactors; factorIdx++) {
+                    curvature += direction[factorIdx] * product[factorIdx];
+                }
+                double alpha = residualNorm / curvature;
+                double newResidualNorm = 0.0;
+                for (int factorIdx = 0; factorIdx < numFactors; factorIdx++) {
+                    values[factorIdx] += alpha * direction[factorIdx];
+                    residual[factorIdx] -= alpha * product[factorIdx];
+                    newResidualNorm += residual[factorIdx] * residual[factorIdx];
+                }
+                double beta = newResidualNorm / residualNorm;
+                for (int factorIdx = 0; factorIdx < numFactors; factorIdx++) {
+                    direction[factorIdx] = residual[factorIdx] + beta * direction[factorIdx];
+                }
+                residualNorm = newResidualNorm;
+            }
+        }
+
+        /**
+         * result = (Y^T Y + lambda I + Y^T (C_u - I) Y) input
+         */
+        private void multiply(int row, double[] input, double[] result) {
+            for (int factorIdx = 0; factorIdx < numFactors; factorIdx++) {
+                int offset = factorIdx * numFactors;
+                double value = regularization * input[factorIdx];
+                for (int factorIdxIn = 0; factorIdxIn < numFactors; factorIdxIn++) {
+                    value += gram[offset + factorIdxIn] * input[factorIdxIn];
+                }
+                result[factorIdx] = value;
+            }
+            for (int pos = ptr[row]; pos < ptr[row + 1]; pos++) {
+                if (ratings[pos] == 0.0) {
+                    continue;
+                }
+                double[] fixedValues = fixedFactors[index[pos]];
+                double value = 0.0;
+                for (int factorIdx = 0; factorIdx < numFactors; factorIdx++) {
+                    value += fixedValues[factorIdx] * input[factorIdx];
+                }
+                value *= confidences[pos];
+                for (int factorIdx = 0; factorIdx < numFactors; factorIdx++) {
+                    result[factorIdx] += value * fixedValues[factorIdx];
+                }
+            }
+        }
+    }
+
+    /**
+     * Train by inverting the matrix of every user and item, one at a time.
+     *
+     * @throws LibrecException if error occurs during training
+     */
+    private void trainModelByInverse() throws LibrecException {
         SparseMatrix userIdentityMatrix = DiagMatrix.eye(numFactors).scale(regUser);
         SparseMatrix itemIdentityMatrix = DiagMatrix.eye(numFactors).scale(regItem);
 
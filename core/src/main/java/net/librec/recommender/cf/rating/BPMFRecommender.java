@@ -18,12 +18,18 @@
 package net.librec.recommender.cf.rating;
 
 import net.librec.common.LibrecException;
+import net.librec.math.algorithm.RandomStream;
 import net.librec.math.algorithm.Randoms;
 import net.librec.math.structure.*;
 import net.librec.recommender.MatrixFactorizationRecommender;
+import net.librec.util.ParallelUtil;
+import net.librec.util.ParallelUtil.BlockCounter;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Salakhutdinov and Mnih, <strong>Bayesian Probabilistic Matrix Factorization using Markov Chain Monte Carlo</strong>,
@@ -130,32 +136,34 @@ public class BPMFRecommender extends MatrixFactorizationRecommender {
 
         HyperParameters userHyperParameters = new HyperParameters(mu_u, variance_u);
         HyperParameters itemHyperParameters = new HyperParameters(mu_m, variance_m);
+        int numThreads = Math.max(1, conf.getInt("rec.thread.count", Runtime.getRuntime().availableProcessors()));
+        ExecutorService executorService = numThreads > 1 ? Executors.newFixedThreadPool(numThreads) : null;
+        try {
+            gibbsSampling(executorService, numThreads, userTrainVectors, itemTrainVectors, userHyperParameters,
+                    itemHyperParameters);
+        } finally {
+            if (executorService != null) {
+                executorService.shutdown();
+            }
+        }
+    }
+
+    private void gibbsSampling(ExecutorService executorService, int numThreads, List<SparseVector> userTrainVectors,
+                               List<SparseVector> itemTrainVectors, HyperParameters userHyperParameters,
+                               HyperParameters itemHyperParameters) throws LibrecException {
         for (int iter = 0; iter < numIterations; iter++) {
-            userHyperParameters = samplingHyperParameters(userHyperParameters, userFactors, userMu, userBeta, userWishartScale, userWishartNu);
-            itemHyperParameters = samplingHyperParameters(itemHyperParameters, itemFactors, itemMu, itemBeta, itemWishartScale, itemWishartNu);
+            userHyperParameters = samplingHyperParameters(userHyperParameters, userFactors, userMu, userBeta, userWishartScale, userWishartNu,
+                    Randoms.stream("bpmf.hyperparameters", 2L * iter));
+            itemHyperParameters = samplingHyperParameters(itemHyperParameters, itemFactors, itemMu, itemBeta, itemWishartScale, itemWishartNu,
+                    Randoms.stream("bpmf.hyperparameters", 2L * iter + 1));
 
             for (int gibbsIteration = 0; gibbsIteration < 1; gibbsIteration++) {
-
-                for (int u = 0; u < numUsers; u++) {
-                    SparseVector ratings = userTrainVectors.get(u);
-                    int count = ratings.getCount();
-                    if (count == 0) {
-                        continue;
-                    }
-
-                    userFactors.setRow(u, updateParameters(itemFactors, ratings, userHyperParameters));
-                }
-
-                for (int i = 0; i < numItems; i++) {
-                    SparseVector ratings = itemTrainVectors.get(i);
-                    int count = ratings.getCount();
-                    if (count == 0) {
-                        continue;
-                    }
-
-                    itemFactors.setRow(i, updateParameters(userFactors, ratings, itemHyperParameters));
-                }
-
+                // the rows of a side are independent given the other side, each drawing from its own stream
+                long streamOffset = 2L * iter * Math.max(numUsers, numItems);
+                samplingFactors(executorService, numThreads, userFactors, itemFactors, userTrainVectors,
+                        userHyperParameters, streamOffset);
+                samplingFactors(executorService, numThreads, itemFactors, userFactors, itemTrainVectors,
+                        itemHyperParameters, streamOffset + Math.max(numUsers, numItems));
             }
 
             if (iter == 1) {
@@ -179,7 +187,76 @@ public class BPMFRecommender extends MatrixFactorizationRecommender {
         }
     }
 
+    /**
+     * Sample the factors of all users (or items) given the fixed item (or user) factors, on a pool of threads.
+     * Row {@code row} draws from {@link Randoms#stream(String, long)} with key {@code streamOffset + row}, so the samples do
+     * not depend on the number of threads.
+     *
+     * @param executorService  thread pool, or null to sample on the calling thread
+     * @param numThreads       number of threads
+     * @param factors          factors to sample
+     * @param fixedFactors     fixed factors
+     * @param trainVectors     training ratings of every row
+     * @param hyperParameters  hyper parameters of the sampled factors
+     * @param streamOffset     key of the stream of the first row
+     * @throws LibrecException if error occurs during sampling
+     */
+    private void samplingFactors(ExecutorService executorService, int numThreads, final DenseMatrix factors,
+                                 final DenseMatrix fixedFactors, final List<SparseVector> trainVectors,
+                                 final HyperParameters hyperParameters, final long streamOffset)
+            throws LibrecException {
+        final int numRows = factors.numRows();
+        if (executorService == null) {
+            for (int row = 0; row < numRows; row++) {
+                samplingFactors(factors, fixedFactors, trainVectors, hyperParameters, streamOffset, row);
+            }
+            return;
+        }
+
+        final BlockCounter rows = new BlockCounter(numRows, 1);
+        List<Callable<Void>> tasks = new ArrayList<>(numThreads);
+        for (int thread = 0; thread < numThreads; thread++) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws LibrecException {
+                    for (int row = rows.next(); row >= 0; row = rows.next()) {
+                        samplingFactors(factors, fixedFactors, trainVectors, hyperParameters, streamOffset, row);
+                    }
+                    return null;
+                }
+            });
+        }
+        ParallelUtil.invokeAll(executorService, tasks);
+    }
+
+    private void samplingFactors(DenseMatrix factors, DenseMatrix fixedFactors, List<SparseVector> trainVectors,
+                                 HyperParameters hyperParameters, long streamOffset, int row) throws LibrecException {
+        SparseVector ratings = trainVectors.get(row);
+        if (ratings.getCount() == 0) {
+            return;
+        }
+        RandomStream random = Randoms.stream("bpmf.factors", streamOffset + row);
+        factors.setRow(row, updateParameters(fixedFactors, ratings, hyperParameters, random));
+    }
+
     protected HyperParameters samplingHyperParameters(HyperParameters hyperParameters, DenseMatrix factors, DenseVector normalMu0, double normalBeta0, DenseMatrix WishartScale0, double WishartNu0) throws LibrecException {
+        return samplingHyperParameters(hyperParameters, factors, normalMu0, normalBeta0, WishartScale0, WishartNu0, Randoms.split());
+    }
+
+    /**
+     * Sample the hyper parameters of the factors, drawing from the given stream.
+     *
+     * @param hyperParameters hyper parameters to update
+     * @param factors         factors
+     * @param normalMu0       prior mean of the mean
+     * @param normalBeta0     prior precision scale of the mean
+     * @param WishartScale0   prior Wishart scale of the precision
+     * @param WishartNu0      prior Wishart degrees of freedom of the precision
+     * @param random          random stream
+     * @return the updated hyper parameters
+     * @throws LibrecException if error occurs during sampling
+     */
+    protected HyperParameters samplingHyperParameters(HyperParameters hyperParameters, DenseMatrix factors, DenseVector normalMu0, double normalBeta0, DenseMatrix WishartScale0, double WishartNu0, RandomStream random) throws LibrecException {
         int numRows = factors.numRows();
         int numColumns = factors.numColumns();
         DenseVector mean = new DenseVector(numFactors);
@@ -198,7 +275,7 @@ public class BPMFRecommender extends MatrixFactorizationRecommender {
         WishartScalePost = WishartScalePost.add(muError.outer(muError).scale(normalBeta0 * numRows / betaPost));
         WishartScalePost = WishartScalePost.inv();
         WishartScalePost = WishartScalePost.add(WishartScalePost.transpose()).scale(0.5);
-        DenseMatrix variance = Randoms.wishart(WishartScalePost, numRows + numColumns);
+        DenseMatrix variance = random.wishart(WishartScalePost, numRows + numColumns);
         if (variance != null) {
             hyperParameters.variance = variance;
         }
@@ -209,7 +286,7 @@ public class BPMFRecommender extends MatrixFactorizationRecommender {
 
             DenseVector normalRdn = new DenseVector(numColumns);
             for (int f = 0; f < numFactors; f++)
-                normalRdn.set(f, Randoms.gaussian(0, 1));
+                normalRdn.set(f, random.gaussian(0, 1));
 
             hyperParameters.mu = normalVariance.mult(normalRdn).add(muPost);
         }
@@ -217,6 +294,20 @@ public class BPMFRecommender extends MatrixFactorizationRecommender {
     }
 
     protected DenseVector updateParameters(DenseMatrix factors, SparseVector ratings, HyperParameters hyperParameters) throws LibrecException {
+        return updateParameters(factors, ratings, hyperParameters, Randoms.split());
+    }
+
+    /**
+     * Sample the factors of a user (or item) given its ratings and the fixed factors, drawing from the given stream.
+     *
+     * @param factors         fixed factors
+     * @param ratings         ratings of the user (or item)
+     * @param hyperParameters hyper parameters of the sampled factors
+     * @param random          random stream
+     * @return the sampled factors
+     * @throws LibrecException if error occurs during sampling
+     */
+    protected DenseVector updateParameters(DenseMatrix factors, SparseVector ratings, HyperParameters hyperParameters, RandomStream random) throws LibrecException {
         int num = ratings.getCount();
         DenseMatrix XX = new DenseMatrix(num, numFactors);
         DenseVector ratingsReg = new DenseVector(num);
@@ -239,7 +330,7 @@ public class BPMFRecommender extends MatrixFactorizationRecommender {
         if (lam != null) {
             lam = lam.transpose();
             for (int f = 0; f < numFactors; f++)
-                factorVector.set(f, Randoms.gaussian(0, 1));
+                factorVector.set(f, random.gaussian(0, 1));
 
             DenseVector w1_P1_u = lam.mult(factorVector).add(mu);
 
@@ -18,10 +18,13 @@
 package net.librec.recommender.cf.rating;
 
 import net.librec.annotation.ModelData;
+import net.librec.annotation.ThreadSafePredict;
 import net.librec.common.LibrecException;
 import net.librec.math.structure.DenseMatrix;
 import net.librec.math.structure.DenseVector;
 import net.librec.math.structure.MatrixEntry;
+import net.librec.recommender.DSGDTrainer;
+import net.librec.recommender.HogwildTrainer;
 import net.librec.recommender.MatrixFactorizationRecommender;
 
 /**
@@ -30,6 +33,7 @@ import net.librec.recommender.MatrixFactorizationRecommender;
  * @author GuoGuibing and Keqiang Wang
  */
 @ModelData({"isRating", "biasedMF", "userFactors", "itemFactors", "userBiases", "itemBiases"})
+@ThreadSafePredict
 public class BiasedMFRecommender extends MatrixFactorizationRecommender {
     /**
      * bias regularization
@@ -66,6 +70,10 @@ public class BiasedMFRecommender extends MatrixFactorizationRecommender {
 
     @Override
     protected void trainModel() throws LibrecException {
+        if (isHogwild() || isDSGD()) {
+            trainModelParallel();
+            return;
+        }
         for (int iter = 1; iter <= numIterations; iter++) {
             loss = 0.0d;
 
@@ -107,6 +115,87 @@ public class BiasedMFRecommender extends MatrixFactorizationRecommender {
         }
     }
 
+    /**
+     * Train with the same updates as {@link #trainModel()}, applied in parallel on the arrays of the factors
+     * and biases. Lock-free threads visit the ratings in a random order with rec.sgd.hogwild, while rec.sgd.dsgd
+     * trains the conflict-free blocks of every stratum concurrently, reproducibly for a fixed rec.random.seed.
+     *
+     * @throws LibrecException if error occurs during training
+     */
+    private void trainModelParallel() throws LibrecException {
+        final int[] userIndices = HogwildTrainer.rowIndices(trainMatrix);
+        final int[] itemIndices = trainMatrix.colInd;
+        final double[] ratings = trainMatrix.rowData;
+        final double[][] userData = userFactors.data, itemData = itemFactors.data;
+        final double[] userBiasData = userBiases.getData(), itemBiasData = itemBiases.getData();
+
+        HogwildTrainer.SampleKernel kernel = new HogwildTrainer.SampleKernel() {
+            @Override
+            public double update(int thread, int sample) {
+                int userIdx = userIndices[sample];
+                int itemIdx = itemIndices[sample];
+                double[] userValues = userData[userIdx], itemValues = itemData[itemIdx];
+
+                double predictRating = 0.0;
+                for (int factorIdx = 0; factorIdx < numFactors; factorIdx++) {
+                    predictRating += userValues[factorIdx] * itemValues[factorIdx];
+                }
+                predictRating += userBiasData[userIdx] + itemBiasData[itemIdx] + globalMean;
+                double error = ratings[sample] - predictRating;
+                double sampleLoss = error * error;
+
+                // update user and item bias
+                double userBiasValue = userBiasData[userIdx];
+                userBiasData[userIdx] += learnRate * (error - regBias * userBiasValue);
+                sampleLoss += regBias * userBiasValue * userBiasValue;
+
+                double itemBiasValue = itemBiasData[itemIdx];
+                itemBiasData[itemIdx] += learnRate * (error - regBias * itemBiasValue);
+                sampleLoss += regBias * itemBiasValue * itemBiasValue;
+
+                //update user and item factors
+                for (int factorIdx = 0; factorIdx < numFactors; factorIdx++) {
+                    double userFactorValue = userValues[factorIdx];
+                    double itemFactorValue = itemValues[factorIdx];
+
+                    userValues[factorIdx] += learnRate * (error * itemFactorValue - regUser * userFactorValue);
+                    itemValues[factorIdx] += learnRate * (error * userFactorValue - regItem * itemFactorValue);
+                    sampleLoss += regUser * userFactorValue * userFactorValue + regItem * itemFactorValue * itemFactorValue;
+                }
+                return sampleLoss;
+            }
+        };
+
+        if (isDSGD()) {
+            DSGDTrainer trainer = createDSGDTrainer(userIndices, itemIndices);
+            try {
+                for (int iter = 1; iter <= numIterations; iter++) {
+                    loss = 0.5d * runDSGDEpoch(trainer, kernel, iter);
+                    if (isConverged(iter) && earlyStop) {
+                        break;
+                    }
+                    updateLRate(iter);
+                }
+            } finally {
+                trainer.shutdown();
+            }
+            return;
+        }
+
+        HogwildTrainer trainer = createHogwildTrainer(ratings.length);
+        try {
+            for (int iter = 1; iter <= numIterations; iter++) {
+                loss = 0.5d * runHogwildEpoch(trainer, kernel, iter);
+                if (isConverged(iter) && earlyStop) {
+                    break;
+                }
+                updateLRate(iter);
+            }
+        } finally {
+            trainer.shutdown();
+        }
+    }
+
     /**
      * predict a specific rating for user userIdx on item itemIdx.
      *
@@ -22,11 +22,10 @@ import net.librec.annotation.ModelData;
 import net.librec.common.LibrecException;
 import net.librec.math.structure.DenseMatrix;
 import net.librec.math.structure.SparseVector;
-import net.librec.math.structure.TensorEntry;
 import net.librec.math.structure.VectorEntry;
 import net.librec.recommender.FactorizationMachineRecommender;
+import net.librec.recommender.HogwildTrainer;
 
-import java.io.FileDescriptor;
 import java.util.HashMap;
 
 /**
@@ -78,24 +77,26 @@ public class FFMRecommender extends FactorizationMachineRecommender {
     }
 
     private void buildRatingModel() throws LibrecException {
-        for (int iter = 0; iter < numIterations; iter++) {
-            loss = 0.0;
-
-            int userDimension = trainTensor.getUserDimension();
-            int itemDimension = trainTensor.getItemDimension();
-            for (TensorEntry me : trainTensor) {
-                int[] entryKeys = me.keys();
-                SparseVector x = tenserKeysToFeatureVector(entryKeys);
-
-                double rate = me.get();
-                double pred = predict(entryKeys[userDimension], entryKeys[itemDimension], x);
-
-                double err = pred - rate;
-                loss += err * err;
+        final int numDimensions = trainTensor.numDimensions;
+        final double[] weights = W.getData();
+        final double[][] factors = V.data;
+        HogwildTrainer trainer = createTrainer();
+        final double[][] scratch = new double[trainer.getNumThreads()][2 * k];
+
+        // the field of the feature at position a of an entry is dimension a
+        HogwildTrainer.SampleKernel kernel = new HogwildTrainer.SampleKernel() {
+            @Override
+            public double update(int thread, int sample) throws LibrecException {
+                int from = sample * numDimensions;
+
+                double pred = predict(trainFeatures, from, scratch[thread]);
+
+                double err = pred - trainRatings[sample];
+                double sampleLoss = err * err;
                 double gradLoss = err;
 
                 // global bias
-                loss += regW0 * w0 * w0;
+                sampleLoss += regW0 * w0 * w0;
 
                 double hW0 = 1;
                 double gradW0 = gradLoss * hW0 + regW0 * w0;
@@ -104,38 +105,82 @@ public class FFMRecommender extends FactorizationMachineRecommender {
                 w0 += -learnRate * gradW0;
 
                 // 1-way interactions
-                for (int l = 0; l < p; l++) {
-                    if (!x.contains(l))
-                        continue;
-                    double oldWl = W.get(l);
-                    double hWl = x.get(l);
-                    double gradWl = gradLoss * hWl + regW * oldWl;
-                    W.add(l, -learnRate * gradWl);
+                for (int a = 0; a < numDimensions; a++) {
+                    int l = trainFeatures[from + a];
+                    double oldWl = weights[l];
+                    double gradWl = gradLoss + regW * oldWl;
+                    weights[l] += -learnRate * gradWl;
 
-                    loss += regW * oldWl * oldWl;
+                    sampleLoss += regW * oldWl * oldWl;
 
                     // 2-way interactions
+                    double[] factorsL = factors[l];
                     for (int f = 0; f < k; f++) {
-                        double oldVlf = V.get(l, map.get(l) + f);
+                        double oldVlf = factorsL[a + f];
                         double hVlf = 0;
-                        double xl = x.get(l);
-                        for (int j = 0; j < p; j++) {
-                            if (j != l && x.contains(j))
-                                hVlf += xl * V.get(j, map.get(l) + f) * x.get(j);
+                        for (int b = 0; b < numDimensions; b++) {
+                            if (b != a)
+                                hVlf += factors[trainFeatures[from + b]][a + f];
                         }
                         double gradVlf = gradLoss * hVlf + regF * oldVlf;
-                        V.add(l, map.get(l) + f, -learnRate * gradVlf);
-                        loss += regF * oldVlf * oldVlf;
+                        factorsL[a + f] += -learnRate * gradVlf;
+                        sampleLoss += regF * oldVlf * oldVlf;
                     }
-
                 }
+                return sampleLoss;
+            }
+        };
+
+        try {
+            for (int iter = 0; iter < numIterations; iter++) {
+                loss = 0.5 * runEpoch(trainer, kernel, iter);
+
+                if (isConverged(iter) && earlyStop)
+                    break;
             }
+        } finally {
+            trainer.shutdown();
+        }
+    }
+
+    /**
+     * Predict the rating of an entry given by its appender feature indices, the field of the feature at position
+     * a of the entry being dimension a. The terms are summed in the same order as
+     * {@link #predict(int, int, SparseVector)}.
+     *
+     * @param features appender feature indices, all of value 1
+     * @param from     position of the first feature of the entry in {@code features}
+     * @param sums     scratch buffer, unused
+     * @return predicted rating
+     * @throws LibrecException if error occurs
+     */
+    @Override
+    protected double predict(int[] features, int from, double[] sums) throws LibrecException {
+        int numDimensions = trainTensor.numDimensions;
+        double[] weights = W.getData();
+        double[][] factors = V.data;
+
+        double res = w0;
 
-            loss *= 0.5;
+        // 1-way interaction
+        for (int a = 0; a < numDimensions; a++) {
+            res += weights[features[from + a]];
+        }
 
-            if (isConverged(iter)  && earlyStop)
-                break;
+        // 2-way interaction
+        for (int f = 0; f < k; f++) {
+            double sum = 0;
+            for (int a = 0; a < numDimensions; a++) {
+                double[] factorsI = factors[features[from + a]];
+                for (int b = 0; b < numDimensions; b++) {
+                    if (a == b) continue;
+                    sum += factorsI[b + f] * factors[features[from + b]][a + f];
+                }
+            }
+            res += sum;
         }
+
+        return res;
     }
 
     @Override
@@ -17,31 +17,43 @@
  */
 package net.librec.recommender.cf.rating;
 
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.Table;
 import net.librec.annotation.ModelData;
 import net.librec.common.LibrecException;
-import net.librec.math.structure.*;
+import net.librec.math.structure.DenseMatrix;
 import net.librec.recommender.FactorizationMachineRecommender;
+import net.librec.util.ParallelUtil;
+import net.librec.util.ParallelUtil.BlockCounter;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Factorization Machine Recommender via Alternating Least Square
+ * <p>
+ * Every training entry has exactly one feature per dimension of the tensor, so the features of a dimension touch
+ * disjoint entries and their parameters are updated in parallel on rec.thread.count threads, with the same result as
+ * one after the other. The entries of a feature are read from the index of the training tensor.
  *
  * @author Tang Jiaxi and Ma Chen
  */
 
 @ModelData({"isRanking", "fmals", "W", "V", "W0", "k"})
 public class FMALSRecommender extends FactorizationMachineRecommender {
+    /**
+     * number of features handed out to a thread at a time
+     */
+    private static final int FEATURE_BLOCK_SIZE = 64;
     /**
      * parameter matrix
      */
     private DenseMatrix Q; //  n x k
     /**
-     * train appender matrix
+     * number of threads updating the features of a dimension
      */
-    private SparseMatrix trainFeatureMatrix;
+    private int numThreads;
 
     @Override
     protected void setup() throws LibrecException {
@@ -50,47 +62,25 @@ public class FMALSRecommender extends FactorizationMachineRecommender {
         // init Q
         Q = new DenseMatrix(n, k);
 
-        // construct training appender matrix
-        Table<Integer, Integer, Double> trainTable = HashBasedTable.create();
-        for (int i = 0; i < n; i++) {
-            int[] ratingKeys = trainTensor.keys(i);
-            int colPrefix = 0;
-            for (int j = 0; j < ratingKeys.length; j++) {
-                int indexOfFeatureVector = colPrefix + ratingKeys[j];
-                colPrefix += trainTensor.dimensions[j];
-                trainTable.put(i, indexOfFeatureVector, 1.0);
-            }
-        }
-        trainFeatureMatrix = new SparseMatrix(n, p, trainTable);
+        // the entries of every feature, i.e. the index of every dimension of the training tensor
+        trainTensor.buildIndices();
+        numThreads = Math.max(1, conf.getInt("rec.thread.count", Runtime.getRuntime().availableProcessors()));
     }
 
     @Override
     protected void trainModel() throws LibrecException {
+        final int numDimensions = trainTensor.numDimensions;
+        final double[] errors = new double[n];
+        final double[][] q = Q.data;
+        final double[] weights = W.getData();
+        final double[][] factors = V.data;
+
         // precomputing Q and errors, for efficiency
-        DenseVector errors = new DenseVector(n);
-        int ind = 0;
-        int userDimension = trainTensor.getUserDimension();
-        int itemDimension = trainTensor.getItemDimension();
-        for (TensorEntry me : trainTensor) {
-            int[] entryKeys = me.keys();
-            SparseVector x = tenserKeysToFeatureVector(entryKeys);
-
-            double rate = me.get();
-            double pred = predict(entryKeys[userDimension], entryKeys[itemDimension], x);
-
-            double err = rate - pred;
-            errors.set(ind, err);
-
-            for (int f = 0; f < k; f++) {
-                double sum_q = 0;
-                for (VectorEntry ve : x) {
-                    int l = ve.index();
-                    double x_val = ve.get();
-                    sum_q += V.get(l, f) * x_val;
-                }
-                Q.set(ind, f, sum_q);
-            }
-            ind++;
+        double[] sums = new double[2 * k];
+        for (int i = 0; i < n; i++) {
+            double pred = predict(trainFeatures, i * numDimensions, sums);
+            errors[i] = trainRatings[i] - pred;
+            System.arraycopy(sums, 0, q[i], 0, k);
         }
 
         /**
@@ -100,132 +90,196 @@ public class FMALSRecommender extends FactorizationMachineRecommender {
          * [1]. Rendle, Steffen, "Factorization Machines with libFM." ACM Transactions on Intelligent Systems and Technology, 2012.
          */
 
-        for (int iter = 0; iter < numIterations; iter++) {
-            lastLoss = loss;
-            loss = 0.0;
-            // global bias
-            double numerator = 0;
-            double denominator = 0;
-            for (int i = 0; i < n; i++) {
-                double h_theta = 1;
-                numerator += w0 * h_theta * h_theta + h_theta * errors.get(i);
-                denominator += h_theta;
-            }
-            denominator += regW0;
-            double newW0 = numerator / denominator;
-
-            // System.out.println("original:" + errors.sum());
-
-            // update errors
-            for (int i = 0; i < n; i++) {
-                double oldErr = errors.get(i);
-                double newErr = oldErr + (w0 - newW0);
-                errors.set(i, newErr);
-
-                loss += oldErr * oldErr;
-            }
-
-            // update w0
-            w0 = newW0;
-
-            loss += regW0 * w0 * w0;
-
-            // System.out.println("after 0-way:" + errors.sum());
-
-            // 1-way interactions
-            for (int l = 0; l < p; l++) {
-                double oldWl = W.get(l);
-                numerator = 0;
-                denominator = 0;
-
-                Iterator<VectorEntry> rowIter = trainFeatureMatrix.rowIterator(l);
-                while (rowIter.hasNext()) {
-                    VectorEntry vectorEntry = rowIter.next();
-                    double h_theta = vectorEntry.get();
-                    int i = vectorEntry.index();
-                    numerator += oldWl * h_theta * h_theta + h_theta * errors.get(i);
-                    denominator += h_theta * h_theta;
-
+        ExecutorService executorService = numThreads > 1 ? Executors.newFixedThreadPool(numThreads) : null;
+        try {
+            for (int iter = 0; iter < numIterations; iter++) {
+                lastLoss = loss;
+                loss = 0.0;
+                // global bias
+                double numerator = 0;
+                double denominator = 0;
+                for (int i = 0; i < n; i++) {
+                    double h_theta = 1;
+                    numerator += w0 * h_theta * h_theta + h_theta * errors[i];
+                    denominator += h_theta;
                 }
-
-                denominator += regW;
-                double newWl = numerator / denominator;
-
+                denominator += regW0;
+                double newW0 = numerator / denominator;
 
                 // update errors
-                rowIter = trainFeatureMatrix.rowIterator(l);
-                while (rowIter.hasNext()) {
-                    VectorEntry vectorEntry = rowIter.next();
-                    int i = vectorEntry.index();
-
-                    double oldErr = errors.get(i);
-                    double newErr = oldErr + (oldWl - newWl) * vectorEntry.get();
-                    errors.set(i, newErr);
+                for (int i = 0; i < n; i++) {
+                    double oldErr = errors[i];
+                    double newErr = oldErr + (w0 - newW0);
+                    errors[i] = newErr;
 
+                    loss += oldErr * oldErr;
                 }
 
-                // update W
-                W.set(l, newWl);
-
-                loss += regW * oldWl * oldWl;
-            }
-
-            // System.out.println("after 1-way:" + errors.sum());
-
-            // 2-way interactions
-            for (int f = 0; f < k; f++) {
-                for (int l = 0; l < p; l++) {
-                    double oldVlf = V.get(l, f);
-                    numerator = 0;
-                    denominator = 0;
-                    Iterator<VectorEntry> rowIter = trainFeatureMatrix.rowIterator(l);
-                    while (rowIter.hasNext()) {
-                        VectorEntry vectorEntry = rowIter.next();
-                        int i = vectorEntry.index();
-                        double x_val = vectorEntry.get();
-                        double h_theta = x_val * (Q.get(i, f) - oldVlf * x_val);
-                        numerator += oldVlf * h_theta * h_theta + h_theta * errors.get(i);
-                        denominator += h_theta * h_theta;
-
+                // update w0
+                w0 = newW0;
+
+                loss += regW0 * w0 * w0;
+
+                // 1-way interactions
+                loss += updateFeatures(executorService, new FeatureUpdate() {
+                    @Override
+                    public double update(int l, int[] entries, int from, int to) {
+                        double oldWl = weights[l];
+                        double numerator = 0;
+                        double denominator = 0;
+                        for (int pos = from; pos < to; pos++) {
+                            numerator += oldWl + errors[entries[pos]];
+                            denominator += 1;
+                        }
+                        denominator += regW;
+                        double newWl = numerator / denominator;
+
+                        // update errors
+                        for (int pos = from; pos < to; pos++) {
+                            errors[entries[pos]] += oldWl - newWl;
+                        }
+
+                        // update W
+                        weights[l] = newWl;
+
+                        return regW * oldWl * oldWl;
                     }
-                    denominator += regF;
-                    double newVlf = numerator / denominator;
-
-                    // update errors and Q
-                    rowIter = trainFeatureMatrix.rowIterator(l);
-                    while (rowIter.hasNext()) {
-                        VectorEntry vectorEntry = rowIter.next();
-                        int i = vectorEntry.index();
-                        double x_val = vectorEntry.get();
-
-                        double oldQif = Q.get(i, f);
-                        double update = (newVlf - oldVlf) * x_val;
-                        double newQif = oldQif + update;
+                });
+
+                // 2-way interactions
+                for (int f = 0; f < k; f++) {
+                    final int factorIdx = f;
+                    loss += updateFeatures(executorService, new FeatureUpdate() {
+                        @Override
+                        public double update(int l, int[] entries, int from, int to) {
+                            double oldVlf = factors[l][factorIdx];
+                            double numerator = 0;
+                            double denominator = 0;
+                            for (int pos = from; pos < to; pos++) {
+                                int i = entries[pos];
+                                double h_theta = q[i][factorIdx] - oldVlf;
+                                numerator += oldVlf * h_theta * h_theta + h_theta * errors[i];
+                                denominator += h_theta * h_theta;
+                            }
+                            denominator += regF;
+                            double newVlf = numerator / denominator;
+
+                            // update errors and Q
+                            for (int pos = from; pos < to; pos++) {
+                                int i = entries[pos];
+                                double oldQif = q[i][factorIdx];
+                                double newQif = oldQif + (newVlf - oldVlf);
+
+                                double h_theta_old = oldQif - oldVlf;
+                                double h_theta_new = newQif - newVlf;
+
+                                errors[i] = errors[i] + oldVlf * h_theta_old - newVlf * h_theta_new;
+                                q[i][factorIdx] = newQif;
+                            }
+
+                            // update V
+                            factors[l][factorIdx] = newVlf;
+
+                            return regF * oldVlf * oldVlf;
+                        }
+                    });
+                }
 
-                        double h_theta_old = x_val * (oldQif - oldVlf * x_val);
-                        double h_theta_new = x_val * (newQif - newVlf * x_val);
+                if (isConverged(iter) && earlyStop)
+                    break;
+            }
+        } finally {
+            if (executorService != null) {
+                executorService.shutdown();
+            }
+        }
+    }
 
-                        double oldErr = errors.get(i);
-                        double newErr = oldErr + oldVlf * h_theta_old - newVlf * h_theta_new;
+    /**
+     * Coordinate update of a parameter of a feature, which only reads and writes the errors and the Q of the
+     * entries having the feature.
+     */
+    private interface FeatureUpdate {
+        /**
+         * @param l       appender feature index
+         * @param entries indices of the training entries sorted by feature
+         * @param from    position of the first entry of the feature in {@code entries}
+         * @param to      position after the last entry of the feature
+         * @return regularization loss of the old parameter
+         */
+        double update(int l, int[] entries, int from, int to);
+    }
 
-                        errors.set(i, newErr);
-                        Q.set(i, f, newQif);
-                    }
+    /**
+     * Update a parameter of all features, one dimension after the other and the features of a dimension in
+     * parallel.
+     *
+     * @param executorService thread pool, or null to update on the calling thread
+     * @param update          coordinate update
+     * @return sum of the regularization losses, added in the same order whatever the number of threads
+     * @throws LibrecException if error occurs during updating
+     */
+    private double updateFeatures(ExecutorService executorService, FeatureUpdate update)
+            throws LibrecException {
+        double res = 0;
+        for (int dim = 0; dim < trainTensor.numDimensions; dim++) {
+            int offset = featureOffsets[dim];
+            int[] ptr = trainTensor.getIndexPointers(dim);
+            int[] entries = trainTensor.getIndexPositions(dim);
+            int numKeys = trainTensor.dimensions[dim];
+            int numBlocks = (numKeys + FEATURE_BLOCK_SIZE - 1) / FEATURE_BLOCK_SIZE;
+            double[] blockLosses = new double[numBlocks];
+            FeatureUpdater task = new FeatureUpdater(update, offset, ptr, entries, numKeys, blockLosses);
+
+            if (executorService == null) {
+                task.call();
+            } else {
+                List<Callable<Void>> tasks = new ArrayList<>(numThreads);
+                for (int thread = 0; thread < numThreads; thread++) {
+                    tasks.add(task);
+                }
+                ParallelUtil.invokeAll(executorService, tasks);
+            }
 
+            for (double blockLoss : blockLosses) {
+                res += blockLoss;
+            }
+        }
+        return res;
+    }
 
-                    // update V
-                    V.set(l, f, newVlf);
+    /**
+     * Updater of the features of the blocks of keys of a dimension handed out by a shared counter, which stores
+     * the regularization loss of every block.
+     */
+    private static final class FeatureUpdater implements Callable<Void> {
+        private final FeatureUpdate update;
+        private final int offset;
+        private final int[] ptr, entries;
+        private final double[] blockLosses;
+        private final BlockCounter keys;
+
+        FeatureUpdater(FeatureUpdate update, int offset, int[] ptr, int[] entries, int numKeys,
+                       double[] blockLosses) {
+            this.update = update;
+            this.offset = offset;
+            this.ptr = ptr;
+            this.entries = entries;
+            this.blockLosses = blockLosses;
+            this.keys = new BlockCounter(numKeys, FEATURE_BLOCK_SIZE);
+        }
 
-//                    DenseVector errorGround = computeGroundError();
-//                    errors = errorGround;
-                    loss += regF * oldVlf * oldVlf;
+        @Override
+        public Void call() {
+            for (int fromKey = keys.next(); fromKey >= 0; fromKey = keys.next()) {
+                double blockLoss = 0;
+                int toKey = keys.end(fromKey);
+                for (int key = fromKey; key < toKey; key++) {
+                    blockLoss += update.update(offset + key, entries, ptr[key], ptr[key + 1]);
                 }
-                //System.out.println("temp:" + errors.sum());
+                blockLosses[fromKey / FEATURE_BLOCK_SIZE] = blockLoss;
             }
-
-            // System.out.println("after 2-way:" + errors.sum());
-            if (isConverged(iter) && earlyStop)
-                break;
+            return null;
         }
     }
 
@@ -1,13 +1,30 @@
 package net.librec.recommender.cf.rating;
 
+import com.google.common.collect.BiMap;
 import net.librec.common.LibrecException;
-import net.librec.math.structure.*;
+import net.librec.conf.Configured;
+import net.librec.data.model.ArffDataModel;
 import net.librec.recommender.FactorizationMachineRecommender;
+import net.librec.recommender.HogwildTrainer;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 
 /**
  * Factorization Machine Recommender via Follow The Regularized Leader
  *
  * http://castellanzhang.github.io/2016/10/16/fm_ftrl_softmax
+ * <p>
+ * In streaming mode, set by {@code rec.ftrl.stream.input}, the model is trained online in a single pass over the
+ * records read from a file or a socket instead of over the training tensor, see {@link FTRLStreamModel}. The
+ * streamed model then predicts the test tensor through the {raw id, inner id} mappings of the data model. Only
+ * the streamed model grows with the number of distinct features: the data model still loads its training and
+ * test data, and the parameters evaluated on the test tensor are sized by all features of its mappings.
  *
  * @author Qian Shaofeng
  *
@@ -31,6 +48,18 @@ public class FMFTRLRecommender extends FactorizationMachineRecommender {
     private double alpha;
     private double beta;
 
+    /**
+     * file, absolute or relative to dfs.data.dir, or host:port of the socket the records are streamed from, null in batch mode
+     */
+    private String streamInput;
+
+    /**
+     * file, absolute or relative to dfs.result.dir, the streamed model is snapshot to every snapshotInterval records and at
+     * the end of the stream, null for no snapshot
+     */
+    private String snapshotPath;
+    private int snapshotInterval;
+
     @Override
     protected void setup() throws LibrecException {
         super.setup();
@@ -41,120 +70,299 @@ public class FMFTRLRecommender extends FactorizationMachineRecommender {
         alpha = conf.getDouble("rec.learningRate.alpha");
 
         beta = conf.getDouble("rec.learningRate.beta");
+
+        streamInput = conf.get("rec.ftrl.stream.input");
+        snapshotPath = conf.get("rec.ftrl.stream.snapshot.path");
+        snapshotInterval = conf.getInt("rec.ftrl.stream.snapshot.interval", 100000);
+    }
+
+    /**
+     * In streaming mode the training tensor is not trained on, so its appender features are not computed.
+     */
+    @Override
+    protected boolean isTrainedOnTensor() {
+        return conf.get("rec.ftrl.stream.input") == null;
     }
 
     @Override
     protected void trainModel() throws LibrecException {
         if (!isRanking){
-            buildRatingModel();
+            if (streamInput != null) {
+                buildStreamModel();
+            } else {
+                buildRatingModel();
+            }
         }
     }
 
     private void buildRatingModel() throws LibrecException {
-        double zW0 = 0;
-        DenseVector zW = new DenseVector(p);
-        DenseMatrix zV = new DenseMatrix(p, k);
-        zW.init(0);
-        zV.init(0);
-
-        double nW0 = 0;
-        DenseVector nW = new DenseVector(p);
-        DenseMatrix nV = new DenseMatrix(p, k);
-        nW.init(0);
-        nV.init(0);
-
-        double gW0, thetaW0;
-
-        DenseVector gW = new DenseVector(p);
-        DenseVector thetaW = new DenseVector(p);
-
-        DenseMatrix gV = new DenseMatrix(p, k);
-        DenseMatrix thetaV = new DenseMatrix(p, k);
-
-        for (int iter=0; iter < numIterations; ++iter){
-            loss = 0.0;
-            int userDimension = trainTensor.getUserDimension();
-            int itemDimension = trainTensor.getItemDimension();
-            for (TensorEntry me: trainTensor) {
-                int[] entryKeys = me.keys();
-                SparseVector x = tenserKeysToFeatureVector(entryKeys);
-                double rate = me.get();
+        final int numDimensions = trainTensor.numDimensions;
+        final double[] weights = W.getData();
+        final double[][] factors = V.data;
+
+        // z and n accumulators of w0 at index 0, of W and of V
+        final double[] zW0 = new double[1], nW0 = new double[1];
+        final double[] zW = new double[p], nW = new double[p];
+        final double[][] zV = new double[p][k], nV = new double[p][k];
+
+        HogwildTrainer trainer = createTrainer();
+        final double[][] scratch = new double[trainer.getNumThreads()][2 * k];
+
+        HogwildTrainer.SampleKernel kernel = new HogwildTrainer.SampleKernel() {
+            @Override
+            public double update(int thread, int sample) throws LibrecException {
+                int from = sample * numDimensions;
+                double[] sums = scratch[thread];
 
                 // compute rating value
-                double pred = predict(entryKeys[userDimension], entryKeys[itemDimension], x);
+                double pred = predict(trainFeatures, from, sums);
 
-                double err = pred - rate;
-                loss += err * err;
+                double err = pred - trainRatings[sample];
 
                 // loss gradient, loss = 1/2 * (yhat - y)^2
                 double gradLoss = err;
 
                 // compute w0 gradient
                 double hW0 = 1;
-                gW0 = gradLoss * hW0;
-                thetaW0 = 1 / alpha * (Math.sqrt(nW0 + Math.pow(gW0, 2)) - Math.sqrt(nW0));
-                zW0 += gW0 - thetaW0 * w0;
-                nW0 += Math.pow(gW0, 2);
+                double gW0 = gradLoss * hW0;
+                double thetaW0 = 1 / alpha * (Math.sqrt(nW0[0] + Math.pow(gW0, 2)) - Math.sqrt(nW0[0]));
+                zW0[0] += gW0 - thetaW0 * w0;
+                nW0[0] += Math.pow(gW0, 2);
 
                 // update w0
-                if (Math.abs(zW0) <= lambda1) {
-                    w0 = 0;
-                } else {
-                    w0 = -1 / ((beta + Math.sqrt(nW0)) / alpha + lambda2) * (zW0 - sgn(zW0) * lambda1);
-                }
+                w0 = ftrlValue(zW0[0], nW0[0]);
 
-                for(VectorEntry ve: x){
-                    int l = ve.index();
+                for (int pos = from; pos < from + numDimensions; pos++) {
+                    int l = trainFeatures[pos];
                     // compute W gradient
-                    double hWl = ve.get();
-                    gW.set(l, gradLoss * hWl);
-                    thetaW.set(l, 1 / alpha * (Math.sqrt(nW.get(l) + Math.pow(gW.get(l), 2)) - Math.sqrt(nW.get(l))));
-                    zW.add(l, gW.get(l) - thetaW.get(l) * W.get(l));
-                    nW.add(l, Math.pow(gW.get(l), 2));
+                    double gWl = gradLoss;
+                    double thetaWl = 1 / alpha * (Math.sqrt(nW[l] + Math.pow(gWl, 2)) - Math.sqrt(nW[l]));
+                    zW[l] += gWl - thetaWl * weights[l];
+                    nW[l] += Math.pow(gWl, 2);
 
                     // update W
-                    if (Math.abs(zW.get(l)) <= lambda1) {
-                        W.set(l, 0);
-                    } else {
-                        double value = -1 / ((beta + Math.sqrt(nW.get(l))) / alpha + lambda2) * (zW.get(l) - sgn(zW.get(l)) * lambda1);
-                        W.set(l, value);
-                    }
+                    weights[l] = ftrlValue(zW[l], nW[l]);
 
+                    // sums[f] is kept equal to the sum of the current factors f
+                    double[] factorsL = factors[l], zVl = zV[l], nVl = nV[l];
                     for (int f = 0; f < k; ++f) {
-                        double hVlf = 0;
-                        double xl =ve.get();
-                        for(VectorEntry ve2: x){
-                            int j = ve2.index();
-                            if(j!=l){
-                                hVlf += xl * V.get(j, f) * ve2.get();
-                            }
-                        }
+                        double oldVlf = factorsL[f];
+                        double hVlf = sums[f] - oldVlf;
 
                         // compute V gradient
-                        double gradVlf = gradLoss * hVlf;
-
-                        gV.set(l, f, gradVlf);
-                        thetaV.set(l, f, 1 / alpha * (Math.sqrt(nV.get(l, f) + Math.pow(gV.get(l, f), 2)) - Math.sqrt(nV.get(l, f))));
-                        zV.add(l, f, gV.get(l, f) - thetaV.get(l, f) * V.get(l, f));
-                        nV.add(l, f, Math.pow(gV.get(l, f), 2));
+                        double gVlf = gradLoss * hVlf;
+                        double thetaVlf = 1 / alpha * (Math.sqrt(nVl[f] + Math.pow(gVlf, 2)) - Math.sqrt(nVl[f]));
+                        zVl[f] += gVlf - thetaVlf * oldVlf;
+                        nVl[f] += Math.pow(gVlf, 2);
 
                         // update V
-                        if (Math.abs(zV.get(l, f)) <= lambda1) {
-                            V.set(l, f, 0);
-                        } else {
-                            double value = -1 / ((beta + Math.sqrt(nV.get(l, f))) / alpha + lambda2) * (zV.get(l, f) - sgn(zV.get(l, f)) * lambda1);
-                            V.set(l, f, value);
-                        }
+                        factorsL[f] = ftrlValue(zVl[f], nVl[f]);
+                        sums[f] += factorsL[f] - oldVlf;
+                    }
+                }
+                return err * err;
+            }
+        };
+
+        try {
+            for (int iter = 0; iter < numIterations; ++iter) {
+                loss = 0.5 * runEpoch(trainer, kernel, iter);
+
+                if (isConverged(iter) && earlyStop)
+                    break;
+            }
+        } finally {
+            trainer.shutdown();
+        }
+    }
+
+    /**
+     * Train a {@link FTRLStreamModel} on the streamed records, then copy its parameters to those of the features
+     * of the test tensor, the features it never saw getting zero parameters.
+     *
+     * @throws LibrecException if the stream cannot be read or the data model has no feature mappings
+     */
+    private void buildStreamModel() throws LibrecException {
+        if (!(getDataModel() instanceof ArffDataModel)) {
+            throw new LibrecException("the streaming mode of FMFTRL requires an arff data model");
+        }
+        FTRLStreamModel model = new FTRLStreamModel(k, alpha, beta, lambda1, lambda2, 0.1);
+        Path snapshot = snapshotPath == null ? null : Paths.get(snapshotPath);
+        if (snapshot != null && !snapshot.isAbsolute()) {
+            snapshot = Paths.get(conf.get("dfs.result.dir"), snapshotPath);
+        }
+        try (BufferedReader reader = openStream(streamInput)) {
+            StreamRecordParser parser = new StreamRecordParser(conf.get(Configured.CONF_DATA_COLUMN_FORMAT, "UIR"));
+            long numRecords = 0;
+            double intervalLoss = 0;
+            loss = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!parser.parse(line)) {
+                    continue;
+                }
+                double sampleLoss = model.update(parser.features, parser.numFeatures, parser.rating);
+                loss += 0.5 * sampleLoss;
+                intervalLoss += sampleLoss;
+                if (++numRecords % snapshotInterval == 0) {
+                    if (verbose) {
+                        LOG.info(getClass().getSimpleName() + " record " + numRecords + ": RMSE " +
+                                Math.sqrt(intervalLoss / snapshotInterval) + ", " + model.getNumFeatures() +
+                                " features");
+                    }
+                    intervalLoss = 0;
+                    if (snapshot != null) {
+                        model.write(snapshot);
                     }
                 }
+            }
+            if (snapshot != null) {
+                model.write(snapshot);
+            }
+            LOG.info(getClass().getSimpleName() + " streamed " + numRecords + " records, " +
+                    model.getNumFeatures() + " features");
+        } catch (IOException e) {
+            throw new LibrecException("cannot train on the stream " + streamInput, e);
+        }
+
+        double[] weights = W.getData();
+        double[][] factors = V.data;
+        w0 = model.getBias();
+        List<BiMap<String, Integer>> mappings = ((ArffDataModel) getDataModel()).getAllFeaturesMappingData();
+        BitSet copied = new BitSet(p);
+        for (int dim = 0; dim < testTensor.numDimensions; dim++) {
+            BiMap<Integer, String> rawIds = mappings.get(dim).inverse();
+            int[] keys = testTensor.ndKeys[dim];
+            for (int index = 0; index < testTensor.size(); index++) {
+                int l = featureOffsets[dim] + keys[index];
+                if (copied.get(l)) {
+                    continue;
+                }
+                copied.set(l);
+                int slot = model.find(FTRLStreamModel.featureKey(dim, rawIds.get(keys[index])));
+                weights[l] = slot < 0 ? 0 : model.getWeight(slot);
+                for (int f = 0; f < k; f++) {
+                    factors[l][f] = slot < 0 ? 0 : model.getFactor(slot, f);
+                }
+            }
+        }
+    }
+
+    /**
+     * Open the stream of records, a socket if the input is host:port, else a file relative to dfs.data.dir.
+     */
+    private BufferedReader openStream(String input) throws IOException {
+        int colon = input.lastIndexOf(':');
+        if (colon > 0 && input.substring(colon + 1).matches("\\d+")) {
+            final Socket socket = new Socket(input.substring(0, colon), Integer.parseInt(input.substring(colon + 1)));
+            return new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8")) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        socket.close();
+                    }
+                }
+            };
+        }
+        File file = new File(input);
+        if (!file.isAbsolute()) {
+            file = new File(conf.get(Configured.CONF_DFS_DATA_DIR), input);
+        }
+        return new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+    }
+
+    /**
+     * Parser of the streamed records, either arff, whose header gives the rating column and the numeric ones, or
+     * text without header, whose rating column is that of 'R' in data.column.format. The values of the other
+     * columns are the features, those of numeric columns being truncated to integers as in
+     * {@link net.librec.data.convertor.ArffDataConvertor}. The field of a feature is its column index, minus one
+     * after the rating column, i.e. its dimension in the tensor.
+     */
+    private static class StreamRecordParser {
+        private final List<Boolean> numericColumns = new ArrayList<>();
+        private int ratingCol;
+        private boolean inHeader;
+        private int numColumns = -1;
+
+        private long[] features = new long[0];
+        private int numFeatures;
+        private double rating;
+
+        StreamRecordParser(String columnFormat) {
+            ratingCol = columnFormat.toUpperCase().indexOf('R');
+        }
 
+        /**
+         * Parse a line, returning true if it is a record, whose features and rating are then set.
+         */
+        boolean parse(String line) throws IOException {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("%")) {
+                return false;
+            }
+            if (line.startsWith("@")) {
+                String[] data = line.split("[ \t]+");
+                String keyword = data[0].toUpperCase();
+                if (keyword.equals("@RELATION")) {
+                    inHeader = true;
+                    numericColumns.clear();
+                    ratingCol = -1;
+                } else if (keyword.equals("@ATTRIBUTE") && data.length > 2) {
+                    if (data[1].equals("rating")) {
+                        ratingCol = numericColumns.size();
+                    }
+                    String type = data[2].toUpperCase();
+                    numericColumns.add(type.equals("NUMERIC") || type.equals("REAL") || type.equals("INTEGER"));
+                } else if (keyword.equals("@DATA")) {
+                    numColumns = numericColumns.size();
+                }
+                return false;
+            }
+
+            String[] values = line.split("[ \t]*,[ \t]*|[ \t]+");
+            if (numColumns < 0) {
+                numColumns = values.length;
+            }
+            if (values.length != numColumns || ratingCol < 0 || ratingCol >= numColumns) {
+                throw new IOException("Read data error, inconsistent attribute number!");
             }
+            if (features.length < numColumns - 1) {
+                features = new long[numColumns - 1];
+            }
+            numFeatures = 0;
+            for (int col = 0; col < numColumns; col++) {
+                String value = values[col].replace("\"", "");
+                if (col == ratingCol) {
+                    rating = Double.parseDouble(value);
+                    continue;
+                }
+                features[numFeatures] = FTRLStreamModel.featureKey(numFeatures, featureValue(col, value));
+                numFeatures++;
+            }
+            return true;
+        }
 
-            loss *= 0.5;
+        private String featureValue(int col, String value) {
+            boolean numeric;
+            if (inHeader) {
+                numeric = numericColumns.get(col);
+            } else {
+                numeric = value.matches("[-+]?[0-9]*\\.?[0-9]+([eE][-+]?[0-9]+)?");
+            }
+            return numeric ? String.valueOf((int) Double.parseDouble(value)) : value;
+        }
+    }
 
-            if (isConverged(iter)  && earlyStop)
-                break;
+    /**
+     * Return the FTRL-Proximal value of a parameter given its accumulators, truncated to 0 within lambda1.
+     */
+    private double ftrlValue(double z, double n) {
+        if (Math.abs(z) <= lambda1) {
+            return 0;
         }
+        return -1 / ((beta + Math.sqrt(n)) / alpha + lambda2) * (z - sgn(z) * lambda1);
     }
 
     private int sgn(double value){
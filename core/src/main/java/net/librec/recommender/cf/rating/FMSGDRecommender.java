@@ -20,10 +20,8 @@ package net.librec.recommender.cf.rating;
 
 import net.librec.annotation.ModelData;
 import net.librec.common.LibrecException;
-import net.librec.math.structure.SparseVector;
-import net.librec.math.structure.TensorEntry;
-import net.librec.math.structure.VectorEntry;
 import net.librec.recommender.FactorizationMachineRecommender;
+import net.librec.recommender.HogwildTrainer;
 
 
 /**
@@ -55,25 +53,26 @@ public class FMSGDRecommender extends FactorizationMachineRecommender {
     }
 
     private void buildRatingModel() throws LibrecException {
-        for (int iter = 0; iter < numIterations; iter++) {
-            lastLoss = loss;
-            loss = 0.0;
-
-            int userDimension = trainTensor.getUserDimension();
-            int itemDimension = trainTensor.getItemDimension();
-            for (TensorEntry me : trainTensor) {
-                int[] entryKeys = me.keys();
-                SparseVector vector = tenserKeysToFeatureVector(entryKeys);
-
-                double rate = me.get();
-                double pred = predict(entryKeys[userDimension], entryKeys[itemDimension], vector);
-
-                double err = pred - rate;
-                loss += err * err;
+        final int numDimensions = trainTensor.numDimensions;
+        final double[] weights = W.getData();
+        final double[][] factors = V.data;
+        HogwildTrainer trainer = createTrainer();
+        final double[][] scratch = new double[trainer.getNumThreads()][2 * k];
+
+        HogwildTrainer.SampleKernel kernel = new HogwildTrainer.SampleKernel() {
+            @Override
+            public double update(int thread, int sample) throws LibrecException {
+                int from = sample * numDimensions;
+                double[] sums = scratch[thread];
+
+                double pred = predict(trainFeatures, from, sums);
+
+                double err = pred - trainRatings[sample];
+                double sampleLoss = err * err;
                 double gradLoss = err;
 
                 // global bias
-                loss += regW0 * w0 * w0;
+                sampleLoss += regW0 * w0 * w0;
 
                 double hW0 = 1;
                 double gradW0 = gradLoss * hW0 + regW0 * w0;
@@ -82,39 +81,40 @@ public class FMSGDRecommender extends FactorizationMachineRecommender {
                 w0 += -learnRate * gradW0;
 
                 // 1-way interactions
-                for(VectorEntry ve: vector){
-                    int l = ve.index();
-                   double oldWl = W.get(l);
-                    double hWl = ve.get();
-                    double gradWl = gradLoss * hWl + regW * oldWl;
-                    W.add(l, -learnRate * gradWl);
+                for (int pos = from; pos < from + numDimensions; pos++) {
+                    int l = trainFeatures[pos];
+                    double oldWl = weights[l];
+                    double gradWl = gradLoss + regW * oldWl;
+                    weights[l] += -learnRate * gradWl;
 
-                    loss += regW * oldWl * oldWl;
+                    sampleLoss += regW * oldWl * oldWl;
 
-                    // 2-way interactions
+                    // 2-way interactions, sums[f] being kept equal to the sum of the current factors f
+                    double[] factorsL = factors[l];
                     for (int f = 0; f < k; f++) {
-                        double oldVlf = V.get(l, f);
-                        double hVlf = 0;
-                        double xl =ve.get();
-                        for(VectorEntry ve2: vector){
-                            int j = ve2.index();
-                            if(j!=l){
-                                hVlf += xl * V.get(j, f) * ve2.get();
-                            }
-                        }
+                        double oldVlf = factorsL[f];
+                        double hVlf = sums[f] - oldVlf;
 
                         double gradVlf = gradLoss * hVlf + regF * oldVlf;
-                        V.add(l, f, -learnRate * gradVlf);
-                        loss += regF * oldVlf * oldVlf;
+                        factorsL[f] += -learnRate * gradVlf;
+                        sums[f] += factorsL[f] - oldVlf;
+                        sampleLoss += regF * oldVlf * oldVlf;
                     }
                 }
-
+                return sampleLoss;
             }
+        };
 
-            loss *= 0.5;
+        try {
+            for (int iter = 0; iter < numIterations; iter++) {
+                lastLoss = loss;
+                loss = 0.5 * runEpoch(trainer, kernel, iter);
 
-            if (isConverged(iter)  && earlyStop)
-                break;
+                if (isConverged(iter) && earlyStop)
+                    break;
+            }
+        } finally {
+            trainer.shutdown();
         }
     }
 
@@ -0,0 +1,422 @@
+/**
+ * Copyright (C) 2016 LibRec
+ * <p>
+ * This file is part of LibRec.
+ * LibRec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * LibRec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.librec.recommender.cf.rating;
+
+import net.librec.math.algorithm.Randoms;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Factorization machine trained online by FTRL-Proximal, one record at a time, for the streaming mode of
+ * {@link FMFTRLRecommender}.
+ * <p>
+ * A record is a set of one-hot features, each identified by a 64-bit key hashed from its field and raw value, see
+ * {@link #featureKey(int, String)}. The parameters and the z and n accumulators of the features seen so far are
+ * stored in flat primitive arrays, whose slots are found through an open-addressing hash table of the keys, so
+ * that memory grows with the number of distinct features and not with the number of records. A feature gets its
+ * slot, and its factors their random initial values, at its first update; features never updated contribute
+ * nothing to a prediction.
+ * <p>
+ * The model is not thread-safe.
+ */
+public class FTRLStreamModel {
+    /**
+     * magic number "LRFT" and version of the snapshot format
+     */
+    private static final int MAGIC = 0x4C524654, VERSION = 1;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int k;
+    private final double alpha, beta, lambda1, lambda2, initStd;
+
+    /**
+     * global bias and its accumulators
+     */
+    private double w0, zW0, nW0;
+
+    /**
+     * hash table of the feature keys, 0 marking an empty bucket, and the slot of the key of each bucket
+     */
+    private long[] table;
+    private int[] tableSlots;
+
+    /**
+     * number of features, i.e. of slots in use
+     */
+    private int numFeatures;
+
+    /**
+     * key, weight and accumulators of the feature of each slot
+     */
+    private long[] keys;
+    private double[] w, zW, nW;
+
+    /**
+     * factors and accumulators of the feature of each slot, those of slot s being at positions
+     * {@code s * k} to {@code (s + 1) * k - 1}
+     */
+    private double[] v, zV, nV;
+
+    /**
+     * scratch buffers of the slots of a record and of the factor sums
+     */
+    private int[] recordSlots = new int[16];
+    private final double[] sums;
+
+    /**
+     * Construct an empty model.
+     *
+     * @param k       number of factors
+     * @param alpha   alpha of the per-coordinate learning rate {@code alpha / (beta + sqrt(n))}
+     * @param beta    beta of the per-coordinate learning rate
+     * @param lambda1 L1 regularization, i.e. truncation threshold of z
+     * @param lambda2 L2 regularization
+     * @param initStd standard deviation of the initial factors
+     */
+    public FTRLStreamModel(int k, double alpha, double beta, double lambda1, double lambda2, double initStd) {
+        this.k = k;
+        this.alpha = alpha;
+        this.beta = beta;
+        this.lambda1 = lambda1;
+        this.lambda2 = lambda2;
+        this.initStd = initStd;
+        this.sums = new double[2 * k];
+        this.table = new long[2 * INITIAL_CAPACITY];
+        this.tableSlots = new int[2 * INITIAL_CAPACITY];
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Return the key of a feature given by its field, i.e. its dimension in the tensor, and its raw value. The key
+     * is the 64-bit FNV-1a hash of both, never 0.
+     *
+     * @param field feature field
+     * @param value raw value of the feature
+     * @return feature key
+     */
+    public static long featureKey(int field, String value) {
+        long hash = 0xCBF29CE484222325L;
+        for (int shift = 0; shift < 32; shift += 8) {
+            hash = (hash ^ ((field >>> shift) & 0xFF)) * 0x100000001B3L;
+        }
+        for (int pos = 0; pos < value.length(); pos++) {
+            hash = (hash ^ value.charAt(pos)) * 0x100000001B3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * @return the number of factors
+     */
+    public int getNumFactors() {
+        return k;
+    }
+
+    /**
+     * @return the number of distinct features updated so far
+     */
+    public int getNumFeatures() {
+        return numFeatures;
+    }
+
+    /**
+     * @return the global bias
+     */
+    public double getBias() {
+        return w0;
+    }
+
+    /**
+     * Return the slot of a feature.
+     *
+     * @param key feature key
+     * @return the slot of the feature, or -1 if it was never updated
+     */
+    public int find(long key) {
+        int mask = table.length - 1;
+        for (int bucket = bucket(key, mask); table[bucket] != 0; bucket = (bucket + 1) & mask) {
+            if (table[bucket] == key) {
+                return tableSlots[bucket];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param slot slot of a feature
+     * @return the weight of the feature
+     */
+    public double getWeight(int slot) {
+        return w[slot];
+    }
+
+    /**
+     * @param slot slot of a feature
+     * @param f    factor index
+     * @return the factor f of the feature
+     */
+    public double getFactor(int slot, int f) {
+        return v[slot * k + f];
+    }
+
+    /**
+     * Predict the rating of a record. As {@link net.librec.recommender.FactorizationMachineRecommender}, the
+     * 2-way interaction sums factors 1 to k - 1.
+     *
+     * @param features feature keys of the record
+     * @param count    number of features of the record
+     * @return predicted rating
+     */
+    public double predict(long[] features, int count) {
+        Arrays.fill(sums, 0.0);
+        double res = w0;
+        for (int pos = 0; pos < count; pos++) {
+            int slot = find(features[pos]);
+            if (slot >= 0) {
+                res += w[slot];
+                addFactors(slot);
+            }
+        }
+        return res + interaction();
+    }
+
+    /**
+     * Update the model with a record, creating the slots of its new features, in the same way as an SGD step of
+     * {@link FMFTRLRecommender} in batch mode.
+     *
+     * @param features feature keys of the record, distinct
+     * @param count    number of features of the record
+     * @param rating   rating of the record
+     * @return the squared error of the prediction before the update
+     */
+    public double update(long[] features, int count, double rating) {
+        if (recordSlots.length < count) {
+            recordSlots = new int[count];
+        }
+        Arrays.fill(sums, 0.0);
+        double pred = w0;
+        for (int pos = 0; pos < count; pos++) {
+            int slot = slot(features[pos]);
+            recordSlots[pos] = slot;
+            pred += w[slot];
+            addFactors(slot);
+        }
+        pred += interaction();
+
+        // loss gradient, loss = 1/2 * (yhat - y)^2
+        double gradLoss = pred - rating;
+
+        double thetaW0 = 1 / alpha * (Math.sqrt(nW0 + gradLoss * gradLoss) - Math.sqrt(nW0));
+        zW0 += gradLoss - thetaW0 * w0;
+        nW0 += gradLoss * gradLoss;
+        w0 = ftrlValue(zW0, nW0);
+
+        for (int pos = 0; pos < count; pos++) {
+            int slot = recordSlots[pos];
+            double thetaWl = 1 / alpha * (Math.sqrt(nW[slot] + gradLoss * gradLoss) - Math.sqrt(nW[slot]));
+            zW[slot] += gradLoss - thetaWl * w[slot];
+            nW[slot] += gradLoss * gradLoss;
+            w[slot] = ftrlValue(zW[slot], nW[slot]);
+
+            // sums[f] is kept equal to the sum of the current factors f
+            for (int f = 0, index = slot * k; f < k; f++, index++) {
+                double oldVlf = v[index];
+                double gVlf = gradLoss * (sums[f] - oldVlf);
+                double thetaVlf = 1 / alpha * (Math.sqrt(nV[index] + gVlf * gVlf) - Math.sqrt(nV[index]));
+                zV[index] += gVlf - thetaVlf * oldVlf;
+                nV[index] += gVlf * gVlf;
+                v[index] = ftrlValue(zV[index], nV[index]);
+                sums[f] += v[index] - oldVlf;
+            }
+        }
+        return gradLoss * gradLoss;
+    }
+
+    private void addFactors(int slot) {
+        for (int f = 0, index = slot * k; f < k; f++, index++) {
+            sums[f] += v[index];
+            sums[k + f] += v[index] * v[index];
+        }
+    }
+
+    private double interaction() {
+        double res = 0;
+        for (int f = 1; f < k; f++) {
+            res += (sums[f] * sums[f] - sums[k + f]) / 2;
+        }
+        return res;
+    }
+
+    /**
+     * Return the FTRL-Proximal value of a parameter given its accumulators, truncated to 0 within lambda1.
+     */
+    private double ftrlValue(double z, double n) {
+        if (Math.abs(z) <= lambda1) {
+            return 0;
+        }
+        return -1 / ((beta + Math.sqrt(n)) / alpha + lambda2) * (z - Math.signum(z) * lambda1);
+    }
+
+    /**
+     * Return the slot of a feature, creating it with random factors if the feature is new.
+     */
+    private int slot(long key) {
+        int mask = table.length - 1;
+        int bucket = bucket(key, mask);
+        for (; table[bucket] != 0; bucket = (bucket + 1) & mask) {
+            if (table[bucket] == key) {
+                return tableSlots[bucket];
+            }
+        }
+        int slot = addSlot(key);
+        for (int index = slot * k; index < (slot + 1) * k; index++) {
+            v[index] = Randoms.gaussian(0, initStd);
+        }
+        return slot;
+    }
+
+    /**
+     * Append a slot of zero parameters for a new feature.
+     */
+    private int addSlot(long key) {
+        if (numFeatures == keys.length) {
+            allocate(2 * keys.length);
+        }
+        if (2 * (numFeatures + 1) > table.length) {
+            rehash(2 * table.length);
+        }
+        int slot = numFeatures++;
+        keys[slot] = key;
+        insert(key, slot);
+        return slot;
+    }
+
+    private void insert(long key, int slot) {
+        int mask = table.length - 1;
+        int bucket = bucket(key, mask);
+        while (table[bucket] != 0) {
+            bucket = (bucket + 1) & mask;
+        }
+        table[bucket] = key;
+        tableSlots[bucket] = slot;
+    }
+
+    private void rehash(int tableSize) {
+        table = new long[tableSize];
+        tableSlots = new int[tableSize];
+        for (int slot = 0; slot < numFeatures; slot++) {
+            insert(keys[slot], slot);
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = keys == null ? new long[capacity] : Arrays.copyOf(keys, capacity);
+        w = w == null ? new double[capacity] : Arrays.copyOf(w, capacity);
+        zW = zW == null ? new double[capacity] : Arrays.copyOf(zW, capacity);
+        nW = nW == null ? new double[capacity] : Arrays.copyOf(nW, capacity);
+        v = v == null ? new double[capacity * k] : Arrays.copyOf(v, capacity * k);
+        zV = zV == null ? new double[capacity * k] : Arrays.copyOf(zV, capacity * k);
+        nV = nV == null ? new double[capacity * k] : Arrays.copyOf(nV, capacity * k);
+    }
+
+    private static int bucket(long key, int mask) {
+        return (int) ((key ^ (key >>> 32)) * 0x9E3779B9L) & mask;
+    }
+
+    /**
+     * Write a snapshot of the model, parameters and accumulators, from which training can resume. The snapshot
+     * is written to a temporary file which then replaces the target, so that readers never see a partial one.
+     *
+     * @param target path of the snapshot file
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(Path target) throws IOException {
+        Path parent = target.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, target.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(k);
+                out.writeDouble(alpha);
+                out.writeDouble(beta);
+                out.writeDouble(lambda1);
+                out.writeDouble(lambda2);
+                out.writeDouble(initStd);
+                out.writeDouble(w0);
+                out.writeDouble(zW0);
+                out.writeDouble(nW0);
+                out.writeInt(numFeatures);
+                for (int slot = 0; slot < numFeatures; slot++) {
+                    out.writeLong(keys[slot]);
+                    out.writeDouble(w[slot]);
+                    out.writeDouble(zW[slot]);
+                    out.writeDouble(nW[slot]);
+                    for (int index = slot * k; index < (slot + 1) * k; index++) {
+                        out.writeDouble(v[index]);
+                        out.writeDouble(zV[index]);
+                        out.writeDouble(nV[index]);
+                    }
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Read a snapshot written by {@link #write(Path)}.
+     *
+     * @param source path of the snapshot file
+     * @return the model of the snapshot
+     * @throws IOException if the file is not a snapshot or cannot be read
+     */
+    public static FTRLStreamModel read(Path source) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(source + " is not a FTRL model snapshot of version " + VERSION);
+            }
+            int k = in.readInt();
+            FTRLStreamModel model = new FTRLStreamModel(k, in.readDouble(), in.readDouble(), in.readDouble(),
+                    in.readDouble(), in.readDouble());
+            model.w0 = in.readDouble();
+            model.zW0 = in.readDouble();
+            model.nW0 = in.readDouble();
+            int numFeatures = in.readInt();
+            for (int count = 0; count < numFeatures; count++) {
+                int slot = model.addSlot(in.readLong());
+                model.w[slot] = in.readDouble();
+                model.zW[slot] = in.readDouble();
+                model.nW[slot] = in.readDouble();
+                for (int index = slot * k; index < (slot + 1) * k; index++) {
+                    model.v[index] = in.readDouble();
+                    model.zV[index] = in.readDouble();
+                    model.nV[index] = in.readDouble();
+                }
+            }
+            return model;
+        }
+    }
+}
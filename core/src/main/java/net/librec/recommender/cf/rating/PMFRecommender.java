@@ -19,6 +19,8 @@ package net.librec.recommender.cf.rating;
 
 import net.librec.common.LibrecException;
 import net.librec.math.structure.MatrixEntry;
+import net.librec.recommender.DSGDTrainer;
+import net.librec.recommender.HogwildTrainer;
 import net.librec.recommender.MatrixFactorizationRecommender;
 
 /**
@@ -39,6 +41,10 @@ public class PMFRecommender extends MatrixFactorizationRecommender {
 
     @Override
     protected void trainModel() throws LibrecException {
+        if (isHogwild() || isDSGD()) {
+            trainModelParallel();
+            return;
+        }
         for (int iter = 1; iter <= numIterations; iter++) {
 
             loss = 0.0d;
@@ -70,4 +76,72 @@ public class PMFRecommender extends MatrixFactorizationRecommender {
             updateLRate(iter);
         }
     }
+
+    /**
+     * Train with the same updates as {@link #trainModel()}, applied in parallel on the arrays of the factors.
+     * Lock-free threads visit the ratings in a random order with rec.sgd.hogwild, while rec.sgd.dsgd trains the
+     * conflict-free blocks of every stratum concurrently, reproducibly for a fixed rec.random.seed.
+     *
+     * @throws LibrecException if error occurs during training
+     */
+    private void trainModelParallel() throws LibrecException {
+        final int[] userIndices = HogwildTrainer.rowIndices(trainMatrix);
+        final int[] itemIndices = trainMatrix.colInd;
+        final double[] ratings = trainMatrix.rowData;
+        final double[][] userData = userFactors.data, itemData = itemFactors.data;
+
+        HogwildTrainer.SampleKernel kernel = new HogwildTrainer.SampleKernel() {
+            @Override
+            public double update(int thread, int sample) {
+                double[] userValues = userData[userIndices[sample]], itemValues = itemData[itemIndices[sample]];
+
+                double predictRating = 0.0;
+                for (int factorId = 0; factorId < numFactors; factorId++) {
+                    predictRating += userValues[factorId] * itemValues[factorId];
+                }
+                double error = ratings[sample] - predictRating;
+                double sampleLoss = error * error;
+
+                // update factors
+                for (int factorId = 0; factorId < numFactors; factorId++) {
+                    double userFactor = userValues[factorId], itemFactor = itemValues[factorId];
+
+                    userValues[factorId] += learnRate * (error * itemFactor - regUser * userFactor);
+                    itemValues[factorId] += learnRate * (error * userFactor - regItem * itemFactor);
+
+                    sampleLoss += regUser * userFactor * userFactor + regItem * itemFactor * itemFactor;
+                }
+                return sampleLoss;
+            }
+        };
+
+        if (isDSGD()) {
+            DSGDTrainer trainer = createDSGDTrainer(userIndices, itemIndices);
+            try {
+                for (int iter = 1; iter <= numIterations; iter++) {
+                    loss = 0.5 * runDSGDEpoch(trainer, kernel, iter);
+                    if (isConverged(iter) && earlyStop) {
+                        break;
+                    }
+                    updateLRate(iter);
+                }
+            } finally {
+                trainer.shutdown();
+            }
+            return;
+        }
+
+        HogwildTrainer trainer = createHogwildTrainer(ratings.length);
+        try {
+            for (int iter = 1; iter <= numIterations; iter++) {
+                loss = 0.5 * runHogwildEpoch(trainer, kernel, iter);
+                if (isConverged(iter) && earlyStop) {
+                    break;
+                }
+                updateLRate(iter);
+            }
+        } finally {
+            trainer.shutdown();
+        }
+    }
 }
@@ -18,13 +18,16 @@
 package net.librec.recommender.cf.rating;
 
 import net.librec.annotation.ModelData;
+import net.librec.annotation.ThreadSafePredict;
 import net.librec.common.LibrecException;
 import net.librec.math.structure.DenseMatrix;
 import net.librec.math.structure.DenseVector;
 import net.librec.math.structure.MatrixEntry;
 import net.librec.math.structure.SparseMatrix;
+import net.librec.recommender.HogwildTrainer;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -33,6 +36,7 @@ import java.util.List;
  * @author GuoGuibing and Keqiang Wang
  */
 @ModelData({"isRating", "svdplusplus", "userFactors", "itemFactors", "userBiases", "itemBiases", "impItemFactors", "trainMatrix"})
+@ThreadSafePredict
 public class SVDPlusPlusRecommender extends BiasedMFRecommender {
     /**
      * item implicit feedback factors, "imp" string means implicit
@@ -67,6 +71,10 @@ public class SVDPlusPlusRecommender extends BiasedMFRecommender {
 
     @Override
     protected void trainModel() throws LibrecException {
+        if (isHogwild()) {
+            trainModelHogwild();
+            return;
+        }
         for (int iter = 1; iter <= numIterations; iter++) {
             loss = 0.0d;
             for (MatrixEntry matrixEntry : trainMatrix) {
@@ -130,6 +138,102 @@ public class SVDPlusPlusRecommender extends BiasedMFRecommender {
         }
     }
 
+    /**
+     * Train with the same updates as {@link #trainModel()}, applied by lock-free threads on the arrays of the
+     * factors and biases, visiting the ratings in a random order. As every rating also updates the implicit
+     * factors of all items rated by its user, which span all item blocks, rec.sgd.dsgd is not supported.
+     *
+     * @throws LibrecException if error occurs during training
+     */
+    private void trainModelHogwild() throws LibrecException {
+        final int[] userIndices = HogwildTrainer.rowIndices(trainMatrix);
+        final int[] itemIndices = trainMatrix.colInd;
+        final double[] ratings = trainMatrix.rowData;
+        final double[][] userData = userFactors.data, itemData = itemFactors.data, impItemData = impItemFactors.data;
+        final double[] userBiasData = userBiases.getData(), itemBiasData = itemBiases.getData();
+        final int[][] userItems = new int[numUsers][];
+        for (int userIdx = 0; userIdx < numUsers; userIdx++) {
+            List<Integer> items = userItemsList.get(userIdx);
+            userItems[userIdx] = new int[items.size()];
+            for (int pos = 0; pos < items.size(); pos++) {
+                userItems[userIdx][pos] = items.get(pos);
+            }
+        }
+
+        HogwildTrainer trainer = createHogwildTrainer(ratings.length);
+        // sum of the implicit feedback factors of the user of the current sample, per worker thread
+        final double[][] sumBuffers = new double[trainer.getNumThreads()][numFactors];
+        HogwildTrainer.SampleKernel kernel = new HogwildTrainer.SampleKernel() {
+            @Override
+            public double update(int thread, int sample) {
+                int userIdx = userIndices[sample];
+                int itemIdx = itemIndices[sample];
+                double[] userValues = userData[userIdx], itemValues = itemData[itemIdx];
+                int[] items = userItems[userIdx];
+
+                double[] sumImpItemsFactors = sumBuffers[thread];
+                Arrays.fill(sumImpItemsFactors, 0.0);
+                for (int impItemIdx : items) {
+                    double[] impItemValues = impItemData[impItemIdx];
+                    for (int factorIdx = 0; factorIdx < numFactors; factorIdx++) {
+                        sumImpItemsFactors[factorIdx] += impItemValues[factorIdx];
+                    }
+                }
+                double impNor = Math.sqrt(items.length);
+                if (impNor > 0) {
+                    for (int factorIdx = 0; factorIdx < numFactors; factorIdx++) {
+                        sumImpItemsFactors[factorIdx] *= 1.0 / impNor;
+                    }
+                }
+
+                double predictRating = userBiasData[userIdx] + itemBiasData[itemIdx] + globalMean;
+                for (int factorIdx = 0; factorIdx < numFactors; factorIdx++) {
+                    predictRating += (userValues[factorIdx] + sumImpItemsFactors[factorIdx]) * itemValues[factorIdx];
+                }
+                double error = ratings[sample] - predictRating;
+                double sampleLoss = error * error;
+
+                // update user and item bias
+                double userBiasValue = userBiasData[userIdx];
+                userBiasData[userIdx] += learnRate * (error - regBias * userBiasValue);
+                sampleLoss += regBias * userBiasValue * userBiasValue;
+
+                double itemBiasValue = itemBiasData[itemIdx];
+                itemBiasData[itemIdx] += learnRate * (error - regBias * itemBiasValue);
+                sampleLoss += regBias * itemBiasValue * itemBiasValue;
+
+                //update user and item factors
+                for (int factorIdx = 0; factorIdx < numFactors; factorIdx++) {
+                    double userFactorValue = userValues[factorIdx];
+                    double itemFactorValue = itemValues[factorIdx];
+
+                    userValues[factorIdx] += learnRate * (error * itemFactorValue - regUser * userFactorValue);
+                    itemValues[factorIdx] += learnRate * (error * (userFactorValue + sumImpItemsFactors[factorIdx]) - regItem * itemFactorValue);
+                    sampleLoss += regUser * userFactorValue * userFactorValue + regItem * itemFactorValue * itemFactorValue;
+
+                    for (int impItemIdx : items) {
+                        double[] impItemValues = impItemData[impItemIdx];
+                        double impItemFactor = impItemValues[factorIdx];
+                        impItemValues[factorIdx] += learnRate * (error * itemFactorValue / impNor - regImpItem * impItemFactor);
+                        sampleLoss += regImpItem * impItemFactor * impItemFactor;
+                    }
+                }
+                return sampleLoss;
+            }
+        };
+
+        try {
+            for (int iter = 1; iter <= numIterations; iter++) {
+                loss = 0.5d * runHogwildEpoch(trainer, kernel, iter);
+                if (isConverged(iter) && earlyStop) {
+                    break;
+                }
+                updateLRate(iter);
+            }
+        } finally {
+            trainer.shutdown();
+        }
+    }
 
     @Override
     protected double predict(int userIdx, int itemIdx) throws LibrecException {
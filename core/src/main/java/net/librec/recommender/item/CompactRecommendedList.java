@@ -0,0 +1,325 @@
+/**
+ * Copyright (C) 2016 LibRec
+ * <p>
+ * This file is part of LibRec.
+ * LibRec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * LibRec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.librec.recommender.item;
+
+import net.librec.annotation.LibrecWaring;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Recommended list stored in flat primitive arrays, without an object per recommended item.
+ * <p>
+ * Every user owns a fixed range of slots of the arrays of item indices and values: either {@code topN} slots per
+ * user for ranking, or the slots given by compressed row pointers, e.g. those of the test matrix, for rating
+ * prediction. In the ranking layout a user whose slots are full keeps the items of the highest values. The lists
+ * of different users may be filled concurrently, since they share no slot.
+ * <p>
+ * The entry iterator returns the same {@link UserItemRatingEntry} object at every call, which has to be read
+ * before the next call.
+ */
+public class CompactRecommendedList implements RecommendedList, Serializable {
+    private static final long serialVersionUID = 3620170283512419547L;
+
+    private final int numUsers;
+    /**
+     * number of slots of every user in the ranking layout, 0 in the compressed row layout
+     */
+    private final int topN;
+    /**
+     * slots of user userIdx are slotPtr[userIdx] to slotPtr[userIdx + 1] - 1, null in the ranking layout
+     */
+    private final int[] slotPtr;
+    private final int[] itemIdxs;
+    private final double[] values;
+    private final int[] sizes;
+
+    /**
+     * Construct an empty list of {@code topN} slots per user.
+     *
+     * @param numUsers number of users
+     * @param topN     number of slots per user
+     */
+    public CompactRecommendedList(int numUsers, int topN) {
+        if (numUsers < 0 || topN < 0 || (long) numUsers * topN > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Illegal number of slots: " + numUsers + " x " + topN);
+        }
+        this.numUsers = numUsers;
+        this.topN = topN;
+        this.slotPtr = null;
+        this.itemIdxs = new int[numUsers * topN];
+        this.values = new double[numUsers * topN];
+        this.sizes = new int[numUsers];
+    }
+
+    /**
+     * Construct an empty list whose slots are given by compressed row pointers.
+     *
+     * @param slotPtr slots of user userIdx are {@code slotPtr[userIdx]} to {@code slotPtr[userIdx + 1] - 1}
+     */
+    public CompactRecommendedList(int[] slotPtr) {
+        this.numUsers = slotPtr.length - 1;
+        this.topN = 0;
+        this.slotPtr = slotPtr.clone();
+        this.itemIdxs = new int[slotPtr[numUsers]];
+        this.values = new double[slotPtr[numUsers]];
+        this.sizes = new int[numUsers];
+    }
+
+    private int firstSlot(int userIdx) {
+        return slotPtr == null ? userIdx * topN : slotPtr[userIdx];
+    }
+
+    private int numSlots(int userIdx) {
+        return slotPtr == null ? topN : slotPtr[userIdx + 1] - slotPtr[userIdx];
+    }
+
+    private void userRangeCheck(int userIdx) {
+        if (userIdx < 0 || userIdx >= numUsers) {
+            throw new IndexOutOfBoundsException("Index: " + userIdx + ", Size: " + numUsers);
+        }
+    }
+
+    /**
+     * Append an item to the list of a user. In the ranking layout a user whose slots are full keeps the item if
+     * its value is higher than the lowest one, which it replaces.
+     *
+     * @param userIdx user index
+     * @param itemIdx item index
+     * @param rating  rating value
+     * @return true if the item was added
+     * @throws IndexOutOfBoundsException if the slots of the user are full in the compressed row layout
+     */
+    @Override
+    public boolean addUserItemIdx(int userIdx, int itemIdx, double rating) {
+        userRangeCheck(userIdx);
+        int from = firstSlot(userIdx);
+        int size = sizes[userIdx];
+        if (size < numSlots(userIdx)) {
+            itemIdxs[from + size] = itemIdx;
+            values[from + size] = rating;
+            sizes[userIdx] = size + 1;
+            return true;
+        }
+        if (slotPtr != null) {
+            throw new IndexOutOfBoundsException("No slot left for user " + userIdx);
+        }
+        if (size == 0) {
+            return false;
+        }
+        int lowest = from;
+        for (int slot = from + 1; slot < from + size; slot++) {
+            if (values[slot] < values[lowest]) {
+                lowest = slot;
+            }
+        }
+        if (rating <= values[lowest]) {
+            return false;
+        }
+        itemIdxs[lowest] = itemIdx;
+        values[lowest] = rating;
+        return true;
+    }
+
+    @Override
+    public List<ItemEntry<Integer, Double>> getItemIdxListByUserIdx(int userIdx) {
+        userRangeCheck(userIdx);
+        int from = firstSlot(userIdx);
+        List<ItemEntry<Integer, Double>> itemList = new ArrayList<>(sizes[userIdx]);
+        for (int slot = from; slot < from + sizes[userIdx]; slot++) {
+            itemList.add(new ItemEntry<Integer, Double>(itemIdxs[slot], values[slot]));
+        }
+        return itemList;
+    }
+
+    @Override
+    public int getItemSizeByUserIdx(int userIdx) {
+        userRangeCheck(userIdx);
+        return sizes[userIdx];
+    }
+
+    @Override
+    public int getItemIdxByUserIdx(int userIdx, int rank) {
+        rankRangeCheck(userIdx, rank);
+        return itemIdxs[firstSlot(userIdx) + rank];
+    }
+
+    @Override
+    public double getValueByUserIdx(int userIdx, int rank) {
+        rankRangeCheck(userIdx, rank);
+        return values[firstSlot(userIdx) + rank];
+    }
+
+    private void rankRangeCheck(int userIdx, int rank) {
+        userRangeCheck(userIdx);
+        if (rank < 0 || rank >= sizes[userIdx]) {
+            throw new IndexOutOfBoundsException("Index: " + rank + ", Size: " + sizes[userIdx]);
+        }
+    }
+
+    @Override
+    public List<ItemEntry<Integer, Double>> removeUserIdx(int userIdx) {
+        List<ItemEntry<Integer, Double>> oldValue = getItemIdxListByUserIdx(userIdx);
+        sizes[userIdx] = 0;
+        return oldValue;
+    }
+
+    @Override
+    public boolean contains(int userIdx) {
+        return userIdx >= 0 && userIdx < numUsers && sizes[userIdx] > 0;
+    }
+
+    @Deprecated
+    @LibrecWaring(value = "It is best not to use this method! Too slow and the complexity is O(itemIdxList.size()).")
+    @Override
+    public double getEntryValue(int userIdx, int itemIdx) {
+        userRangeCheck(userIdx);
+        int from = firstSlot(userIdx);
+        for (int slot = from; slot < from + sizes[userIdx]; slot++) {
+            if (itemIdxs[slot] == itemIdx) {
+                return values[slot];
+            }
+        }
+        return -1.0;
+    }
+
+    /**
+     * Sort the items of a user by decreasing value and keep the first {@code topN}. Items of equal values keep
+     * their order.
+     *
+     * @param userIdx user userIdx
+     * @param topN    top n ranked Items
+     */
+    @Override
+    public void topNRankItemsByUser(int userIdx, int topN) {
+        userRangeCheck(userIdx);
+        int from = firstSlot(userIdx);
+        int size = sizes[userIdx];
+        // insertion sort, the lists are short
+        for (int pos = from + 1; pos < from + size; pos++) {
+            int itemIdx = itemIdxs[pos];
+            double value = values[pos];
+            int slot = pos;
+            while (slot > from && values[slot - 1] < value) {
+                itemIdxs[slot] = itemIdxs[slot - 1];
+                values[slot] = values[slot - 1];
+                slot--;
+            }
+            itemIdxs[slot] = itemIdx;
+            values[slot] = value;
+        }
+        sizes[userIdx] = Math.max(0, Math.min(size, topN));
+    }
+
+    @Override
+    public void topNRank(int itemTopN) {
+        for (int userIdx = 0; userIdx < numUsers; userIdx++) {
+            topNRankItemsByUser(userIdx, itemTopN);
+        }
+    }
+
+    @Override
+    public Iterator<Integer> userIterator() {
+        return new UserIterator();
+    }
+
+    @Override
+    public Iterator<UserItemRatingEntry> entryIterator() {
+        return new UserItemRatingItr();
+    }
+
+    /**
+     * @return the number of users with at least one item
+     */
+    @Override
+    public int size() {
+        int size = 0;
+        for (int userIdx = 0; userIdx < numUsers; userIdx++) {
+            if (sizes[userIdx] > 0) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    private int nextUser(int userIdx) {
+        while (userIdx < numUsers && sizes[userIdx] == 0) {
+            userIdx++;
+        }
+        return userIdx;
+    }
+
+    /**
+     * iterator of the users with at least one item, in increasing order
+     */
+    private class UserIterator implements Iterator<Integer> {
+        private int cursor = nextUser(0);
+
+        public boolean hasNext() {
+            return cursor < numUsers;
+        }
+
+        public Integer next() {
+            if (cursor >= numUsers) {
+                throw new NoSuchElementException();
+            }
+            int userIdx = cursor;
+            cursor = nextUser(cursor + 1);
+            return userIdx;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * iterator of user-item-rating entry, returning the same entry object at every call
+     */
+    private class UserItemRatingItr implements Iterator<UserItemRatingEntry> {
+        private final UserItemRatingEntry entry = new UserItemRatingEntry();
+        private int userIdx = nextUser(0);
+        private int rank;
+
+        public boolean hasNext() {
+            return userIdx < numUsers;
+        }
+
+        public UserItemRatingEntry next() {
+            if (userIdx >= numUsers) {
+                throw new NoSuchElementException();
+            }
+            int slot = firstSlot(userIdx) + rank;
+            entry.setUserIdx(userIdx);
+            entry.setItemIdx(itemIdxs[slot]);
+            entry.setValue(values[slot]);
+            if (++rank == sizes[userIdx]) {
+                rank = 0;
+                userIdx = nextUser(userIdx + 1);
+            }
+            return entry;
+        }
+
+        public void remove() {
+            throw new IllegalStateException();
+        }
+    }
+}
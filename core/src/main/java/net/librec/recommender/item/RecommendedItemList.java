@@ -25,6 +25,9 @@ import java.util.*;
 
 /**
  * Recommended Item List
+ * <p>
+ * The methods adding, replacing or removing the items of a user are synchronized, so the lists of
+ * different users may be filled concurrently.
  *
  * @author WangYuFeng and Keqiang Wang
  */
@@ -94,7 +97,7 @@ public class RecommendedItemList implements RecommendedList, Serializable {
      * @param itemList element to be appended to this list
      * @return <tt>true</tt> (as specified by {@link Collection#add})
      */
-    public boolean setItemIdxList(int userIdx, List<ItemEntry<Integer, Double>> itemList) {
+    public synchronized boolean setItemIdxList(int userIdx, List<ItemEntry<Integer, Double>> itemList) {
         if(itemList.size()>0) {
             userRangeCheck(userIdx);
             checkIndex(userIdx);
@@ -112,7 +115,7 @@ public class RecommendedItemList implements RecommendedList, Serializable {
      * @param itemList element to be appended to this list
      * @return <tt>true</tt> (as specified by {@link Collection#add})
      */
-    public boolean addItemIdxList(int userIdx, ArrayList<ItemEntry<Integer, Double>> itemList) {
+    public synchronized boolean addItemIdxList(int userIdx, ArrayList<ItemEntry<Integer, Double>> itemList) {
         userRangeCheck(userIdx);
         checkIndex(userIdx);
         elementData.get(indexOfUserIdx[userIdx]).addAll(itemList);
@@ -127,7 +130,7 @@ public class RecommendedItemList implements RecommendedList, Serializable {
      * @param rating   rating value
      * @return <tt>true</tt> (as specified by {@link Collection#add})
      */
-    public boolean addUserItemIdx(int userIdx, int itemIdx, double rating) {
+    public synchronized boolean addUserItemIdx(int userIdx, int itemIdx, double rating) {
         userRangeCheck(userIdx);
         checkIndex(userIdx);
         elementData.get(indexOfUserIdx[userIdx]).add(new ItemEntry<Integer, Double>(itemIdx, rating));
@@ -141,7 +144,7 @@ public class RecommendedItemList implements RecommendedList, Serializable {
      * @return the itemEntry of user index in this list
      * @throws IndexOutOfBoundsException {@inheritDoc}
      */
-    public List<ItemEntry<Integer, Double>> getItemIdxListByUserIdx(int userIdx) throws IndexOutOfBoundsException {
+    public synchronized List<ItemEntry<Integer, Double>> getItemIdxListByUserIdx(int userIdx) throws IndexOutOfBoundsException {
         userRangeCheck(userIdx);
         int index = indexOfUserIdx[userIdx];
         if (index < 0) {
@@ -151,6 +154,21 @@ public class RecommendedItemList implements RecommendedList, Serializable {
         }
     }
 
+    @Override
+    public int getItemSizeByUserIdx(int userIdx) {
+        return getItemIdxListByUserIdx(userIdx).size();
+    }
+
+    @Override
+    public int getItemIdxByUserIdx(int userIdx, int rank) {
+        return getItemIdxListByUserIdx(userIdx).get(rank).getKey();
+    }
+
+    @Override
+    public double getValueByUserIdx(int userIdx, int rank) {
+        return getItemIdxListByUserIdx(userIdx).get(rank).getValue();
+    }
+
     /**
      * check if the element Data contains the userIdx. if contain , do noting.
      * else, add a new new ArrayList<ItemEntry<Integer, Double>>() to  elementData
@@ -161,8 +179,8 @@ public class RecommendedItemList implements RecommendedList, Serializable {
         int index = indexOfUserIdx[userIdx];
         if (index < 0) {
             if (!idleIndexList.isEmpty()) {
-                elementData.set(indexOfUserIdx[userIdx], new ArrayList<ItemEntry<Integer, Double>>());
                 indexOfUserIdx[userIdx] = idleIndexList.poll();
+                elementData.set(indexOfUserIdx[userIdx], new ArrayList<ItemEntry<Integer, Double>>());
             } else {
                 indexOfUserIdx[userIdx] = elementData.size();
                 elementData.add(new ArrayList<ItemEntry<Integer, Double>>());
@@ -200,7 +218,7 @@ public class RecommendedItemList implements RecommendedList, Serializable {
      * @return the element that was removed from the list
      * @throws IndexOutOfBoundsException {@inheritDoc}
      */
-    public List<ItemEntry<Integer, Double>> removeUserIdx(int userIdx) throws IndexOutOfBoundsException {
+    public synchronized List<ItemEntry<Integer, Double>> removeUserIdx(int userIdx) throws IndexOutOfBoundsException {
         userRangeCheck(userIdx);
         int index = indexOfUserIdx[userIdx];
         List<ItemEntry<Integer, Double>> oldValue = new ArrayList<ItemEntry<Integer, Double>>();
@@ -235,7 +253,7 @@ public class RecommendedItemList implements RecommendedList, Serializable {
      * @param userIdx user userIdx
      * @param topN    top n ranked Items
      */
-    public void topNRankItemsByUser(int userIdx, int topN) {
+    public synchronized void topNRankItemsByUser(int userIdx, int topN) {
         setItemIdxList(userIdx,
                 Lists.sortItemEntryListTopK(getItemIdxListByUserIdx(userIdx), true, topN));
     }
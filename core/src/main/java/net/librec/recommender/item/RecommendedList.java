@@ -56,6 +56,32 @@ public interface RecommendedList {
      */
     public List<ItemEntry<Integer, Double>> getItemIdxListByUserIdx(int userIdx);
 
+    /**
+     * get the number of items of a user
+     *
+     * @param userIdx  user index
+     * @return number of items of the user
+     */
+    public int getItemSizeByUserIdx(int userIdx);
+
+    /**
+     * get an item of a user, without building the item list
+     *
+     * @param userIdx  user index
+     * @param rank     position of the item in the list of the user
+     * @return item index
+     */
+    public int getItemIdxByUserIdx(int userIdx, int rank);
+
+    /**
+     * get the value of an item of a user, without building the item list
+     *
+     * @param userIdx  user index
+     * @param rank     position of the item in the list of the user
+     * @return value of the item
+     */
+    public double getValueByUserIdx(int userIdx, int rank);
+
     /**
      * remove UserIdx
      *
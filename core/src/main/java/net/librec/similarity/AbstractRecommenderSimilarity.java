@@ -20,13 +20,19 @@ package net.librec.similarity;
 import net.librec.conf.Configuration;
 import net.librec.data.DataModel;
 import net.librec.data.convertor.appender.SocialDataAppender;
+import net.librec.math.structure.PackedSymmMatrix;
 import net.librec.math.structure.SparseMatrix;
 import net.librec.math.structure.SparseVector;
 import net.librec.math.structure.SymmMatrix;
+import net.librec.util.TopKHeaps;
 import org.apache.commons.lang.StringUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Calculate Recommender Similarity, such as cosine, Pearson, Jaccard
@@ -45,9 +51,20 @@ public abstract class AbstractRecommenderSimilarity implements RecommenderSimila
      * Similarity Matrix
      */
     protected SymmMatrix similarityMatrix;
+    /**
+     * Shrinkage of the primitive kernel, see {@code rec.similarity.shrinkage}
+     */
+    protected int shrinkage;
+    /**
+     * Neighbors retained per user or item while building in top-k mode, see {@code rec.similarity.topk.number}
+     */
+    private TopKHeaps neighborHeaps;
 
     /**
-     * Build social similarity matrix with trainMatrix in dataModel.
+     * Build social similarity matrix with trainMatrix in dataModel. With
+     * {@code rec.similarity.topk.number} set, only the most similar neighbors of
+     * each user or item are kept while building. With {@code rec.similarity.threads}
+     * above 1, similarities having a primitive kernel are computed in parallel tiles.
      *
      * @param dataModel
      *            the input data model
@@ -68,31 +85,226 @@ public abstract class AbstractRecommenderSimilarity implements RecommenderSimila
                 int numItems = trainMatrix.numColumns();
                 int count = isUser ? numUsers : numItems;
                 
-                similarityMatrix = new SymmMatrix(count);
-                
-                for (int i = 0; i < count; i++) {
-                    SparseVector thisVector = isUser ? trainMatrix.row(i) : trainMatrix.column(i);
-                    if (thisVector.getCount() == 0) {
-                        continue;
+                similarityMatrix = createSimilarityMatrix(count);
+                int topK = conf.getInt("rec.similarity.topk.number", 0);
+                neighborHeaps = topK > 0 ? new TopKHeaps(count, topK) : null;
+
+                shrinkage = conf.getInt("rec.similarity.shrinkage", 0);
+                int numThreads = conf.getInt("rec.similarity.threads", 1);
+                int blockSize = conf.getInt("rec.similarity.block.size", 256);
+                String lsh = conf.get("rec.similarity.lsh", "none");
+                if (!StringUtils.equalsIgnoreCase(lsh, "none") && hasPrimitiveKernel()) {
+                    LSHIndex lshIndex = createLSHIndex(lsh);
+                    if (isUser) {
+                        buildSimilarityMatrix(lshIndex, trainMatrix.rowPtr, trainMatrix.colInd, trainMatrix.rowData,
+                                count, numThreads, blockSize);
+                    } else {
+                        buildSimilarityMatrix(lshIndex, trainMatrix.colPtr, trainMatrix.rowInd, trainMatrix.colData,
+                                count, numThreads, blockSize);
                     }
-                    // user/item itself exclusive
-                    for (int j = i + 1; j < count; j++) {
-                        SparseVector thatVector = isUser ? trainMatrix.row(j) : trainMatrix.column(j);
-                        if (thatVector.getCount() == 0) {
+                } else if (hasCooccurrenceKernel()) {
+                    CooccurrenceSimilarityEngine engine = isUser
+                            ? new CooccurrenceSimilarityEngine(trainMatrix.rowPtr, trainMatrix.colInd, trainMatrix.rowData,
+                            trainMatrix.colPtr, trainMatrix.rowInd, trainMatrix.colData, count)
+                            : new CooccurrenceSimilarityEngine(trainMatrix.colPtr, trainMatrix.rowInd, trainMatrix.colData,
+                            trainMatrix.rowPtr, trainMatrix.colInd, trainMatrix.rowData, count);
+                    engine.build(this, (CooccurrenceSimilarity) this, numThreads, blockSize);
+                } else if (numThreads > 1 && hasPrimitiveKernel()) {
+                    if (isUser) {
+                        buildSimilarityMatrix(trainMatrix.rowPtr, trainMatrix.colInd, trainMatrix.rowData, count,
+                                numThreads, blockSize);
+                    } else {
+                        buildSimilarityMatrix(trainMatrix.colPtr, trainMatrix.rowInd, trainMatrix.colData, count,
+                                numThreads, blockSize);
+                    }
+                } else {
+                    for (int i = 0; i < count; i++) {
+                        SparseVector thisVector = isUser ? trainMatrix.row(i) : trainMatrix.column(i);
+                        if (thisVector.getCount() == 0) {
                             continue;
                         }
-                        
-                        double sim = getCorrelation(thisVector, thatVector);
-                        if (!Double.isNaN(sim) && sim != 0) {
-                            similarityMatrix.set(i, j, sim);
+                        // user/item itself exclusive
+                        for (int j = i + 1; j < count; j++) {
+                            SparseVector thatVector = isUser ? trainMatrix.row(j) : trainMatrix.column(j);
+                            if (thatVector.getCount() == 0) {
+                                continue;
+                            }
+
+                            double sim = getCorrelation(thisVector, thatVector);
+                            if (!Double.isNaN(sim) && sim != 0) {
+                                storeSimilarity(i, j, sim);
+                            }
+                        }
+                    }
+                }
+
+                if (neighborHeaps != null) {
+                    for (int i = 0; i < count; i++) {
+                        for (int pos = 0; pos < neighborHeaps.size(i); pos++) {
+                            similarityMatrix.set(i, neighborHeaps.getIndex(i, pos), neighborHeaps.getValue(i, pos));
                         }
                     }
+                    neighborHeaps = null;
                 }
             }
         }
 
     }
 
+    /**
+     * Create the approximate neighbor index given by {@code rec.similarity.lsh}: "minhash" for
+     * Jaccard-style similarities or "projection" for cosine-style ones, with
+     * {@code rec.similarity.lsh.bands} bands of {@code rec.similarity.lsh.rows} hash values.
+     *
+     * @param lsh
+     *            index type
+     * @return an empty index
+     */
+    protected LSHIndex createLSHIndex(String lsh) {
+        int numBands = conf.getInt("rec.similarity.lsh.bands", 16);
+        int numRows = conf.getInt("rec.similarity.lsh.rows", 4);
+        long seed = conf.getLong("rec.random.seed", System.currentTimeMillis());
+        if (StringUtils.equalsIgnoreCase(lsh, "minhash")) {
+            return new MinHashLSHIndex(numBands, numRows, seed);
+        } else if (StringUtils.equalsIgnoreCase(lsh, "projection")) {
+            return new RandomProjectionLSHIndex(numBands, numRows, seed);
+        }
+        throw new IllegalArgumentException("unknown rec.similarity.lsh: " + lsh);
+    }
+
+    /**
+     * Build the similarity matrix between the compressed vectors {@code [ptr[i], ptr[i + 1])} of
+     * a row or column compressed matrix, evaluating only the candidate pairs of an approximate
+     * neighbor index. Blocks of {@code blockSize} vectors are computed on a fork/join pool.
+     *
+     * @param lshIndex   approximate neighbor index, built here
+     * @param ptr        vector pointers
+     * @param index      sorted indices of each vector
+     * @param data       values of each vector
+     * @param count      number of vectors
+     * @param numThreads number of threads
+     * @param blockSize  number of vectors per block
+     */
+    protected void buildSimilarityMatrix(LSHIndex lshIndex, int[] ptr, int[] index, double[] data,
+                                         final int count, int numThreads, int blockSize) {
+        lshIndex.build(ptr, index, data, count, numThreads);
+        int maxSize = 0;
+        for (int i = 0; i < count; i++) {
+            maxSize = Math.max(maxSize, ptr[i + 1] - ptr[i]);
+        }
+        final int bufferSize = maxSize;
+        ThreadLocal<int[][]> candidateBuffers = new ThreadLocal<int[][]>() {
+            @Override
+            protected int[][] initialValue() {
+                return new int[2][count];
+            }
+        };
+        ThreadLocal<double[][]> valueBuffers = new ThreadLocal<double[][]>() {
+            @Override
+            protected double[][] initialValue() {
+                return new double[2][bufferSize];
+            }
+        };
+
+        int numBlocks = (count + blockSize - 1) / blockSize;
+        if (numBlocks == 0) {
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, numThreads));
+        try {
+            pool.invoke(new CandidateBlockTask(lshIndex, ptr, index, data, count, blockSize, candidateBuffers,
+                    valueBuffers, 0, numBlocks));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Store the similarities of pairs computed by a concurrent task.
+     *
+     * @param thisIndices this users or items
+     * @param thatIndices that users or items
+     * @param sims        similarities
+     * @param size        number of pairs
+     */
+    void storeSimilarities(int[] thisIndices, int[] thatIndices, double[] sims, int size) {
+        if (size > 0) {
+            synchronized (similarityMatrix) {
+                for (int k = 0; k < size; k++) {
+                    storeSimilarity(thisIndices[k], thatIndices[k], sims[k]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Store the similarity of a pair, or offer it to the neighbor heaps of both sides in top-k mode.
+     *
+     * @param i   this user or item
+     * @param j   that user or item
+     * @param sim similarity
+     */
+    private void storeSimilarity(int i, int j, double sim) {
+        if (neighborHeaps != null) {
+            neighborHeaps.offer(i, j, sim);
+            neighborHeaps.offer(j, i, sim);
+        } else {
+            similarityMatrix.set(i, j, sim);
+        }
+    }
+
+    /**
+     * Build the similarity matrix between the compressed vectors {@code [ptr[i], ptr[i + 1])} of
+     * a row or column compressed matrix. The upper triangle is cut into square tiles of
+     * {@code blockSize} vectors which are computed on a fork/join pool; every pair is evaluated by
+     * the primitive kernel {@link #getCorrelation(int[], double[], int, int, int, int, double[], double[])}.
+     *
+     * @param ptr        vector pointers
+     * @param index      sorted indices of each vector
+     * @param data       values of each vector
+     * @param count      number of vectors
+     * @param numThreads number of threads
+     * @param blockSize  number of vectors per tile side
+     */
+    protected void buildSimilarityMatrix(int[] ptr, int[] index, double[] data, int count, int numThreads,
+                                         int blockSize) {
+        int maxSize = 0;
+        boolean[] empty = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            empty[i] = true;
+            for (int k = ptr[i]; k < ptr[i + 1]; k++) {
+                if (data[k] != 0.0) {
+                    empty[i] = false;
+                    break;
+                }
+            }
+            maxSize = Math.max(maxSize, ptr[i + 1] - ptr[i]);
+        }
+
+        int numBlocks = (count + blockSize - 1) / blockSize;
+        int[] tiles = new int[numBlocks * (numBlocks + 1)];
+        int numTiles = 0;
+        for (int thisBlock = 0; thisBlock < numBlocks; thisBlock++) {
+            for (int thatBlock = thisBlock; thatBlock < numBlocks; thatBlock++) {
+                tiles[2 * numTiles] = thisBlock;
+                tiles[2 * numTiles + 1] = thatBlock;
+                numTiles++;
+            }
+        }
+        if (numTiles == 0) {
+            return;
+        }
+
+        SimilarityTileContext context = new SimilarityTileContext(ptr, index, data, count, empty, maxSize,
+                blockSize, tiles);
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, numThreads));
+        try {
+            pool.invoke(new SimilarityTileTask(context, 0, numTiles));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
     /**
      * Build social similarity matrix with trainMatrix
      * and socialMatrix in dataModel.
@@ -105,7 +317,7 @@ public abstract class AbstractRecommenderSimilarity implements RecommenderSimila
         SparseMatrix socialMatrix = ((SocialDataAppender) dataModel.getDataAppender()).getUserAppender();
         int numUsers = trainMatrix.numRows();
 
-        similarityMatrix = new SymmMatrix(numUsers);
+        similarityMatrix = createSimilarityMatrix(numUsers);
 
         for (int userIdx = 0; userIdx < numUsers; userIdx++) {
             SparseVector userVector = trainMatrix.row(userIdx);
@@ -127,6 +339,24 @@ public abstract class AbstractRecommenderSimilarity implements RecommenderSimila
         }
     }
 
+    /**
+     * Create an empty similarity matrix according to {@code rec.similarity.storage}: "table" keeps
+     * the boxed table, "heap", "direct" and "mapped" select a {@link PackedSymmMatrix} held on the
+     * heap, off-heap or in the file given by {@code rec.similarity.storage.path}.
+     *
+     * @param dim
+     *            matrix dimension
+     * @return an empty similarity matrix
+     */
+    protected SymmMatrix createSimilarityMatrix(int dim) {
+        String storage = conf.get("rec.similarity.storage", "table");
+        if (StringUtils.equalsIgnoreCase(storage, "table")) {
+            return new SymmMatrix(dim);
+        }
+        return new PackedSymmMatrix(dim, PackedSymmMatrix.Storage.valueOf(storage.toUpperCase(Locale.ENGLISH)),
+                conf.get("rec.similarity.storage.path"));
+    }
+
     /**
      * Find the common rated items by this user and that user, or the common
      * users have rated this item or that item. And then return the similarity.
@@ -174,6 +404,113 @@ public abstract class AbstractRecommenderSimilarity implements RecommenderSimila
      */
     protected abstract double getSimilarity(List<? extends Number> thisList, List<? extends Number> thatList);
 
+    /**
+     * Find the common non-zero entries of two sparse vectors, given as slices {@code [thisStart, thisEnd)}
+     * and {@code [thatStart, thatEnd)} of the same sorted index and value arrays, and return their
+     * similarity. The common values are merged into the scratch buffers, which are large enough to
+     * hold any vector. Subclasses overriding {@link #getCorrelation(SparseVector, SparseVector)}
+     * override this method accordingly.
+     *
+     * @param index      sorted indices of the vectors
+     * @param data       values of the vectors
+     * @param thisStart  start of this vector
+     * @param thisEnd    end of this vector, exclusive
+     * @param thatStart  start of that vector
+     * @param thatEnd    end of that vector, exclusive
+     * @param thisBuffer scratch buffer for the common values of this vector
+     * @param thatBuffer scratch buffer for the common values of that vector
+     * @return similarity
+     */
+    protected double getCorrelation(int[] index, double[] data, int thisStart, int thisEnd, int thatStart,
+                                    int thatEnd, double[] thisBuffer, double[] thatBuffer) {
+        int size = 0;
+        int thisPos = thisStart, thatPos = thatStart;
+        while (thisPos < thisEnd && thatPos < thatEnd) {
+            int thisIdx = index[thisPos], thatIdx = index[thatPos];
+            if (thisIdx < thatIdx) {
+                thisPos++;
+            } else if (thisIdx > thatIdx) {
+                thatPos++;
+            } else {
+                if (data[thisPos] != 0.0 && data[thatPos] != 0.0) {
+                    thisBuffer[size] = data[thisPos];
+                    thatBuffer[size] = data[thatPos];
+                    size++;
+                }
+                thisPos++;
+                thatPos++;
+            }
+        }
+        return shrink(getSimilarity(thisBuffer, thatBuffer, size), size);
+    }
+
+    /**
+     * Shrink a similarity to account for the number of common entries, see
+     * {@code rec.similarity.shrinkage}.
+     *
+     * @param sim
+     *            similarity
+     * @param size
+     *            number of common entries
+     * @return shrunk similarity
+     */
+    protected double shrink(double sim, int size) {
+        if (!Double.isNaN(sim) && shrinkage > 0) {
+            sim *= size / (size + shrinkage + 0.0);
+        }
+        return sim;
+    }
+
+    /**
+     * Calculate the similarity between the first {@code size} values of thisValues and
+     * thatValues. The default implementation delegates to
+     * {@link #getSimilarity(List, List)}; subclasses override it to avoid boxing.
+     *
+     * @param thisValues
+     *            this values
+     * @param thatValues
+     *            that values
+     * @param size
+     *            number of values
+     * @return similarity
+     */
+    protected double getSimilarity(double[] thisValues, double[] thatValues, int size) {
+        List<Double> thisList = new ArrayList<Double>(size);
+        List<Double> thatList = new ArrayList<Double>(size);
+        for (int i = 0; i < size; i++) {
+            thisList.add(thisValues[i]);
+            thatList.add(thatValues[i]);
+        }
+        return getSimilarity(thisList, thatList);
+    }
+
+    /**
+     * Whether this similarity implements the primitive kernels
+     * {@link #getCorrelation(int[], double[], int, int, int, int, double[], double[])} or
+     * {@link #getSimilarity(double[], double[], int)} consistently with its {@link SparseVector} and
+     * {@link List} based methods, so that the similarity matrix can be built over the compressed
+     * arrays of the training matrix. Subclasses implementing the primitive kernels opt in by
+     * returning true.
+     *
+     * @return true if the primitive kernels can be used
+     */
+    protected boolean hasPrimitiveKernel() {
+        return false;
+    }
+
+    /**
+     * Whether this is a {@link CooccurrenceSimilarity} consistent with its other methods, i.e. with
+     * {@link #hasPrimitiveKernel()}, and the sparse product engine is enabled by
+     * {@code rec.similarity.cooccurrence}. The engine is off by default, since it bypasses
+     * {@code getCorrelation} and {@code getSimilarity} overridden by subclasses.
+     *
+     * @return true if the sparse product engine can be used
+     */
+    private boolean hasCooccurrenceKernel() {
+        return this instanceof CooccurrenceSimilarity && hasPrimitiveKernel()
+                && conf.getBoolean("rec.similarity.cooccurrence", false);
+    }
+
     /**
      * Return the similarity matrix.
      *
@@ -184,4 +521,172 @@ public abstract class AbstractRecommenderSimilarity implements RecommenderSimila
         return similarityMatrix;
     }
 
+    /**
+     * Shared state of the tiles of one similarity matrix build.
+     */
+    private static class SimilarityTileContext {
+        private final int[] ptr;
+        private final int[] index;
+        private final double[] data;
+        private final int count;
+        private final boolean[] empty;
+        private final int blockSize;
+        private final int[] tiles;
+        private final ThreadLocal<double[][]> buffers;
+
+        private SimilarityTileContext(int[] ptr, int[] index, double[] data, int count, boolean[] empty,
+                                      final int maxSize, int blockSize, int[] tiles) {
+            this.ptr = ptr;
+            this.index = index;
+            this.data = data;
+            this.count = count;
+            this.empty = empty;
+            this.blockSize = blockSize;
+            this.tiles = tiles;
+            this.buffers = new ThreadLocal<double[][]>() {
+                @Override
+                protected double[][] initialValue() {
+                    return new double[2][maxSize];
+                }
+            };
+        }
+    }
+
+    /**
+     * Compute the tiles {@code [fromTile, toTile)}, splitting the range down to single tiles.
+     */
+    private class SimilarityTileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final SimilarityTileContext context;
+        private final int fromTile;
+        private final int toTile;
+
+        private SimilarityTileTask(SimilarityTileContext context, int fromTile, int toTile) {
+            this.context = context;
+            this.fromTile = fromTile;
+            this.toTile = toTile;
+        }
+
+        @Override
+        protected void compute() {
+            if (toTile - fromTile > 1) {
+                int midTile = (fromTile + toTile) >>> 1;
+                invokeAll(new SimilarityTileTask(context, fromTile, midTile),
+                        new SimilarityTileTask(context, midTile, toTile));
+                return;
+            }
+            int[] ptr = context.ptr;
+            boolean[] empty = context.empty;
+            double[][] buffers = context.buffers.get();
+            int thisFrom = context.tiles[2 * fromTile] * context.blockSize;
+            int thisTo = Math.min(thisFrom + context.blockSize, context.count);
+            int thatFrom = context.tiles[2 * fromTile + 1] * context.blockSize;
+            int thatTo = Math.min(thatFrom + context.blockSize, context.count);
+
+            int size = 0;
+            int[] thisIndices = new int[16];
+            int[] thatIndices = new int[16];
+            double[] sims = new double[16];
+            for (int i = thisFrom; i < thisTo; i++) {
+                if (empty[i]) {
+                    continue;
+                }
+                // user/item itself exclusive
+                for (int j = Math.max(thatFrom, i + 1); j < thatTo; j++) {
+                    if (empty[j]) {
+                        continue;
+                    }
+                    double sim = getCorrelation(context.index, context.data, ptr[i], ptr[i + 1], ptr[j], ptr[j + 1],
+                            buffers[0], buffers[1]);
+                    if (!Double.isNaN(sim) && sim != 0) {
+                        if (size == sims.length) {
+                            thisIndices = Arrays.copyOf(thisIndices, 2 * size);
+                            thatIndices = Arrays.copyOf(thatIndices, 2 * size);
+                            sims = Arrays.copyOf(sims, 2 * size);
+                        }
+                        thisIndices[size] = i;
+                        thatIndices[size] = j;
+                        sims[size] = sim;
+                        size++;
+                    }
+                }
+            }
+            storeSimilarities(thisIndices, thatIndices, sims, size);
+        }
+    }
+
+    /**
+     * Compute the candidate pairs of the blocks {@code [fromBlock, toBlock)}, splitting the range
+     * down to single blocks.
+     */
+    private class CandidateBlockTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final LSHIndex lshIndex;
+        private final int[] ptr;
+        private final int[] index;
+        private final double[] data;
+        private final int count;
+        private final int blockSize;
+        private final ThreadLocal<int[][]> candidateBuffers;
+        private final ThreadLocal<double[][]> valueBuffers;
+        private final int fromBlock;
+        private final int toBlock;
+
+        private CandidateBlockTask(LSHIndex lshIndex, int[] ptr, int[] index, double[] data, int count,
+                                   int blockSize, ThreadLocal<int[][]> candidateBuffers,
+                                   ThreadLocal<double[][]> valueBuffers, int fromBlock, int toBlock) {
+            this.lshIndex = lshIndex;
+            this.ptr = ptr;
+            this.index = index;
+            this.data = data;
+            this.count = count;
+            this.blockSize = blockSize;
+            this.candidateBuffers = candidateBuffers;
+            this.valueBuffers = valueBuffers;
+            this.fromBlock = fromBlock;
+            this.toBlock = toBlock;
+        }
+
+        @Override
+        protected void compute() {
+            if (toBlock - fromBlock > 1) {
+                int midBlock = (fromBlock + toBlock) >>> 1;
+                invokeAll(new CandidateBlockTask(lshIndex, ptr, index, data, count, blockSize, candidateBuffers,
+                                valueBuffers, fromBlock, midBlock),
+                        new CandidateBlockTask(lshIndex, ptr, index, data, count, blockSize, candidateBuffers,
+                                valueBuffers, midBlock, toBlock));
+                return;
+            }
+            int[][] candidateBuffer = candidateBuffers.get();
+            double[][] valueBuffer = valueBuffers.get();
+            int from = fromBlock * blockSize, to = Math.min(from + blockSize, count);
+
+            int size = 0;
+            int[] thisIndices = new int[16];
+            int[] thatIndices = new int[16];
+            double[] sims = new double[16];
+            for (int i = from; i < to; i++) {
+                int numCandidates = lshIndex.getCandidates(i, candidateBuffer[0], candidateBuffer[1]);
+                for (int c = 0; c < numCandidates; c++) {
+                    int j = candidateBuffer[0][c];
+                    double sim = getCorrelation(index, data, ptr[i], ptr[i + 1], ptr[j], ptr[j + 1],
+                            valueBuffer[0], valueBuffer[1]);
+                    if (!Double.isNaN(sim) && sim != 0) {
+                        if (size == sims.length) {
+                            thisIndices = Arrays.copyOf(thisIndices, 2 * size);
+                            thatIndices = Arrays.copyOf(thatIndices, 2 * size);
+                            sims = Arrays.copyOf(sims, 2 * size);
+                        }
+                        thisIndices[size] = i;
+                        thatIndices[size] = j;
+                        sims[size] = sim;
+                        size++;
+                    }
+                }
+            }
+            storeSimilarities(thisIndices, thatIndices, sims, size);
+        }
+    }
 }
@@ -26,7 +26,7 @@ import java.util.List;
  *
  * @author Ma Chen
  */
-public class BinaryCosineSimilarity extends AbstractRecommenderSimilarity {
+public class BinaryCosineSimilarity extends AbstractRecommenderSimilarity implements CooccurrenceSimilarity {
     /**
      * Get the binary cosine similarity of two sparse vectors.
      *
@@ -43,4 +43,44 @@ public class BinaryCosineSimilarity extends AbstractRecommenderSimilarity {
     protected double getSimilarity(List<? extends Number> thisList, List<? extends Number> thatList) {
         return 0.0;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected boolean hasPrimitiveKernel() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected double getCorrelation(int[] index, double[] data, int thisStart, int thisEnd, int thatStart,
+                                    int thatEnd, double[] thisBuffer, double[] thatBuffer) {
+        double innerProduct = 0.0, thisPower2 = 0.0, thatPower2 = 0.0;
+        for (int thisPos = thisStart; thisPos < thisEnd; thisPos++) {
+            thisPower2 += data[thisPos] * data[thisPos];
+        }
+        for (int thatPos = thatStart; thatPos < thatEnd; thatPos++) {
+            thatPower2 += data[thatPos] * data[thatPos];
+        }
+        int thisPos = thisStart, thatPos = thatStart;
+        while (thisPos < thisEnd && thatPos < thatEnd) {
+            if (index[thisPos] < index[thatPos]) {
+                thisPos++;
+            } else if (index[thisPos] > index[thatPos]) {
+                thatPos++;
+            } else {
+                innerProduct += data[thisPos++] * data[thatPos++];
+            }
+        }
+        return innerProduct / (Math.sqrt(thisPower2) * Math.sqrt(thatPower2));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public double getCooccurrenceSimilarity(double innerProduct, double thisPower2, double thatPower2, int numCommon,
+                                            double thisNorm2, double thatNorm2, int thisSize, int thatSize) {
+        return innerProduct / (Math.sqrt(thisNorm2) * Math.sqrt(thatNorm2));
+    }
 }
@@ -81,4 +81,31 @@ public class CPCSimilarity extends AbstractRecommenderSimilarity {
         }
         return innerProduct / Math.sqrt(thisPower2 * thatPower2);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected boolean hasPrimitiveKernel() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected double getSimilarity(double[] thisValues, double[] thatValues, int size) {
+        if (size < 1) {
+            return Double.NaN;
+        }
+
+        double innerProduct = 0.0, thisPower2 = 0.0, thatPower2 = 0.0;
+        for (int i = 0; i < size; i++) {
+            double thisDiff = thisValues[i] - median;
+            double thatDiff = thatValues[i] - median;
+
+            innerProduct += thisDiff * thatDiff;
+            thisPower2 += thisDiff * thisDiff;
+            thatPower2 += thatDiff * thatDiff;
+        }
+        return innerProduct / Math.sqrt(thisPower2 * thatPower2);
+    }
 }
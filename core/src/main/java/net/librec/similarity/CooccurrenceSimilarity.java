@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) 2016 LibRec
+ * <p>
+ * This file is part of LibRec.
+ * LibRec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * LibRec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.librec.similarity;
+
+/**
+ * A similarity which only depends on the entries two vectors have in common and on totals of each vector.
+ * All pairs of such a similarity are computed from the sparse product of the rating matrix with its
+ * transpose by {@link CooccurrenceSimilarityEngine}, which only visits pairs that co-occur.
+ */
+public interface CooccurrenceSimilarity {
+
+    /**
+     * Calculate the similarity of two vectors with at least one common non-zero entry.
+     *
+     * @param innerProduct sum of the products of the common entries
+     * @param thisPower2   sum of the squares of the common entries of this vector
+     * @param thatPower2   sum of the squares of the common entries of that vector
+     * @param numCommon    number of common entries
+     * @param thisNorm2    sum of the squares of all entries of this vector
+     * @param thatNorm2    sum of the squares of all entries of that vector
+     * @param thisSize     number of non-zero entries of this vector
+     * @param thatSize     number of non-zero entries of that vector
+     * @return similarity
+     */
+    double getCooccurrenceSimilarity(double innerProduct, double thisPower2, double thatPower2, int numCommon,
+                                     double thisNorm2, double thatNorm2, int thisSize, int thatSize);
+}
@@ -0,0 +1,223 @@
+/**
+ * Copyright (C) 2016 LibRec
+ * <p>
+ * This file is part of LibRec.
+ * LibRec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * LibRec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.librec.similarity;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Compute a {@link CooccurrenceSimilarity} for all pairs of vectors as the sparse product {@code A^T A}.
+ * <p>
+ * The vectors are given by one compressed layout of the rating matrix (columns for items, rows for users)
+ * and the transposed layout is used to reach the co-occurring vectors: for each vector {@code i}, every
+ * entry {@code u} is followed to the vectors {@code j > i} sharing it, whose statistics are summed in dense
+ * accumulators of the current thread. Only pairs which actually co-occur are visited. Vectors are processed
+ * in row-blocks on a fork/join pool.
+ */
+class CooccurrenceSimilarityEngine {
+
+    private final int[] ptr;
+    private final int[] index;
+    private final double[] data;
+    private final int[] transposePtr;
+    private final int[] transposeIndex;
+    private final double[] transposeData;
+    private final int count;
+
+    private final int[] sizes;
+    private final double[] norms2;
+
+    /**
+     * Construct an engine over a compressed rating matrix.
+     *
+     * @param ptr            pointers of the vectors
+     * @param index          sorted indices of the vectors
+     * @param data           values of the vectors
+     * @param transposePtr   pointers of the transposed layout
+     * @param transposeIndex sorted indices of the transposed layout
+     * @param transposeData  values of the transposed layout
+     * @param count          number of vectors
+     */
+    CooccurrenceSimilarityEngine(int[] ptr, int[] index, double[] data, int[] transposePtr, int[] transposeIndex,
+                                 double[] transposeData, int count) {
+        this.ptr = ptr;
+        this.index = index;
+        this.data = data;
+        this.transposePtr = transposePtr;
+        this.transposeIndex = transposeIndex;
+        this.transposeData = transposeData;
+        this.count = count;
+
+        sizes = new int[count];
+        norms2 = new double[count];
+        for (int i = 0; i < count; i++) {
+            for (int k = ptr[i]; k < ptr[i + 1]; k++) {
+                if (data[k] != 0.0) {
+                    sizes[i]++;
+                    norms2[i] += data[k] * data[k];
+                }
+            }
+        }
+    }
+
+    /**
+     * Compute the similarities of all co-occurring pairs and hand them to the owner.
+     *
+     * @param owner      similarity owning the matrix being built
+     * @param similarity co-occurrence kernel
+     * @param numThreads number of threads
+     * @param blockSize  number of vectors per block
+     */
+    void build(AbstractRecommenderSimilarity owner, CooccurrenceSimilarity similarity, int numThreads,
+               int blockSize) {
+        int numBlocks = (count + blockSize - 1) / blockSize;
+        if (numBlocks == 0) {
+            return;
+        }
+        final int numVectors = count;
+        ThreadLocal<Accumulator> accumulators = new ThreadLocal<Accumulator>() {
+            @Override
+            protected Accumulator initialValue() {
+                return new Accumulator(numVectors);
+            }
+        };
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, numThreads));
+        try {
+            pool.invoke(new BlockTask(owner, similarity, accumulators, blockSize, 0, numBlocks));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Dense per-thread accumulators indexed by the co-occurring vector.
+     */
+    private static class Accumulator {
+        private final double[] innerProducts;
+        private final double[] thisPowers2;
+        private final double[] thatPowers2;
+        private final int[] numCommons;
+        private final int[] touched;
+
+        private Accumulator(int count) {
+            innerProducts = new double[count];
+            thisPowers2 = new double[count];
+            thatPowers2 = new double[count];
+            numCommons = new int[count];
+            touched = new int[count];
+        }
+    }
+
+    /**
+     * Compute the blocks {@code [fromBlock, toBlock)}, splitting the range down to single blocks.
+     */
+    private class BlockTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final AbstractRecommenderSimilarity owner;
+        private final CooccurrenceSimilarity similarity;
+        private final ThreadLocal<Accumulator> accumulators;
+        private final int blockSize;
+        private final int fromBlock;
+        private final int toBlock;
+
+        private BlockTask(AbstractRecommenderSimilarity owner, CooccurrenceSimilarity similarity,
+                          ThreadLocal<Accumulator> accumulators, int blockSize, int fromBlock, int toBlock) {
+            this.owner = owner;
+            this.similarity = similarity;
+            this.accumulators = accumulators;
+            this.blockSize = blockSize;
+            this.fromBlock = fromBlock;
+            this.toBlock = toBlock;
+        }
+
+        @Override
+        protected void compute() {
+            if (toBlock - fromBlock > 1) {
+                int midBlock = (fromBlock + toBlock) >>> 1;
+                invokeAll(new BlockTask(owner, similarity, accumulators, blockSize, fromBlock, midBlock),
+                        new BlockTask(owner, similarity, accumulators, blockSize, midBlock, toBlock));
+                return;
+            }
+            Accumulator acc = accumulators.get();
+            double[] innerProducts = acc.innerProducts;
+            double[] thisPowers2 = acc.thisPowers2;
+            double[] thatPowers2 = acc.thatPowers2;
+            int[] numCommons = acc.numCommons;
+            int[] touched = acc.touched;
+
+            int size = 0;
+            int[] thisIndices = new int[16];
+            int[] thatIndices = new int[16];
+            double[] sims = new double[16];
+            int from = fromBlock * blockSize, to = Math.min(from + blockSize, count);
+            for (int i = from; i < to; i++) {
+                if (sizes[i] == 0) {
+                    continue;
+                }
+                int numTouched = 0;
+                for (int k = ptr[i]; k < ptr[i + 1]; k++) {
+                    double thisValue = data[k];
+                    if (thisValue == 0.0) {
+                        continue;
+                    }
+                    int inner = index[k];
+                    int start = Arrays.binarySearch(transposeIndex, transposePtr[inner], transposePtr[inner + 1], i);
+                    // vectors after i only, the lower triangle is symmetric
+                    start = start >= 0 ? start + 1 : -start - 1;
+                    for (int l = start; l < transposePtr[inner + 1]; l++) {
+                        double thatValue = transposeData[l];
+                        if (thatValue == 0.0) {
+                            continue;
+                        }
+                        int j = transposeIndex[l];
+                        if (numCommons[j] == 0) {
+                            touched[numTouched++] = j;
+                        }
+                        innerProducts[j] += thisValue * thatValue;
+                        thisPowers2[j] += thisValue * thisValue;
+                        thatPowers2[j] += thatValue * thatValue;
+                        numCommons[j]++;
+                    }
+                }
+                for (int t = 0; t < numTouched; t++) {
+                    int j = touched[t];
+                    double sim = similarity.getCooccurrenceSimilarity(innerProducts[j], thisPowers2[j],
+                            thatPowers2[j], numCommons[j], norms2[i], norms2[j], sizes[i], sizes[j]);
+                    innerProducts[j] = 0.0;
+                    thisPowers2[j] = 0.0;
+                    thatPowers2[j] = 0.0;
+                    numCommons[j] = 0;
+                    if (!Double.isNaN(sim) && sim != 0) {
+                        if (size == sims.length) {
+                            thisIndices = Arrays.copyOf(thisIndices, 2 * size);
+                            thatIndices = Arrays.copyOf(thatIndices, 2 * size);
+                            sims = Arrays.copyOf(sims, 2 * size);
+                        }
+                        thisIndices[size] = i;
+                        thatIndices[size] = j;
+                        sims[size] = sim;
+                        size++;
+                    }
+                }
+            }
+            owner.storeSimilarities(thisIndices, thatIndices, sims, size);
+        }
+    }
+}
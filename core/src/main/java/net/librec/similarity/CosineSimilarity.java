@@ -24,7 +24,7 @@ import java.util.List;
  *
  * @author zhanghaidong
  */
-public class CosineSimilarity extends AbstractRecommenderSimilarity {
+public class CosineSimilarity extends AbstractRecommenderSimilarity implements CooccurrenceSimilarity {
 
     /**
      * calculate the similarity between thisList and thatList.
@@ -46,4 +46,36 @@ public class CosineSimilarity extends AbstractRecommenderSimilarity {
         }
         return innerProduct / Math.sqrt(thisPower2 * thatPower2);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected boolean hasPrimitiveKernel() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected double getSimilarity(double[] thisValues, double[] thatValues, int size) {
+        if (size < 1) {
+            return Double.NaN;
+        }
+
+        double innerProduct = 0.0, thisPower2 = 0.0, thatPower2 = 0.0;
+        for (int i = 0; i < size; i++) {
+            innerProduct += thisValues[i] * thatValues[i];
+            thisPower2 += thisValues[i] * thisValues[i];
+            thatPower2 += thatValues[i] * thatValues[i];
+        }
+        return innerProduct / Math.sqrt(thisPower2 * thatPower2);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public double getCooccurrenceSimilarity(double innerProduct, double thisPower2, double thatPower2, int numCommon,
+                                            double thisNorm2, double thatNorm2, int thisSize, int thatSize) {
+        return shrink(innerProduct / Math.sqrt(thisPower2 * thatPower2), numCommon);
+    }
 }
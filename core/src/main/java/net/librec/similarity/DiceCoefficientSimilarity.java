@@ -24,7 +24,7 @@ import java.util.List;
  *
  * @author zhanghaidong
  */
-public class DiceCoefficientSimilarity extends AbstractRecommenderSimilarity {
+public class DiceCoefficientSimilarity extends AbstractRecommenderSimilarity implements CooccurrenceSimilarity {
 
     /**
      * Calculate the similarity between thisList and thatList.
@@ -49,4 +49,37 @@ public class DiceCoefficientSimilarity extends AbstractRecommenderSimilarity {
 
         return 2 * innerProduct / (thisPower2 + thatPower2);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected boolean hasPrimitiveKernel() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected double getSimilarity(double[] thisValues, double[] thatValues, int size) {
+
+        double innerProduct = 0.0, thisPower2 = 0.0, thatPower2 = 0.0;
+        for (int i = 0; i < size; i++) {
+            double thisValue = thisValues[i];
+            double thatValue = thatValues[i];
+
+            innerProduct += thisValue * thatValue;
+            thisPower2 += thisValue * thisValue;
+            thatPower2 += thatValue * thatValue;
+        }
+
+        return 2 * innerProduct / (thisPower2 + thatPower2);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public double getCooccurrenceSimilarity(double innerProduct, double thisPower2, double thatPower2, int numCommon,
+                                            double thisNorm2, double thatNorm2, int thisSize, int thatSize) {
+        return shrink(2 * innerProduct / (thisPower2 + thatPower2), numCommon);
+    }
 }
@@ -29,7 +29,7 @@ import java.util.Set;
  *
  * @author zhanghaidong
  */
-public class JaccardSimilarity extends AbstractRecommenderSimilarity {
+public class JaccardSimilarity extends AbstractRecommenderSimilarity implements CooccurrenceSimilarity {
 
     /**
      * Find the common rated items by this user and that user, or the common
@@ -58,4 +58,43 @@ public class JaccardSimilarity extends AbstractRecommenderSimilarity {
     protected double getSimilarity(List<? extends Number> thisList, List<? extends Number> thatList) {
         return 0.0;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected boolean hasPrimitiveKernel() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected double getCorrelation(int[] index, double[] data, int thisStart, int thisEnd, int thatStart,
+                                    int thatEnd, double[] thisBuffer, double[] thatBuffer) {
+        int thisSize = 0, thatSize = 0, numCommonElements = 0;
+        int thisPos = thisStart, thatPos = thatStart;
+        while (thisPos < thisEnd || thatPos < thatEnd) {
+            if (thatPos >= thatEnd || (thisPos < thisEnd && index[thisPos] < index[thatPos])) {
+                thisSize += data[thisPos++] != 0.0 ? 1 : 0;
+            } else if (thisPos >= thisEnd || index[thisPos] > index[thatPos]) {
+                thatSize += data[thatPos++] != 0.0 ? 1 : 0;
+            } else {
+                boolean thisNonZero = data[thisPos++] != 0.0, thatNonZero = data[thatPos++] != 0.0;
+                thisSize += thisNonZero ? 1 : 0;
+                thatSize += thatNonZero ? 1 : 0;
+                numCommonElements += thisNonZero && thatNonZero ? 1 : 0;
+            }
+        }
+        int numAllElements = thisSize + thatSize - numCommonElements;
+
+        return (numCommonElements + 0.0) / numAllElements;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public double getCooccurrenceSimilarity(double innerProduct, double thisPower2, double thatPower2, int numCommon,
+                                            double thisNorm2, double thatNorm2, int thisSize, int thatSize) {
+        return (numCommon + 0.0) / (thisSize + thatSize - numCommon);
+    }
 }
@@ -103,4 +103,63 @@ public class KRCCSimilarity extends AbstractRecommenderSimilarity {
 
         return 1.0 - 4.0 * sum / (numCommonIndices * (numCommonIndices - 1));
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected boolean hasPrimitiveKernel() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected double getCorrelation(int[] index, double[] data, int thisStart, int thisEnd, int thatStart,
+                                    int thatEnd, double[] thisBuffer, double[] thatBuffer) {
+        int thisSize = 0, thatSize = 0;
+        for (int thisPos = thisStart; thisPos < thisEnd; thisPos++) {
+            thisSize += data[thisPos] != 0.0 ? 1 : 0;
+        }
+        for (int thatPos = thatStart; thatPos < thatEnd; thatPos++) {
+            thatSize += data[thatPos] != 0.0 ? 1 : 0;
+        }
+        if (thisSize != thatSize || thatSize < 2) {
+            return Double.NaN;
+        }
+
+        // common indices rated positively by both vectors
+        int numCommonIndices = 0;
+        int thisPos = thisStart, thatPos = thatStart;
+        while (thisPos < thisEnd && thatPos < thatEnd) {
+            if (index[thisPos] < index[thatPos]) {
+                thisPos++;
+            } else if (index[thisPos] > index[thatPos]) {
+                thatPos++;
+            } else {
+                if (data[thisPos] > 0.0 && data[thatPos] > 0.0) {
+                    thisBuffer[numCommonIndices] = data[thisPos];
+                    thatBuffer[numCommonIndices] = data[thatPos];
+                    numCommonIndices++;
+                }
+                thisPos++;
+                thatPos++;
+            }
+        }
+        if (numCommonIndices < 2) {
+            return Double.NaN;
+        }
+
+        double sum = 0.0;
+        for (int i = 0; i < numCommonIndices; i++) {
+            for (int j = i + 1; j < numCommonIndices; j++) {
+                double thisDiff = thisBuffer[i] - thisBuffer[j];
+                double thatDiff = thatBuffer[i] - thatBuffer[j];
+                if (thisDiff * thatDiff < 0.0) {
+                    sum += 1.0;
+                }
+            }
+        }
+
+        return 1.0 - 4.0 * sum / (numCommonIndices * (numCommonIndices - 1));
+    }
 }
@@ -0,0 +1,244 @@
+/**
+ * Copyright (C) 2016 LibRec
+ * <p>
+ * This file is part of LibRec.
+ * LibRec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * LibRec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.librec.similarity;
+
+import net.librec.math.structure.PackedSymmMatrix;
+import net.librec.math.structure.SymmMatrix;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Locality sensitive hashing index over the sparse vectors of a rating matrix, used to find candidate
+ * neighbors without evaluating all pairs.
+ * <p>
+ * Each vector gets a signature of {@code numBands * numRows} hash values. The values of one band are
+ * combined into a band hash, and two vectors are candidates if they share the hash of at least one band.
+ * More rows per band make candidates more similar, more bands raise the recall. For every band the
+ * vectors are kept sorted by band hash, so that a bucket is a contiguous run.
+ */
+public abstract class LSHIndex {
+
+    protected final int numBands;
+    protected final int numRows;
+    protected final long seed;
+
+    private int count;
+    // per band, (band hash << 32 | vector) sorted ascending
+    private long[][] buckets;
+    // per band, position of each vector in buckets, -1 for empty vectors
+    private int[][] positions;
+
+    /**
+     * Construct an index.
+     *
+     * @param numBands number of bands
+     * @param numRows  number of hash values per band
+     * @param seed     random seed of the hash functions
+     */
+    protected LSHIndex(int numBands, int numRows, long seed) {
+        if (numBands < 1 || numRows < 1) {
+            throw new IllegalArgumentException("invalid LSH bands " + numBands + " or rows " + numRows);
+        }
+        this.numBands = numBands;
+        this.numRows = numRows;
+        this.seed = seed;
+    }
+
+    /**
+     * Compute the band hashes of a non-empty vector given as the slice {@code [start, end)} of sorted index
+     * and value arrays.
+     *
+     * @param index      sorted indices
+     * @param data       values
+     * @param start      start of the vector
+     * @param end        end of the vector, exclusive
+     * @param bandHashes output, one hash per band
+     */
+    protected abstract void hash(int[] index, double[] data, int start, int end, int[] bandHashes);
+
+    /**
+     * Index the vectors {@code [ptr[i], ptr[i + 1])} of a compressed matrix.
+     *
+     * @param ptr        vector pointers
+     * @param index      sorted indices of each vector
+     * @param data       values of each vector
+     * @param count      number of vectors
+     * @param numThreads number of threads
+     */
+    public void build(final int[] ptr, final int[] index, final double[] data, int count, int numThreads) {
+        this.count = count;
+        buckets = new long[numBands][count];
+        positions = new int[numBands][count];
+        final boolean[] empty = new boolean[count];
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, numThreads));
+        try {
+            pool.invoke(new HashTask(ptr, index, data, empty, 0, count));
+        } finally {
+            pool.shutdown();
+        }
+
+        for (int band = 0; band < numBands; band++) {
+            long[] bandBuckets = buckets[band];
+            Arrays.sort(bandBuckets);
+            int[] bandPositions = positions[band];
+            for (int pos = 0; pos < count; pos++) {
+                bandPositions[(int) bandBuckets[pos]] = pos;
+            }
+            for (int i = 0; i < count; i++) {
+                if (empty[i]) {
+                    bandPositions[i] = -1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Collect the candidate neighbors {@code j > vector} sharing a bucket with a vector.
+     *
+     * @param vector     vector id
+     * @param candidates output buffer with room for all vectors
+     * @param marks      per-thread scratch array with room for all vectors, initially zero and reused
+     *                   across calls of the same thread
+     * @return number of candidates
+     */
+    public int getCandidates(int vector, int[] candidates, int[] marks) {
+        int numCandidates = 0;
+        int stamp = vector + 1;
+        for (int band = 0; band < numBands; band++) {
+            int pos = positions[band][vector];
+            if (pos < 0) {
+                return 0;
+            }
+            long[] bandBuckets = buckets[band];
+            long bucket = bandBuckets[pos] >>> 32;
+            for (int other = pos - 1; other >= 0 && bandBuckets[other] >>> 32 == bucket; other--) {
+                numCandidates = addCandidate(vector, (int) bandBuckets[other], band, stamp, candidates, marks,
+                        numCandidates);
+            }
+            for (int other = pos + 1; other < count && bandBuckets[other] >>> 32 == bucket; other++) {
+                numCandidates = addCandidate(vector, (int) bandBuckets[other], band, stamp, candidates, marks,
+                        numCandidates);
+            }
+        }
+        return numCandidates;
+    }
+
+    private int addCandidate(int vector, int other, int band, int stamp, int[] candidates, int[] marks,
+                             int numCandidates) {
+        if (other > vector && marks[other] != stamp && positions[band][other] >= 0) {
+            marks[other] = stamp;
+            candidates[numCandidates++] = other;
+        }
+        return numCandidates;
+    }
+
+    /**
+     * Return the recall of the top-k neighbors of an exact similarity matrix within an approximate one,
+     * i.e. the fraction of the k most similar neighbors of every row which the approximate matrix holds.
+     *
+     * @param exact       exact similarity matrix
+     * @param approximate approximate similarity matrix
+     * @param k           number of neighbors per row
+     * @return recall of the neighbors
+     */
+    public static double recall(SymmMatrix exact, SymmMatrix approximate, int k) {
+        PackedSymmMatrix exactMatrix = exact instanceof PackedSymmMatrix ? (PackedSymmMatrix) exact
+                : new PackedSymmMatrix(exact, PackedSymmMatrix.Storage.HEAP, null);
+        long numNeighbors = 0, numHits = 0;
+        for (int row = 0; row < exactMatrix.getDim(); row++) {
+            int size = Math.min(k, exactMatrix.rowSize(row));
+            for (int rank = 0; rank < size; rank++) {
+                numNeighbors++;
+                if (approximate.contains(row, exactMatrix.getNeighbor(row, rank))) {
+                    numHits++;
+                }
+            }
+        }
+        return numNeighbors > 0 ? (double) numHits / numNeighbors : 1.0;
+    }
+
+    /**
+     * Mix the bits of a 64-bit value (the finalizer of MurmurHash3).
+     *
+     * @param value value to mix
+     * @return mixed value
+     */
+    protected static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    /**
+     * Hash the vectors {@code [from, to)}, splitting the range into chunks.
+     */
+    private class HashTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private static final int CHUNK_SIZE = 1024;
+
+        private final int[] ptr;
+        private final int[] index;
+        private final double[] data;
+        private final boolean[] empty;
+        private final int from;
+        private final int to;
+
+        private HashTask(int[] ptr, int[] index, double[] data, boolean[] empty, int from, int to) {
+            this.ptr = ptr;
+            this.index = index;
+            this.data = data;
+            this.empty = empty;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK_SIZE) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new HashTask(ptr, index, data, empty, from, mid),
+                        new HashTask(ptr, index, data, empty, mid, to));
+                return;
+            }
+            int[] bandHashes = new int[numBands];
+            for (int i = from; i < to; i++) {
+                empty[i] = true;
+                for (int k = ptr[i]; k < ptr[i + 1]; k++) {
+                    if (data[k] != 0.0) {
+                        empty[i] = false;
+                        break;
+                    }
+                }
+                if (empty[i]) {
+                    Arrays.fill(bandHashes, 0);
+                } else {
+                    hash(index, data, ptr[i], ptr[i + 1], bandHashes);
+                }
+                for (int band = 0; band < numBands; band++) {
+                    buckets[band][i] = ((long) bandHashes[band] << 32) | i;
+                }
+            }
+        }
+    }
+}
@@ -58,4 +58,32 @@ public class MSDSimilarity extends AbstractRecommenderSimilarity {
 
         return sim;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected boolean hasPrimitiveKernel() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected double getSimilarity(double[] thisValues, double[] thatValues, int size) {
+        if (size < 1) {
+            return Double.NaN;
+        }
+
+        double sum = 0.0;
+
+        for (int i = 0; i < size; i++) {
+            sum += Math.pow(thisValues[i] - thatValues[i], 2);
+        }
+
+        double sim = size / sum;
+        if (Double.isInfinite(sim))
+            sim = 1.0;
+
+        return sim;
+    }
 }
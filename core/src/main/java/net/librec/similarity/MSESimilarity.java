@@ -47,4 +47,27 @@ public class MSESimilarity extends AbstractRecommenderSimilarity {
         }
         return mse / thisList.size();
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected boolean hasPrimitiveKernel() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected double getSimilarity(double[] thisValues, double[] thatValues, int size) {
+        if (size < 1) {
+            return Double.NaN;
+        }
+
+        double mse = 0.0;
+        for (int i = 0; i < size; i++) {
+            double diff = thisValues[i] - thatValues[i];
+            mse += Math.pow(diff, 2);
+        }
+        return mse / size;
+    }
 }
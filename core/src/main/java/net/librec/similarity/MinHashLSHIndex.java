@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2016 LibRec
+ * <p>
+ * This file is part of LibRec.
+ * LibRec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * LibRec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.librec.similarity;
+
+import java.util.Random;
+
+/**
+ * MinHash locality sensitive hashing index for Jaccard-style similarities. Two vectors share the minimum
+ * of a random permutation of their non-zero indices with a probability equal to their Jaccard similarity,
+ * hence a band of {@code numRows} minima with probability {@code J^numRows}.
+ */
+public class MinHashLSHIndex extends LSHIndex {
+
+    private static final long PRIME = (1L << 31) - 1;
+
+    private final long[] multipliers;
+    private final long[] increments;
+
+    /**
+     * Construct a MinHash index.
+     *
+     * @param numBands number of bands
+     * @param numRows  number of minima per band
+     * @param seed     random seed of the hash functions
+     */
+    public MinHashLSHIndex(int numBands, int numRows, long seed) {
+        super(numBands, numRows, seed);
+        Random random = new Random(seed);
+        multipliers = new long[numBands * numRows];
+        increments = new long[numBands * numRows];
+        for (int k = 0; k < multipliers.length; k++) {
+            multipliers[k] = 1 + (long) (random.nextDouble() * (PRIME - 1));
+            increments[k] = (long) (random.nextDouble() * PRIME);
+        }
+    }
+
+    @Override
+    protected void hash(int[] index, double[] data, int start, int end, int[] bandHashes) {
+        for (int band = 0; band < numBands; band++) {
+            long bandHash = band;
+            for (int row = 0; row < numRows; row++) {
+                int k = band * numRows + row;
+                long min = Long.MAX_VALUE;
+                for (int pos = start; pos < end; pos++) {
+                    if (data[pos] != 0.0) {
+                        min = Math.min(min, (multipliers[k] * index[pos] + increments[k]) % PRIME);
+                    }
+                }
+                bandHash = mix(bandHash * 31 + min);
+            }
+            bandHashes[band] = (int) (bandHash >>> 32);
+        }
+    }
+}
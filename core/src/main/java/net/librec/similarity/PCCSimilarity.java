@@ -59,4 +59,40 @@ public class PCCSimilarity extends AbstractRecommenderSimilarity {
 
         return num / (Math.sqrt(thisPow2) * Math.sqrt(thatPow2));
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected boolean hasPrimitiveKernel() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected double getSimilarity(double[] thisValues, double[] thatValues, int size) {
+        if (size < 2) {
+            return Double.NaN;
+        }
+
+        double thisMu = 0.0, thatMu = 0.0;
+        for (int i = 0; i < size; i++) {
+            thisMu += thisValues[i];
+            thatMu += thatValues[i];
+        }
+        thisMu /= size;
+        thatMu /= size;
+
+        double num = 0.0, thisPow2 = 0.0, thatPow2 = 0.0;
+        for (int i = 0; i < size; i++) {
+            double thisMinusMu = thisValues[i] - thisMu;
+            double thatMinusMu = thatValues[i] - thatMu;
+
+            num += thisMinusMu * thatMinusMu;
+            thisPow2 += thisMinusMu * thisMinusMu;
+            thatPow2 += thatMinusMu * thatMinusMu;
+        }
+
+        return num / (Math.sqrt(thisPow2) * Math.sqrt(thatPow2));
+    }
 }
@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2016 LibRec
+ * <p>
+ * This file is part of LibRec.
+ * LibRec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * LibRec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.librec.similarity;
+
+/**
+ * Signed random projection locality sensitive hashing index for cosine similarity. Each hash bit is the
+ * sign of the projection of a vector onto a random hyperplane, on which two vectors with angle
+ * {@code theta} agree with probability {@code 1 - theta / pi}; a band packs {@code numRows} bits.
+ * <p>
+ * The hyperplanes have random {@code +1/-1} coordinates derived from a hash of the seed, the hyperplane
+ * and the index, so that they are never materialized.
+ */
+public class RandomProjectionLSHIndex extends LSHIndex {
+
+    /**
+     * Construct a random projection index.
+     *
+     * @param numBands number of bands
+     * @param numRows  number of bits per band
+     * @param seed     random seed of the hyperplanes
+     */
+    public RandomProjectionLSHIndex(int numBands, int numRows, long seed) {
+        super(numBands, numRows, seed);
+    }
+
+    @Override
+    protected void hash(int[] index, double[] data, int start, int end, int[] bandHashes) {
+        for (int band = 0; band < numBands; band++) {
+            long bandHash = band;
+            for (int row = 0; row < numRows; row++) {
+                long hyperplane = mix(seed + band * numRows + row);
+                double projection = 0.0;
+                for (int pos = start; pos < end; pos++) {
+                    projection += mix(hyperplane ^ index[pos]) < 0 ? -data[pos] : data[pos];
+                }
+                bandHash = mix(bandHash * 31 + (projection >= 0 ? 1 : 0));
+            }
+            bandHashes[band] = (int) (bandHash >>> 32);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2016 LibRec
+ * <p>
+ * This file is part of LibRec.
+ * LibRec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * LibRec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.librec.util;
+
+import net.librec.common.LibrecException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parallel Util: invocation of tasks on a pool of threads, and hand-out of blocks of indices to the tasks.
+ */
+public class ParallelUtil {
+
+    /**
+     * Run tasks on a pool of one thread per task, or on the calling thread if there is a single task.
+     *
+     * @param tasks tasks to run
+     * @param <T>   type of the results of the tasks
+     * @return results of the tasks, in the order of the tasks
+     * @throws LibrecException if error occurs in one of the tasks
+     */
+    public static <T> List<T> invokeAll(List<? extends Callable<T>> tasks) throws LibrecException {
+        if (tasks.size() == 1) {
+            List<T> results = new ArrayList<>(1);
+            try {
+                results.add(tasks.get(0).call());
+            } catch (Exception e) {
+                throw rethrow(e);
+            }
+            return results;
+        }
+
+        ExecutorService executorService = Executors.newFixedThreadPool(tasks.size());
+        try {
+            return invokeAll(executorService, tasks);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    /**
+     * Run tasks on a pool of threads and wait for all of them.
+     *
+     * @param executorService pool of threads
+     * @param tasks           tasks to run
+     * @param <T>             type of the results of the tasks
+     * @return results of the tasks, in the order of the tasks
+     * @throws LibrecException if error occurs in one of the tasks
+     */
+    public static <T> List<T> invokeAll(ExecutorService executorService, List<? extends Callable<T>> tasks)
+            throws LibrecException {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : executorService.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LibrecException(e);
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Rethrow unchecked exceptions and LibrecExceptions as they are, and wrap the others in a LibrecException.
+     */
+    private static LibrecException rethrow(Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        } else if (cause instanceof LibrecException) {
+            return (LibrecException) cause;
+        }
+        return new LibrecException(cause);
+    }
+
+    /**
+     * Counter handing out the blocks of {@code blockSize} consecutive indices of {@code [0, size)} to the tasks
+     * sharing it, so that faster tasks take more blocks. A task takes blocks until {@link #next()} returns -1:
+     * <pre>
+     * for (int from = blocks.next(); from &gt;= 0; from = blocks.next()) {
+     *     for (int index = from; index &lt; blocks.end(from); index++) { ... }
+     * }
+     * </pre>
+     * The block of a first index {@code from} is {@code from / blockSize}.
+     */
+    public static final class BlockCounter {
+        private final AtomicInteger next = new AtomicInteger();
+        private final int size;
+        private final int blockSize;
+
+        /**
+         * @param size      number of indices
+         * @param blockSize number of indices of a block
+         */
+        public BlockCounter(int size, int blockSize) {
+            if (blockSize < 1) {
+                throw new IllegalArgumentException("invalid block size " + blockSize);
+            }
+            this.size = size;
+            this.blockSize = blockSize;
+        }
+
+        /**
+         * @return first index of the next block, or -1 if all blocks have been handed out
+         */
+        public int next() {
+            int from = next.getAndAdd(blockSize);
+            return from < size && from >= 0 ? from : -1;
+        }
+
+        /**
+         * @param from first index of a block
+         * @return index after the last index of the block
+         */
+        public int end(int from) {
+            return Math.min(size, from + blockSize);
+        }
+    }
+}
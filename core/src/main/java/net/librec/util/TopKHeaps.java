@@ -0,0 +1,186 @@
+/**
+ * Copyright (C) 2016 LibRec
+ * <p>
+ * This file is part of LibRec.
+ * LibRec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * LibRec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.librec.util;
+
+/**
+ * A set of fixed-size min-heaps over primitive arrays, each retaining the k (index, value) pairs with the
+ * largest values offered to it. Equal values are ordered by ascending index, so the retained pairs do not
+ * depend on the order of the offers. All heaps share two flat arrays of {@code numHeaps * k} slots.
+ * <p>
+ * A single heap is not thread-safe; distinct heaps may be updated concurrently.
+ */
+public class TopKHeaps {
+
+    private final int k;
+    private final int[] indices;
+    private final double[] values;
+    private final int[] sizes;
+
+    /**
+     * Construct empty heaps.
+     *
+     * @param numHeaps number of heaps
+     * @param k        capacity of each heap
+     */
+    public TopKHeaps(int numHeaps, int k) {
+        if (k < 1 || (long) numHeaps * k > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("invalid capacity " + k + " for " + numHeaps + " heaps");
+        }
+        this.k = k;
+        this.indices = new int[numHeaps * k];
+        this.values = new double[numHeaps * k];
+        this.sizes = new int[numHeaps];
+    }
+
+    /**
+     * Offer a pair to a heap.
+     *
+     * @param heap  heap id
+     * @param index index of the pair
+     * @param value value of the pair
+     * @return true if the pair is retained
+     */
+    public boolean offer(int heap, int index, double value) {
+        int offset = heap * k;
+        int size = sizes[heap];
+        if (size < k) {
+            // sift up
+            int pos = size;
+            while (pos > 0) {
+                int parent = (pos - 1) >>> 1;
+                if (!less(index, value, indices[offset + parent], values[offset + parent])) {
+                    break;
+                }
+                indices[offset + pos] = indices[offset + parent];
+                values[offset + pos] = values[offset + parent];
+                pos = parent;
+            }
+            indices[offset + pos] = index;
+            values[offset + pos] = value;
+            sizes[heap] = size + 1;
+            return true;
+        }
+        if (!less(indices[offset], values[offset], index, value)) {
+            return false;
+        }
+        siftDown(offset, 0, size, index, value);
+        return true;
+    }
+
+    /**
+     * Return the smallest value retained by a full heap, or negative infinity while it is not full.
+     *
+     * @param heap heap id
+     * @return the threshold a value has to exceed to be retained
+     */
+    public double threshold(int heap) {
+        return sizes[heap] < k ? Double.NEGATIVE_INFINITY : values[heap * k];
+    }
+
+    /**
+     * @param heap heap id
+     * @return the number of pairs retained by the heap
+     */
+    public int size(int heap) {
+        return sizes[heap];
+    }
+
+    /**
+     * @return the capacity of each heap
+     */
+    public int capacity() {
+        return k;
+    }
+
+    /**
+     * Return the index of the pair at a position of a heap, in heap order unless {@link #sort(int)} was
+     * called.
+     *
+     * @param heap heap id
+     * @param pos  position from 0 to {@code size(heap) - 1}
+     * @return index of the pair
+     */
+    public int getIndex(int heap, int pos) {
+        return indices[heap * k + pos];
+    }
+
+    /**
+     * Return the value of the pair at a position of a heap.
+     *
+     * @param heap heap id
+     * @param pos  position from 0 to {@code size(heap) - 1}
+     * @return value of the pair
+     */
+    public double getValue(int heap, int pos) {
+        return values[heap * k + pos];
+    }
+
+    /**
+     * Sort the pairs of a heap by descending value, ties by ascending index. The heap must not be offered
+     * to afterwards, except after {@link #clear(int)}.
+     *
+     * @param heap heap id
+     */
+    public void sort(int heap) {
+        int offset = heap * k;
+        for (int last = sizes[heap] - 1; last > 0; last--) {
+            int index = indices[offset + last];
+            double value = values[offset + last];
+            indices[offset + last] = indices[offset];
+            values[offset + last] = values[offset];
+            siftDown(offset, 0, last, index, value);
+        }
+    }
+
+    /**
+     * Empty a heap.
+     *
+     * @param heap heap id
+     */
+    public void clear(int heap) {
+        sizes[heap] = 0;
+    }
+
+    private void siftDown(int offset, int pos, int size, int index, double value) {
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            int right = child + 1;
+            if (right < size && less(indices[offset + right], values[offset + right],
+                    indices[offset + child], values[offset + child])) {
+                child = right;
+            }
+            if (!less(indices[offset + child], values[offset + child], index, value)) {
+                break;
+            }
+            indices[offset + pos] = indices[offset + child];
+            values[offset + pos] = values[offset + child];
+            pos = child;
+        }
+        indices[offset + pos] = index;
+        values[offset + pos] = value;
+    }
+
+    /**
+     * Whether pair a ranks below pair b: a smaller value, or an equal value and a larger index.
+     */
+    private static boolean less(int indexA, double valueA, int indexB, double valueB) {
+        int cmp = Double.compare(valueA, valueB);
+        return cmp < 0 || (cmp == 0 && indexA > indexB);
+    }
+}
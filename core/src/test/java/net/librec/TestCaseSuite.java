@@ -25,6 +25,8 @@ import net.librec.data.model.TextDataModelTestCase;
 import net.librec.data.splitter.*;
 import net.librec.filter.GenericRecommendedFilterTestCase;
 import net.librec.job.RecommenderJobTestCase;
+import net.librec.math.structure.PackedSymmMatrixTestCase;
+import net.librec.math.structure.SparseTensorTestCase;
 import net.librec.recommender.baseline.*;
 import net.librec.recommender.cf.BHFreeTestCase;
 import net.librec.recommender.cf.BUCMTestCase;
@@ -38,10 +40,15 @@ import net.librec.recommender.context.ranking.SBPRTestCase;
 import net.librec.recommender.context.rating.*;
 import net.librec.recommender.ext.*;
 import net.librec.recommender.hybrid.HybridTestCase;
+import net.librec.recommender.item.CompactRecommendedListTestCase;
 import net.librec.recommender.item.RecommendedItemListTestCase;
+import net.librec.similarity.AbstractRecommenderSimilarityTestCase;
 import net.librec.similarity.BinaryCosineSimilarityTestCase;
+import net.librec.similarity.CooccurrenceSimilarityEngineTestCase;
+import net.librec.similarity.LSHIndexTestCase;
 import net.librec.tool.driver.DataDriverTestCase;
 import net.librec.tool.driver.RecDriverTestCase;
+import net.librec.util.TopKHeapsTestCase;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
@@ -73,8 +80,12 @@ import org.junit.runners.Suite.SuiteClasses;
 	//job
 //	JobStatusTestCase.class,
 	RecommenderJobTestCase.class,
+	//math.structure
+	PackedSymmMatrixTestCase.class,
+	SparseTensorTestCase.class,
 	//recommender.item
 	RecommendedItemListTestCase.class,
+	CompactRecommendedListTestCase.class,
 	//recommender.rec.baseline
 	ConstantGuessTestCase.class,
 	GlobalAverageTestCase.class,
@@ -146,10 +157,15 @@ import org.junit.runners.Suite.SuiteClasses;
 	//recommender.hybrid
 	HybridTestCase.class,
 	//similarity
+	AbstractRecommenderSimilarityTestCase.class,
 	BinaryCosineSimilarityTestCase.class,
+	CooccurrenceSimilarityEngineTestCase.class,
+	LSHIndexTestCase.class,
 	//tool.driver
 	DataDriverTestCase.class,
-	RecDriverTestCase.class
+	RecDriverTestCase.class,
+	//util
+	TopKHeapsTestCase.class
 })
 public class TestCaseSuite {
 
@@ -121,4 +121,83 @@ public class TextDataConvertorTestCase extends BaseTestCase {
 		assertNull(datetimeMatrix);
 	}
 
+	/**
+	 * Test the method processData in the streaming mode, which should build
+	 * the same matrices as the default mode
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void test05Streaming() throws Exception {
+		conf.set("inputDataPath", conf.get("dfs.data.dir") + "/test/datamodeltest/matrix4by4-date.txt");
+		conf.set("data.column.format", "UIRT");
+
+		textDataConvertor = new TextDataConvertor(conf.get("data.column.format"), conf.get("inputDataPath"), -1.0);
+		textDataConvertor.processData();
+		SparseMatrix preference = textDataConvertor.getPreferenceMatrix();
+		SparseMatrix datetimeMatrix = textDataConvertor.getDatetimeMatrix();
+
+		TextDataConvertor streamingConvertor = new TextDataConvertor(conf.get("data.column.format"), conf.get("inputDataPath"), -1.0);
+		streamingConvertor.setStreaming(true);
+		streamingConvertor.processData();
+		SparseMatrix streamingPreference = streamingConvertor.getPreferenceMatrix();
+		SparseMatrix streamingDatetimeMatrix = streamingConvertor.getDatetimeMatrix();
+
+		assertEquals(streamingPreference.size(), 13);
+		assertEquals(streamingDatetimeMatrix.size(), 13);
+		assertEquals(textDataConvertor.getUserIds(), streamingConvertor.getUserIds());
+		assertEquals(textDataConvertor.getItemIds(), streamingConvertor.getItemIds());
+		assertEquals(preference.toString(), streamingPreference.toString());
+		assertEquals(datetimeMatrix.toString(), streamingDatetimeMatrix.toString());
+		assertEquals(preference.getValueSet(), streamingPreference.getValueSet());
+	}
+
+	/**
+	 * Test the method processData in the streaming mode with reading files
+	 * from directory and its sub-directories
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void test06StreamingSubDir() throws Exception {
+		conf.set("inputDataPath", conf.get("dfs.data.dir") + "/test/test-convert-dir");
+
+		textDataConvertor = new TextDataConvertor(conf.get("inputDataPath"));
+		textDataConvertor.setStreaming(true);
+		textDataConvertor.processData();
+
+		SparseMatrix preference = textDataConvertor.getPreferenceMatrix();
+		SparseMatrix datetimeMatrix = textDataConvertor.getDatetimeMatrix();
+
+		assertEquals(preference.size(), 26);
+		assertNull(datetimeMatrix);
+	}
+
+	/**
+	 * Test the method processData in the parallel streaming mode with files
+	 * split into small chunks, which should build the same matrices and ids
+	 * as the sequential mode
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void test07StreamingParallel() throws Exception {
+		conf.set("inputDataPath", conf.get("dfs.data.dir") + "/filmtrust/rating");
+
+		textDataConvertor = new TextDataConvertor(conf.get("inputDataPath"));
+		textDataConvertor.setStreaming(true);
+		textDataConvertor.processData();
+
+		TextDataConvertor parallelConvertor = new TextDataConvertor(conf.get("inputDataPath"));
+		parallelConvertor.setStreaming(true);
+		parallelConvertor.setNumThreads(4);
+		parallelConvertor.setChunkSize(4096);
+		parallelConvertor.processData();
+
+		assertEquals(textDataConvertor.getUserIds(), parallelConvertor.getUserIds());
+		assertEquals(textDataConvertor.getItemIds(), parallelConvertor.getItemIds());
+		assertEquals(textDataConvertor.getPreferenceMatrix().toString(),
+				parallelConvertor.getPreferenceMatrix().toString());
+	}
+
 }
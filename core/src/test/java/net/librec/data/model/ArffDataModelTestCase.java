@@ -21,11 +21,14 @@ import net.librec.BaseTestCase;
 import net.librec.common.LibrecException;
 import net.librec.conf.Configured;
 import net.librec.data.DataModel;
+import net.librec.data.convertor.SnapshotDataConvertor;
 import org.junit.Before;
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
 
+import java.io.File;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -79,6 +82,34 @@ public class ArffDataModelTestCase extends BaseTestCase {
         assertEquals(5, dataModel.getUserMappingData().size());
     }
 
+    /**
+     * Test the snapshot of the data model: the first build writes the
+     * snapshot, the second build loads the same tensor and mappings from it.
+     *
+     * @throws LibrecException
+     */
+    @Test
+    public void test02SnapshotReadDir() throws LibrecException {
+        String snapshotPath = "target/snapshot/arfftest.snapshot";
+        new File(snapshotPath).delete();
+        conf.set(Configured.CONF_DATA_INPUT_PATH, "test/arfftest");
+        conf.set("data.snapshot.path", snapshotPath);
+        ArffDataModel dataModel = new ArffDataModel(conf);
+        dataModel.buildDataModel();
+        assertTrue(new File(snapshotPath).isFile());
+
+        conf.setBoolean("data.convert.read.ready", false);
+        ArffDataModel snapshotModel = new ArffDataModel(conf);
+        snapshotModel.buildDataModel();
+
+        assertTrue(snapshotModel.dataConvertor instanceof SnapshotDataConvertor);
+        assertEquals(dataModel.getItemMappingData(), snapshotModel.getItemMappingData());
+        assertEquals(dataModel.getUserMappingData(), snapshotModel.getUserMappingData());
+        assertEquals(dataModel.getAllFeaturesMappingData(), snapshotModel.getAllFeaturesMappingData());
+        assertEquals(dataModel.dataConvertor.getSparseTensor().toString(),
+                snapshotModel.dataConvertor.getSparseTensor().toString());
+    }
+
     /**
      * test the function of splitter part
      * {@link net.librec.data.splitter.RatioDataSplitter} split the data by
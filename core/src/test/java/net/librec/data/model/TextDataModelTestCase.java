@@ -21,12 +21,17 @@ import net.librec.BaseTestCase;
 import net.librec.common.LibrecException;
 import net.librec.conf.Configured;
 import net.librec.data.DataModel;
+import net.librec.data.convertor.SnapshotDataConvertor;
 import org.junit.Before;
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
 
+import java.io.File;
+import java.io.RandomAccessFile;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -459,6 +464,54 @@ public class TextDataModelTestCase extends BaseTestCase {
 		assertEquals(getTestSize(dataModel), 9);
 	}
 
+	/**
+	 * Test the snapshot of the data model: the first build writes the
+	 * snapshot, the second build loads the same data from it, and a
+	 * corrupted snapshot is ignored.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void test21Snapshot() throws Exception {
+		String snapshotPath = "target/snapshot/matrix4by4-date.snapshot";
+		new File(snapshotPath).delete();
+		conf.set(Configured.CONF_DATA_COLUMN_FORMAT, "UIRT");
+		conf.set(Configured.CONF_DATA_INPUT_PATH, "test/datamodeltest/matrix4by4-date.txt");
+		conf.set("data.snapshot.path", snapshotPath);
+
+		TextDataModel dataModel = new TextDataModel(conf);
+		dataModel.buildDataModel();
+		assertTrue(new File(snapshotPath).isFile());
+
+		conf.setBoolean("data.convert.read.ready", false);
+		TextDataModel snapshotModel = new TextDataModel(conf);
+		snapshotModel.buildDataModel();
+
+		assertTrue(snapshotModel.dataConvertor instanceof SnapshotDataConvertor);
+		assertEquals(getDataSize(snapshotModel), 13);
+		assertEquals(dataModel.getUserMappingData(), snapshotModel.getUserMappingData());
+		assertEquals(dataModel.getItemMappingData(), snapshotModel.getItemMappingData());
+		assertEquals(dataModel.dataConvertor.getPreferenceMatrix().toString(),
+				snapshotModel.dataConvertor.getPreferenceMatrix().toString());
+		assertEquals(dataModel.getDatetimeDataSet().toString(), snapshotModel.getDatetimeDataSet().toString());
+
+		try (RandomAccessFile snapshot = new RandomAccessFile(snapshotPath, "rw")) {
+			long position = snapshot.length() / 2;
+			snapshot.seek(position);
+			int value = snapshot.read();
+			snapshot.seek(position);
+			snapshot.write(value ^ 0xFF);
+		}
+		conf.setBoolean("data.convert.read.ready", false);
+		TextDataModel corruptedModel = new TextDataModel(conf);
+		corruptedModel.buildDataModel();
+		assertFalse(corruptedModel.dataConvertor instanceof SnapshotDataConvertor);
+		assertEquals(getDataSize(corruptedModel), 13);
+		assertTrue(new SnapshotDataConvertor(snapshotPath, SnapshotDataConvertor.sourceKey(
+				conf.get(Configured.CONF_DFS_DATA_DIR) + "/test/datamodeltest/matrix4by4-date.txt", "text", "UIRT",
+				"-1.0")).load());
+	}
+
 	/**
 	 * Returns the size of preference matrix of a specified DataModel object
 	 *
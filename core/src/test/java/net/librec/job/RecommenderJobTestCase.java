@@ -19,6 +19,7 @@ package net.librec.job;
 
 import net.librec.BaseTestCase;
 import net.librec.common.LibrecException;
+import net.librec.conf.Configuration;
 import net.librec.recommender.item.GenericRecommendedItem;
 import net.librec.recommender.item.RecommendedItem;
 import org.junit.Before;
@@ -29,6 +30,9 @@ import org.junit.runners.MethodSorters;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
 
 /**
  * RecommenderJob test case
@@ -84,4 +88,52 @@ public class RecommenderJobTestCase extends BaseTestCase {
 		conf.set("rec.recommender.class", "net.librec.recommender.cf.AOBPRRecommender");
 		// saveResult(recommendedItemList);
 	}
+
+	/**
+	 * the folds of a cross validation executed in parallel give the results of the sequential execution
+	 *
+	 * @throws LibrecException
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	@Test
+	public void testParallelFolds() throws LibrecException, IOException, ClassNotFoundException {
+		Map<String, List<Double>> sequentialResults = runCrossValidation("itemaverage", 1);
+		Map<String, List<Double>> parallelResults = runCrossValidation("itemaverage", 3);
+		assertEquals(5, sequentialResults.get("RMSEEvaluator").size());
+		assertEquals(sequentialResults, parallelResults);
+	}
+
+	/**
+	 * the folds of a cross validation of a stochastic recommender executed in parallel give the same results for the
+	 * same seed
+	 *
+	 * @throws LibrecException
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	@Test
+	public void testParallelFoldsSeeded() throws LibrecException, IOException, ClassNotFoundException {
+		Map<String, List<Double>> firstResults = runCrossValidation("biasedmf", 3);
+		Map<String, List<Double>> secondResults = runCrossValidation("biasedmf", 3);
+		assertEquals(5, firstResults.get("RMSEEvaluator").size());
+		assertEquals(firstResults, secondResults);
+	}
+
+	private Map<String, List<Double>> runCrossValidation(String recommender, int numThreads)
+			throws LibrecException, IOException, ClassNotFoundException {
+		conf = new Configuration();
+		conf.set("data.input.path", "filmtrust/rating");
+		conf.set("data.model.splitter", "kcv");
+		conf.set("data.splitter.cv.number", "5");
+		conf.set("data.splitter.cv.threads", String.valueOf(numThreads));
+		conf.set("rec.random.seed", "1");
+		conf.set("rec.recommender.class", recommender);
+		conf.set("rec.iterator.maximum", "10");
+		conf.set("rec.eval.enable", "true");
+		conf.set("rec.eval.classes", "rmse,mae");
+		RecommenderJob job = new RecommenderJob(conf);
+		job.runJob();
+		return job.getCVEvalResults();
+	}
 }
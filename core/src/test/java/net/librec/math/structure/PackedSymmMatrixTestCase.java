@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2016 LibRec
+ * <p>
+ * This file is part of LibRec.
+ * LibRec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * LibRec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.librec.math.structure;
+
+import net.librec.BaseTestCase;
+import net.librec.data.DataModel;
+import net.librec.data.model.TextDataModel;
+import net.librec.similarity.BinaryCosineSimilarity;
+import net.librec.similarity.RecommenderSimilarity;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * PackedSymmMatrix Test Case corresponds to PackedSymmMatrix
+ * {@link net.librec.math.structure.PackedSymmMatrix}
+ */
+public class PackedSymmMatrixTestCase extends BaseTestCase {
+
+    /**
+     * 4 x 4 matrix with the entries (0,1)=0.5, (0,3)=0.25, (1,2)=1 and (2,3)=-0.5
+     */
+    private SymmMatrix createMatrix() {
+        SymmMatrix matrix = new SymmMatrix(4);
+        matrix.set(0, 1, 0.5);
+        matrix.set(0, 3, 0.25);
+        matrix.set(1, 2, 1.0);
+        matrix.set(2, 3, -0.5);
+        return matrix;
+    }
+
+    /**
+     * test that the packed matrix holds both triangles and walks the neighbors of a row by descending value
+     */
+    @Test
+    public void testGetAndNeighbors() throws Exception {
+        PackedSymmMatrix matrix = new PackedSymmMatrix(createMatrix(), PackedSymmMatrix.Storage.HEAP, null);
+        assertEquals(4, matrix.getDim());
+        assertEquals(8, matrix.size());
+        assertEquals(0.5, matrix.get(1, 0), 0.0);
+        assertEquals(-0.5, matrix.get(3, 2), 0.0);
+        assertEquals(0.0, matrix.get(0, 2), 0.0);
+        assertFalse(matrix.contains(0, 2));
+
+        assertEquals(2, matrix.rowSize(3));
+        assertEquals(0, matrix.getNeighbor(3, 0));
+        assertEquals(0.25, matrix.getNeighborValue(3, 0), 0.0);
+        assertEquals(2, matrix.getNeighbor(3, 1));
+        assertEquals(-0.5, matrix.getNeighborValue(3, 1), 0.0);
+    }
+
+    /**
+     * test that the packed matrices of all storages hold the similarity matrix built in a table, and that in-place
+     * updates and new entries keep the neighbor order consistent
+     */
+    @Test
+    public void testStorages() throws Exception {
+        conf.set("data.appender.class", "social");
+        conf.set("data.appender.path", "filmtrust/trust/trust.txt");
+        conf.set("rec.recommender.similarity.key", "item");
+        DataModel dataModel = new TextDataModel(conf);
+        dataModel.buildDataModel();
+        RecommenderSimilarity similarity = new BinaryCosineSimilarity();
+        similarity.buildSimilarityMatrix(dataModel);
+        SymmMatrix tableMatrix = similarity.getSimilarityMatrix();
+
+        File mappedFile = File.createTempFile("packed", ".bin");
+        try {
+            for (String storage : new String[]{"heap", "direct", "mapped"}) {
+                conf.set("rec.similarity.storage", storage);
+                conf.set("rec.similarity.storage.path", mappedFile.getPath());
+                similarity = new BinaryCosineSimilarity();
+                similarity.buildSimilarityMatrix(dataModel);
+                PackedSymmMatrix packedMatrix = (PackedSymmMatrix) similarity.getSimilarityMatrix();
+
+                assertEquals(tableMatrix.getDim(), packedMatrix.getDim());
+                assertEquals(tableMatrix.getData().size() * 2, packedMatrix.size());
+                for (int i = 0; i < tableMatrix.getDim(); i += 7) {
+                    assertEquals(tableMatrix.row(i).getCount(), packedMatrix.rowSize(i));
+                    for (int j = 0; j < tableMatrix.getDim(); j++) {
+                        assertEquals(tableMatrix.get(i, j), packedMatrix.get(i, j), 0.0);
+                    }
+                    for (int rank = 1; rank < packedMatrix.rowSize(i); rank++) {
+                        assertTrue(packedMatrix.getNeighborValue(i, rank - 1) >= packedMatrix.getNeighborValue(i, rank));
+                    }
+                }
+
+                packedMatrix.set(3, 5, 2.0);
+                packedMatrix.set(5, 0, -1.0);
+                assertEquals(2.0, packedMatrix.get(5, 3), 0.0);
+                assertEquals(-1.0, packedMatrix.get(0, 5), 0.0);
+                assertEquals(5, packedMatrix.getNeighbor(3, 0));
+                assertEquals(0, packedMatrix.getNeighbor(5, packedMatrix.rowSize(5) - 1));
+            }
+        } finally {
+            mappedFile.delete();
+        }
+    }
+}
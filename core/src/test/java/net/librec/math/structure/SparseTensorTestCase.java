@@ -0,0 +1,212 @@
+/**
+ * Copyright (C) 2016 LibRec
+ * <p>
+ * This file is part of LibRec.
+ * LibRec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * LibRec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.librec.math.structure;
+
+import net.librec.BaseTestCase;
+import net.librec.util.ParallelUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.*;
+
+/**
+ * SparseTensor Test Case corresponds to SparseTensor
+ * {@link net.librec.math.structure.SparseTensor}
+ */
+public class SparseTensorTestCase extends BaseTestCase {
+
+    /**
+     * 4 x 4 x 6 tensor with the entries (1,0,0)=1.5, (1,1,0)=2, (2,0,0)=3, (1,3,0)=4, (1,0,5)=5 and (3,1,4)=6
+     * at the indices 0 to 5
+     */
+    private SparseTensor createTensor() throws Exception {
+        SparseTensor tensor = new SparseTensor(4, 4, 6);
+        tensor.set(1.0, 1, 0, 0);
+        tensor.set(1.5, 1, 0, 0);
+        tensor.set(2.0, 1, 1, 0);
+        tensor.set(3.0, 2, 0, 0);
+        tensor.set(4.0, 1, 3, 0);
+        tensor.set(5.0, 1, 0, 5);
+        tensor.set(6.0, 3, 1, 4);
+        return tensor;
+    }
+
+    /**
+     * test that set overwrites, add accumulates and get finds the entries by keys
+     */
+    @Test
+    public void testGetSetAdd() throws Exception {
+        SparseTensor tensor = createTensor();
+        assertEquals(6, tensor.size());
+        assertEquals(1.5, tensor.get(1, 0, 0), 0.0);
+        assertEquals(6.0, tensor.get(3, 1, 4), 0.0);
+        assertEquals(0.0, tensor.get(1, 2, 0), 0.0);
+        assertTrue(tensor.contains(1, 0, 5));
+        assertFalse(tensor.contains(0, 1, 5));
+
+        tensor.add(0.5, 1, 0, 0);
+        tensor.add(7.0, 0, 2, 3);
+        assertEquals(7, tensor.size());
+        assertEquals(2.0, tensor.get(1, 0, 0), 0.0);
+        assertEquals(7.0, tensor.get(0, 2, 3), 0.0);
+        assertArrayEquals(new int[]{0, 2, 3}, tensor.keys(6));
+        assertEquals(7.0, tensor.value(6), 0.0);
+    }
+
+    /**
+     * test that removing an entry keeps the order of the others and updates the lookups and indices
+     */
+    @Test
+    public void testRemove() throws Exception {
+        SparseTensor tensor = createTensor();
+        assertEquals(Arrays.asList(0, 1, 3, 4), new ArrayList<>(tensor.getIndex(0, 1)));
+
+        assertTrue(tensor.remove(1, 1, 0));
+        assertFalse(tensor.remove(1, 1, 0));
+        assertEquals(5, tensor.size());
+        assertEquals(0.0, tensor.get(1, 1, 0), 0.0);
+        assertEquals(4.0, tensor.get(1, 3, 0), 0.0);
+        assertArrayEquals(new int[]{2, 0, 0}, tensor.keys(1));
+        assertEquals(Arrays.asList(0, 2, 3), new ArrayList<>(tensor.getIndex(0, 1)));
+    }
+
+    /**
+     * test the positions of the entries of a key of a dimension
+     */
+    @Test
+    public void testGetIndex() throws Exception {
+        SparseTensor tensor = createTensor();
+        assertEquals(Arrays.asList(0, 1, 2, 3), new ArrayList<>(tensor.getIndex(2, 0)));
+        assertEquals(Arrays.asList(1, 5), new ArrayList<>(tensor.getIndex(1, 1)));
+        assertEquals(Collections.emptyList(), new ArrayList<>(tensor.getIndex(1, 2)));
+        assertEquals(Collections.emptyList(), new ArrayList<>(tensor.getIndex(2, 9)));
+        assertEquals(Arrays.asList(0, 0, 0, 5), tensor.getRelevantKeys(0, 1, 2));
+
+        // an inserted entry is found in the rebuilt index
+        tensor.set(4.5, 2, 1, 1);
+        assertEquals(Arrays.asList(6), new ArrayList<>(tensor.getIndex(2, 1)));
+        assertEquals(Arrays.asList(2, 6), new ArrayList<>(tensor.getIndex(0, 2)));
+    }
+
+    /**
+     * test the fibers obtained by fixing all keys but one
+     */
+    @Test
+    public void testFiber() throws Exception {
+        SparseTensor tensor = createTensor();
+        SparseVector fiber = tensor.fiber(1, 1, 0);
+        assertEquals(3, fiber.getCount());
+        assertEquals(1.5, fiber.get(0), 0.0);
+        assertEquals(2.0, fiber.get(1), 0.0);
+        assertEquals(0.0, fiber.get(2), 0.0);
+        assertEquals(4.0, fiber.get(3), 0.0);
+
+        fiber = tensor.fiber(2, 1, 0);
+        assertEquals(2, fiber.getCount());
+        assertEquals(1.5, fiber.get(0), 0.0);
+        assertEquals(5.0, fiber.get(5), 0.0);
+
+        assertEquals(0, tensor.fiber(0, 3, 3).getCount());
+    }
+
+    /**
+     * test the slices obtained by fixing all keys but two
+     */
+    @Test
+    public void testSlice() throws Exception {
+        SparseTensor tensor = createTensor();
+        SparseMatrix slice = tensor.slice(0, 1, 0);
+        assertEquals(4, slice.numRows());
+        assertEquals(4, slice.numColumns());
+        assertEquals(4, slice.size());
+        assertEquals(1.5, slice.get(1, 0), 0.0);
+        assertEquals(2.0, slice.get(1, 1), 0.0);
+        assertEquals(3.0, slice.get(2, 0), 0.0);
+        assertEquals(4.0, slice.get(1, 3), 0.0);
+
+        slice = tensor.slice(1, 2, 1);
+        assertEquals(4, slice.size());
+        assertEquals(5.0, slice.get(0, 5), 0.0);
+
+        assertNull(tensor.slice(0, 1, 2));
+    }
+
+    /**
+     * test that the mode-n matricization puts the entries at the column of the keys of the other dimensions
+     */
+    @Test
+    public void testMatricization() throws Exception {
+        SparseTensor tensor = createTensor();
+        SparseMatrix matrix = tensor.matricization(2);
+        assertEquals(6, matrix.numRows());
+        assertEquals(16, matrix.numColumns());
+        assertEquals(6, matrix.size());
+        // column = key of dimension 0 + 4 * key of dimension 1
+        assertEquals(1.5, matrix.get(0, 1), 0.0);
+        assertEquals(2.0, matrix.get(0, 5), 0.0);
+        assertEquals(3.0, matrix.get(0, 2), 0.0);
+        assertEquals(4.0, matrix.get(0, 13), 0.0);
+        assertEquals(5.0, matrix.get(5, 1), 0.0);
+        assertEquals(6.0, matrix.get(4, 7), 0.0);
+
+        matrix = tensor.matricization(0);
+        assertEquals(4, matrix.numRows());
+        assertEquals(24, matrix.numColumns());
+        // column = key of dimension 1 + 4 * key of dimension 2
+        assertEquals(5.0, matrix.get(1, 20), 0.0);
+        assertEquals(6.0, matrix.get(3, 17), 0.0);
+    }
+
+    /**
+     * test that the entry table built by concurrent readers finds every entry
+     */
+    @Test
+    public void testConcurrentGet() throws Exception {
+        final int numKeys = 50;
+        final SparseTensor tensor = new SparseTensor(numKeys, numKeys, numKeys);
+        for (int key = 0; key < numKeys * numKeys; key++) {
+            tensor.set(key + 1, key % numKeys, key / numKeys, (7 * key) % numKeys);
+        }
+        // the entry table is dropped by a removal and rebuilt by the first concurrent reader
+        tensor.remove(0, 0, 0);
+
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            tasks.add(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    int numMismatches = 0;
+                    for (int key = 1; key < numKeys * numKeys; key++) {
+                        if (tensor.get(key % numKeys, key / numKeys, (7 * key) % numKeys) != key + 1) {
+                            numMismatches++;
+                        }
+                    }
+                    return numMismatches;
+                }
+            });
+        }
+        for (int numMismatches : ParallelUtil.invokeAll(tasks)) {
+            assertEquals(0, numMismatches);
+        }
+    }
+}
@@ -17,14 +17,37 @@
  */
 package net.librec.recommender.cf.ranking;
 
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
 import net.librec.BaseTestCase;
 import net.librec.common.LibrecException;
 import net.librec.conf.Configuration;
+import net.librec.data.DataModel;
+import net.librec.data.model.TextDataModel;
+import net.librec.eval.Measure;
+import net.librec.eval.Measure.MeasureValue;
+import net.librec.eval.RecommenderEvaluator;
+import net.librec.eval.ranking.AUCEvaluator;
 import net.librec.job.RecommenderJob;
+import net.librec.math.algorithm.Randoms;
+import net.librec.math.structure.SparseMatrix;
+import net.librec.recommender.PairwiseSampler;
+import net.librec.recommender.Recommender;
+import net.librec.recommender.RecommenderContext;
+import net.librec.recommender.item.RecommendedItem;
+import net.librec.util.ReflectionUtil;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * BPR Test Case corresponds to BPRRecommender
@@ -53,4 +76,195 @@ public class BPRTestCase extends BaseTestCase {
         RecommenderJob job = new RecommenderJob(conf);
         job.runJob();
     }
+
+    /**
+     * test that the batch scoring of the factors on one or several threads gives the same lists as ranking
+     * with single predictions
+     *
+     * @throws ClassNotFoundException
+     * @throws LibrecException
+     * @throws IOException
+     */
+    @Test
+    public void testBatchRanking() throws ClassNotFoundException, LibrecException, IOException {
+        Configuration.Resource resource = new Configuration.Resource("rec/cf/ranking/bpr-test.properties");
+        conf.addResource(resource);
+        conf.set("rec.iterator.maximum", "5");
+        DataModel dataModel = new TextDataModel(conf);
+        dataModel.buildDataModel();
+
+        // overriding predict disables both the batch scoring and the parallel ranking
+        Randoms.seed(1);
+        Recommender recommender = new BPRRecommender() {
+            @Override
+            protected double predict(int userIdx, int itemIdx) throws LibrecException {
+                return super.predict(userIdx, itemIdx);
+            }
+        };
+        recommender.recommend(new RecommenderContext(conf, dataModel));
+        List<RecommendedItem> sequentialList = recommender.getRecommendedList();
+
+        conf.set("rec.recommender.ranking.threads", "1");
+        Randoms.seed(1);
+        recommender = new BPRRecommender();
+        recommender.recommend(new RecommenderContext(conf, dataModel));
+        assertSameRanking(sequentialList, recommender.getRecommendedList());
+
+        conf.set("rec.recommender.ranking.threads", "4");
+        Randoms.seed(1);
+        recommender = new BPRRecommender();
+        recommender.recommend(new RecommenderContext(conf, dataModel));
+        assertSameRanking(sequentialList, recommender.getRecommendedList());
+    }
+
+    /**
+     * test that lock-free parallel BPR with per-thread samplers reaches about the accuracy of a single thread
+     *
+     * @throws ClassNotFoundException
+     * @throws LibrecException
+     * @throws IOException
+     */
+    @Test
+    public void testHogwild() throws ClassNotFoundException, LibrecException, IOException {
+        Configuration.Resource resource = new Configuration.Resource("rec/cf/ranking/bpr-test.properties");
+        conf.addResource(resource);
+        conf.set("rec.iterator.maximum", "10");
+        conf.set("rec.random.seed", "1");
+        DataModel dataModel = new TextDataModel(conf);
+        dataModel.buildDataModel();
+
+        double sequentialAUC = trainAndEvaluate(dataModel);
+        conf.set("rec.sgd.hogwild", "true");
+        conf.set("rec.thread.count", "4");
+        double hogwildAUC = trainAndEvaluate(dataModel);
+        assertEquals(sequentialAUC, hogwildAUC, 0.02);
+    }
+
+    /**
+     * test that the single-pass evaluation gives the values of the individual evaluators at all cutoffs,
+     * independently of the number of threads
+     *
+     * @throws ClassNotFoundException
+     * @throws LibrecException
+     * @throws IOException
+     */
+    @Test
+    public void testFusedEvaluation() throws ClassNotFoundException, LibrecException, IOException {
+        Configuration.Resource resource = new Configuration.Resource("rec/cf/ranking/bpr-test.properties");
+        conf.addResource(resource);
+        conf.set("rec.iterator.maximum", "5");
+        DataModel dataModel = new TextDataModel(conf);
+        dataModel.buildDataModel();
+        Randoms.seed(1);
+        Recommender recommender = new BPRRecommender();
+        recommender.recommend(new RecommenderContext(conf, dataModel));
+
+        List<MeasureValue> measureValues = new ArrayList<>(Measure.getMeasureEnumList(true, 0));
+        measureValues.add(new MeasureValue(Measure.IDCG));
+        conf.set("rec.eval.threads", "1");
+        Map<MeasureValue, Double> sequentialValues = recommender.evaluateMap(measureValues);
+        conf.set("rec.eval.threads", "4");
+        Map<MeasureValue, Double> parallelValues = recommender.evaluateMap(measureValues);
+
+        assertEquals(measureValues.size(), sequentialValues.size());
+        for (MeasureValue measureValue : measureValues) {
+            RecommenderEvaluator evaluator = ReflectionUtil.newInstance(measureValue.getMeasure().getEvaluatorClass());
+            if (measureValue.getTopN() != null) {
+                evaluator.setTopN(measureValue.getTopN());
+            }
+            double expected = recommender.evaluate(evaluator);
+            assertEquals(expected, sequentialValues.get(measureValue), 1e-10);
+            assertEquals(sequentialValues.get(measureValue), parallelValues.get(measureValue), 0.0);
+        }
+    }
+
+    /**
+     * test that ranking against sampled negatives gives the same lists on one or several threads and a
+     * meaningful AUC, with uniform and popularity sampling
+     *
+     * @throws ClassNotFoundException
+     * @throws LibrecException
+     * @throws IOException
+     */
+    @Test
+    public void testSampledNegatives() throws ClassNotFoundException, LibrecException, IOException {
+        Configuration.Resource resource = new Configuration.Resource("rec/cf/ranking/bpr-test.properties");
+        conf.addResource(resource);
+        conf.set("rec.iterator.maximum", "10");
+        conf.set("rec.eval.negatives.number", "50");
+        DataModel dataModel = new TextDataModel(conf);
+        dataModel.buildDataModel();
+
+        for (String sampler : new String[]{"uniform", "popularity"}) {
+            conf.set("rec.eval.negatives.sampler", sampler);
+            conf.set("rec.recommender.ranking.threads", "1");
+            Randoms.seed(1);
+            Recommender recommender = new BPRRecommender();
+            recommender.recommend(new RecommenderContext(conf, dataModel));
+            List<RecommendedItem> sequentialList = recommender.getRecommendedList();
+            double sequentialAUC = recommender.evaluate(topN(new AUCEvaluator()));
+
+            conf.set("rec.recommender.ranking.threads", "4");
+            Randoms.seed(1);
+            recommender = new BPRRecommender();
+            recommender.recommend(new RecommenderContext(conf, dataModel));
+            assertSameRanking(sequentialList, recommender.getRecommendedList());
+            assertEquals(sequentialAUC, recommender.evaluate(topN(new AUCEvaluator())), 0.0);
+            assertTrue(sequentialAUC > 0.5 && sequentialAUC <= 1.0);
+        }
+    }
+
+    /**
+     * test that the pairwise sampler treats zero entries stored in the training matrix as negative items
+     *
+     * @throws LibrecException
+     */
+    @Test
+    public void testSamplerSkipsZeroEntries() throws LibrecException {
+        Table<Integer, Integer, Double> table = HashBasedTable.create();
+        table.put(0, 1, 1.0);
+        table.put(0, 2, 0.0);
+        table.put(1, 0, 0.0);
+        table.put(2, 0, 1.0);
+        table.put(2, 3, 1.0);
+        PairwiseSampler sampler = new PairwiseSampler(new SparseMatrix(3, 4, table));
+
+        assertEquals(1, sampler.numPositives(0));
+        assertEquals(1, sampler.positive(0, 0));
+        assertFalse(sampler.isPositive(0, 2));
+        assertEquals(0, sampler.numPositives(1));
+        assertEquals(3, sampler.positive(2, 1));
+        Random random = new Random(1);
+        for (int sample = 0; sample < 100; sample++) {
+            int userIdx = sampler.sampleUser(random);
+            assertTrue(userIdx != 1);
+            assertFalse(sampler.isPositive(userIdx, sampler.sampleNegative(random, userIdx)));
+        }
+    }
+
+    private RecommenderEvaluator topN(RecommenderEvaluator evaluator) {
+        evaluator.setTopN(conf.getInt("rec.recommender.ranking.topn", 10));
+        return evaluator;
+    }
+
+    private double trainAndEvaluate(DataModel dataModel) throws LibrecException {
+        Randoms.seed(1);
+        Recommender recommender = new BPRRecommender();
+        recommender.recommend(new RecommenderContext(conf, dataModel));
+        return recommender.evaluate(topN(new AUCEvaluator()));
+    }
+
+    private static void assertSameRanking(List<RecommendedItem> sequentialList, List<RecommendedItem> parallelList) {
+        assertEquals(sequentialList.size(), parallelList.size());
+        for (int i = 0; i < sequentialList.size(); i++) {
+            RecommendedItem expected = sequentialList.get(i);
+            RecommendedItem actual = parallelList.get(i);
+            assertEquals(expected.getUserId(), actual.getUserId());
+            assertEquals(expected.getItemId(), actual.getItemId());
+            assertEquals(expected.getValue(), actual.getValue(), 0.0);
+            if (i > 0 && sequentialList.get(i - 1).getUserId().equals(expected.getUserId())) {
+                assertTrue(sequentialList.get(i - 1).getValue() >= expected.getValue());
+            }
+        }
+    }
 }
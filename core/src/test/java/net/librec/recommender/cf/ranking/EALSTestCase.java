@@ -20,11 +20,20 @@ package net.librec.recommender.cf.ranking;
 import net.librec.BaseTestCase;
 import net.librec.common.LibrecException;
 import net.librec.conf.Configuration;
+import net.librec.data.DataModel;
+import net.librec.data.model.TextDataModel;
 import net.librec.job.RecommenderJob;
+import net.librec.math.algorithm.Randoms;
+import net.librec.recommender.Recommender;
+import net.librec.recommender.RecommenderContext;
+import net.librec.recommender.item.RecommendedItem;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
 
 /**
  * EALS Test Case corresponds to EALSRecommender
@@ -53,4 +62,37 @@ public class EALSTestCase extends BaseTestCase {
         RecommenderJob job = new RecommenderJob(conf);
         job.runJob();
     }
+
+    /**
+     * test that training on several threads gives exactly the same model as training on one thread
+     *
+     * @throws ClassNotFoundException
+     * @throws LibrecException
+     * @throws IOException
+     */
+    @Test
+    public void testParallelTraining() throws ClassNotFoundException, LibrecException, IOException {
+        Configuration.Resource resource = new Configuration.Resource("rec/cf/ranking/eals-test.properties");
+        conf.addResource(resource);
+        conf.set("rec.iterator.maximum", "5");
+        DataModel dataModel = new TextDataModel(conf);
+        dataModel.buildDataModel();
+
+        List<RecommendedItem> sequentialList = recommend(dataModel, 1);
+        List<RecommendedItem> parallelList = recommend(dataModel, 4);
+        assertEquals(sequentialList.size(), parallelList.size());
+        for (int i = 0; i < sequentialList.size(); i++) {
+            assertEquals(sequentialList.get(i).getUserId(), parallelList.get(i).getUserId());
+            assertEquals(sequentialList.get(i).getItemId(), parallelList.get(i).getItemId());
+            assertEquals(sequentialList.get(i).getValue(), parallelList.get(i).getValue(), 0.0);
+        }
+    }
+
+    private List<RecommendedItem> recommend(DataModel dataModel, int numThreads) throws LibrecException {
+        conf.set("rec.thread.count", String.valueOf(numThreads));
+        Randoms.seed(1);
+        Recommender recommender = new EALSRecommender();
+        recommender.recommend(new RecommenderContext(conf, dataModel));
+        return recommender.getRecommendedList();
+    }
 }
@@ -20,12 +20,21 @@ package net.librec.recommender.cf.ranking;
 import net.librec.BaseTestCase;
 import net.librec.common.LibrecException;
 import net.librec.conf.Configuration;
+import net.librec.data.DataModel;
+import net.librec.data.model.TextDataModel;
+import net.librec.eval.RecommenderEvaluator;
+import net.librec.eval.ranking.AUCEvaluator;
 import net.librec.job.RecommenderJob;
+import net.librec.math.algorithm.Randoms;
+import net.librec.recommender.Recommender;
+import net.librec.recommender.RecommenderContext;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
 
+import static org.junit.Assert.assertEquals;
+
 /**
  * RankSGD Test Case corresponds to RankSGDRecommender
  * {@link net.librec.recommender.cf.ranking.RankSGDRecommender}
@@ -53,4 +62,36 @@ public class RankSGDTestCase extends BaseTestCase {
         RecommenderJob job = new RecommenderJob(conf);
         job.runJob();
     }
+
+    /**
+     * test that lock-free parallel SGD reaches about the accuracy of sequential SGD
+     *
+     * @throws ClassNotFoundException
+     * @throws LibrecException
+     * @throws IOException
+     */
+    @Test
+    public void testHogwild() throws ClassNotFoundException, LibrecException, IOException {
+        Configuration.Resource resource = new Configuration.Resource("rec/cf/ranking/ranksgd-test.properties");
+        conf.addResource(resource);
+        conf.set("rec.iterator.maximum", "10");
+        conf.set("rec.random.seed", "1");
+        DataModel dataModel = new TextDataModel(conf);
+        dataModel.buildDataModel();
+
+        double sequentialAUC = trainAndEvaluate(dataModel);
+        conf.set("rec.sgd.hogwild", "true");
+        conf.set("rec.thread.count", "4");
+        double hogwildAUC = trainAndEvaluate(dataModel);
+        assertEquals(sequentialAUC, hogwildAUC, 0.02);
+    }
+
+    private double trainAndEvaluate(DataModel dataModel) throws LibrecException {
+        Randoms.seed(1);
+        Recommender recommender = new RankSGDRecommender();
+        recommender.recommend(new RecommenderContext(conf, dataModel));
+        RecommenderEvaluator evaluator = new AUCEvaluator();
+        evaluator.setTopN(conf.getInt("rec.recommender.ranking.topn", 10));
+        return recommender.evaluate(evaluator);
+    }
 }
@@ -20,11 +20,20 @@ package net.librec.recommender.cf.ranking;
 import net.librec.BaseTestCase;
 import net.librec.common.LibrecException;
 import net.librec.conf.Configuration;
+import net.librec.data.DataModel;
+import net.librec.data.model.TextDataModel;
 import net.librec.job.RecommenderJob;
+import net.librec.math.algorithm.Randoms;
+import net.librec.recommender.Recommender;
+import net.librec.recommender.RecommenderContext;
+import net.librec.recommender.item.RecommendedItem;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
 
 /**
  * WRMF Test Case corresponds to WRMFRecommender
@@ -53,4 +62,43 @@ public class WRMFTestCase extends BaseTestCase {
         RecommenderJob job = new RecommenderJob(conf);
         job.runJob();
     }
+
+    /**
+     * test that the parallel Cholesky and conjugate gradient solvers rank as the matrix inversion
+     *
+     * @throws ClassNotFoundException
+     * @throws LibrecException
+     * @throws IOException
+     */
+    @Test
+    public void testSolvers() throws ClassNotFoundException, LibrecException, IOException {
+        Configuration.Resource resource = new Configuration.Resource("rec/cf/ranking/wrmf-test.properties");
+        conf.addResource(resource);
+        conf.set("rec.iterator.maximum", "3");
+        conf.set("rec.thread.count", "4");
+        // conjugate gradient solves exactly in as many steps as factors, up to rounding
+        conf.set("rec.wrmf.cg.steps", "20");
+        Randoms.seed(1);
+        DataModel dataModel = new TextDataModel(conf);
+        dataModel.buildDataModel();
+
+        List<RecommendedItem> expectedList = recommend(dataModel, "inverse");
+        for (String solver : new String[]{"cholesky", "cg"}) {
+            List<RecommendedItem> actualList = recommend(dataModel, solver);
+            assertEquals(expectedList.size(), actualList.size());
+            // items with almost equal scores may swap, so only the ranked scores are compared
+            for (int i = 0; i < expectedList.size(); i++) {
+                assertEquals(expectedList.get(i).getUserId(), actualList.get(i).getUserId());
+                assertEquals(solver, expectedList.get(i).getValue(), actualList.get(i).getValue(), 1e-6);
+            }
+        }
+    }
+
+    private List<RecommendedItem> recommend(DataModel dataModel, String solver) throws LibrecException {
+        conf.set("rec.wrmf.solver", solver);
+        Randoms.seed(1);
+        Recommender recommender = new WRMFRecommender();
+        recommender.recommend(new RecommenderContext(conf, dataModel));
+        return recommender.getRecommendedList();
+    }
 }
@@ -20,12 +20,20 @@ package net.librec.recommender.cf.rating;
 import net.librec.BaseTestCase;
 import net.librec.common.LibrecException;
 import net.librec.conf.Configuration.Resource;
+import net.librec.data.DataModel;
+import net.librec.data.model.TextDataModel;
+import net.librec.eval.rating.RMSEEvaluator;
 import net.librec.job.RecommenderJob;
+import net.librec.math.algorithm.Randoms;
+import net.librec.recommender.Recommender;
+import net.librec.recommender.RecommenderContext;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
 
+import static org.junit.Assert.assertEquals;
+
 /**
  * BPMF Test Case correspond to BPMFRecommender
  * {@link net.librec.recommender.cf.rating.BPMFRecommender}
@@ -55,4 +63,33 @@ public class BPMFTestCase extends BaseTestCase {
 		job.runJob();
 	}
 
+	/**
+	 * test that the Gibbs sampling of the factors gives the same model on any number of threads
+	 *
+	 * @throws ClassNotFoundException
+	 * @throws LibrecException
+	 * @throws IOException
+	 */
+	@Test
+	public void testParallelSampling() throws ClassNotFoundException, LibrecException, IOException {
+		Resource resource = new Resource("rec/cf/rating/bpmf-test.properties");
+		conf.addResource(resource);
+		conf.set("rec.iterator.maximum", "10");
+		Randoms.seed(1);
+		DataModel dataModel = new TextDataModel(conf);
+		dataModel.buildDataModel();
+
+		conf.set("rec.thread.count", "1");
+		double singleThreadRMSE = trainAndEvaluate(dataModel);
+		conf.set("rec.thread.count", "4");
+		double parallelRMSE = trainAndEvaluate(dataModel);
+		assertEquals(singleThreadRMSE, parallelRMSE, 0.0);
+	}
+
+	private double trainAndEvaluate(DataModel dataModel) throws LibrecException {
+		Randoms.seed(1);
+		Recommender recommender = new BPMFRecommender();
+		recommender.recommend(new RecommenderContext(conf, dataModel));
+		return recommender.evaluate(new RMSEEvaluator());
+	}
 }
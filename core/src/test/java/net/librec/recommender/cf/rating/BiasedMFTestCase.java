@@ -20,11 +20,25 @@ package net.librec.recommender.cf.rating;
 import net.librec.BaseTestCase;
 import net.librec.common.LibrecException;
 import net.librec.conf.Configuration.Resource;
+import net.librec.data.DataModel;
+import net.librec.data.model.TextDataModel;
+import net.librec.eval.Measure;
+import net.librec.eval.Measure.MeasureValue;
+import net.librec.eval.rating.RMSEEvaluator;
 import net.librec.job.RecommenderJob;
+import net.librec.math.algorithm.Randoms;
+import net.librec.recommender.Recommender;
+import net.librec.recommender.RecommenderContext;
+import net.librec.recommender.item.RecommendedItem;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 /**
  * BasedMF Test Case corresponds to BasedMFRecommender
@@ -54,4 +68,108 @@ public class BiasedMFTestCase extends BaseTestCase {
 		RecommenderJob job = new RecommenderJob(conf);
 		job.runJob();
 	}
+
+	/**
+	 * test that lock-free parallel SGD reaches about the accuracy of sequential SGD
+	 *
+	 * @throws ClassNotFoundException
+	 * @throws LibrecException
+	 * @throws IOException
+	 */
+	@Test
+	public void testHogwild() throws ClassNotFoundException, LibrecException, IOException {
+		Resource resource = new Resource("rec/cf/rating/biasedmf-test.properties");
+		conf.addResource(resource);
+		Randoms.seed(1);
+		DataModel dataModel = new TextDataModel(conf);
+		dataModel.buildDataModel();
+
+		double sequentialRMSE = trainAndEvaluate(dataModel);
+		conf.set("rec.sgd.hogwild", "true");
+		conf.set("rec.thread.count", "4");
+		double hogwildRMSE = trainAndEvaluate(dataModel);
+		assertEquals(sequentialRMSE, hogwildRMSE, 0.05);
+	}
+
+	/**
+	 * test that stratified parallel SGD gives the same model on any number of threads, with about the accuracy of
+	 * sequential SGD
+	 *
+	 * @throws ClassNotFoundException
+	 * @throws LibrecException
+	 * @throws IOException
+	 */
+	@Test
+	public void testDSGD() throws ClassNotFoundException, LibrecException, IOException {
+		Resource resource = new Resource("rec/cf/rating/biasedmf-test.properties");
+		conf.addResource(resource);
+		Randoms.seed(1);
+		DataModel dataModel = new TextDataModel(conf);
+		dataModel.buildDataModel();
+
+		double sequentialRMSE = trainAndEvaluate(dataModel);
+		conf.set("rec.sgd.dsgd", "true");
+		conf.set("rec.sgd.dsgd.blocks", "4");
+		conf.set("rec.random.seed", "1");
+		conf.set("rec.thread.count", "1");
+		double singleThreadRMSE = trainAndEvaluate(dataModel);
+		conf.set("rec.thread.count", "4");
+		double dsgdRMSE = trainAndEvaluate(dataModel);
+		assertEquals(singleThreadRMSE, dsgdRMSE, 0.0);
+		assertEquals(sequentialRMSE, dsgdRMSE, 0.05);
+	}
+
+	/**
+	 * test that the streaming evaluation gives the rating measures of the stored predictions, on one or several
+	 * threads, and only keeps the predictions if the output is requested
+	 *
+	 * @throws ClassNotFoundException
+	 * @throws LibrecException
+	 * @throws IOException
+	 */
+	@Test
+	public void testStreamingEvaluation() throws ClassNotFoundException, LibrecException, IOException {
+		Resource resource = new Resource("rec/cf/rating/biasedmf-test.properties");
+		conf.addResource(resource);
+		conf.set("rec.iterator.maximum", "10");
+		DataModel dataModel = new TextDataModel(conf);
+		dataModel.buildDataModel();
+		Recommender recommender = train(dataModel);
+		Map<MeasureValue, Double> storedValues = recommender.evaluateMap();
+		List<RecommendedItem> storedList = recommender.getRecommendedList();
+
+		conf.set("rec.eval.streaming", "true");
+		conf.set("rec.eval.threads", "1");
+		recommender = train(dataModel);
+		assertNull(recommender.getRecommendedList());
+		Map<MeasureValue, Double> sequentialValues = recommender.evaluateMap();
+
+		conf.set("rec.eval.threads", "4");
+		conf.set("rec.eval.streaming.output", "true");
+		recommender = train(dataModel);
+		assertEquals(storedList.size(), recommender.getRecommendedList().size());
+		Map<MeasureValue, Double> parallelValues = recommender.evaluateMap();
+
+		assertEquals(4, storedValues.size());
+		for (Map.Entry<MeasureValue, Double> entry : storedValues.entrySet()) {
+			assertEquals(entry.getValue(), sequentialValues.get(entry.getKey()), 1e-10);
+			assertEquals(sequentialValues.get(entry.getKey()), parallelValues.get(entry.getKey()), 0.0);
+		}
+		assertEquals(storedValues.get(new MeasureValue(Measure.RMSE)), recommender.evaluate(new RMSEEvaluator()), 1e-10);
+	}
+
+	private Recommender train(DataModel dataModel) throws LibrecException {
+		Randoms.seed(1);
+		Recommender recommender = new BiasedMFRecommender();
+		recommender.recommend(new RecommenderContext(conf, dataModel));
+		return recommender;
+	}
+
+	private double trainAndEvaluate(DataModel dataModel) throws LibrecException {
+		Randoms.seed(1);
+		RecommenderContext context = new RecommenderContext(conf, dataModel);
+		Recommender recommender = new BiasedMFRecommender();
+		recommender.recommend(context);
+		return recommender.evaluate(new RMSEEvaluator());
+	}
 }
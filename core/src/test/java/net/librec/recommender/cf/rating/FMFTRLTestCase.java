@@ -1,13 +1,29 @@
 package net.librec.recommender.cf.rating;
 
+import com.google.common.collect.BiMap;
 import net.librec.BaseTestCase;
 import net.librec.common.LibrecException;
 import net.librec.conf.Configuration;
+import net.librec.data.model.ArffDataModel;
+import net.librec.eval.rating.RMSEEvaluator;
 import net.librec.job.RecommenderJob;
+import net.librec.math.algorithm.Randoms;
+import net.librec.math.structure.SparseTensor;
+import net.librec.recommender.Recommender;
+import net.librec.recommender.RecommenderContext;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.io.IOException;
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * FMFTRL Test Case correspond to FMFTRLRecommender
@@ -36,4 +52,129 @@ public class FMFTRLTestCase extends BaseTestCase {
         RecommenderJob job = new RecommenderJob(conf);
         job.runJob();
     }
+
+    /**
+     * test the streaming mode on the training ratings served as arff records by a local socket
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testStream() throws Exception {
+        Configuration.Resource resource = new Configuration.Resource("rec/cf/rating/fmftrl-test.properties");
+        conf.addResource(resource);
+        Randoms.seed(1);
+        ArffDataModel dataModel = new ArffDataModel(conf);
+        dataModel.buildDataModel();
+        final String records = arffRecords((SparseTensor) dataModel.getTrainDataSet(),
+                dataModel.getAllFeaturesMappingData());
+
+        final ServerSocket server = new ServerSocket(0);
+        final AtomicReference<IOException> senderError = new AtomicReference<>();
+        Thread sender = new Thread() {
+            @Override
+            public void run() {
+                try (Socket socket = server.accept();
+                     Writer writer = new OutputStreamWriter(socket.getOutputStream(), "UTF-8")) {
+                    writer.write(records);
+                } catch (IOException e) {
+                    senderError.set(e);
+                }
+            }
+        };
+        sender.start();
+
+        Path snapshot = Files.createTempFile("fmftrl", ".model");
+        try {
+            conf.set("rec.ftrl.stream.input", "localhost:" + server.getLocalPort());
+            conf.set("rec.ftrl.stream.snapshot.path", snapshot.toString());
+            conf.set("rec.ftrl.stream.snapshot.interval", "5000");
+            Randoms.seed(1);
+            Recommender recommender = new FMFTRLRecommender();
+            recommender.recommend(new RecommenderContext(conf, dataModel));
+            sender.join();
+            if (senderError.get() != null) {
+                throw senderError.get();
+            }
+            double rmse = recommender.evaluate(new RMSEEvaluator());
+            assertTrue("streaming RMSE " + rmse, rmse < 1.0);
+
+            FTRLStreamModel model = FTRLStreamModel.read(snapshot);
+            assertEquals(10, model.getNumFactors());
+            assertTrue(model.getNumFeatures() > 0);
+        } finally {
+            server.close();
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+    /**
+     * test that a snapshot read back reproduces the bias, weights and factors of the trained model, and its
+     * accumulators, so that training resumes with the same updates
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testSnapshotRoundTrip() throws IOException {
+        Randoms.seed(1);
+        FTRLStreamModel model = new FTRLStreamModel(4, 0.1, 1.0, 0.01, 0.01, 0.1);
+        long[] features = new long[3];
+        for (int record = 0; record < 2000; record++) {
+            recordFeatures(record, features);
+            model.update(features, features.length, 1 + record % 5);
+        }
+
+        Path snapshot = Files.createTempFile("fmftrl", ".model");
+        try {
+            model.write(snapshot);
+            FTRLStreamModel readModel = FTRLStreamModel.read(snapshot);
+
+            assertEquals(model.getNumFactors(), readModel.getNumFactors());
+            assertEquals(model.getNumFeatures(), readModel.getNumFeatures());
+            assertEquals(model.getBias(), readModel.getBias(), 0.0);
+            for (int record = 0; record < 2000; record++) {
+                recordFeatures(record, features);
+                for (long key : features) {
+                    int slot = model.find(key), readSlot = readModel.find(key);
+                    assertTrue(readSlot >= 0);
+                    assertEquals(model.getWeight(slot), readModel.getWeight(readSlot), 0.0);
+                    for (int f = 0; f < model.getNumFactors(); f++) {
+                        assertEquals(model.getFactor(slot, f), readModel.getFactor(readSlot, f), 0.0);
+                    }
+                }
+            }
+
+            recordFeatures(7, features);
+            assertEquals(model.update(features, features.length, 3.0),
+                    readModel.update(features, features.length, 3.0), 0.0);
+            assertEquals(model.predict(features, features.length), readModel.predict(features, features.length),
+                    0.0);
+        } finally {
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+    /**
+     * Set the user, item and time features of a synthetic record.
+     */
+    private void recordFeatures(int record, long[] features) {
+        features[0] = FTRLStreamModel.featureKey(0, String.valueOf(record % 97));
+        features[1] = FTRLStreamModel.featureKey(1, String.valueOf(record % 89));
+        features[2] = FTRLStreamModel.featureKey(2, String.valueOf(record % 7));
+    }
+
+    /**
+     * Return the entries of a tensor of ratings.arff as arff text, the rating being the third column.
+     */
+    private String arffRecords(SparseTensor tensor, List<BiMap<String, Integer>> mappings) {
+        StringBuilder records = new StringBuilder("@RELATION user-movie\n\n");
+        records.append("@ATTRIBUTE user NUMERIC\n@ATTRIBUTE item NUMERIC\n");
+        records.append("@ATTRIBUTE rating NUMERIC\n@ATTRIBUTE time NUMERIC\n\n@DATA\n");
+        for (int index = 0; index < tensor.size(); index++) {
+            records.append(mappings.get(0).inverse().get(tensor.ndKeys[0][index])).append(',');
+            records.append(mappings.get(1).inverse().get(tensor.ndKeys[1][index])).append(',');
+            records.append(tensor.values[index]).append(',');
+            records.append(mappings.get(2).inverse().get(tensor.ndKeys[2][index])).append('\n');
+        }
+        return records.toString();
+    }
 }
@@ -20,12 +20,20 @@ package net.librec.recommender.cf.rating;
 import net.librec.BaseTestCase;
 import net.librec.common.LibrecException;
 import net.librec.conf.Configuration.Resource;
+import net.librec.data.DataModel;
+import net.librec.data.model.ArffDataModel;
+import net.librec.eval.rating.RMSEEvaluator;
 import net.librec.job.RecommenderJob;
+import net.librec.math.algorithm.Randoms;
+import net.librec.recommender.Recommender;
+import net.librec.recommender.RecommenderContext;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
 
+import static org.junit.Assert.assertEquals;
+
 /**
  * FMSGD Test Case correspond to FMSGDRecommender
  * {@link net.librec.recommender.cf.rating.FMSGDRecommender}
@@ -55,4 +63,34 @@ public class FMSGDTestCase extends BaseTestCase {
 		job.runJob();
 	}
 
+	/**
+	 * test that lock-free parallel SGD reaches about the accuracy of sequential SGD
+	 *
+	 * @throws ClassNotFoundException
+	 * @throws LibrecException
+	 * @throws IOException
+	 */
+	@Test
+	public void testHogwild() throws ClassNotFoundException, LibrecException, IOException {
+		Resource resource = new Resource("rec/cf/rating/fmsgd-test.properties");
+		conf.addResource(resource);
+		Randoms.seed(1);
+		DataModel dataModel = new ArffDataModel(conf);
+		dataModel.buildDataModel();
+
+		double sequentialRMSE = trainAndEvaluate(dataModel);
+		conf.set("rec.sgd.hogwild", "true");
+		conf.set("rec.thread.count", "4");
+		double hogwildRMSE = trainAndEvaluate(dataModel);
+		assertEquals(sequentialRMSE, hogwildRMSE, 0.05);
+	}
+
+	private double trainAndEvaluate(DataModel dataModel) throws LibrecException {
+		Randoms.seed(1);
+		RecommenderContext context = new RecommenderContext(conf, dataModel);
+		Recommender recommender = new FMSGDRecommender();
+		recommender.recommend(context);
+		return recommender.evaluate(new RMSEEvaluator());
+	}
+
 }
@@ -3,12 +3,20 @@ package net.librec.recommender.cf.rating;
 import net.librec.BaseTestCase;
 import net.librec.common.LibrecException;
 import net.librec.conf.Configuration;
+import net.librec.data.DataModel;
+import net.librec.data.model.TextDataModel;
+import net.librec.eval.rating.RMSEEvaluator;
 import net.librec.job.RecommenderJob;
+import net.librec.math.algorithm.Randoms;
+import net.librec.recommender.Recommender;
+import net.librec.recommender.RecommenderContext;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
 
+import static org.junit.Assert.assertEquals;
+
 /**
  * SVDPlusPlus Test Case correspond to SVDPlusPlusRecommender
  * {@link net.librec.recommender.cf.rating.SVDPlusPlusRecommender}
@@ -36,4 +44,33 @@ public class SVDPlusPlusTestCase extends BaseTestCase {
         RecommenderJob job = new RecommenderJob(conf);
         job.runJob();
     }
+
+    /**
+     * test that lock-free parallel SGD reaches about the accuracy of sequential SGD
+     *
+     * @throws ClassNotFoundException
+     * @throws LibrecException
+     * @throws IOException
+     */
+    @Test
+    public void testHogwild() throws ClassNotFoundException, LibrecException, IOException {
+        Configuration.Resource resource = new Configuration.Resource("rec/cf/rating/svdpp-test.properties");
+        conf.addResource(resource);
+        conf.set("rec.random.seed", "1");
+        DataModel dataModel = new TextDataModel(conf);
+        dataModel.buildDataModel();
+
+        double sequentialRMSE = trainAndEvaluate(dataModel);
+        conf.set("rec.sgd.hogwild", "true");
+        conf.set("rec.thread.count", "4");
+        double hogwildRMSE = trainAndEvaluate(dataModel);
+        assertEquals(sequentialRMSE, hogwildRMSE, 0.05);
+    }
+
+    private double trainAndEvaluate(DataModel dataModel) throws LibrecException {
+        Randoms.seed(1);
+        Recommender recommender = new SVDPlusPlusRecommender();
+        recommender.recommend(new RecommenderContext(conf, dataModel));
+        return recommender.evaluate(new RMSEEvaluator());
+    }
 }
@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2016 LibRec
+ * <p>
+ * This file is part of LibRec.
+ * LibRec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * LibRec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.librec.recommender.item;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
+import net.librec.BaseTestCase;
+import net.librec.math.structure.MatrixEntry;
+import net.librec.math.structure.SparseMatrix;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * CompactRecommendedList Test Case corresponds to CompactRecommendedList
+ * {@link net.librec.recommender.item.CompactRecommendedList}
+ */
+public class CompactRecommendedListTestCase extends BaseTestCase {
+
+    /**
+     * test that the ranking layout keeps the top-N items of every user in decreasing order
+     */
+    @Test
+    public void testTopNSlots() {
+        CompactRecommendedList recommendedList = new CompactRecommendedList(4, 3);
+        double[] values = {0.5, 0.1, 0.9, 0.3, 0.7, 0.2};
+        for (int itemIdx = 0; itemIdx < values.length; itemIdx++) {
+            recommendedList.addUserItemIdx(2, itemIdx, values[itemIdx]);
+        }
+        recommendedList.addUserItemIdx(0, 5, 1.0);
+        recommendedList.topNRank(3);
+
+        assertEquals(2, recommendedList.size());
+        assertFalse(recommendedList.contains(1));
+        List<ItemEntry<Integer, Double>> itemList = recommendedList.getItemIdxListByUserIdx(2);
+        assertEquals(3, itemList.size());
+        assertEquals(2, (int) itemList.get(0).getKey());
+        assertEquals(4, (int) itemList.get(1).getKey());
+        assertEquals(0, (int) itemList.get(2).getKey());
+        assertEquals(0.7, recommendedList.getValueByUserIdx(2, 1), 0.0);
+        assertEquals(0, recommendedList.getItemSizeByUserIdx(3));
+
+        Iterator<Integer> userItr = recommendedList.userIterator();
+        assertEquals(0, (int) userItr.next());
+        assertEquals(2, (int) userItr.next());
+        assertFalse(userItr.hasNext());
+    }
+
+    /**
+     * test that the compressed row layout follows the order of the test matrix, like the rating evaluators expect
+     */
+    @Test
+    public void testRowSlots() {
+        Table<Integer, Integer, Double> table = HashBasedTable.create();
+        table.put(1, 2, 3.0);
+        table.put(3, 4, 2.0);
+        table.put(1, 5, 4.0);
+        table.put(4, 6, 1.0);
+        SparseMatrix testMatrix = new SparseMatrix(6, 7, table);
+        CompactRecommendedList recommendedList = new CompactRecommendedList(testMatrix.rowPtr);
+        for (MatrixEntry matrixEntry : testMatrix) {
+            recommendedList.addUserItemIdx(matrixEntry.row(), matrixEntry.column(), matrixEntry.get() + 0.5);
+        }
+
+        Iterator<UserItemRatingEntry> recommendedEntryIter = recommendedList.entryIterator();
+        for (MatrixEntry matrixEntry : testMatrix) {
+            assertTrue(recommendedEntryIter.hasNext());
+            UserItemRatingEntry userItemRatingEntry = recommendedEntryIter.next();
+            assertEquals(matrixEntry.row(), userItemRatingEntry.getUserIdx());
+            assertEquals(matrixEntry.column(), userItemRatingEntry.getItemIdx());
+            assertEquals(matrixEntry.get() + 0.5, userItemRatingEntry.getValue(), 0.0);
+        }
+        assertFalse(recommendedEntryIter.hasNext());
+
+        try {
+            recommendedList.addUserItemIdx(3, 1, 1.0);
+            fail("the slots of user 3 are full");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+}
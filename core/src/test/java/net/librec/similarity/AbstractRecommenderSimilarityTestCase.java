@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2016 LibRec
+ * <p>
+ * This file is part of LibRec.
+ * LibRec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * LibRec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.librec.similarity;
+
+import net.librec.BaseTestCase;
+import net.librec.data.DataModel;
+import net.librec.data.model.TextDataModel;
+import net.librec.math.structure.PackedSymmMatrix;
+import net.librec.math.structure.SparseMatrix;
+import net.librec.math.structure.SymmMatrix;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * AbstractRecommenderSimilarity Test Case corresponds to AbstractRecommenderSimilarity
+ * {@link net.librec.similarity.AbstractRecommenderSimilarity}
+ */
+public class AbstractRecommenderSimilarityTestCase extends BaseTestCase {
+
+    private DataModel dataModel;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        dataModel = new TextDataModel(conf);
+        dataModel.buildDataModel();
+    }
+
+    /**
+     * test that the similarities built in parallel tiles over the compressed arrays equal those of the pairs of
+     * vectors
+     */
+    @Test
+    public void testParallelSimilarityMatrix() throws Exception {
+        SparseMatrix trainMatrix = dataModel.getDataSplitter().getTrainData();
+        conf.set("rec.recommender.similarity.key", "user");
+        conf.set("rec.similarity.threads", "4");
+        conf.set("rec.similarity.block.size", "37");
+        AbstractRecommenderSimilarity[] similarities = {new BinaryCosineSimilarity(), new CosineSimilarity(),
+                new CPCSimilarity(), new DiceCoefficientSimilarity(), new ExJaccardSimilarity(),
+                new JaccardSimilarity(), new KRCCSimilarity(), new MSDSimilarity(), new MSESimilarity(),
+                new PCCSimilarity()};
+        for (AbstractRecommenderSimilarity similarity : similarities) {
+            similarity.buildSimilarityMatrix(dataModel);
+            SymmMatrix similarityMatrix = similarity.getSimilarityMatrix();
+            for (int i = 0; i < trainMatrix.numRows(); i += 50) {
+                if (trainMatrix.row(i).getCount() == 0) {
+                    continue;
+                }
+                for (int j = i + 1; j < trainMatrix.numRows(); j++) {
+                    if (trainMatrix.row(j).getCount() == 0) {
+                        continue;
+                    }
+                    double sim = similarity.getCorrelation(trainMatrix.row(i), trainMatrix.row(j));
+                    assertEquals(Double.isNaN(sim) ? 0.0 : sim, similarityMatrix.get(i, j), 1e-12);
+                }
+            }
+        }
+    }
+
+    /**
+     * test that the matrix built with rec.similarity.topk.number keeps the top k neighbors of every row of the full
+     * matrix, in the same order
+     */
+    @Test
+    public void testTopKSimilarityMatrix() throws Exception {
+        conf.set("rec.recommender.similarity.key", "item");
+        RecommenderSimilarity similarity = new CosineSimilarity();
+        similarity.buildSimilarityMatrix(dataModel);
+        SymmMatrix fullMatrix = similarity.getSimilarityMatrix();
+
+        int topK = 10;
+        conf.set("rec.similarity.topk.number", String.valueOf(topK));
+        conf.set("rec.similarity.storage", "heap");
+        similarity = new CosineSimilarity();
+        similarity.buildSimilarityMatrix(dataModel);
+        PackedSymmMatrix topKMatrix = (PackedSymmMatrix) similarity.getSimilarityMatrix();
+
+        PackedSymmMatrix packedFullMatrix = new PackedSymmMatrix(fullMatrix, PackedSymmMatrix.Storage.HEAP, null);
+        assertTrue(topKMatrix.size() < packedFullMatrix.size());
+        for (int i = 0; i < fullMatrix.getDim(); i++) {
+            int size = Math.min(topK, packedFullMatrix.rowSize(i));
+            assertTrue(topKMatrix.rowSize(i) >= size);
+            for (int rank = 0; rank < size; rank++) {
+                assertEquals(packedFullMatrix.getNeighbor(i, rank), topKMatrix.getNeighbor(i, rank));
+                assertEquals(packedFullMatrix.getNeighborValue(i, rank), topKMatrix.getNeighborValue(i, rank), 0.0);
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2016 LibRec
+ * <p>
+ * This file is part of LibRec.
+ * LibRec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * LibRec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.librec.similarity;
+
+import net.librec.BaseTestCase;
+import net.librec.data.DataModel;
+import net.librec.data.model.TextDataModel;
+import net.librec.math.structure.SparseVector;
+import net.librec.math.structure.SymmMatrix;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * CooccurrenceSimilarityEngine Test Case corresponds to CooccurrenceSimilarityEngine
+ * {@link net.librec.similarity.CooccurrenceSimilarityEngine}
+ */
+public class CooccurrenceSimilarityEngineTestCase extends BaseTestCase {
+
+    private DataModel dataModel;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        dataModel = new TextDataModel(conf);
+        dataModel.buildDataModel();
+        conf.set("rec.recommender.similarity.key", "item");
+    }
+
+    /**
+     * test that the similarities of the co-occurring pairs computed by the engine equal those of the pairs of
+     * vectors
+     */
+    @Test
+    public void testCooccurrenceSimilarityMatrix() throws Exception {
+        conf.set("rec.similarity.block.size", "64");
+        AbstractRecommenderSimilarity[] similarities = {new BinaryCosineSimilarity(), new CosineSimilarity(),
+                new DiceCoefficientSimilarity(), new ExJaccardSimilarity(), new JaccardSimilarity()};
+        for (AbstractRecommenderSimilarity similarity : similarities) {
+            conf.setBoolean("rec.similarity.cooccurrence", false);
+            similarity.buildSimilarityMatrix(dataModel);
+            SymmMatrix pairwiseMatrix = similarity.getSimilarityMatrix();
+            conf.setBoolean("rec.similarity.cooccurrence", true);
+            similarity.buildSimilarityMatrix(dataModel);
+
+            assertEquals(pairwiseMatrix.getData(), similarity.getSimilarityMatrix().getData());
+        }
+    }
+
+    /**
+     * test that the engine is off by default, so that a subclass overriding getCorrelation is not bypassed
+     */
+    @Test
+    public void testSubclassNotBypassed() throws Exception {
+        AbstractRecommenderSimilarity similarity = new CosineSimilarity() {
+            @Override
+            public double getCorrelation(SparseVector thisVector, SparseVector thatVector) {
+                return 0.5;
+            }
+        };
+        similarity.buildSimilarityMatrix(dataModel);
+        SymmMatrix similarityMatrix = similarity.getSimilarityMatrix();
+
+        assertFalse(similarityMatrix.getData().isEmpty());
+        for (double sim : similarityMatrix.getData().values()) {
+            assertEquals(0.5, sim, 0.0);
+        }
+    }
+}
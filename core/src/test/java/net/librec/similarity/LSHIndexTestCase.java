@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2016 LibRec
+ * <p>
+ * This file is part of LibRec.
+ * LibRec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * LibRec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.librec.similarity;
+
+import net.librec.BaseTestCase;
+import net.librec.data.DataModel;
+import net.librec.data.model.TextDataModel;
+import net.librec.math.structure.SymmMatrix;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * LSHIndex Test Case corresponds to LSHIndex
+ * {@link net.librec.similarity.LSHIndex}
+ */
+public class LSHIndexTestCase extends BaseTestCase {
+
+    /**
+     * vectors 0 and 1 are equal, vector 2 is empty and vector 3 shares no index with them
+     */
+    private static final int[] PTR = {0, 3, 6, 6, 9};
+    private static final int[] INDEX = {1, 2, 3, 1, 2, 3, 7, 8, 9};
+    private static final double[] DATA = {1.0, 2.0, 3.0, 1.0, 2.0, 3.0, 4.0, 5.0, 1.0};
+
+    /**
+     * test that equal vectors are candidates of each other, the candidates of a vector follow it and an empty
+     * vector has none
+     */
+    @Test
+    public void testCandidates() throws Exception {
+        LSHIndex[] indexes = {new MinHashLSHIndex(8, 2, 1L), new RandomProjectionLSHIndex(8, 2, 1L)};
+        for (LSHIndex index : indexes) {
+            index.build(PTR, INDEX, DATA, 4, 2);
+            int[] candidates = new int[4];
+            int[] marks = new int[4];
+
+            int numCandidates = index.getCandidates(0, candidates, marks);
+            assertTrue(numCandidates >= 1);
+            assertEquals(1, candidates[0]);
+            for (int i = 0; i < numCandidates; i++) {
+                assertTrue(candidates[i] > 0);
+                assertTrue(candidates[i] != 2);
+            }
+            numCandidates = index.getCandidates(1, candidates, marks);
+            for (int i = 0; i < numCandidates; i++) {
+                assertTrue(candidates[i] > 1);
+            }
+            assertEquals(0, index.getCandidates(2, candidates, marks));
+        }
+    }
+
+    /**
+     * test that the approximate similarity matrices built from the candidates hold most of the top neighbors of
+     * the exact ones with fewer entries
+     */
+    @Test
+    public void testLSHSimilarityMatrix() throws Exception {
+        DataModel dataModel = new TextDataModel(conf);
+        dataModel.buildDataModel();
+        conf.set("rec.recommender.similarity.key", "item");
+        String[][] settings = {{"projection", "cosine"}, {"minhash", "jaccard"}};
+        for (String[] setting : settings) {
+            AbstractRecommenderSimilarity similarity = setting[1].equals("cosine") ? new CosineSimilarity()
+                    : new JaccardSimilarity();
+            conf.set("rec.similarity.lsh", "none");
+            similarity.buildSimilarityMatrix(dataModel);
+            SymmMatrix exactMatrix = similarity.getSimilarityMatrix();
+
+            conf.set("rec.similarity.lsh", setting[0]);
+            conf.set("rec.similarity.lsh.bands", "16");
+            conf.set("rec.similarity.lsh.rows", "2");
+            similarity.buildSimilarityMatrix(dataModel);
+            SymmMatrix approximateMatrix = similarity.getSimilarityMatrix();
+
+            double recall = LSHIndex.recall(exactMatrix, approximateMatrix, 10);
+            assertTrue(recall > 0.5);
+            assertTrue(approximateMatrix.getData().size() < exactMatrix.getData().size());
+        }
+    }
+}
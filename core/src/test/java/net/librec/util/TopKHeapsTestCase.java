@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2016 LibRec
+ * <p>
+ * This file is part of LibRec.
+ * LibRec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * LibRec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.librec.util;
+
+import net.librec.BaseTestCase;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * TopKHeaps Test Case corresponds to TopKHeaps
+ * {@link net.librec.util.TopKHeaps}
+ */
+public class TopKHeapsTestCase extends BaseTestCase {
+
+    /**
+     * test that a heap retains the k largest values, reports its threshold once full and sorts them by descending
+     * value, ties by ascending index
+     */
+    @Test
+    public void testOfferAndSort() throws Exception {
+        TopKHeaps heaps = new TopKHeaps(2, 3);
+        assertEquals(3, heaps.capacity());
+        assertTrue(heaps.offer(0, 4, 0.2));
+        assertTrue(heaps.offer(0, 7, 0.9));
+        assertEquals(Double.NEGATIVE_INFINITY, heaps.threshold(0), 0.0);
+        assertTrue(heaps.offer(0, 2, 0.5));
+        assertEquals(0.2, heaps.threshold(0), 0.0);
+        assertFalse(heaps.offer(0, 9, 0.1));
+        assertTrue(heaps.offer(0, 1, 0.5));
+        assertFalse(heaps.offer(0, 3, 0.5));
+        assertEquals(3, heaps.size(0));
+        assertEquals(0, heaps.size(1));
+
+        heaps.sort(0);
+        int[] indices = {7, 1, 2};
+        double[] values = {0.9, 0.5, 0.5};
+        for (int pos = 0; pos < 3; pos++) {
+            assertEquals(indices[pos], heaps.getIndex(0, pos));
+            assertEquals(values[pos], heaps.getValue(0, pos), 0.0);
+        }
+
+        heaps.clear(0);
+        assertEquals(0, heaps.size(0));
+    }
+
+    /**
+     * test that the retained pairs do not depend on the order of the offers
+     */
+    @Test
+    public void testOfferOrder() throws Exception {
+        int count = 200, k = 10;
+        TopKHeaps heaps = new TopKHeaps(2, k);
+        Random random = new Random(1);
+        double[] values = new double[count];
+        for (int index = 0; index < count; index++) {
+            values[index] = random.nextInt(20);
+            heaps.offer(0, index, values[index]);
+        }
+        for (int index = count - 1; index >= 0; index--) {
+            heaps.offer(1, index, values[index]);
+        }
+        heaps.sort(0);
+        heaps.sort(1);
+        for (int pos = 0; pos < k; pos++) {
+            assertEquals(heaps.getIndex(0, pos), heaps.getIndex(1, pos));
+            assertEquals(heaps.getValue(0, pos), heaps.getValue(1, pos), 0.0);
+        }
+    }
+
+    /**
+     * test that an empty capacity is rejected
+     */
+    @Test
+    public void testInvalidCapacity() throws Exception {
+        try {
+            new TopKHeaps(1, 0);
+            fail("the capacity is empty");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}